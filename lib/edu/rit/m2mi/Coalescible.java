@@ -0,0 +1,58 @@
+//******************************************************************************
+//
+// File:    Coalescible.java
+// Package: edu.rit.m2mi
+// Unit:    Interface edu.rit.m2mi.Coalescible
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+/**
+ * Interface Coalescible specifies the interface for a method argument that
+ * supplies its own coalescing key. When the M2MI Layer coalesces incoming
+ * invocations of a target method (see class {@link InvocationCoalescer
+ * </CODE>InvocationCoalescer<CODE>}), it compares the invocations' key
+ * arguments with <TT>equals()</TT>. A key argument that implements interface
+ * Coalescible is compared by its coalescing key instead, so an argument object
+ * that is freshly deserialized for every invocation, such as a state report,
+ * can still name the sender it came from.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public interface Coalescible
+	{
+
+// Exported operations.
+
+	/**
+	 * Returns this object's coalescing key. Two invocations whose key
+	 * arguments have equal coalescing keys are coalesced.
+	 *
+	 * @return  Coalescing key, or null.
+	 */
+	public Object getCoalescingKey();
+
+	}
@@ -0,0 +1,470 @@
+//******************************************************************************
+//
+// File:    CompactCodec.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.CompactCodec
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.io.BufferedOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import java.util.HashMap;
+
+/**
+ * Class CompactCodec encapsulates the compact wire format for M2MI invocation
+ * messages. By default the M2MI Layer writes an invocation into an outgoing
+ * M2MI message using Java object serialization. When the M2MI property
+ * <TT>edu.rit.m2mi.codec</TT> is <TT>"compact"</TT> (see class {@link
+ * M2MIProperties </CODE>M2MIProperties<CODE>}), the M2MI Layer writes the
+ * invocation using class CompactCodec instead. The receiving side recognizes
+ * either format automatically, so processes using different codecs can
+ * interoperate as long as each can read what the other writes.
+ * <P>
+ * A compact invocation message consists of the M2MI message prefix, the marker
+ * byte <TT>MARKER</TT> (which can never begin a Java serialization stream), a
+ * format version byte, a byte telling whether the invocation came from an
+ * omnihandle, a multihandle, or a unihandle, and then the invocation's own
+ * <TT>writeExternal()</TT> data: the EOID, the method descriptor, and the
+ * method arguments. No class descriptors or stream headers are written.
+ * <P>
+ * Each object argument is written as a one-byte tag followed by the object's
+ * contents. Strings, the primitive wrapper classes, {@link Eoid
+ * </CODE>Eoid<CODE>}s, primitive arrays, string arrays, object arrays,
+ * HashMaps, and Vectors are written directly. Instances of classes registered
+ * with the <TT>register()</TT> methods are written as a two-byte type ID
+ * followed by the output of the class's <TT>writeExternal()</TT> method or of
+ * the class's {@link TypeCodec </CODE>TypeCodec<CODE>}. Any other object is
+ * written using Java object serialization, so every Serializable argument
+ * still works, it just takes more space.
+ * <P>
+ * Type IDs must be registered with the same classes in every process taking
+ * part in the M2MI session; the type IDs are not written in any message. Only
+ * the exact registered class is matched, not its subclasses. Unlike Java
+ * object serialization, the compact format does not preserve object identity:
+ * an object referred to twice is written twice and read back as two objects,
+ * and an object graph with a cycle among directly-written or registered objects
+ * cannot be written at all.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class CompactCodec
+	{
+
+// Prevent construction.
+
+	private CompactCodec()
+		{
+		}
+
+// Exported constants.
+
+	/**
+	 * Marker byte that begins the compact format, the ASCII character
+	 * <TT>'C'</TT>. A Java serialization stream always begins with the byte
+	 * 0xAC.
+	 */
+	public static final int MARKER = 0x43;
+
+	/**
+	 * Version of the compact format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Largest type ID that can be registered.
+	 */
+	public static final int MAX_TYPE_ID = 0xFFFF;
+
+// Hidden constants.
+
+	// Size of the buffer in front of the output stream. Most invocations fit
+	// in one buffer.
+	private static final int BUFFER_SIZE = 512;
+
+	// Invocation kinds.
+	private static final int KIND_OMNI  = 1;
+	private static final int KIND_MULTI = 2;
+	private static final int KIND_UNI   = 3;
+
+	// Object tags.
+	static final int TAG_NULL          = 0;
+	static final int TAG_SERIALIZED    = 1;
+	static final int TAG_REGISTERED    = 2;
+	static final int TAG_STRING        = 3;
+	static final int TAG_BOOLEAN       = 4;
+	static final int TAG_BYTE          = 5;
+	static final int TAG_CHARACTER     = 6;
+	static final int TAG_SHORT         = 7;
+	static final int TAG_INTEGER       = 8;
+	static final int TAG_LONG          = 9;
+	static final int TAG_FLOAT         = 10;
+	static final int TAG_DOUBLE        = 11;
+	static final int TAG_EOID          = 12;
+	static final int TAG_BOOLEAN_ARRAY = 13;
+	static final int TAG_BYTE_ARRAY    = 14;
+	static final int TAG_CHAR_ARRAY    = 15;
+	static final int TAG_SHORT_ARRAY   = 16;
+	static final int TAG_INT_ARRAY     = 17;
+	static final int TAG_LONG_ARRAY    = 18;
+	static final int TAG_FLOAT_ARRAY   = 19;
+	static final int TAG_DOUBLE_ARRAY  = 20;
+	static final int TAG_STRING_ARRAY  = 21;
+	static final int TAG_OBJECT_ARRAY  = 22;
+	static final int TAG_HASHMAP       = 23;
+	static final int TAG_VECTOR        = 24;
+
+// Hidden data members.
+
+	// Registered classes, mapping Class to Entry and Integer type ID to Entry.
+	private static HashMap theClassMap = new HashMap();
+	private static HashMap theTypeIdMap = new HashMap();
+
+	/**
+	 * Class CompactCodec.Entry records one registered class.
+	 */
+	private static class Entry
+		{
+		public int myTypeId;
+		public Class myClass;
+		public TypeCodec myTypeCodec; // Null for an Externalizable class
+
+		public Entry
+			(int theTypeId,
+			 Class theClass,
+			 TypeCodec theTypeCodec)
+			{
+			myTypeId = theTypeId;
+			myClass = theClass;
+			myTypeCodec = theTypeCodec;
+			}
+		}
+
+// Exported operations.
+
+	/**
+	 * Register the given Externalizable class with the given type ID.
+	 * Instances of the class will be written with the class's
+	 * <TT>writeExternal()</TT> method and read by creating an instance with
+	 * the class's no-argument constructor and calling the instance's
+	 * <TT>readExternal()</TT> method, just as Java object serialization does.
+	 * Registering the same class with the same type ID again has no effect.
+	 *
+	 * @param  theTypeId  Type ID, in the range 0 .. <TT>MAX_TYPE_ID</TT>.
+	 * @param  theClass   Class.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>theClass</TT> is null.
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theTypeId</TT> is out of range,
+	 *     if <TT>theClass</TT> does not implement interface Externalizable, or
+	 *     if <TT>theTypeId</TT> or <TT>theClass</TT> is already registered
+	 *     differently.
+	 */
+	public static void register
+		(int theTypeId,
+		 Class theClass)
+		{
+		if (! Externalizable.class.isAssignableFrom (theClass))
+			{
+			throw new IllegalArgumentException
+				("CompactCodec.register(): Class " + theClass.getName() +
+					" is not Externalizable");
+			}
+		doRegister (theTypeId, theClass, null);
+		}
+
+	/**
+	 * Register the given class with the given type ID and type codec.
+	 * Instances of the class will be written and read with the type codec.
+	 * Registering the same class with the same type ID again replaces the
+	 * type codec.
+	 *
+	 * @param  theTypeId     Type ID, in the range 0 .. <TT>MAX_TYPE_ID</TT>.
+	 * @param  theClass      Class.
+	 * @param  theTypeCodec  Type codec.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>theClass</TT> or
+	 *     <TT>theTypeCodec</TT> is null.
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theTypeId</TT> is out of range,
+	 *     or if <TT>theTypeId</TT> or <TT>theClass</TT> is already registered
+	 *     differently.
+	 */
+	public static void register
+		(int theTypeId,
+		 Class theClass,
+		 TypeCodec theTypeCodec)
+		{
+		if (theTypeCodec == null)
+			{
+			throw new NullPointerException();
+			}
+		doRegister (theTypeId, theClass, theTypeCodec);
+		}
+
+	/**
+	 * Write the given invocation to the given output stream in the compact
+	 * format. The output stream is flushed but not closed.
+	 *
+	 * @param  theInvocation  Invocation.
+	 * @param  theStream      Output stream.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public static void writeInvocation
+		(Invocation theInvocation,
+		 OutputStream theStream)
+		throws IOException
+		{
+		int kind;
+		if (theInvocation instanceof OmniInvocation)
+			{
+			kind = KIND_OMNI;
+			}
+		else if (theInvocation instanceof MultiInvocation)
+			{
+			kind = KIND_MULTI;
+			}
+		else if (theInvocation instanceof UniInvocation)
+			{
+			kind = KIND_UNI;
+			}
+		else
+			{
+			throw new InvalidClassException
+				(theInvocation.getClass().getName(),
+				 "Unknown kind of invocation");
+			}
+
+		CompactObjectOutput out =
+			new CompactObjectOutput
+				(new BufferedOutputStream (theStream, BUFFER_SIZE));
+		out.writeByte (MARKER);
+		out.writeByte (VERSION);
+		out.writeByte (kind);
+		theInvocation.writeExternal (out);
+		out.flush();
+		}
+
+	/**
+	 * Read an invocation in the compact format from the given input stream. It
+	 * assumes the invocation was written by <TT>writeInvocation()</TT>, and
+	 * that the next byte in the input stream is the marker byte.
+	 *
+	 * @param  theStream  Input stream.
+	 *
+	 * @return  Invocation.
+	 *
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the class for an object being read cannot be found.
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public static Invocation readInvocation
+		(InputStream theStream)
+		throws ClassNotFoundException, IOException
+		{
+		CompactObjectInput in = new CompactObjectInput (theStream);
+		int marker = in.readUnsignedByte();
+		if (marker != MARKER)
+			{
+			throw new StreamCorruptedException
+				("CompactCodec: Invalid marker = " + marker);
+			}
+		int version = in.readUnsignedByte();
+		if (version != VERSION)
+			{
+			throw new StreamCorruptedException
+				("CompactCodec: Unsupported version = " + version);
+			}
+
+		Invocation theInvocation;
+		int kind = in.readUnsignedByte();
+		switch (kind)
+			{
+			case KIND_OMNI:
+				theInvocation = new OmniInvocation();
+				break;
+			case KIND_MULTI:
+				theInvocation = new MultiInvocation();
+				break;
+			case KIND_UNI:
+				theInvocation = new UniInvocation();
+				break;
+			default:
+				throw new StreamCorruptedException
+					("CompactCodec: Invalid invocation kind = " + kind);
+			}
+		theInvocation.readExternal (in);
+		return theInvocation;
+		}
+
+// Hidden operations.
+
+	/**
+	 * Register the given class with the given type ID and type codec.
+	 *
+	 * @param  theTypeId     Type ID.
+	 * @param  theClass      Class.
+	 * @param  theTypeCodec  Type codec, or null for an Externalizable class.
+	 */
+	private static synchronized void doRegister
+		(int theTypeId,
+		 Class theClass,
+		 TypeCodec theTypeCodec)
+		{
+		if (theClass == null)
+			{
+			throw new NullPointerException();
+			}
+		if (0 > theTypeId || theTypeId > MAX_TYPE_ID)
+			{
+			throw new IllegalArgumentException
+				("CompactCodec.register(): Type ID " + theTypeId +
+					" out of range");
+			}
+		Integer key = new Integer (theTypeId);
+		Entry byClass = (Entry) theClassMap.get (theClass);
+		Entry byTypeId = (Entry) theTypeIdMap.get (key);
+		if ((byClass != null && byClass.myTypeId != theTypeId) ||
+				(byTypeId != null && byTypeId.myClass != theClass))
+			{
+			throw new IllegalArgumentException
+				("CompactCodec.register(): Type ID " + theTypeId +
+					" or class " + theClass.getName() +
+					" already registered");
+			}
+		Entry entry = new Entry (theTypeId, theClass, theTypeCodec);
+		theClassMap.put (theClass, entry);
+		theTypeIdMap.put (key, entry);
+		}
+
+	/**
+	 * Write the given object to the given object output if its class is
+	 * registered.
+	 *
+	 * @param  theObject        Object; never null.
+	 * @param  theObjectOutput  Object output.
+	 *
+	 * @return  True if the object was written, false if its class is not
+	 *          registered.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	static boolean writeRegistered
+		(Object theObject,
+		 ObjectOutput theObjectOutput)
+		throws IOException
+		{
+		Entry entry;
+		synchronized (CompactCodec.class)
+			{
+			entry = (Entry) theClassMap.get (theObject.getClass());
+			}
+		if (entry == null)
+			{
+			return false;
+			}
+		theObjectOutput.writeByte (TAG_REGISTERED);
+		theObjectOutput.writeShort (entry.myTypeId);
+		if (entry.myTypeCodec == null)
+			{
+			((Externalizable) theObject).writeExternal (theObjectOutput);
+			}
+		else
+			{
+			entry.myTypeCodec.write (theObject, theObjectOutput);
+			}
+		return true;
+		}
+
+	/**
+	 * Read an object of the registered class with the given type ID from the
+	 * given object input.
+	 *
+	 * @param  theTypeId       Type ID.
+	 * @param  theObjectInput  Object input.
+	 *
+	 * @return  Object.
+	 *
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the class for an object being read cannot be found.
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred, or if no class is registered with
+	 *     <TT>theTypeId</TT>.
+	 */
+	static Object readRegistered
+		(int theTypeId,
+		 ObjectInput theObjectInput)
+		throws ClassNotFoundException, IOException
+		{
+		Entry entry;
+		synchronized (CompactCodec.class)
+			{
+			entry = (Entry) theTypeIdMap.get (new Integer (theTypeId));
+			}
+		if (entry == null)
+			{
+			throw new StreamCorruptedException
+				("CompactCodec: No class registered with type ID " +
+					theTypeId);
+			}
+		if (entry.myTypeCodec != null)
+			{
+			return entry.myTypeCodec.read (theObjectInput);
+			}
+		Externalizable result;
+		try
+			{
+			result = (Externalizable) entry.myClass.newInstance();
+			}
+		catch (InstantiationException exc)
+			{
+			throw new InvalidClassException
+				(entry.myClass.getName(), exc.toString());
+			}
+		catch (IllegalAccessException exc)
+			{
+			throw new InvalidClassException
+				(entry.myClass.getName(), exc.toString());
+			}
+		result.readExternal (theObjectInput);
+		return result;
+		}
+
+	}
@@ -0,0 +1,263 @@
+//******************************************************************************
+//
+// File:    CompactObjectInput.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.CompactObjectInput
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Class CompactObjectInput provides an object input stream that reads objects
+ * in the compact M2MI wire format described in class {@link CompactCodec
+ * </CODE>CompactCodec<CODE>}. It assumes the objects were written by class
+ * {@link CompactObjectOutput </CODE>CompactObjectOutput<CODE>}.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class CompactObjectInput
+	extends DataInputStream
+	implements ObjectInput
+	{
+
+// Exported constructors.
+
+	/**
+	 * Construct a new compact object input stream that reads from the given
+	 * underlying input stream.
+	 *
+	 * @param  theStream  Underlying input stream.
+	 */
+	public CompactObjectInput
+		(InputStream theStream)
+		{
+		super (theStream);
+		}
+
+// Exported operations.
+
+	/**
+	 * Read an object from this compact object input stream.
+	 *
+	 * @return  Object; may be null.
+	 *
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the class for an object being read cannot be found.
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public Object readObject()
+		throws ClassNotFoundException, IOException
+		{
+		int i, n;
+
+		int tag = readUnsignedByte();
+		switch (tag)
+			{
+			case CompactCodec.TAG_NULL:
+				return null;
+			case CompactCodec.TAG_SERIALIZED:
+				return readSerialized();
+			case CompactCodec.TAG_REGISTERED:
+				return CompactCodec.readRegistered (readUnsignedShort(), this);
+			case CompactCodec.TAG_STRING:
+				return readUTF();
+			case CompactCodec.TAG_BOOLEAN:
+				return readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+			case CompactCodec.TAG_BYTE:
+				return new Byte (readByte());
+			case CompactCodec.TAG_CHARACTER:
+				return new Character (readChar());
+			case CompactCodec.TAG_SHORT:
+				return new Short (readShort());
+			case CompactCodec.TAG_INTEGER:
+				return new Integer (readInt());
+			case CompactCodec.TAG_LONG:
+				return new Long (readLong());
+			case CompactCodec.TAG_FLOAT:
+				return new Float (readFloat());
+			case CompactCodec.TAG_DOUBLE:
+				return new Double (readDouble());
+			case CompactCodec.TAG_EOID:
+				{
+				Eoid eoid = new Eoid();
+				eoid.read (this);
+				return eoid;
+				}
+			case CompactCodec.TAG_BOOLEAN_ARRAY:
+				{
+				boolean[] a = new boolean [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readBoolean();
+				return a;
+				}
+			case CompactCodec.TAG_BYTE_ARRAY:
+				{
+				byte[] a = new byte [readLength()];
+				readFully (a);
+				return a;
+				}
+			case CompactCodec.TAG_CHAR_ARRAY:
+				{
+				char[] a = new char [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readChar();
+				return a;
+				}
+			case CompactCodec.TAG_SHORT_ARRAY:
+				{
+				short[] a = new short [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readShort();
+				return a;
+				}
+			case CompactCodec.TAG_INT_ARRAY:
+				{
+				int[] a = new int [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readInt();
+				return a;
+				}
+			case CompactCodec.TAG_LONG_ARRAY:
+				{
+				long[] a = new long [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readLong();
+				return a;
+				}
+			case CompactCodec.TAG_FLOAT_ARRAY:
+				{
+				float[] a = new float [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readFloat();
+				return a;
+				}
+			case CompactCodec.TAG_DOUBLE_ARRAY:
+				{
+				double[] a = new double [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readDouble();
+				return a;
+				}
+			case CompactCodec.TAG_STRING_ARRAY:
+				{
+				String[] a = new String [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = (String) readObject();
+				return a;
+				}
+			case CompactCodec.TAG_OBJECT_ARRAY:
+				{
+				Object[] a = new Object [readLength()];
+				n = a.length;
+				for (i = 0; i < n; ++ i) a[i] = readObject();
+				return a;
+				}
+			case CompactCodec.TAG_HASHMAP:
+				{
+				n = readLength();
+				HashMap map = new HashMap();
+				for (i = 0; i < n; ++ i)
+					{
+					Object key = readObject();
+					map.put (key, readObject());
+					}
+				return map;
+				}
+			case CompactCodec.TAG_VECTOR:
+				{
+				n = readLength();
+				Vector vector = new Vector (n);
+				for (i = 0; i < n; ++ i) vector.addElement (readObject());
+				return vector;
+				}
+			default:
+				throw new StreamCorruptedException
+					("CompactObjectInput: Invalid tag = " + tag);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Read an array or collection length.
+	 *
+	 * @return  Length.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred, or if the length is negative.
+	 */
+	private int readLength()
+		throws IOException
+		{
+		int n = readInt();
+		if (n < 0)
+			{
+			throw new StreamCorruptedException
+				("CompactObjectInput: Invalid length = " + n);
+			}
+		return n;
+		}
+
+	/**
+	 * Read an object written using Java object serialization.
+	 *
+	 * @return  Object.
+	 *
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the class for an object being read cannot be found.
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private Object readSerialized()
+		throws ClassNotFoundException, IOException
+		{
+		byte[] buf = new byte [readLength()];
+		readFully (buf);
+		ObjectInputStream ois =
+			new ObjectInputStream (new ByteArrayInputStream (buf));
+		try
+			{
+			return ois.readObject();
+			}
+		finally
+			{
+			ois.close();
+			}
+		}
+
+	}
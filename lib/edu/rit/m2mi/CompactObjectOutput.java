@@ -0,0 +1,307 @@
+//******************************************************************************
+//
+// File:    CompactObjectOutput.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.CompactObjectOutput
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Class CompactObjectOutput provides an object output stream that writes
+ * objects in the compact M2MI wire format described in class {@link
+ * CompactCodec </CODE>CompactCodec<CODE>}. Primitive values are written as by
+ * class DataOutputStream. Objects are written as a one-byte tag followed by
+ * the object's contents, falling back to Java object serialization for objects
+ * the compact format does not know about.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class CompactObjectOutput
+	extends DataOutputStream
+	implements ObjectOutput
+	{
+
+// Hidden constants.
+
+	// Longest string that writeUTF() can always write, in characters.
+	private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new compact object output stream that writes to the given
+	 * underlying output stream.
+	 *
+	 * @param  theStream  Underlying output stream.
+	 */
+	public CompactObjectOutput
+		(OutputStream theStream)
+		{
+		super (theStream);
+		}
+
+// Exported operations.
+
+	/**
+	 * Write the given object to this compact object output stream.
+	 *
+	 * @param  theObject  Object to write; may be null.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public void writeObject
+		(Object theObject)
+		throws IOException
+		{
+		int i, n;
+
+		if (theObject == null)
+			{
+			writeByte (CompactCodec.TAG_NULL);
+			return;
+			}
+
+		Class c = theObject.getClass();
+		if (c == String.class)
+			{
+			String s = (String) theObject;
+			if (s.length() <= MAX_UTF_LENGTH)
+				{
+				writeByte (CompactCodec.TAG_STRING);
+				writeUTF (s);
+				return;
+				}
+			}
+		else if (c == Integer.class)
+			{
+			writeByte (CompactCodec.TAG_INTEGER);
+			writeInt (((Integer) theObject).intValue());
+			return;
+			}
+		else if (c == Boolean.class)
+			{
+			writeByte (CompactCodec.TAG_BOOLEAN);
+			writeBoolean (((Boolean) theObject).booleanValue());
+			return;
+			}
+		else if (c == Long.class)
+			{
+			writeByte (CompactCodec.TAG_LONG);
+			writeLong (((Long) theObject).longValue());
+			return;
+			}
+		else if (c == Double.class)
+			{
+			writeByte (CompactCodec.TAG_DOUBLE);
+			writeDouble (((Double) theObject).doubleValue());
+			return;
+			}
+		else if (c == Float.class)
+			{
+			writeByte (CompactCodec.TAG_FLOAT);
+			writeFloat (((Float) theObject).floatValue());
+			return;
+			}
+		else if (c == Short.class)
+			{
+			writeByte (CompactCodec.TAG_SHORT);
+			writeShort (((Short) theObject).shortValue());
+			return;
+			}
+		else if (c == Byte.class)
+			{
+			writeByte (CompactCodec.TAG_BYTE);
+			writeByte (((Byte) theObject).byteValue());
+			return;
+			}
+		else if (c == Character.class)
+			{
+			writeByte (CompactCodec.TAG_CHARACTER);
+			writeChar (((Character) theObject).charValue());
+			return;
+			}
+		else if (c == Eoid.class)
+			{
+			writeByte (CompactCodec.TAG_EOID);
+			((Eoid) theObject).write (this);
+			return;
+			}
+		else if (c == int[].class)
+			{
+			int[] a = (int[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_INT_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeInt (a[i]);
+			return;
+			}
+		else if (c == byte[].class)
+			{
+			byte[] a = (byte[]) theObject;
+			writeByte (CompactCodec.TAG_BYTE_ARRAY);
+			writeInt (a.length);
+			write (a);
+			return;
+			}
+		else if (c == boolean[].class)
+			{
+			boolean[] a = (boolean[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_BOOLEAN_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeBoolean (a[i]);
+			return;
+			}
+		else if (c == char[].class)
+			{
+			char[] a = (char[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_CHAR_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeChar (a[i]);
+			return;
+			}
+		else if (c == short[].class)
+			{
+			short[] a = (short[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_SHORT_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeShort (a[i]);
+			return;
+			}
+		else if (c == long[].class)
+			{
+			long[] a = (long[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_LONG_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeLong (a[i]);
+			return;
+			}
+		else if (c == float[].class)
+			{
+			float[] a = (float[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_FLOAT_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeFloat (a[i]);
+			return;
+			}
+		else if (c == double[].class)
+			{
+			double[] a = (double[]) theObject;
+			n = a.length;
+			writeByte (CompactCodec.TAG_DOUBLE_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeDouble (a[i]);
+			return;
+			}
+		else if (c == String[].class || c == Object[].class)
+			{
+			Object[] a = (Object[]) theObject;
+			n = a.length;
+			writeByte
+				(c == String[].class ?
+					CompactCodec.TAG_STRING_ARRAY :
+					CompactCodec.TAG_OBJECT_ARRAY);
+			writeInt (n);
+			for (i = 0; i < n; ++ i) writeObject (a[i]);
+			return;
+			}
+		else if (c == HashMap.class)
+			{
+			HashMap map = (HashMap) theObject;
+			writeByte (CompactCodec.TAG_HASHMAP);
+			writeInt (map.size());
+			Iterator iter = map.entrySet().iterator();
+			while (iter.hasNext())
+				{
+				Map.Entry entry = (Map.Entry) iter.next();
+				writeObject (entry.getKey());
+				writeObject (entry.getValue());
+				}
+			return;
+			}
+		else if (c == Vector.class)
+			{
+			Vector vector = (Vector) theObject;
+			synchronized (vector)
+				{
+				n = vector.size();
+				writeByte (CompactCodec.TAG_VECTOR);
+				writeInt (n);
+				for (i = 0; i < n; ++ i) writeObject (vector.elementAt (i));
+				}
+			return;
+			}
+		else if (CompactCodec.writeRegistered (theObject, this))
+			{
+			return;
+			}
+
+		writeSerialized (theObject);
+		}
+
+// Hidden operations.
+
+	/**
+	 * Write the given object using Java object serialization. The serialized
+	 * bytes are preceded by their length.
+	 *
+	 * @param  theObject  Object to write.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private void writeSerialized
+		(Object theObject)
+		throws IOException
+		{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream (baos);
+		oos.writeObject (theObject);
+		oos.close();
+		writeByte (CompactCodec.TAG_SERIALIZED);
+		writeInt (baos.size());
+		baos.writeTo (this);
+		}
+
+	}
@@ -66,9 +66,16 @@ import java.io.ObjectOutput;
  * order of two EOIDs and the <TT>max()</TT> and <TT>min()</TT> methods for
  * choosing the larger or smaller of two EOIDs. Thus, EOIDs can be used as
  * Lamport timestamp values for a logical clock in a distributed system.
+ * <P>
+ * Class Eoid also provides the <TT>derive()</TT> method to generate an EOID
+ * from an existing EOID and a key. Since device IDs are never larger than
+ * <TT>3FFFFFFFFFFF</TT>, the most significant bit of the device ID field is
+ * always clear in a generated EOID; a derived EOID has it set, so a derived
+ * EOID never equals an EOID generated by <TT>next()</TT> or
+ * <TT>increment()</TT> in any process.
  *
  * @author  Alan Kaminsky
- * @version 26-Aug-2004
+ * @version 17-Oct-2026
  */
 public class Eoid
 	implements Comparable, Externalizable
@@ -76,6 +83,10 @@ public class Eoid
 
 // Hidden data members.
 
+	// Kept at the value it had before derive() was added, so EOIDs can still
+	// be exchanged with, and read back from files written by, older builds.
+	private static final long serialVersionUID = -5932004786920414070L;
+
 	// For generating EOIDs from this device and process.
 	private static long seqnumgen;
 	private static long mswordgen;
@@ -92,6 +103,10 @@ public class Eoid
 			((processid      ) & 0x00000000FFFFFFFFL);
 		}
 
+	// Bit of the most significant word which is set only in derived EOIDs,
+	// the top bit of the device ID field.
+	private static final long DERIVED = 0x0000000000008000L;
+
 	// Most significant word and least significant word of this EOID.
 	private long msword;
 	private long lsword;
@@ -150,6 +165,37 @@ public class Eoid
 		return eoid;
 		}
 
+	/**
+	 * Derive an EOID from this EOID and the given key. The derived EOID has
+	 * the same sequence number and device ID as this EOID, with the top bit of
+	 * the device ID set; its process ID is this EOID's process ID
+	 * exclusive-ored with <TT>theKey</TT>+1. The same EOID and key always
+	 * yield the same derived EOID, in any process, and different keys yield
+	 * different derived EOIDs with different hash codes. Since no generated
+	 * EOID has the top bit of the device ID set, a derived EOID never equals
+	 * the EOID of an exported object.
+	 *
+	 * @param  theKey  Key, &gt;= 0.
+	 *
+	 * @return  Derived EOID.
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theKey</TT> &lt; 0.
+	 */
+	public Eoid derive
+		(int theKey)
+		{
+		if (theKey < 0)
+			{
+			throw new IllegalArgumentException
+				("Eoid.derive(): theKey = " + theKey + " illegal");
+			}
+		Eoid eoid = new Eoid();
+		eoid.msword = this.msword | DERIVED;
+		eoid.lsword = this.lsword ^ (((long) theKey + 1L) & 0x00000000FFFFFFFFL);
+		return eoid;
+		}
+
 	/**
 	 * Determine the larger of the two given EOIDs.
 	 *
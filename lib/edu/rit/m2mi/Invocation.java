@@ -85,7 +85,7 @@ import java.util.Iterator;
  * <I>Note:</I> Class Invocation is multiple thread safe.
  *
  * @author  Alan Kaminsky
- * @version 05-Oct-2003
+ * @version 17-Oct-2026
  */
 public abstract class Invocation
 	implements Externalizable
@@ -117,6 +117,18 @@ public abstract class Invocation
 	 */
 	protected Iterator myTargetObjects;
 
+	/**
+	 * Coalescing key if this is a coalesced incoming invocation, or null
+	 * otherwise (see class {@link InvocationCoalescer
+	 * </CODE>InvocationCoalescer<CODE>}).
+	 */
+	Object myCoalescingKey;
+
+	/**
+	 * Sequence number assigned by the invocation coalescer.
+	 */
+	long myCoalescingSequence;
+
 // Exported constructors.
 
 	/**
@@ -196,12 +208,7 @@ public abstract class Invocation
 
 		try
 			{
-			M2MIClassLoader classloader = M2MI.getClassLoader();
-			Class miclass =
-				classloader.loadClass
-					(classloader.getMethodInvokerClassName
-						(myMethodDescriptor));
-			myMethodInvoker = (MethodInvoker) miclass.newInstance();
+			myMethodInvoker = M2MI.createMethodInvoker (myMethodDescriptor);
 			myMethodInvoker.read (theObjectInput);
 			}
 		catch (InstantiationException exc)
@@ -268,6 +275,9 @@ public abstract class Invocation
 	 * implement this invocation object's target interface. This invocation
 	 * object's target method is invoked on the target object, passing in this
 	 * invocation object's argument values.
+	 * <P>
+	 * If this is a coalesced incoming invocation and a newer invocation with
+	 * the same coalescing key has arrived, the invocation is skipped.
 	 *
 	 * @param  theTargetObject  Target object.
 	 *
@@ -280,6 +290,7 @@ public abstract class Invocation
 	public void invoke
 		(Object theTargetObject)
 		{
+		if (myCoalescingKey != null && M2MI.isSuperseded (this)) return;
 		myMethodInvoker.invoke (theTargetObject);
 		}
 
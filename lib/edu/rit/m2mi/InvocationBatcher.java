@@ -0,0 +1,454 @@
+//******************************************************************************
+//
+// File:    InvocationBatcher.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.InvocationBatcher
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import edu.rit.m2mp.M2MP;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+/**
+ * Class InvocationBatcher packs outgoing M2MI invocations into batch messages.
+ * Instead of broadcasting one M2MI message per invocation, the M2MI Layer hands
+ * each outgoing invocation, already written out, to the batcher. Invocations
+ * with the same M2MI message prefix (the same target interface, or the same
+ * handle EOID) are appended to one pending batch, which is broadcast as a
+ * single M2MI message when the oldest invocation in it has waited for the
+ * batching window, or sooner if another invocation would no longer fit in one
+ * M2MP packet. Since the M2MP Layer sends every packet several times, a burst
+ * of small invocations then costs one set of packets instead of one set per
+ * invocation. Invocations with different message prefixes are never put in the
+ * same batch, so the M2MP Layer's message filtering still works.
+ * <P>
+ * A batch message consists of the message prefix, followed by byte
+ * <TT>MARKER</TT> (which can begin neither a Java serialization stream nor a
+ * {@link CompactCodec </CODE>CompactCodec<CODE>} invocation), followed by the
+ * number of invocations as a 4-byte integer, followed by each invocation as a
+ * 4-byte length and that many bytes. Each invocation is written exactly as it
+ * would appear after the message prefix of an ordinary M2MI message. The
+ * {@link ReceiverThread </CODE>ReceiverThread<CODE>} unpacks a batch message
+ * and processes the invocations in order.
+ * <P>
+ * Batching trades latency for packets: an invocation may reach other devices
+ * up to one batching window later than it would have otherwise. Invocations on
+ * exported objects in this process are not batched; they are performed right
+ * away, as always. Batching is off unless the M2MI property
+ * <TT>edu.rit.m2mi.batch</TT> gives a batching window (see class {@link
+ * M2MIProperties </CODE>M2MIProperties<CODE>}).
+ * <P>
+ * Batches are broadcast in the order they were taken off the pending list,
+ * whichever thread ends up broadcasting them, so invocations with the same
+ * message prefix go out in the order they were added.
+ * <P>
+ * <I>Note:</I> Class InvocationBatcher is multiple thread safe.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class InvocationBatcher
+	extends Thread
+	{
+
+// Exported constants.
+
+	/**
+	 * The byte which, following the message prefix, marks a batch message.
+	 */
+	public static final int MARKER = 0x42;
+
+// Hidden constants.
+
+	// Largest batch which still fits in one M2MP packet, not counting the
+	// message prefix.
+	private static final int BATCH_LIMIT = 500 - 8;
+
+	// Bytes in the batch header, the marker and the count.
+	private static final int HEADER_LENGTH = 5;
+
+// Hidden data members.
+
+	/**
+	 * Class InvocationBatcher.Batch is the pending batch for one message
+	 * prefix.
+	 */
+	private static class Batch
+		{
+		// Message prefix.
+		public byte[] prefix;
+
+		// Invocations written so far, each as a byte array.
+		public ArrayList invocations = new ArrayList();
+
+		// Total bytes in the batch, including the header.
+		public int length = HEADER_LENGTH;
+
+		// Time at which the batch must be sent (milliseconds).
+		public long deadline;
+		}
+
+	/**
+	 * Class InvocationBatcher.Prefix wraps a message prefix so it can be used
+	 * as a map key, comparing the whole prefix.
+	 */
+	private static class Prefix
+		{
+		private byte[] myBytes;
+		private int myHashCode;
+
+		public Prefix
+			(byte[] theBytes)
+			{
+			myBytes = theBytes;
+			myHashCode = Arrays.hashCode (theBytes);
+			}
+
+		public boolean equals
+			(Object obj)
+			{
+			return
+				obj instanceof Prefix &&
+				Arrays.equals (myBytes, ((Prefix) obj).myBytes);
+			}
+
+		public int hashCode()
+			{
+			return myHashCode;
+			}
+		}
+
+	// M2MP Layer.
+	private M2MP myM2MPLayer;
+
+	// Batching window (milliseconds).
+	private long myWindow;
+
+	// Mapping from message prefix (type Prefix) to pending batch (type
+	// Batch), in the order the batches were started.
+	private LinkedHashMap myBatches = new LinkedHashMap();
+
+	// Batches taken off the pending list and waiting to be broadcast (type
+	// Batch), oldest first. Guarded by myBatches.
+	private LinkedList myReady = new LinkedList();
+
+	// Held by the thread broadcasting the ready batches, so only one thread
+	// at a time sends and the batches go out in order.
+	private Object mySendLock = new Object();
+
+// Exported constructors.
+
+	/**
+	 * Construct a new invocation batcher. The batcher's thread, which sends
+	 * the batches whose windows have run out, is automatically marked as a
+	 * daemon thread and started.
+	 *
+	 * @param  theM2MPLayer  M2MP Layer.
+	 * @param  theWindow     Batching window (milliseconds).
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>theM2MPLayer</TT> is null.
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theWindow</TT> &lt;= 0.
+	 */
+	public InvocationBatcher
+		(M2MP theM2MPLayer,
+		 long theWindow)
+		{
+		super ("M2MI InvocationBatcher");
+		if (theM2MPLayer == null)
+			{
+			throw new NullPointerException();
+			}
+		if (theWindow <= 0)
+			{
+			throw new IllegalArgumentException();
+			}
+		myM2MPLayer = theM2MPLayer;
+		myWindow = theWindow;
+		setDaemon (true);
+		start();
+		}
+
+// Exported operations.
+
+	/**
+	 * Add an outgoing invocation to the pending batch for its message prefix.
+	 * If the invocation would not fit in the pending batch, the pending batch
+	 * is broadcast first, in the calling thread, after any batch taken off
+	 * the pending list before it.
+	 *
+	 * @param  thePrefix      Message prefix.
+	 * @param  theInvocation  Invocation, written as it would appear after the
+	 *                        message prefix of an M2MI message.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred while broadcasting a batch.
+	 */
+	public void add
+		(byte[] thePrefix,
+		 byte[] theInvocation)
+		throws IOException
+		{
+		boolean full = false;
+		Prefix key = new Prefix (thePrefix);
+		int entryLength = 4 + theInvocation.length;
+		synchronized (myBatches)
+			{
+			Batch batch = (Batch) myBatches.get (key);
+			if (batch != null && batch.length + entryLength > BATCH_LIMIT)
+				{
+				myBatches.remove (key);
+				myReady.addLast (batch);
+				full = true;
+				batch = null;
+				}
+			if (batch == null)
+				{
+				batch = new Batch();
+				batch.prefix = thePrefix;
+				batch.deadline = System.currentTimeMillis() + myWindow;
+				myBatches.put (key, batch);
+				myBatches.notifyAll();
+				}
+			batch.invocations.add (theInvocation);
+			batch.length += entryLength;
+			}
+		if (full)
+			{
+			sendReady();
+			}
+		}
+
+	/**
+	 * Broadcast all pending batches right away, in the calling thread.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred while broadcasting a batch.
+	 */
+	public void flush()
+		throws IOException
+		{
+		synchronized (myBatches)
+			{
+			myReady.addAll (myBatches.values());
+			myBatches.clear();
+			}
+		sendReady();
+		}
+
+	/**
+	 * Perform this invocation batcher's processing, sending each batch when
+	 * its window runs out.
+	 *
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if the thread calling <TT>run()</TT> is
+	 *     not this thread.
+	 */
+	public void run()
+		{
+		if (Thread.currentThread() != this)
+			{
+			throw new IllegalStateException
+				("InvocationBatcher: Wrong thread called run()!");
+			}
+		for (;;)
+			{
+			boolean due = false;
+			try
+				{
+				synchronized (myBatches)
+					{
+					// Batches are in the order they were started, so the
+					// first one is always the next to come due.
+					while (! due)
+						{
+						long now = System.currentTimeMillis();
+						Iterator iter = myBatches.values().iterator();
+						while (iter.hasNext())
+							{
+							Batch batch = (Batch) iter.next();
+							if (batch.deadline > now) break;
+							myReady.addLast (batch);
+							iter.remove();
+							due = true;
+							}
+						if (! due)
+							{
+							if (myBatches.isEmpty())
+								{
+								myBatches.wait();
+								}
+							else
+								{
+								Batch first = (Batch)
+									myBatches.values().iterator().next();
+								myBatches.wait (first.deadline - now);
+								}
+							}
+						}
+					}
+				sendReady();
+				}
+			catch (InterruptedException exc)
+				{
+				}
+			catch (IOException exc)
+				{
+				// The invocations in the batch are lost, just as if the
+				// message had been dropped by the network.
+				}
+			}
+		}
+
+	/**
+	 * Read the invocations out of a batch message. The message prefix and the
+	 * <TT>MARKER</TT> byte must already have been read.
+	 *
+	 * @param  in  Input stream positioned just after the <TT>MARKER</TT> byte.
+	 *
+	 * @return  Array of invocations, each as it would appear after the
+	 *          message prefix of an M2MI message.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred or the batch is malformed.
+	 */
+	public static byte[][] readBatch
+		(InputStream in)
+		throws IOException
+		{
+		DataInputStream dis = new DataInputStream (in);
+		int n = dis.readInt();
+		if (n < 0 || n > BATCH_LIMIT)
+			{
+			throw new IOException ("Malformed M2MI batch message");
+			}
+		byte[][] result = new byte [n] [];
+		for (int i = 0; i < n; ++ i)
+			{
+			int len = dis.readInt();
+			if (len < 0)
+				{
+				throw new IOException ("Malformed M2MI batch message");
+				}
+			result[i] = new byte [len];
+			dis.readFully (result[i]);
+			}
+		return result;
+		}
+
+// Hidden operations.
+
+	/**
+	 * Broadcast the ready batches, oldest first, until none are left. When
+	 * this returns, every batch made ready before it was called has been
+	 * broadcast, by this thread or another.
+	 */
+	private void sendReady()
+		throws IOException
+		{
+		IOException failure = null;
+		synchronized (mySendLock)
+			{
+			for (;;)
+				{
+				Batch batch;
+				synchronized (myBatches)
+					{
+					if (myReady.isEmpty()) break;
+					batch = (Batch) myReady.removeFirst();
+					}
+				try
+					{
+					send (batch);
+					}
+				catch (IOException exc)
+					{
+					failure = exc;
+					}
+				}
+			}
+		if (failure != null)
+			{
+			throw failure;
+			}
+		}
+
+	/**
+	 * Broadcast one batch as an M2MI message. A batch of one invocation is
+	 * broadcast as an ordinary M2MI message.
+	 */
+	private void send
+		(Batch batch)
+		throws IOException
+		{
+		OutputStream mos = null;
+		try
+			{
+			mos = myM2MPLayer.createOutgoingMessage();
+			mos.write (batch.prefix);
+			int n = batch.invocations.size();
+			if (n == 1)
+				{
+				mos.write ((byte[]) batch.invocations.get (0));
+				}
+			else
+				{
+				ByteArrayOutputStream bytes =
+					new ByteArrayOutputStream (batch.length);
+				DataOutputStream dos = new DataOutputStream (bytes);
+				dos.writeByte (MARKER);
+				dos.writeInt (n);
+				for (int i = 0; i < n; ++ i)
+					{
+					byte[] inv = (byte[]) batch.invocations.get (i);
+					dos.writeInt (inv.length);
+					dos.write (inv);
+					}
+				dos.flush();
+				bytes.writeTo (mos);
+				}
+			}
+		finally
+			{
+			if (mos != null)
+				{
+				mos.close();
+				}
+			}
+		}
+
+	}
@@ -0,0 +1,216 @@
+//******************************************************************************
+//
+// File:    InvocationCoalescer.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.InvocationCoalescer
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.lang.reflect.Method;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Class InvocationCoalescer collapses incoming invocations of target methods
+ * that only ever need the newest call, such as heartbeats and periodic state
+ * reports. A target method is marked as coalesced by calling {@link
+ * M2MI#coalesce(Class,String,int[]) </CODE>M2MI.coalesce()<CODE>}, which gives
+ * the target method's <I>key arguments.</I> Two incoming invocations of the
+ * target method with the same EOID and equal key argument values have the same
+ * <I>coalescing key.</I> When an incoming invocation of a coalesced target
+ * method comes up for invocation on a target object, it is skipped if a newer
+ * invocation with the same coalescing key has arrived in the meantime; the
+ * newer invocation is performed in its place when it comes up. So while the
+ * invocation threads are backed up, each sender's heartbeats pile up in the
+ * invocation queue but only the newest one is actually performed.
+ * <P>
+ * Key arguments are compared with <TT>equals()</TT>, except that a key
+ * argument that implements interface {@link Coalescible
+ * </CODE>Coalescible<CODE>} is compared by its coalescing key. With no key
+ * arguments, every incoming invocation of the target method with the same EOID
+ * has the same coalescing key. Invocations that come from handles in this
+ * process are never coalesced, and an invocation that is performed is
+ * performed exactly as it would have been otherwise.
+ * <P>
+ * The coalescer keeps the sequence number of the newest invocation for each
+ * coalescing key it has seen, so its memory grows with the number of distinct
+ * coalescing keys (for a heartbeat keyed by sender, the number of senders).
+ * <P>
+ * <I>Note:</I> Class InvocationCoalescer is multiple thread safe.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class InvocationCoalescer
+	{
+
+// Hidden data members.
+
+	// Mapping from target method, "interface.method" (type String), to key
+	// argument indexes (type int[]).
+	private HashMap myKeyArguments = new HashMap();
+
+	// Mapping from coalescing key (type ArrayList) to sequence number of the
+	// newest incoming invocation with that key (type Long).
+	private HashMap myNewest = new HashMap();
+
+	// Sequence number of the last incoming invocation added.
+	private long mySequence;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new invocation coalescer. Initially no target methods are
+	 * coalesced.
+	 */
+	public InvocationCoalescer()
+		{
+		}
+
+// Exported operations.
+
+	/**
+	 * Coalesce incoming invocations of the given target method. If the target
+	 * interface has more than one method with the given name, all of them are
+	 * coalesced. If the target method was already coalesced, its key arguments
+	 * are replaced.
+	 *
+	 * @param  theInterface     Target interface.
+	 * @param  theMethod        Target method name.
+	 * @param  theKeyArguments  Indexes of the key arguments, 0 for the first
+	 *                          argument. It may be empty.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if any argument is null.
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theInterface</TT> is not an
+	 *     interface, if it has no method named <TT>theMethod</TT>, or if any
+	 *     key argument index is not a valid argument index for such a method.
+	 */
+	public void coalesce
+		(Class theInterface,
+		 String theMethod,
+		 int[] theKeyArguments)
+		{
+		if (theInterface == null || theMethod == null ||
+					theKeyArguments == null)
+			{
+			throw new NullPointerException();
+			}
+		if (! theInterface.isInterface())
+			{
+			throw new IllegalArgumentException
+				("InvocationCoalescer.coalesce(): " + theInterface.getName() +
+					" is not an interface");
+			}
+		String name = theInterface.getName() + "." + theMethod;
+		boolean found = false;
+		Method[] methods = theInterface.getMethods();
+		for (int i = 0; i < methods.length; ++ i)
+			{
+			if (! methods[i].getName().equals (theMethod)) continue;
+			found = true;
+			int n = methods[i].getParameterTypes().length;
+			for (int j = 0; j < theKeyArguments.length; ++ j)
+				{
+				if (theKeyArguments[j] < 0 || theKeyArguments[j] >= n)
+					{
+					throw new IllegalArgumentException
+						("InvocationCoalescer.coalesce(): " + name +
+							" has no argument " + theKeyArguments[j]);
+					}
+				}
+			}
+		if (! found)
+			{
+			throw new IllegalArgumentException
+				("InvocationCoalescer.coalesce(): Method " + name +
+					" not found");
+			}
+		synchronized (this)
+			{
+			myKeyArguments.put (name, theKeyArguments.clone());
+			}
+		}
+
+	/**
+	 * Add the given incoming invocation. If its target method is coalesced,
+	 * the invocation becomes the newest one with its coalescing key. This must
+	 * be called in the order the invocations are added to the invocation
+	 * queue.
+	 *
+	 * @param  theInvocation  Invocation.
+	 */
+	public synchronized void add
+		(Invocation theInvocation)
+		{
+		MethodDescriptor md = theInvocation.myMethodDescriptor;
+		int[] keyArguments = (int[])
+			myKeyArguments.get
+				(md.getTargetInterface() + "." + md.getTargetMethod());
+		if (keyArguments == null) return;
+
+		ArrayList key = new ArrayList (keyArguments.length + 2);
+		key.add (theInvocation.myEoid);
+		key.add (md);
+		for (int i = 0; i < keyArguments.length; ++ i)
+			{
+			Object arg =
+				theInvocation.myMethodInvoker.getArgument (keyArguments[i]);
+			if (arg instanceof Coalescible)
+				{
+				arg = ((Coalescible) arg).getCoalescingKey();
+				}
+			key.add (arg);
+			}
+
+		++ mySequence;
+		myNewest.put (key, new Long (mySequence));
+		theInvocation.myCoalescingKey = key;
+		theInvocation.myCoalescingSequence = mySequence;
+		}
+
+	/**
+	 * Determine whether the given invocation has been superseded by a newer
+	 * incoming invocation with the same coalescing key.
+	 *
+	 * @param  theInvocation  Invocation.
+	 *
+	 * @return  True if <TT>theInvocation</TT> has been superseded, false
+	 *          otherwise or if its target method is not coalesced.
+	 */
+	public synchronized boolean isSuperseded
+		(Invocation theInvocation)
+		{
+		if (theInvocation.myCoalescingKey == null) return false;
+		Long newest = (Long) myNewest.get (theInvocation.myCoalescingKey);
+		return
+			newest != null &&
+			newest.longValue() != theInvocation.myCoalescingSequence;
+		}
+
+	}
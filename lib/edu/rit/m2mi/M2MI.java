@@ -31,6 +31,7 @@ package edu.rit.m2mi;
 
 import edu.rit.m2mp.M2MP;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
@@ -59,7 +60,7 @@ import java.util.Iterator;
  * </UL>
  *
  * @author  Alan Kaminsky
- * @version 02-Sep-2004
+ * @version 17-Oct-2026
  */
 public class M2MI
 	{
@@ -78,10 +79,18 @@ public class M2MI
 	// M2MP Layer.
 	private static M2MP theM2MPLayer;
 
+	// True to write outgoing invocations with the compact codec, false to
+	// write them with Java object serialization.
+	private static boolean theCompactCodec;
+
 	// M2MI class loader for loading synthesized handle and method invoker
 	// classes.
 	private static M2MIClassLoader theClassLoader;
 
+	// True to create method handle invokers for incoming invocations, false
+	// to create synthesized method invokers.
+	private static boolean theMethodHandleInvoker;
+
 	// Invocation factories for use by handles.
 	private static OmniInvocationFactory theOmniInvocationFactory;
 	private static MultiInvocationFactory theMultiInvocationFactory;
@@ -95,12 +104,19 @@ public class M2MI
 	// Invocation queue.
 	private static InvocationQueue theInvocationQueue;
 
+	// Coalescer for incoming invocations.
+	private static InvocationCoalescer theCoalescer;
+
 	// Invocation threads.
 	private static InvocationThread[] theInvocationThreads;
 
 	// Receiver thread.
 	private static ReceiverThread theReceiverThread;
 
+	// Batcher for outgoing invocation messages, or null if they are not
+	// batched.
+	private static InvocationBatcher theBatcher;
+
 // Exported operations.
 
 	/**
@@ -220,9 +236,18 @@ public class M2MI
 		if (M2MIProperties.isMessaging())
 			{
 			theM2MPLayer = new M2MP();
+			theCompactCodec = M2MIProperties.getCodec().equals ("compact");
+			n = M2MIProperties.getBatch();
+			if (n > 0)
+				{
+				theBatcher = new InvocationBatcher (theM2MPLayer, n);
+				}
 			}
 
 		theClassLoader = loader;
+		theClassLoader.setCacheDirectory (M2MIProperties.getCache());
+		theMethodHandleInvoker =
+			M2MIProperties.getInvoker().equals ("methodhandle");
 
 		theOmniInvocationFactory = new OmniInvocationFactory();
 		theMultiInvocationFactory = new MultiInvocationFactory();
@@ -232,9 +257,18 @@ public class M2MI
 		theInterfaceExportMap = new InterfaceExportMap (theMessagePrefixBag);
 		theEoidExportMap = new EoidExportMap (theMessagePrefixBag);
 
-		theInvocationQueue = new InvocationQueue();
-
 		n = M2MIProperties.getMaxCalls();
+		if (M2MIProperties.getQueue().equals ("sharded"))
+			{
+			theInvocationQueue = new ShardedInvocationQueue (n);
+			}
+		else
+			{
+			theInvocationQueue = new InvocationQueue();
+			}
+
+		theCoalescer = new InvocationCoalescer();
+
 		theInvocationThreads = new InvocationThread [n];
 		for (i = 0; i < n; ++ i)
 			{
@@ -457,8 +491,131 @@ public class M2MI
 		return theClassLoader;
 		}
 
+	/**
+	 * Broadcast any outgoing invocation messages that are waiting to be
+	 * batched (see class {@link InvocationBatcher
+	 * </CODE>InvocationBatcher<CODE>}) right away. A program which batches its
+	 * invocations should call this before it exits. If invocations are not
+	 * being batched, this does nothing.
+	 *
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if the M2MI Layer is not initialized.
+	 * @exception  InvocationException
+	 *     (unchecked exception) Thrown if there was an I/O error sending the
+	 *     messages.
+	 */
+	public static void flush()
+		{
+		verifyInitialized();
+		if (theBatcher != null)
+			{
+			try
+				{
+				theBatcher.flush();
+				}
+			catch (IOException exc)
+				{
+				throw new InvocationException
+					("Outgoing M2MI message broadcast failed", exc);
+				}
+			}
+		}
+
+	/**
+	 * Coalesce incoming invocations of the given target method. While
+	 * incoming invocations are waiting to be performed, an invocation of the
+	 * target method is skipped if a newer one with the same EOID and equal key
+	 * argument values has arrived (see class {@link InvocationCoalescer
+	 * </CODE>InvocationCoalescer<CODE>}). This is meant for heartbeats and
+	 * periodic reports, where only the newest call from each sender matters.
+	 * Invocations from handles in this process are never coalesced.
+	 *
+	 * @param  theInterface     Target interface.
+	 * @param  theMethod        Target method name. If the target interface has
+	 *                          more than one method with this name, all of
+	 *                          them are coalesced.
+	 * @param  theKeyArguments  Indexes of the key arguments, 0 for the first
+	 *                          argument. It may be empty.
+	 *
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if the M2MI Layer is not initialized.
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if any argument is null.
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theInterface</TT> is not an
+	 *     interface, if it has no method named <TT>theMethod</TT>, or if any
+	 *     key argument index is not a valid argument index for such a method.
+	 */
+	public static void coalesce
+		(Class theInterface,
+		 String theMethod,
+		 int[] theKeyArguments)
+		{
+		verifyInitialized();
+		theCoalescer.coalesce (theInterface, theMethod, theKeyArguments);
+		}
+
 // Hidden operations callable from package edu.rit.m2mi.
 
+	/**
+	 * Determine whether the given incoming invocation has been superseded by a
+	 * newer one with the same coalescing key.
+	 *
+	 * @param  theInvocation  Invocation.
+	 *
+	 * @return  True if <TT>theInvocation</TT> has been superseded, false
+	 *          otherwise.
+	 */
+	static boolean isSuperseded
+		(Invocation theInvocation)
+		{
+		return theCoalescer.isSuperseded (theInvocation);
+		}
+
+	/**
+	 * Create a method invoker for the given method descriptor, to hold the
+	 * argument values of an incoming invocation. Depending on the M2MI
+	 * property <TT>edu.rit.m2mi.invoker</TT>, the returned method invoker is
+	 * either an instance of the proper synthesized method invoker subclass or
+	 * a {@link MethodHandleInvoker </CODE>MethodHandleInvoker<CODE>}.
+	 *
+	 * @param  theMethodDescriptor  Method descriptor.
+	 *
+	 * @return  Method invoker.
+	 *
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if the M2MI Layer is not initialized.
+	 * @exception  InvalidMethodException
+	 *     (unchecked exception) Thrown if the target method cannot be found.
+	 * @exception  SynthesisException
+	 *     (unchecked exception) Thrown if the method invoker class could not be
+	 *     synthesized.
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the method invoker class could not be loaded.
+	 * @exception  InstantiationException
+	 *     Thrown if the method invoker could not be created.
+	 * @exception  IllegalAccessException
+	 *     Thrown if the method invoker could not be created.
+	 */
+	static MethodInvoker createMethodInvoker
+		(MethodDescriptor theMethodDescriptor)
+		throws
+			ClassNotFoundException,
+			InstantiationException,
+			IllegalAccessException
+		{
+		verifyInitialized();
+		if (theMethodHandleInvoker)
+			{
+			return new MethodHandleInvoker (theMethodDescriptor);
+			}
+		Class miclass =
+			theClassLoader.loadClass
+				(theClassLoader.getMethodInvokerClassName
+					(theMethodDescriptor));
+		return (MethodInvoker) miclass.newInstance();
+		}
+
 	/**
 	 * Create an omnihandle for the given target interface. The returned
 	 * omnihandle is an instance of the proper synthesized handle subclass.
@@ -749,6 +906,7 @@ public class M2MI
 		(OmniInvocation theInvocation)
 		{
 		verifyInitialized();
+		theCoalescer.add (theInvocation);
 		theInvocationQueue.add (theInvocation);
 		}
 
@@ -780,6 +938,7 @@ public class M2MI
 		(MultiInvocation theInvocation)
 		{
 		verifyInitialized();
+		theCoalescer.add (theInvocation);
 		theInvocationQueue.add (theInvocation);
 		}
 
@@ -817,6 +976,7 @@ public class M2MI
 		(UniInvocation theInvocation)
 		{
 		verifyInitialized();
+		theCoalescer.add (theInvocation);
 		theInvocationQueue.add (theInvocation);
 		}
 
@@ -1041,7 +1201,11 @@ public class M2MI
 	/**
 	 * Broadcast an outgoing M2MI message for the given invocation. The message
 	 * consists of the invocation's message prefix followed by the invocation
-	 * itself in serialized form.
+	 * itself in serialized form, or in the compact format of class {@link
+	 * CompactCodec </CODE>CompactCodec<CODE>} if the M2MI property
+	 * <TT>edu.rit.m2mi.codec</TT> says so. If outgoing invocations are being
+	 * batched, the invocation is written out right away but handed to the
+	 * {@link InvocationBatcher </CODE>InvocationBatcher<CODE>} to be sent.
 	 *
 	 * @param  theInvocation  Invocation.
 	 *
@@ -1056,14 +1220,28 @@ public class M2MI
 			{
 			return;
 			}
+		if (theBatcher != null)
+			{
+			try
+				{
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				writeInvocation (theInvocation, bytes);
+				theBatcher.add (theInvocation.getMessagePrefix(),
+					bytes.toByteArray());
+				}
+			catch (IOException exc)
+				{
+				throw new InvocationException
+					("Outgoing M2MI message broadcast failed", exc);
+				}
+			return;
+			}
 		OutputStream mos = null;
 		try
 			{
 			mos = theM2MPLayer.createOutgoingMessage();
 			mos.write (theInvocation.getMessagePrefix());
-			ObjectOutputStream oos = new ObjectOutputStream (mos);
-			oos.writeObject (theInvocation);
-			oos.close();
+			writeInvocation (theInvocation, mos);
 			}
 		catch (IOException exc)
 			{
@@ -1079,6 +1257,33 @@ public class M2MI
 			}
 		}
 
+	/**
+	 * Write the given invocation, in serialized form or in the compact format,
+	 * as it appears after the message prefix of an M2MI message.
+	 *
+	 * @param  theInvocation  Invocation.
+	 * @param  out            Output stream.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private static void writeInvocation
+		(Invocation theInvocation,
+		 OutputStream out)
+		throws IOException
+		{
+		if (theCompactCodec)
+			{
+			CompactCodec.writeInvocation (theInvocation, out);
+			}
+		else
+			{
+			ObjectOutputStream oos = new ObjectOutputStream (out);
+			oos.writeObject (theInvocation);
+			oos.close();
+			}
+		}
+
 	/**
 	 * Verify that the M2MI Layer is initialized. If not, an
 	 * IllegalStateException is thrown.
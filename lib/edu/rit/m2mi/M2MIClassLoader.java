@@ -29,9 +29,21 @@
 
 package edu.rit.m2mi;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.lang.reflect.Method;
+
 import java.security.ProtectionDomain;
 
 import java.util.HashMap;
+import java.util.LinkedList;
 
 /**
  * Class M2MIClassLoader provides a class loader for the M2MI Layer's
@@ -49,17 +61,62 @@ import java.util.HashMap;
  * itself is used by default; in other words, the handle and method invoker
  * classes will get the same security permissions as the M2MI Library classes.
  * <P>
+ * Synthesizing a class takes much longer than reading its class file, so an
+ * M2MI class loader can keep the class files it synthesizes in a cache
+ * directory on disk (see <TT>setCacheDirectory()</TT>). Each class file is
+ * stored under a hash of its synthesizer's signature, which covers the class
+ * name and every declaration the class is synthesized from. The cache file
+ * also holds the signature itself, and a cache file whose signature does not
+ * match exactly is ignored; so if the target interface changes, the stale
+ * class file is never used. The cache directory has a subdirectory for each
+ * version of the synthesizers, so class files synthesized by a different
+ * version of the M2MI Library are never used. The first run of a program
+ * fills in the cache, and later runs load the class files from it. A
+ * synthesizer is only created when a class file is not in the cache, so a run
+ * that finds all its class files in the cache never loads the bytecode
+ * synthesis classes at all.
+ * <P>
  * <I>Note:</I> Class M2MIClassLoader is multiple thread safe.
  *
  * @author  Alan Kaminsky
- * @version 02-Mar-2004
+ * @version 17-Oct-2026
  */
 public class M2MIClassLoader
 	extends ClassLoader
 	{
 
+// Hidden constants.
+
+	// Name of the cache subdirectory for the current version of the
+	// synthesizers. Change it whenever the synthesized class files change.
+	private static final String CACHE_VERSION = "v1";
+
+	// Constants for the 64-bit FNV-1a hash of a signature.
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// Mapping from primitive type or void (type Class) to its type descriptor
+	// (type String).
+	private static final HashMap PRIMITIVE_DESCRIPTORS = new HashMap();
+	static
+		{
+		PRIMITIVE_DESCRIPTORS.put (Void.TYPE, "V");
+		PRIMITIVE_DESCRIPTORS.put (Boolean.TYPE, "Z");
+		PRIMITIVE_DESCRIPTORS.put (Byte.TYPE, "B");
+		PRIMITIVE_DESCRIPTORS.put (Character.TYPE, "C");
+		PRIMITIVE_DESCRIPTORS.put (Short.TYPE, "S");
+		PRIMITIVE_DESCRIPTORS.put (Integer.TYPE, "I");
+		PRIMITIVE_DESCRIPTORS.put (Long.TYPE, "J");
+		PRIMITIVE_DESCRIPTORS.put (Float.TYPE, "F");
+		PRIMITIVE_DESCRIPTORS.put (Double.TYPE, "D");
+		}
+
 // Hidden data members.
 
+	// Directory for cached class files, or null if class files are not
+	// cached.
+	private File myCacheDirectory;
+
 	// Protection domain for all synthesized classes.
 	private ProtectionDomain myProtectionDomain;
 
@@ -92,10 +149,29 @@ public class M2MIClassLoader
 	// For generating unihandle class names.
 	private int myUnihandleCounter = 0;
 
-	// Mapping from fully-qualified class name (type String) to the synthesizer
-	// for that class (type Synthesizer).
+	// Mapping from fully-qualified class name (type String) to the information
+	// for synthesizing that class (type ClassInfo).
 	private HashMap myClassNameMap = new HashMap();
 
+// Hidden helper classes.
+
+	/**
+	 * Class M2MIClassLoader.ClassInfo records what one synthesized class is
+	 * synthesized from.
+	 */
+	private static class ClassInfo
+		{
+		// For a handle class, the superclass name and target interface.
+		public String superclassName;
+		public Class targetInterface;
+
+		// For a method invoker class, the method descriptor.
+		public MethodDescriptor methodDescriptor;
+
+		// Synthesizer, or null if not created yet.
+		public Synthesizer synthesizer;
+		}
+
 // Exported constructors.
 
 	/**
@@ -235,9 +311,9 @@ public class M2MIClassLoader
 			myMethodInvokerMap.put
 				(theMethodDescriptor,
 				 name);
-			myClassNameMap.put
-				(name,
-				 new MethodInvokerSynthesizer (name, theMethodDescriptor));
+			ClassInfo info = new ClassInfo();
+			info.methodDescriptor = theMethodDescriptor;
+			myClassNameMap.put (name, info);
 			}
 		return name;
 		}
@@ -304,12 +380,10 @@ public class M2MIClassLoader
 			myOmnihandleMap.put
 				(theTargetInterface,
 				 name);
-			myClassNameMap.put
-				(name,
-				 new HandleSynthesizer
-					(name,
-					 "edu.rit.m2mi.Omnihandle",
-					 theTargetInterface));
+			ClassInfo info = new ClassInfo();
+			info.superclassName = "edu.rit.m2mi.Omnihandle";
+			info.targetInterface = theTargetInterface;
+			myClassNameMap.put (name, info);
 			}
 		return name;
 		}
@@ -376,12 +450,10 @@ public class M2MIClassLoader
 			myMultihandleMap.put
 				(theTargetInterface,
 				 name);
-			myClassNameMap.put
-				(name,
-				 new HandleSynthesizer
-					(name,
-					 "edu.rit.m2mi.Multihandle",
-					 theTargetInterface));
+			ClassInfo info = new ClassInfo();
+			info.superclassName = "edu.rit.m2mi.Multihandle";
+			info.targetInterface = theTargetInterface;
+			myClassNameMap.put (name, info);
 			}
 		return name;
 		}
@@ -447,23 +519,39 @@ public class M2MIClassLoader
 			myUnihandleMap.put
 				(theTargetInterface,
 				 name);
-			myClassNameMap.put
-				(name,
-				 new HandleSynthesizer
-					(name,
-					 "edu.rit.m2mi.Unihandle",
-					 theTargetInterface));
+			ClassInfo info = new ClassInfo();
+			info.superclassName = "edu.rit.m2mi.Unihandle";
+			info.targetInterface = theTargetInterface;
+			myClassNameMap.put (name, info);
 			}
 		return name;
 		}
 
+	/**
+	 * Specify the directory in which this M2MI class loader caches the class
+	 * files it synthesizes. The class files are kept in a subdirectory for the
+	 * current version of the synthesizers, which is created if necessary. If
+	 * <TT>theDirectory</TT> is null, class files are not cached.
+	 *
+	 * @param  theDirectory  Cache directory, or null.
+	 */
+	public synchronized void setCacheDirectory
+		(File theDirectory)
+		{
+		myCacheDirectory =
+			theDirectory == null ?
+				null :
+				new File (theDirectory, CACHE_VERSION);
+		}
+
 	/**
 	 * Obtain the class file for the class with the given name in this M2MI
 	 * class loader. If the class name is one that was previously returned by
 	 * <TT>getMethodInvokerClassName()</TT>, <TT>getOmnihandleClassName()</TT>,
 	 * <TT>getMultihandleClassName()</TT>, or <TT>getUnihandleClassName()</TT>,
-	 * the class file is synthesized and returned, otherwise a
-	 * SynthesisException is thrown. The class file is not loaded at this time.
+	 * the class file is read from the cache directory or synthesized and
+	 * returned, otherwise a SynthesisException is thrown. The class file is not
+	 * loaded at this time.
 	 *
 	 * @param  theClassName  Fully-qualified class name.
 	 *
@@ -485,24 +573,315 @@ public class M2MIClassLoader
 	public synchronized byte[] getClassFile
 		(String theClassName)
 		{
-		Synthesizer synth = (Synthesizer) myClassNameMap.get (theClassName);
-		if (synth == null)
+		ClassInfo info = (ClassInfo) myClassNameMap.get (theClassName);
+		if (info == null)
 			{
 			throw new SynthesisException
 				("M2MIClassLoader: Unknown class " + theClassName);
 			}
-		return synth.getClassFile();
+		if (myCacheDirectory == null)
+			{
+			return getSynthesizer (theClassName, info) .getClassFile();
+			}
+		String signature = getSignature (theClassName, info);
+		File file = getCacheFile (theClassName, signature);
+		byte[] classfile = readCacheFile (file, signature);
+		if (classfile == null)
+			{
+			classfile = getSynthesizer (theClassName, info) .getClassFile();
+			writeCacheFile (file, signature, classfile);
+			}
+		return classfile;
 		}
 
 // Hidden operations.
 
+	/**
+	 * Returns the synthesizer for the given class, creating it if necessary.
+	 */
+	private static Synthesizer getSynthesizer
+		(String theClassName,
+		 ClassInfo info)
+		{
+		if (info.synthesizer == null)
+			{
+			if (info.methodDescriptor != null)
+				{
+				info.synthesizer =
+					new MethodInvokerSynthesizer
+						(theClassName,
+						 info.methodDescriptor);
+				}
+			else
+				{
+				info.synthesizer =
+					new HandleSynthesizer
+						(theClassName,
+						 info.superclassName,
+						 info.targetInterface);
+				}
+			}
+		return info.synthesizer;
+		}
+
+	/**
+	 * Returns the signature of the given class. The signature is a string that
+	 * includes everything the synthesized class file depends on. For a method
+	 * invoker class, that is the class name and the method descriptor. For a
+	 * handle class, that is the class name, the superclass name, and the
+	 * declarations of all the methods in the target interface and all
+	 * superinterfaces thereof, each with the name of the method invoker class
+	 * the handle class uses for it.
+	 */
+	private static String getSignature
+		(String theClassName,
+		 ClassInfo info)
+		{
+		StringBuffer buf = new StringBuffer();
+		buf.append (theClassName);
+		if (info.methodDescriptor != null)
+			{
+			buf.append (' ');
+			buf.append (info.methodDescriptor);
+			}
+		else
+			{
+			buf.append (" extends ");
+			buf.append (info.superclassName);
+			appendSignature
+				(buf,
+				 info.targetInterface,
+				 info.targetInterface.getName(),
+				 new LinkedList());
+			}
+		return buf.toString();
+		}
+
+	/**
+	 * Append the declarations of all methods in the given target interface and
+	 * all superinterfaces thereof to the given handle class signature. The
+	 * methods are visited in the same order, and with the same method
+	 * descriptors, as when {@link HandleSynthesizer
+	 * </CODE>HandleSynthesizer<CODE>} synthesizes the handle class; so each
+	 * method invoker class name is the one the handle class refers to.
+	 *
+	 * @param  buf
+	 *     Signature.
+	 * @param  theTargetInterface
+	 *     Target interface.
+	 * @param  theTargetInterfaceName
+	 *     Fully-qualified name of the target interface.
+	 * @param  theMethodDescriptors
+	 *     List of method descriptors for the methods visited so far.
+	 */
+	private static void appendSignature
+		(StringBuffer buf,
+		 Class theTargetInterface,
+		 String theTargetInterfaceName,
+		 LinkedList theMethodDescriptors)
+		{
+		int i, j, n;
+
+		buf.append (" { ");
+		buf.append (theTargetInterface.getName());
+
+		Method[] theTargetMethods = theTargetInterface.getDeclaredMethods();
+		n = theTargetMethods.length;
+		for (i = 0; i < n; ++ i)
+			{
+			Method theTargetMethod = theTargetMethods[i];
+			Class[] theArgumentTypes = theTargetMethod.getParameterTypes();
+			StringBuffer desc = new StringBuffer();
+			desc.append ('(');
+			for (j = 0; j < theArgumentTypes.length; ++ j)
+				{
+				appendTypeDescriptor (desc, theArgumentTypes[j]);
+				}
+			desc.append (')');
+			appendTypeDescriptor (desc, theTargetMethod.getReturnType());
+			MethodDescriptor theMethodDescriptor =
+				new MethodDescriptor
+					(theTargetInterfaceName,
+					 theTargetMethod.getName(),
+					 desc.toString());
+
+			// Skip a method already declared in a subinterface.
+			if (theMethodDescriptors.contains (theMethodDescriptor))
+				{
+				continue;
+				}
+			theMethodDescriptors.addLast (theMethodDescriptor);
+
+			buf.append ("; ");
+			buf.append (theTargetMethod);
+
+			// Only a method that can be synthesized gets a method invoker
+			// class.
+			if (theTargetMethod.getReturnType() == Void.TYPE &&
+					theTargetMethod.getExceptionTypes().length == 0)
+				{
+				buf.append (" -> ");
+				buf.append
+					(M2MI.getClassLoader().getMethodInvokerClassName
+						(theMethodDescriptor));
+				}
+			}
+
+		Class[] theSuperinterfaces = theTargetInterface.getInterfaces();
+		n = theSuperinterfaces.length;
+		for (i = 0; i < n; ++ i)
+			{
+			appendSignature
+				(buf,
+				 theSuperinterfaces[i],
+				 theTargetInterfaceName,
+				 theMethodDescriptors);
+			}
+
+		buf.append (" }");
+		}
+
+	/**
+	 * Append the Java class file type descriptor for the given type to the
+	 * given string buffer.
+	 */
+	private static void appendTypeDescriptor
+		(StringBuffer buf,
+		 Class theType)
+		{
+		if (theType.isArray())
+			{
+			buf.append (theType.getName().replace ('.', '/'));
+			}
+		else if (theType.isPrimitive())
+			{
+			buf.append (PRIMITIVE_DESCRIPTORS.get (theType));
+			}
+		else
+			{
+			buf.append ('L');
+			buf.append (theType.getName().replace ('.', '/'));
+			buf.append (';');
+			}
+		}
+
+	/**
+	 * Returns the cache file for the given synthesizer's class file.
+	 */
+	private File getCacheFile
+		(String theClassName,
+		 String signature)
+		{
+		long hash = FNV_OFFSET_BASIS;
+		int n = signature.length();
+		for (int i = 0; i < n; ++ i)
+			{
+			hash = (hash ^ signature.charAt (i)) * FNV_PRIME;
+			}
+		String hex = Long.toHexString (hash);
+		return new File
+			(myCacheDirectory,
+			 theClassName + "-" +
+				"0000000000000000".substring (hex.length()) + hex +
+				".class");
+		}
+
+	/**
+	 * Read the given cache file. The cache file consists of the signature,
+	 * written with <TT>writeUTF()</TT>, followed by the class file length as
+	 * an int, followed by the class file.
+	 *
+	 * @return  Class file, or null if the cache file does not exist, cannot be
+	 *          read, or is for a different signature.
+	 */
+	private static byte[] readCacheFile
+		(File file,
+		 String signature)
+		{
+		DataInputStream dis = null;
+		try
+			{
+			dis = new DataInputStream
+				(new BufferedInputStream (new FileInputStream (file)));
+			if (! dis.readUTF().equals (signature))
+				{
+				return null;
+				}
+			int length = dis.readInt();
+			if (length <= 0 || length > file.length())
+				{
+				return null;
+				}
+			byte[] classfile = new byte [length];
+			dis.readFully (classfile);
+			return classfile;
+			}
+		catch (IOException exc)
+			{
+			return null;
+			}
+		finally
+			{
+			if (dis != null)
+				{
+				try { dis.close(); } catch (IOException exc) {}
+				}
+			}
+		}
+
+	/**
+	 * Write the given class file to the given cache file. The cache file is
+	 * written to a temporary file which is then renamed, so another process
+	 * never reads a partly written cache file. If the cache file cannot be
+	 * written, the class file just isn't cached.
+	 */
+	private static void writeCacheFile
+		(File file,
+		 String signature,
+		 byte[] classfile)
+		{
+		File temp = null;
+		DataOutputStream dos = null;
+		try
+			{
+			File dir = file.getParentFile();
+			dir.mkdirs();
+			temp = File.createTempFile ("synth", ".tmp", dir);
+			dos = new DataOutputStream
+				(new BufferedOutputStream (new FileOutputStream (temp)));
+			dos.writeUTF (signature);
+			dos.writeInt (classfile.length);
+			dos.write (classfile);
+			dos.close();
+			dos = null;
+			if (temp.renameTo (file))
+				{
+				temp = null;
+				}
+			}
+		catch (IOException exc)
+			{
+			}
+		finally
+			{
+			if (dos != null)
+				{
+				try { dos.close(); } catch (IOException exc) {}
+				}
+			if (temp != null)
+				{
+				temp.delete();
+				}
+			}
+		}
+
 	/**
 	 * Finds the class with the given name in this M2MI class loader. If the
 	 * class name is one that was previously returned by
 	 * <TT>getMethodInvokerClassName()</TT>, <TT>getOmnihandleClassName()</TT>,
 	 * <TT>getMultihandleClassName()</TT>, or <TT>getUnihandleClassName()</TT>,
-	 * the class file is synthesized and the class is defined, otherwise a
-	 * ClassNotFoundException is thrown.
+	 * the class file is read from the cache directory or synthesized and the
+	 * class is defined, otherwise a SynthesisException is thrown.
 	 *
 	 * @param  theClassName  Fully-qualified class name.
 	 *
@@ -525,13 +904,38 @@ public class M2MIClassLoader
 		(String theClassName)
 		{
 		byte[] classfile = getClassFile (theClassName);
-		return
-			defineClass
-				(theClassName,
-				 classfile,
-				 0,
-				 classfile.length,
-				 myProtectionDomain);
+		try
+			{
+			return
+				defineClass
+					(theClassName,
+					 classfile,
+					 0,
+					 classfile.length,
+					 myProtectionDomain);
+			}
+		catch (ClassFormatError exc)
+			{
+			// A damaged cache file. Throw it away and synthesize the class.
+			synchronized (this)
+				{
+				if (myCacheDirectory == null)
+					{
+					throw exc;
+					}
+				ClassInfo info = (ClassInfo) myClassNameMap.get (theClassName);
+				getCacheFile (theClassName, getSignature (theClassName, info))
+					.delete();
+				classfile = getSynthesizer (theClassName, info) .getClassFile();
+				}
+			return
+				defineClass
+					(theClassName,
+					 classfile,
+					 0,
+					 classfile.length,
+					 myProtectionDomain);
+			}
 		}
 
 	}
@@ -93,6 +93,65 @@ import java.util.Properties;
  * <BR>2 = Print exception stack traces and incoming M2MI messages
  * <BR>3 = Print exception stack traces and incoming M2MI messages including
  * message prefixes
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mi.codec</B></TT>
+ * <BR>
+ * The format the M2MI Layer uses to write invocations into outgoing M2MI
+ * messages. The value must be one of the following:
+ * <BR><TT>serialization</TT> = Java object serialization
+ * <BR><TT>compact</TT> = The compact format of class {@link CompactCodec
+ * </CODE>CompactCodec<CODE>}
+ * <BR>Incoming M2MI messages in either format are always accepted. This
+ * property is optional; if it is not defined, <TT>serialization</TT> is used.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mi.queue</B></TT>
+ * <BR>
+ * The kind of invocation queue the InvocationThreads take their work from. The
+ * value must be one of the following:
+ * <BR><TT>shared</TT> = One {@link InvocationQueue
+ * </CODE>InvocationQueue<CODE>} shared by all the InvocationThreads
+ * <BR><TT>sharded</TT> = A {@link ShardedInvocationQueue
+ * </CODE>ShardedInvocationQueue<CODE>} with one shard per InvocationThread,
+ * which performs the invocations on each target object in order
+ * <BR>This property is optional; if it is not defined, <TT>shared</TT> is
+ * used.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mi.batch</B></TT>
+ * <BR>
+ * The batching window for outgoing M2MI invocation messages, in milliseconds.
+ * It must be a decimal integer &gt;= 0. If the value is not 0, outgoing
+ * invocations with the same message prefix that occur within the window are
+ * packed into one M2MI message by an {@link InvocationBatcher
+ * </CODE>InvocationBatcher<CODE>}. If the value is 0, every invocation is sent
+ * in its own M2MI message right away. This property is optional; if it is not
+ * defined, 0 is used.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mi.cache</B></TT>
+ * <BR>
+ * The directory in which the M2MI Layer caches the handle and method invoker
+ * class files it synthesizes, so later runs can load them instead of
+ * synthesizing them again (see class {@link M2MIClassLoader
+ * </CODE>M2MIClassLoader<CODE>}). The directory is created if necessary. This
+ * property is optional; if it is not defined, class files are not cached.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mi.invoker</B></TT>
+ * <BR>
+ * The kind of method invoker the M2MI Layer creates to perform incoming
+ * invocations. The value must be one of the following:
+ * <BR><TT>synthesized</TT> = An instance of a method invoker class synthesized
+ * for the target method (see class {@link MethodInvokerSynthesizer
+ * </CODE>MethodInvokerSynthesizer<CODE>})
+ * <BR><TT>methodhandle</TT> = A {@link MethodHandleInvoker
+ * </CODE>MethodHandleInvoker<CODE>}, which calls the target method through a
+ * method handle looked up once per target method
+ * <BR>Outgoing invocations and the message format are the same either way.
+ * This property is optional; if it is not defined, <TT>synthesized</TT> is
+ * used.
  * </UL>
  * <P>
  * To get the value of a given property, the M2MI Layer first searches for the
@@ -136,8 +195,12 @@ import java.util.Properties;
  * java.util.Properties </CODE>java.util.Properties<CODE>}.
  * <P>
  * To run the M2MI Layer, <I>all</I> the properties listed above (other than
- * <TT>edu.rit.m2mi.properties</TT>) <I>must</I> be defined, either as system
- * properties, or in the M2MI properties file. There are no default values.
+ * <TT>edu.rit.m2mi.properties</TT>, <TT>edu.rit.m2mi.codec</TT>,
+ * <TT>edu.rit.m2mi.queue</TT>, <TT>edu.rit.m2mi.batch</TT>,
+ * <TT>edu.rit.m2mi.cache</TT>, and <TT>edu.rit.m2mi.invoker</TT>) <I>must</I>
+ * be defined, either as system
+ * properties, or in the M2MI properties file. There are no other default
+ * values.
  * Also, all the device properties must be defined, either as system properties,
  * or in the device properties file; see class {@link
  * edu.rit.device.DeviceProperties </CODE>DeviceProperties<CODE>} for further
@@ -172,6 +235,21 @@ import java.util.Properties;
  * # 2 = Print exception stack traces and incoming M2MI messages
  * # 3 = Print exception stack traces and incoming M2MI messages including message prefixes
  * edu.rit.m2mi.debug.ReceiverThread = 0
+ *
+ * # Outgoing invocation message format (serialization or compact)
+ * edu.rit.m2mi.codec = serialization
+ *
+ * # Invocation queue (shared or sharded)
+ * edu.rit.m2mi.queue = shared
+ *
+ * # Outgoing invocation batching window (milliseconds, 0 = no batching)
+ * edu.rit.m2mi.batch = 0
+ *
+ * # Synthesized class file cache directory (omit for no cache)
+ * #edu.rit.m2mi.cache = m2micache
+ *
+ * # Method invoker for incoming invocations (synthesized or methodhandle)
+ * edu.rit.m2mi.invoker = synthesized
  * </PRE>
  * </FONT>
  * </TD>
@@ -179,7 +257,7 @@ import java.util.Properties;
  * </TABLE>
  *
  * @author  Alan Kaminsky
- * @version 26-Aug-2004
+ * @version 17-Oct-2026
  */
 public class M2MIProperties
 	{
@@ -334,6 +412,199 @@ public class M2MIProperties
 			}
 		}
 
+	/**
+	 * Returns the format for outgoing invocation messages, property
+	 * <TT>edu.rit.m2mi.codec</TT>. If the property is not defined,
+	 * <TT>"serialization"</TT> is returned. The same value is returned if the
+	 * M2MI properties file cannot be found or cannot be read.
+	 *
+	 * @return  <TT>"serialization"</TT> or <TT>"compact"</TT>.
+	 *
+	 * @exception  M2MIPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not
+	 *     <TT>"serialization"</TT> or <TT>"compact"</TT>.
+	 */
+	public static String getCodec()
+		{
+		String name = "edu.rit.m2mi.codec";
+		String prop;
+		try
+			{
+			prop = getPropertyValue (name).trim();
+			}
+		catch (M2MIPropertyMissingException exc)
+			{
+			return "serialization";
+			}
+		catch (M2MIPropertyFileException exc)
+			{
+			return "serialization";
+			}
+		if (! prop.equals ("serialization") && ! prop.equals ("compact"))
+			{
+			throw new M2MIPropertyValueException
+				("M2MI property " + name + " = \"" + prop +
+					"\" is not \"serialization\" or \"compact\"");
+			}
+		return prop;
+		}
+
+	/**
+	 * Returns the kind of invocation queue, property
+	 * <TT>edu.rit.m2mi.queue</TT>. If the property is not defined,
+	 * <TT>"shared"</TT> is returned. The same value is returned if the M2MI
+	 * properties file cannot be found or cannot be read.
+	 *
+	 * @return  <TT>"shared"</TT> or <TT>"sharded"</TT>.
+	 *
+	 * @exception  M2MIPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not
+	 *     <TT>"shared"</TT> or <TT>"sharded"</TT>.
+	 */
+	public static String getQueue()
+		{
+		String name = "edu.rit.m2mi.queue";
+		String prop;
+		try
+			{
+			prop = getPropertyValue (name).trim();
+			}
+		catch (M2MIPropertyMissingException exc)
+			{
+			return "shared";
+			}
+		catch (M2MIPropertyFileException exc)
+			{
+			return "shared";
+			}
+		if (! prop.equals ("shared") && ! prop.equals ("sharded"))
+			{
+			throw new M2MIPropertyValueException
+				("M2MI property " + name + " = \"" + prop +
+					"\" is not \"shared\" or \"sharded\"");
+			}
+		return prop;
+		}
+
+	/**
+	 * Returns the batching window for outgoing invocation messages, property
+	 * <TT>edu.rit.m2mi.batch</TT>. If the property is not defined, 0 is
+	 * returned. The same value is returned if the M2MI properties file cannot
+	 * be found or cannot be read.
+	 *
+	 * @return  Batching window (milliseconds), or 0 for no batching.
+	 *
+	 * @exception  M2MIPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer &gt;= 0.
+	 */
+	public static int getBatch()
+		{
+		String name = "edu.rit.m2mi.batch";
+		String prop;
+		try
+			{
+			prop = getPropertyValue (name).trim();
+			}
+		catch (M2MIPropertyMissingException exc)
+			{
+			return 0;
+			}
+		catch (M2MIPropertyFileException exc)
+			{
+			return 0;
+			}
+		try
+			{
+			int value = Integer.parseInt (prop);
+			if (value < 0)
+				{
+				throw new M2MIPropertyValueException
+					("M2MI property " + name + " = \"" + prop +
+						"\" is less than 0");
+				}
+			return value;
+			}
+		catch (NumberFormatException exc)
+			{
+			throw new M2MIPropertyValueException
+				("M2MI property " + name + " = \"" + prop +
+					"\" is not a decimal integer");
+			}
+		}
+
+	/**
+	 * Returns the directory for cached synthesized class files, property
+	 * <TT>edu.rit.m2mi.cache</TT>. If the property is not defined, null is
+	 * returned. The same value is returned if the M2MI properties file cannot
+	 * be found or cannot be read.
+	 *
+	 * @return  Cache directory, or null for no caching.
+	 *
+	 * @exception  M2MIPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is empty.
+	 */
+	public static File getCache()
+		{
+		String name = "edu.rit.m2mi.cache";
+		String prop;
+		try
+			{
+			prop = getPropertyValue (name).trim();
+			}
+		catch (M2MIPropertyMissingException exc)
+			{
+			return null;
+			}
+		catch (M2MIPropertyFileException exc)
+			{
+			return null;
+			}
+		if (prop.length() == 0)
+			{
+			throw new M2MIPropertyValueException
+				("M2MI property " + name + " is empty");
+			}
+		return new File (prop);
+		}
+
+	/**
+	 * Returns the kind of method invoker for incoming invocations, property
+	 * <TT>edu.rit.m2mi.invoker</TT>. If the property is not defined,
+	 * <TT>"synthesized"</TT> is returned. The same value is returned if the
+	 * M2MI properties file cannot be found or cannot be read.
+	 *
+	 * @return  <TT>"synthesized"</TT> or <TT>"methodhandle"</TT>.
+	 *
+	 * @exception  M2MIPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not
+	 *     <TT>"synthesized"</TT> or <TT>"methodhandle"</TT>.
+	 */
+	public static String getInvoker()
+		{
+		String name = "edu.rit.m2mi.invoker";
+		String prop;
+		try
+			{
+			prop = getPropertyValue (name).trim();
+			}
+		catch (M2MIPropertyMissingException exc)
+			{
+			return "synthesized";
+			}
+		catch (M2MIPropertyFileException exc)
+			{
+			return "synthesized";
+			}
+		if (! prop.equals ("synthesized") && ! prop.equals ("methodhandle"))
+			{
+			throw new M2MIPropertyValueException
+				("M2MI property " + name + " = \"" + prop +
+					"\" is not \"synthesized\" or \"methodhandle\"");
+			}
+		return prop;
+		}
+
 // Hidden operations.
 
 	/**
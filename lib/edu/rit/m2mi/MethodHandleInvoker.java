@@ -0,0 +1,408 @@
+//******************************************************************************
+//
+// File:    MethodHandleInvoker.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.MethodHandleInvoker
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.lang.reflect.Array;
+
+import java.util.HashMap;
+
+/**
+ * Class MethodHandleInvoker is a method invoker that calls its target method
+ * through a {@link java.lang.invoke.MethodHandle
+ * </CODE>MethodHandle<CODE>} instead of through a synthesized class.
+ * <P>
+ * A synthesized method invoker class (see class {@link
+ * MethodInvokerSynthesizer </CODE>MethodInvokerSynthesizer<CODE>}) is
+ * generated, loaded, and verified for each target method, and stays loaded for
+ * as long as the M2MI Layer does. A method handle invoker instead looks up the
+ * target method the first time it is needed for a given {@link
+ * MethodDescriptor </CODE>MethodDescriptor<CODE>}, and keeps the resulting
+ * method handle, adapted to take the target object and an array of argument
+ * values, for all later method handle invokers with the same method
+ * descriptor. The argument values are read and written in exactly the same
+ * format as a synthesized method invoker reads and writes them, so the two
+ * kinds of method invokers can be mixed freely on the network.
+ * <P>
+ * The M2MI Layer uses method handle invokers for incoming invocations if the
+ * M2MI property <TT>edu.rit.m2mi.invoker</TT> is <TT>methodhandle</TT> (see
+ * class {@link M2MIProperties </CODE>M2MIProperties<CODE>}). Handles always
+ * use synthesized method invokers, since a synthesized handle class creates
+ * its method invokers directly.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class MethodHandleInvoker
+	extends MethodInvoker
+	{
+
+// Hidden helper classes.
+
+	/**
+	 * Class MethodHandleInvoker.Target is the resolved target method for one
+	 * method descriptor.
+	 */
+	private static class Target
+		{
+		// Method handle taking the target object and an array of argument
+		// values.
+		public MethodHandle myHandle;
+
+		// Argument types.
+		public Class[] myArgumentTypes;
+		}
+
+// Hidden data members.
+
+	// Mapping from method descriptor (type MethodDescriptor) to resolved
+	// target method (type Target).
+	private static HashMap theTargets = new HashMap();
+
+	// Method type of every resolved method handle.
+	private static final MethodType SPREAD_TYPE =
+		MethodType.methodType (Void.TYPE, Object.class, Object[].class);
+
+	// Resolved target method.
+	private Target myTarget;
+
+	// Argument values, boxed if primitive.
+	private Object[] myArgs;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new method handle invoker for the given method descriptor.
+	 * The target method is looked up if this is the first method handle
+	 * invoker for the method descriptor. The argument values are initially
+	 * the default values for their types; call <TT>read()</TT> to read them.
+	 *
+	 * @param  theMethodDescriptor  Method descriptor.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>theMethodDescriptor</TT> is null.
+	 * @exception  InvalidMethodException
+	 *     (unchecked exception) Thrown if the target interface or the target
+	 *     method cannot be found, or the target method does not return void.
+	 */
+	public MethodHandleInvoker
+		(MethodDescriptor theMethodDescriptor)
+		{
+		myTarget = getTarget (theMethodDescriptor);
+		myArgs = new Object [myTarget.myArgumentTypes.length];
+		for (int i = 0; i < myArgs.length; ++ i)
+			{
+			myArgs[i] = defaultValue (myTarget.myArgumentTypes[i]);
+			}
+		}
+
+// Exported operations.
+
+	/**
+	 * Write this method handle invoker's argument values to the given object
+	 * output stream.
+	 *
+	 * @param  theObjectOutput  Object output stream to write to.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public void write
+		(ObjectOutput theObjectOutput)
+		throws IOException
+		{
+		Class[] types = myTarget.myArgumentTypes;
+		for (int i = 0; i < types.length; ++ i)
+			{
+			Class type = types[i];
+			Object arg = myArgs[i];
+			if (! type.isPrimitive())
+				{
+				theObjectOutput.writeObject (arg);
+				}
+			else if (type == Integer.TYPE)
+				{
+				theObjectOutput.writeInt (((Integer) arg).intValue());
+				}
+			else if (type == Long.TYPE)
+				{
+				theObjectOutput.writeLong (((Long) arg).longValue());
+				}
+			else if (type == Boolean.TYPE)
+				{
+				theObjectOutput.writeBoolean (((Boolean) arg).booleanValue());
+				}
+			else if (type == Double.TYPE)
+				{
+				theObjectOutput.writeDouble (((Double) arg).doubleValue());
+				}
+			else if (type == Float.TYPE)
+				{
+				theObjectOutput.writeFloat (((Float) arg).floatValue());
+				}
+			else if (type == Byte.TYPE)
+				{
+				theObjectOutput.writeByte (((Byte) arg).byteValue());
+				}
+			else if (type == Short.TYPE)
+				{
+				theObjectOutput.writeShort (((Short) arg).shortValue());
+				}
+			else
+				{
+				theObjectOutput.writeChar (((Character) arg).charValue());
+				}
+			}
+		}
+
+	/**
+	 * Read this method handle invoker's argument values from the given object
+	 * input stream.
+	 *
+	 * @param  theObjectInput  Object input stream to read from.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the class could not be found for an object being read.
+	 * @exception  ClassCastException
+	 *     (unchecked exception) Thrown if an object read is not of the
+	 *     argument's type.
+	 */
+	public void read
+		(ObjectInput theObjectInput)
+		throws IOException, ClassNotFoundException
+		{
+		Class[] types = myTarget.myArgumentTypes;
+		for (int i = 0; i < types.length; ++ i)
+			{
+			Class type = types[i];
+			if (! type.isPrimitive())
+				{
+				myArgs[i] = type.cast (theObjectInput.readObject());
+				}
+			else if (type == Integer.TYPE)
+				{
+				myArgs[i] = Integer.valueOf (theObjectInput.readInt());
+				}
+			else if (type == Long.TYPE)
+				{
+				myArgs[i] = Long.valueOf (theObjectInput.readLong());
+				}
+			else if (type == Boolean.TYPE)
+				{
+				myArgs[i] = Boolean.valueOf (theObjectInput.readBoolean());
+				}
+			else if (type == Double.TYPE)
+				{
+				myArgs[i] = Double.valueOf (theObjectInput.readDouble());
+				}
+			else if (type == Float.TYPE)
+				{
+				myArgs[i] = Float.valueOf (theObjectInput.readFloat());
+				}
+			else if (type == Byte.TYPE)
+				{
+				myArgs[i] = Byte.valueOf (theObjectInput.readByte());
+				}
+			else if (type == Short.TYPE)
+				{
+				myArgs[i] = Short.valueOf (theObjectInput.readShort());
+				}
+			else
+				{
+				myArgs[i] = Character.valueOf (theObjectInput.readChar());
+				}
+			}
+		}
+
+	/**
+	 * Perform the invocation specified by this method handle invoker on the
+	 * given target object.
+	 *
+	 * @param  theTargetObject  Target object.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>theTargetObject</TT> is null.
+	 * @exception  ClassCastException
+	 *     (unchecked exception) Thrown if <TT>theTargetObject</TT> is not an
+	 *     instance of this method invoker's target interface.
+	 */
+	public void invoke
+		(Object theTargetObject)
+		{
+		if (theTargetObject == null)
+			{
+			throw new NullPointerException();
+			}
+		try
+			{
+			myTarget.myHandle.invokeExact (theTargetObject, myArgs);
+			}
+		catch (RuntimeException exc)
+			{
+			throw exc;
+			}
+		catch (Error exc)
+			{
+			throw exc;
+			}
+		catch (Throwable exc)
+			{
+			// Target methods throw no checked exceptions, so this shouldn't
+			// happen.
+			throw new InvocationException (exc);
+			}
+		}
+
+	/**
+	 * Returns one of this method handle invoker's argument values. Primitive
+	 * argument values are returned boxed.
+	 *
+	 * @param  i  Argument index, 0 for the first argument.
+	 *
+	 * @return  Argument value.
+	 *
+	 * @exception  IndexOutOfBoundsException
+	 *     (unchecked exception) Thrown if <TT>i</TT> is not a valid argument
+	 *     index.
+	 */
+	public Object getArgument
+		(int i)
+		{
+		return myArgs[i];
+		}
+
+// Hidden operations.
+
+	/**
+	 * Returns the resolved target method for the given method descriptor,
+	 * looking it up if necessary.
+	 */
+	private static synchronized Target getTarget
+		(MethodDescriptor theMethodDescriptor)
+		{
+		Target target = (Target) theTargets.get (theMethodDescriptor);
+		if (target == null)
+			{
+			target = resolve (theMethodDescriptor);
+			theTargets.put (theMethodDescriptor, target);
+			}
+		return target;
+		}
+
+	/**
+	 * Look up the target method for the given method descriptor. The target
+	 * interface is loaded by the M2MI class loader, just as a synthesized
+	 * method invoker class would load it.
+	 */
+	private static Target resolve
+		(MethodDescriptor theMethodDescriptor)
+		{
+		String name =
+			theMethodDescriptor.getTargetInterface() + "." +
+			theMethodDescriptor.getTargetMethod();
+		try
+			{
+			ClassLoader loader = M2MI.getClassLoader();
+			Class theInterface =
+				Class.forName
+					(theMethodDescriptor.getTargetInterface(), true, loader);
+			MethodType type =
+				MethodType.fromMethodDescriptorString
+					(theMethodDescriptor.getArgumentTypes(), loader);
+			if (type.returnType() != Void.TYPE)
+				{
+				throw new InvalidMethodException
+					("Target method " + name + " does not return void");
+				}
+			MethodHandle handle =
+				MethodHandles.publicLookup().findVirtual
+					(theInterface, theMethodDescriptor.getTargetMethod(), type);
+			Target target = new Target();
+			target.myHandle =
+				handle
+					.asSpreader (Object[].class, type.parameterCount())
+					.asType (SPREAD_TYPE);
+			target.myArgumentTypes = type.parameterArray();
+			return target;
+			}
+		catch (ClassNotFoundException exc)
+			{
+			throw invalid ("Cannot find target interface for " + name, exc);
+			}
+		catch (TypeNotPresentException exc)
+			{
+			throw invalid ("Cannot find argument type for " + name, exc);
+			}
+		catch (IllegalArgumentException exc)
+			{
+			throw invalid ("Invalid method descriptor for " + name, exc);
+			}
+		catch (ReflectiveOperationException exc)
+			{
+			throw invalid ("Cannot find target method " + name, exc);
+			}
+		}
+
+	/**
+	 * Returns the default value of the given argument type, boxed if the type
+	 * is primitive.
+	 */
+	private static Object defaultValue
+		(Class type)
+		{
+		return
+			type.isPrimitive() ?
+				Array.get (Array.newInstance (type, 1), 0) :
+				null;
+		}
+
+	/**
+	 * Returns an invalid method exception with the given detail message and
+	 * chained exception.
+	 */
+	private static InvalidMethodException invalid
+		(String msg,
+		 Throwable exc)
+		{
+		InvalidMethodException exc2 = new InvalidMethodException (msg);
+		exc2.initCause (exc);
+		return exc2;
+		}
+
+	}
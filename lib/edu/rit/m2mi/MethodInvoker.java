@@ -33,6 +33,10 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
+import java.lang.reflect.Field;
+
+import java.util.HashMap;
+
 /**
  * Class MethodInvoker is the abstract base class for all synthesized method
  * invoker classes in M2MI.
@@ -57,11 +61,17 @@ import java.io.ObjectOutput;
  * read its argument values from an object input stream.
  *
  * @author  Alan Kaminsky
- * @version 02-Jun-2003
+ * @version 17-Oct-2026
  */
 public abstract class MethodInvoker
 	{
 
+// Hidden data members.
+
+	// Mapping from synthesized method invoker class (type Class) to its
+	// argument fields (type Field[]), filled in as needed.
+	private static HashMap theArgumentFields = new HashMap();
+
 // Exported constructors.
 
 	/**
@@ -133,4 +143,87 @@ public abstract class MethodInvoker
 	public abstract void invoke
 		(Object theTargetObject);
 
+	/**
+	 * Returns one of this method invoker's argument values. Primitive argument
+	 * values are returned boxed.
+	 * <P>
+	 * The base class implementation reads the argument field of a synthesized
+	 * method invoker class, whose fields are named <TT>a</TT>, <TT>b</TT>,
+	 * <TT>c</TT>, and so on (see class {@link MethodInvokerSynthesizer
+	 * </CODE>MethodInvokerSynthesizer<CODE>}). A subclass that stores its
+	 * argument values some other way must override <TT>getArgument()</TT>.
+	 *
+	 * @param  i  Argument index, 0 for the first argument.
+	 *
+	 * @return  Argument value.
+	 *
+	 * @exception  IndexOutOfBoundsException
+	 *     (unchecked exception) Thrown if <TT>i</TT> is not a valid argument
+	 *     index.
+	 */
+	public Object getArgument
+		(int i)
+		{
+		Field[] fields = getArgumentFields (getClass());
+		try
+			{
+			return fields[i].get (this);
+			}
+		catch (IllegalAccessException exc)
+			{
+			// The fields were made accessible, so this shouldn't happen.
+			throw new InvocationException (exc);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Returns the argument fields of the given synthesized method invoker
+	 * class, in argument order.
+	 */
+	private static synchronized Field[] getArgumentFields
+		(Class theClass)
+		{
+		Field[] fields = (Field[]) theArgumentFields.get (theClass);
+		if (fields == null)
+			{
+			int n = theClass.getDeclaredFields().length;
+			fields = new Field [n];
+			try
+				{
+				for (int i = 0; i < n; ++ i)
+					{
+					fields[i] = theClass.getDeclaredField (getFieldName (i));
+					fields[i].setAccessible (true);
+					}
+				}
+			catch (NoSuchFieldException exc)
+				{
+				throw new InvocationException
+					("Cannot find argument fields of " + theClass.getName(),
+					 exc);
+				}
+			theArgumentFields.put (theClass, fields);
+			}
+		return fields;
+		}
+
+	/**
+	 * Returns the name of the argument field with the given index, the same
+	 * name class MethodInvokerSynthesizer gives it.
+	 */
+	private static String getFieldName
+		(int i)
+		{
+		StringBuffer buf = new StringBuffer();
+		do
+			{
+			buf.insert (0, (char)('a' + i % 26));
+			i = i / 26;
+			}
+		while (i > 0);
+		return buf.toString();
+		}
+
 	}
@@ -57,7 +57,7 @@ import java.util.Iterator;
  * the network without needing to transport the synthesized subclasses.
  *
  * @author  Alan Kaminsky
- * @version 02-Sep-2004
+ * @version 17-Oct-2026
  */
 public class Multihandle
 	extends Handle
@@ -191,6 +191,36 @@ public class Multihandle
 		M2MI.unexportEoid (theObject, myEoid);
 		}
 
+	/**
+	 * Obtain the subhandle of this multihandle with the given key. The
+	 * subhandle is a multihandle for the same target interface whose EOID is
+	 * derived from this multihandle's EOID and the key (see {@link
+	 * Eoid#derive(int) </CODE>Eoid.derive()<CODE>}). Every process that has
+	 * this multihandle gets the same subhandle for the same key, so a group of
+	 * objects sharing one multihandle can be split into any number of smaller
+	 * groups without sending any further handles around.
+	 * <P>
+	 * A subhandle is completely separate from its multihandle: objects
+	 * attached to the multihandle are not attached to the subhandle, and vice
+	 * versa. Since the subhandle has its own EOID, it also has its own M2MI
+	 * message prefix, so invocations on subhandles an object is not attached
+	 * to are dropped by the M2MP Layer before they are deserialized.
+	 *
+	 * @param  theKey  Key, &gt;= 0.
+	 *
+	 * @return  Subhandle.
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theKey</TT> &lt; 0.
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if the M2MI layer is not initialized.
+	 */
+	public Multihandle getSubhandle
+		(int theKey)
+		{
+		return M2MI.createMultihandle (myEoid.derive (theKey), myTargetInterface);
+		}
+
 	/**
 	 * Write this multihandle to the given object output stream.
 	 *
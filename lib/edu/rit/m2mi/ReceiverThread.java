@@ -33,6 +33,8 @@ import edu.rit.m2mp.M2MP;
 
 import edu.rit.util.HexPrintStream;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -53,9 +55,16 @@ import java.io.ObjectInputStream;
  * higher, then the receiver thread will print a message on the standard error
  * stream whenever the receiver thread receives an incoming M2MI invocation
  * message.
+ * <P>
+ * The receiver thread accepts invocations written with Java object
+ * serialization as well as invocations written in the compact format of class
+ * {@link CompactCodec </CODE>CompactCodec<CODE>}, telling them apart by the
+ * first byte after the message prefix. It also accepts batch messages from an
+ * {@link InvocationBatcher </CODE>InvocationBatcher<CODE>}, processing each
+ * invocation in the batch in order.
  *
  * @author  Alan Kaminsky
- * @version 05-Oct-2003
+ * @version 17-Oct-2026
  */
 public class ReceiverThread
 	extends Thread
@@ -119,8 +128,6 @@ public class ReceiverThread
 		for (;;)
 			{
 			InputStream mis = null;
-			ObjectInputStream ois = null;
-			Invocation theInvocation = null;
 			try
 				{
 				mis = myM2MPLayer.acceptIncomingMessage();
@@ -148,28 +155,29 @@ public class ReceiverThread
 						System.err.println();
 						}
 					}
-				ois = new ObjectInputStream (mis);
-				theInvocation = (Invocation) ois.readObject();
-				theInvocation.processFromMessage();
-				}
-			catch (Throwable exc)
-				{
-				if (debug >= 1)
+				InputStream bis = new BufferedInputStream (mis);
+				bis.mark (1);
+				b = bis.read();
+				if (b == InvocationBatcher.MARKER)
 					{
-					synchronized (System.err)
+					byte[][] batch = InvocationBatcher.readBatch (bis);
+					for (i = 0; i < batch.length; ++ i)
 						{
-						System.err.println
-							("edu.rit.m2mi.ReceiverThread: Uncaught exception");
-						exc.printStackTrace (System.err);
+						process (new ByteArrayInputStream (batch[i]));
 						}
 					}
+				else
+					{
+					bis.reset();
+					process (bis);
+					}
+				}
+			catch (Throwable exc)
+				{
+				printException (exc);
 				}
 			finally
 				{
-				if (ois != null)
-					{
-					try { ois.close(); } catch (IOException exc) {}
-					}
 				if (mis != null)
 					{
 					try { mis.close(); } catch (IOException exc) {}
@@ -178,4 +186,64 @@ public class ReceiverThread
 			}
 		}
 
+// Hidden operations.
+
+	/**
+	 * Read one invocation, in serialized form or in the compact format, and
+	 * process it. Any exception is reported and does not stop the rest of a
+	 * batch from being processed.
+	 *
+	 * @param  in  Input stream positioned just after the message prefix.
+	 */
+	private void process
+		(InputStream in)
+		{
+		ObjectInputStream ois = null;
+		try
+			{
+			Invocation theInvocation;
+			in.mark (1);
+			int b = in.read();
+			in.reset();
+			if (b == CompactCodec.MARKER)
+				{
+				theInvocation = CompactCodec.readInvocation (in);
+				}
+			else
+				{
+				ois = new ObjectInputStream (in);
+				theInvocation = (Invocation) ois.readObject();
+				}
+			theInvocation.processFromMessage();
+			}
+		catch (Throwable exc)
+			{
+			printException (exc);
+			}
+		finally
+			{
+			if (ois != null)
+				{
+				try { ois.close(); } catch (IOException exc) {}
+				}
+			}
+		}
+
+	/**
+	 * Print the given exception if the debug level says to.
+	 */
+	private void printException
+		(Throwable exc)
+		{
+		if (debug >= 1)
+			{
+			synchronized (System.err)
+				{
+				System.err.println
+					("edu.rit.m2mi.ReceiverThread: Uncaught exception");
+				exc.printStackTrace (System.err);
+				}
+			}
+		}
+
 	}
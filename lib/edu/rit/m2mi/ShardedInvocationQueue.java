@@ -0,0 +1,248 @@
+//******************************************************************************
+//
+// File:    ShardedInvocationQueue.java
+// Package: edu.rit.m2mi
+// Unit:    Class edu.rit.m2mi.ShardedInvocationQueue
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class ShardedInvocationQueue provides an {@link InvocationQueue
+ * </CODE>InvocationQueue<CODE>} that is split into a fixed number of shards,
+ * one per {@link InvocationThread </CODE>InvocationThread<CODE>}. When an
+ * invocation object is added, its target objects are determined right away,
+ * and each (invocation, target object) pair is appended to the shard chosen
+ * by the target object's identity hash code. Each shard is a lock-free queue
+ * drained by exactly one invocation thread.
+ * <P>
+ * This has two consequences. First, the invocations on any one target object
+ * are always performed one at a time, in the order the invocation objects were
+ * added, even with more than one invocation thread; with class
+ * InvocationQueue, two invocation threads may call the same target object
+ * concurrently and in either order. Second, adding an invocation wakes up only
+ * the invocation threads whose shards received work, and an idle invocation
+ * thread parks instead of waiting on a monitor shared by all the invocation
+ * threads.
+ * <P>
+ * The price is that a slow method call holds up every later call on target
+ * objects in the same shard, even if other invocation threads are idle.
+ * <P>
+ * <I>Note:</I> Class ShardedInvocationQueue is multiple thread safe. However,
+ * exactly as many threads as there are shards must call
+ * <TT>invokeNext()</TT>; the first call from each thread permanently assigns
+ * the thread to the next unassigned shard.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class ShardedInvocationQueue
+	extends InvocationQueue
+	{
+
+// Hidden constants.
+
+	// Number of times an idle thread polls its shard before parking.
+	private static final int SPIN_COUNT = 100;
+
+// Hidden data members.
+
+	/**
+	 * Class ShardedInvocationQueue.Work is one target object of one invocation
+	 * object.
+	 */
+	private static class Work
+		{
+		public Invocation myInvocation;
+		public Object myTarget;
+
+		public Work
+			(Invocation theInvocation,
+			 Object theTarget)
+			{
+			myInvocation = theInvocation;
+			myTarget = theTarget;
+			}
+		}
+
+	/**
+	 * Class ShardedInvocationQueue.Shard is one shard and the thread that
+	 * drains it.
+	 */
+	private static class Shard
+		{
+		// Pending work.
+		public ConcurrentLinkedQueue myQueue = new ConcurrentLinkedQueue();
+
+		// Thread parked waiting for work, or null if none.
+		public volatile Thread myWaiter;
+		}
+
+	private Shard[] myShards;
+
+	// Number of shards assigned to threads so far.
+	private AtomicInteger myAssigned = new AtomicInteger();
+
+	// Each thread's shard.
+	private ThreadLocal myThreadShard = new ThreadLocal();
+
+// Exported constructors.
+
+	/**
+	 * Construct a new, empty sharded invocation queue.
+	 *
+	 * @param  theShardCount  Number of shards, which must equal the number of
+	 *                        invocation threads.
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theShardCount</TT> &lt; 1.
+	 */
+	public ShardedInvocationQueue
+		(int theShardCount)
+		{
+		if (theShardCount < 1)
+			{
+			throw new IllegalArgumentException
+				("ShardedInvocationQueue(): Shard count " + theShardCount +
+					" less than 1");
+			}
+		myShards = new Shard [theShardCount];
+		for (int i = 0; i < theShardCount; ++ i)
+			{
+			myShards[i] = new Shard();
+			}
+		}
+
+// Exported operations.
+
+	/**
+	 * Add the given invocation object to this invocation queue. Each of the
+	 * invocation object's target objects is appended to the end of its
+	 * shard.
+	 *
+	 * @param  invocation  Invocation object.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>invocation</TT> is null.
+	 */
+	public void add
+		(Invocation invocation)
+		{
+		if (invocation == null)
+			{
+			throw new NullPointerException();
+			}
+		Object target;
+		while ((target = invocation.nextTargetObject()) != null)
+			{
+			int h = System.identityHashCode (target) & 0x7FFFFFFF;
+			Shard shard = myShards[h % myShards.length];
+			shard.myQueue.offer (new Work (invocation, target));
+			Thread waiter = shard.myWaiter;
+			if (waiter != null)
+				{
+				LockSupport.unpark (waiter);
+				}
+			}
+		}
+
+	/**
+	 * Invoke the target method on the next target object in the calling
+	 * thread's shard. <TT>invokeNext()</TT> blocks until there actually is a
+	 * target object to invoke.
+	 *
+	 * @exception  InterruptedException
+	 *     Thrown if the calling thread is interrupted while blocked in this
+	 *     method.
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if more threads than shards have called
+	 *     <TT>invokeNext()</TT>.
+	 */
+	public void invokeNext()
+		throws InterruptedException
+		{
+		Shard shard = getThreadShard();
+		Work work;
+		int spins = SPIN_COUNT;
+		for (;;)
+			{
+			work = (Work) shard.myQueue.poll();
+			if (work != null) break;
+
+			// Spin a little first, since in a burst more work usually arrives
+			// sooner than a park and unpark would take.
+			if (spins > 0)
+				{
+				-- spins;
+				Thread.yield();
+				continue;
+				}
+
+			// Announce that we are about to park, then check again so an add()
+			// that missed the announcement is not lost.
+			shard.myWaiter = Thread.currentThread();
+			work = (Work) shard.myQueue.poll();
+			if (work == null)
+				{
+				LockSupport.park (this);
+				}
+			shard.myWaiter = null;
+			if (work != null) break;
+			if (Thread.interrupted())
+				{
+				throw new InterruptedException();
+				}
+			}
+
+		work.myInvocation.invoke (work.myTarget);
+		}
+
+// Hidden operations.
+
+	/**
+	 * Returns the calling thread's shard, assigning one if necessary.
+	 */
+	private Shard getThreadShard()
+		{
+		Shard shard = (Shard) myThreadShard.get();
+		if (shard == null)
+			{
+			int i = myAssigned.getAndIncrement();
+			if (i >= myShards.length)
+				{
+				throw new IllegalStateException
+					("ShardedInvocationQueue: More threads than shards");
+				}
+			shard = myShards[i];
+			myThreadShard.set (shard);
+			}
+		return shard;
+		}
+
+	}
@@ -0,0 +1,90 @@
+//******************************************************************************
+//
+// File:    TypeCodec.java
+// Package: edu.rit.m2mi
+// Unit:    Interface edu.rit.m2mi.TypeCodec
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Interface TypeCodec specifies the interface for an object that writes and
+ * reads instances of one particular class in the compact M2MI wire format. A
+ * type codec is registered with class {@link CompactCodec
+ * </CODE>CompactCodec<CODE>} together with the class it handles and a numeric
+ * type ID. Whenever an instance of exactly that class appears as a method
+ * argument (or inside another object being written in the compact format), its
+ * type ID is written, followed by whatever the type codec's <TT>write()</TT>
+ * method writes. The receiver looks up the same type ID and calls the type
+ * codec's <TT>read()</TT> method to rebuild the object.
+ * <P>
+ * A type codec must read exactly what it wrote. Nested objects may be written
+ * by calling <TT>writeObject()</TT> on the given object output; they will in
+ * turn be encoded in the compact format.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public interface TypeCodec
+	{
+
+// Exported operations.
+
+	/**
+	 * Write the given object to the given object output.
+	 *
+	 * @param  theObject        Object to write; never null.
+	 * @param  theObjectOutput  Object output.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public void write
+		(Object theObject,
+		 ObjectOutput theObjectOutput)
+		throws IOException;
+
+	/**
+	 * Read an object from the given object input. It assumes the object was
+	 * written by <TT>write()</TT>.
+	 *
+	 * @param  theObjectInput  Object input.
+	 *
+	 * @return  Object.
+	 *
+	 * @exception  ClassNotFoundException
+	 *     Thrown if the class for an object being read cannot be found.
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public Object read
+		(ObjectInput theObjectInput)
+		throws ClassNotFoundException, IOException;
+
+	}
@@ -0,0 +1,238 @@
+//******************************************************************************
+//
+// File:    CodecBench.java
+// Package: edu.rit.m2mi.test
+// Unit:    Class edu.rit.m2mi.test.CodecBench
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the RIT Classfile Library ("The Library").
+// The Library is free software; you can redistribute it and/or modify it under
+// the terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi.test;
+
+import edu.rit.m2mi.CompactCodec;
+import edu.rit.m2mi.CompactObjectInput;
+import edu.rit.m2mi.CompactObjectOutput;
+import edu.rit.m2mi.Eoid;
+import edu.rit.m2mi.Invocation;
+import edu.rit.m2mi.M2MI;
+import edu.rit.m2mi.MethodDescriptor;
+import edu.rit.m2mi.MethodInvoker;
+import edu.rit.m2mi.OmniInvocation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Class CodecBench is a benchmark main program that compares the compact M2MI
+ * wire format (class {@link edu.rit.m2mi.CompactCodec
+ * </CODE>CompactCodec<CODE>}) against Java object serialization. For a few
+ * sample omnihandle invocations it prints the number of bytes per invocation
+ * and the average encode and decode times in nanoseconds for each format.
+ * Each measurement is run once to warm up the JVM and then again for the
+ * reported figures.
+ * <P>
+ * Usage: java edu.rit.m2mi.test.CodecBench [<I>iterations</I>]
+ * <BR><I>iterations</I> = Number of encodes and decodes per measurement
+ * (default 100000)
+ * <P>
+ * The M2MI properties must be defined as for the other test programs;
+ * <TT>edu.rit.m2mi.messaging</TT> may be 0.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class CodecBench
+	{
+
+	/**
+	 * Interface CodecBench.Report is a sample target interface whose method
+	 * takes the kinds of arguments a game state report does.
+	 */
+	public static interface Report
+		{
+		public void report
+			(Eoid id,
+			 String name,
+			 int x,
+			 int y,
+			 int[] versions);
+		}
+
+	public static void main
+		(String[] args)
+		{
+		try
+			{
+			int n = 100000;
+			if (args.length > 1) usage();
+			if (args.length == 1) n = Integer.parseInt (args[0]);
+
+			M2MI.initialize();
+
+			System.out.println
+				("Invocation              Format         Bytes   Encode ns   Decode ns");
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			CompactObjectOutput out = new CompactObjectOutput (baos);
+			out.writeInt (42);
+			out.writeObject ("Forty-two");
+			out.flush();
+			bench
+				("Bar.doSomething",
+				 new MethodDescriptor
+					("edu.rit.m2mi.test.Bar", "doSomething",
+					 "(ILjava/lang/String;)V"),
+				 baos.toByteArray(),
+				 n);
+
+			baos.reset();
+			out.writeObject (Eoid.next());
+			out.writeObject ("Goblin");
+			out.writeInt (12);
+			out.writeInt (34);
+			out.writeObject (new int[] {3, 1, 4, 1, 5});
+			out.flush();
+			bench
+				("Report.report",
+				 new MethodDescriptor
+					(Report.class.getName(), "report",
+					 "(Ledu/rit/m2mi/Eoid;Ljava/lang/String;II[I)V"),
+				 baos.toByteArray(),
+				 n);
+			}
+		catch (Throwable exc)
+			{
+			System.err.println ("CodecBench: Uncaught exception");
+			exc.printStackTrace (System.err);
+			System.exit (1);
+			}
+		}
+
+	/**
+	 * Measure one sample invocation in both formats.
+	 *
+	 * @param  label  Label for the printout.
+	 * @param  md     Method descriptor.
+	 * @param  args   Method arguments, in the compact format.
+	 * @param  n      Number of iterations.
+	 */
+	private static void bench
+		(String label,
+		 MethodDescriptor md,
+		 byte[] args,
+		 int n)
+		throws Exception
+		{
+		MethodInvoker mi = (MethodInvoker)
+			M2MI.getClassLoader().getMethodInvokerClass (md).newInstance();
+		mi.read (new CompactObjectInput (new ByteArrayInputStream (args)));
+		Invocation inv = new OmniInvocation (Eoid.WILDCARD, md, mi);
+
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				baos.reset();
+				ObjectOutputStream oos = new ObjectOutputStream (baos);
+				oos.writeObject (inv);
+				oos.close();
+				}
+			long t2 = System.nanoTime();
+			byte[] buf = baos.toByteArray();
+			for (int i = 0; i < n; ++ i)
+				{
+				ObjectInputStream ois =
+					new ObjectInputStream (new ByteArrayInputStream (buf));
+				ois.readObject();
+				ois.close();
+				}
+			long t3 = System.nanoTime();
+			if (pass == 1)
+				{
+				print (label, "serialization", buf.length, t2-t1, t3-t2, n);
+				}
+
+			t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				baos.reset();
+				CompactCodec.writeInvocation (inv, baos);
+				}
+			t2 = System.nanoTime();
+			buf = baos.toByteArray();
+			for (int i = 0; i < n; ++ i)
+				{
+				CompactCodec.readInvocation (new ByteArrayInputStream (buf));
+				}
+			t3 = System.nanoTime();
+			if (pass == 1)
+				{
+				print (label, "compact", buf.length, t2-t1, t3-t2, n);
+				}
+			}
+		}
+
+	private static void print
+		(String label,
+		 String format,
+		 int bytes,
+		 long encode,
+		 long decode,
+		 int n)
+		{
+		System.out.println
+			(pad (label, 24) + pad (format, 13) +
+			 padLeft ("" + bytes, 7) +
+			 padLeft ("" + (encode/n), 12) +
+			 padLeft ("" + (decode/n), 12));
+		}
+
+	private static String pad
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.append (' ');
+		return buf.toString();
+		}
+
+	private static String padLeft
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.insert (0, ' ');
+		return buf.toString();
+		}
+
+	private static void usage()
+		{
+		System.err.println ("Usage: java edu.rit.m2mi.test.CodecBench [<iterations>]");
+		System.exit (1);
+		}
+
+	}
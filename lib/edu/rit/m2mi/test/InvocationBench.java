@@ -0,0 +1,510 @@
+//******************************************************************************
+//
+// File:    InvocationBench.java
+// Package: edu.rit.m2mi.test
+// Unit:    Class edu.rit.m2mi.test.InvocationBench
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the RIT Classfile Library ("The Library").
+// The Library is free software; you can redistribute it and/or modify it under
+// the terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi.test;
+
+import edu.rit.m2mi.CompactCodec;
+import edu.rit.m2mi.CompactObjectInput;
+import edu.rit.m2mi.CompactObjectOutput;
+import edu.rit.m2mi.Eoid;
+import edu.rit.m2mi.Invocation;
+import edu.rit.m2mi.InvocationBatcher;
+import edu.rit.m2mi.InvocationQueue;
+import edu.rit.m2mi.M2MI;
+import edu.rit.m2mi.M2MIMessagePrefix;
+import edu.rit.m2mi.MethodDescriptor;
+import edu.rit.m2mi.MethodInvoker;
+import edu.rit.m2mi.OmniInvocation;
+import edu.rit.m2mi.ShardedInvocationQueue;
+
+import edu.rit.m2mp.M2MP;
+
+import edu.rit.m2mp.test.M2MPBench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Class InvocationBench is a benchmark main program for the M2MI Layer's
+ * invocation paths. The M2MI Layer runs with messaging on, over an M2MP Layer
+ * on a {@link edu.rit.m2mp.LoopbackChannel </CODE>LoopbackChannel<CODE>}, so no
+ * network is involved. The program measures three things:
+ * <OL TYPE=1>
+ * <LI>
+ * <B>Broadcast.</B> Calls on an omnihandle, each of which encodes the
+ * invocation, broadcasts it in an M2MP message, and invokes the local target
+ * object through the M2MI Layer's invocation queue.
+ * <LI>
+ * <B>Receive.</B> Invocation messages sent by a second M2MP Layer in the same
+ * process, each of which the M2MI Layer's receiver thread reassembles,
+ * decodes, and invokes on the local target object. Both wire formats are
+ * measured, as well as compact invocations packed ten to a message the way an
+ * {@link edu.rit.m2mi.InvocationBatcher </CODE>InvocationBatcher<CODE>} packs
+ * them.
+ * <LI>
+ * <B>Queue.</B> Invocations with several target objects each, added by one
+ * thread to an {@link edu.rit.m2mi.InvocationQueue
+ * </CODE>InvocationQueue<CODE>} or a {@link edu.rit.m2mi.ShardedInvocationQueue
+ * </CODE>ShardedInvocationQueue<CODE>} and invoked by 1, 2, and 4 threads.
+ * </OL>
+ * <P>
+ * Each measurement is run once to warm up the JVM and then again for the
+ * reported figures.
+ * <P>
+ * Usage: java edu.rit.m2mi.test.InvocationBench [<I>invocations</I>]
+ * <BR><I>invocations</I> = Number of invocations per measurement (default
+ * 10000)
+ * <P>
+ * No properties files are needed. M2MI properties not given on the command
+ * line with <TT>-D</TT> get the values from the sample M2MI properties file,
+ * except that <TT>edu.rit.m2mi.messaging</TT> is always 1; M2MP properties are
+ * set as in class {@link edu.rit.m2mp.test.M2MPBench
+ * </CODE>M2MPBench<CODE>}.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class InvocationBench
+	{
+
+	/**
+	 * Interface InvocationBench.Tick is the target interface for the broadcast
+	 * and receive measurements.
+	 */
+	public static interface Tick
+		{
+		public void tick
+			(int i);
+		}
+
+	/**
+	 * Class InvocationBench.TickImpl counts down a latch each time it is
+	 * invoked.
+	 */
+	private static class TickImpl
+		implements Tick
+		{
+		public volatile CountDownLatch myLatch;
+
+		public void tick
+			(int i)
+			{
+			myLatch.countDown();
+			}
+		}
+
+	/**
+	 * Class InvocationBench.CountInvocation is an invocation object for the
+	 * queue measurements. Invoking it on a target object just counts down a
+	 * latch.
+	 */
+	private static class CountInvocation
+		extends Invocation
+		{
+		private Object[] myTargets;
+		private CountDownLatch myLatch;
+
+		public CountInvocation
+			(Object[] theTargets,
+			 CountDownLatch theLatch)
+			{
+			myTargets = theTargets;
+			myLatch = theLatch;
+			}
+
+		public void processFromHandle()
+			{
+			throw new UnsupportedOperationException();
+			}
+
+		public void processFromMessage()
+			{
+			throw new UnsupportedOperationException();
+			}
+
+		public void invoke
+			(Object theTargetObject)
+			{
+			myLatch.countDown();
+			}
+
+		protected byte[] getMessagePrefix()
+			{
+			return null;
+			}
+
+		protected Iterator getTargetObjects()
+			{
+			return Arrays.asList (myTargets).iterator();
+			}
+		}
+
+	// Number of target objects per invocation in the queue measurements.
+	private static final int TARGETS = 16;
+
+	// Number of invocations per message in the batch receive measurement.
+	private static final int BATCH = 10;
+
+// Prevent construction.
+
+	private InvocationBench()
+		{
+		}
+
+// Main program.
+
+	/**
+	 * Main program.
+	 */
+	public static void main
+		(String[] args)
+		{
+		try
+			{
+			int n = 10000;
+			if (args.length > 1) usage();
+			if (args.length == 1) n = Integer.parseInt (args[0]);
+
+			M2MPBench.setLoopbackProperties();
+			System.setProperty ("edu.rit.m2mi.messaging", "1");
+			setDefault ("edu.rit.m2mi.maxcalls", "1");
+			setDefault ("edu.rit.m2mi.debug.InvocationThread", "0");
+			setDefault ("edu.rit.m2mi.debug.ReceiverThread", "0");
+			setDefault ("edu.rit.m2mi.codec", "serialization");
+			setDefault ("edu.rit.m2mi.queue", "shared");
+			setDefault ("edu.rit.m2mi.batch", "0");
+			M2MI.initialize();
+
+			TickImpl target = new TickImpl();
+			M2MI.export (target, Tick.class);
+
+			System.out.println
+				("Measurement                         Invocations/sec   Nanosec/invocation");
+			benchBroadcast (target, n);
+			M2MP remote = new M2MP();
+			benchReceive (target, remote, false, n);
+			benchReceive (target, remote, true, n);
+			benchReceiveBatch (target, remote, n);
+			for (int threads = 1; threads <= 4; threads *= 2)
+				{
+				benchQueue (false, threads, n);
+				benchQueue (true, threads, n);
+				}
+			System.exit (0);
+			}
+		catch (Throwable exc)
+			{
+			System.err.println ("InvocationBench: Uncaught exception");
+			exc.printStackTrace (System.err);
+			System.exit (1);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Measure omnihandle invocations.
+	 *
+	 * @param  target  Exported target object.
+	 * @param  n       Number of invocations.
+	 */
+	private static void benchBroadcast
+		(TickImpl target,
+		 int n)
+		throws Exception
+		{
+		Tick handle = (Tick) M2MI.getOmnihandle (Tick.class);
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			target.myLatch = new CountDownLatch (n);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				handle.tick (i);
+				}
+			target.myLatch.await();
+			long t2 = System.nanoTime();
+			if (pass == 1)
+				{
+				print ("Broadcast", t2-t1, n);
+				}
+			}
+		}
+
+	/**
+	 * Measure incoming invocation messages.
+	 *
+	 * @param  target   Exported target object.
+	 * @param  remote   M2MP Layer to send the messages from.
+	 * @param  compact  True to use the compact wire format, false to use Java
+	 *                  object serialization.
+	 * @param  n        Number of invocations.
+	 */
+	private static void benchReceive
+		(TickImpl target,
+		 M2MP remote,
+		 boolean compact,
+		 int n)
+		throws Exception
+		{
+		// Build the invocation message the way M2MI.broadcastInvocation() does.
+		Invocation inv = tickInvocation();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write (M2MIMessagePrefix.getMessagePrefix (Tick.class.getName()));
+		if (compact)
+			{
+			CompactCodec.writeInvocation (inv, baos);
+			}
+		else
+			{
+			ObjectOutputStream oos = new ObjectOutputStream (baos);
+			oos.writeObject (inv);
+			oos.close();
+			}
+		byte[] message = baos.toByteArray();
+
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			target.myLatch = new CountDownLatch (n);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				OutputStream mos = remote.createOutgoingMessage();
+				mos.write (message);
+				mos.close();
+				}
+			target.myLatch.await();
+			long t2 = System.nanoTime();
+			if (pass == 1)
+				{
+				print
+					("Receive, " + (compact ? "compact" : "serialization"),
+					 t2-t1, n);
+				}
+			}
+		}
+
+	/**
+	 * Measure incoming batch messages of compact invocations.
+	 *
+	 * @param  target  Exported target object.
+	 * @param  remote  M2MP Layer to send the messages from.
+	 * @param  n       Number of invocations.
+	 */
+	private static void benchReceiveBatch
+		(TickImpl target,
+		 M2MP remote,
+		 int n)
+		throws Exception
+		{
+		// Build the batch message the way InvocationBatcher does.
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CompactCodec.writeInvocation (tickInvocation(), baos);
+		byte[] inv = baos.toByteArray();
+		baos.reset();
+		baos.write (M2MIMessagePrefix.getMessagePrefix (Tick.class.getName()));
+		DataOutputStream dos = new DataOutputStream (baos);
+		dos.writeByte (InvocationBatcher.MARKER);
+		dos.writeInt (BATCH);
+		for (int i = 0; i < BATCH; ++ i)
+			{
+			dos.writeInt (inv.length);
+			dos.write (inv);
+			}
+		dos.flush();
+		byte[] message = baos.toByteArray();
+
+		n = n / BATCH * BATCH;
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			target.myLatch = new CountDownLatch (n);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; i += BATCH)
+				{
+				OutputStream mos = remote.createOutgoingMessage();
+				mos.write (message);
+				mos.close();
+				}
+			target.myLatch.await();
+			long t2 = System.nanoTime();
+			if (pass == 1)
+				{
+				print ("Receive, compact, batches of " + BATCH, t2-t1, n);
+				}
+			}
+		}
+
+	/**
+	 * Returns an omnihandle invocation of Tick.tick().
+	 */
+	private static Invocation tickInvocation()
+		throws Exception
+		{
+		MethodDescriptor md =
+			new MethodDescriptor (Tick.class.getName(), "tick", "(I)V");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CompactObjectOutput out = new CompactObjectOutput (baos);
+		out.writeInt (42);
+		out.flush();
+		MethodInvoker mi = (MethodInvoker)
+			M2MI.getClassLoader().getMethodInvokerClass (md).newInstance();
+		mi.read
+			(new CompactObjectInput
+				(new ByteArrayInputStream (baos.toByteArray())));
+		return new OmniInvocation (Eoid.WILDCARD, md, mi);
+		}
+
+	/**
+	 * Measure an invocation queue.
+	 *
+	 * @param  sharded  True to measure a sharded invocation queue, false to
+	 *                  measure a shared invocation queue.
+	 * @param  threads  Number of invoking threads.
+	 * @param  n        Number of invocations.
+	 */
+	private static void benchQueue
+		(boolean sharded,
+		 int threads,
+		 int n)
+		throws Exception
+		{
+		Object[] targets = new Object [TARGETS];
+		for (int i = 0; i < TARGETS; ++ i)
+			{
+			targets[i] = new Object();
+			}
+
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			final InvocationQueue queue =
+				sharded ?
+					new ShardedInvocationQueue (threads) :
+					new InvocationQueue();
+			Thread[] invokers = new Thread [threads];
+			for (int i = 0; i < threads; ++ i)
+				{
+				invokers[i] = new Thread()
+					{
+					public void run()
+						{
+						try
+							{
+							for (;;)
+								{
+								queue.invokeNext();
+								}
+							}
+						catch (InterruptedException exc)
+							{
+							}
+						}
+					};
+				invokers[i].setDaemon (true);
+				invokers[i].start();
+				}
+
+			CountDownLatch latch = new CountDownLatch (n * TARGETS);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				queue.add (new CountInvocation (targets, latch));
+				}
+			latch.await();
+			long t2 = System.nanoTime();
+			for (int i = 0; i < threads; ++ i)
+				{
+				invokers[i].interrupt();
+				}
+			if (pass == 1)
+				{
+				print
+					("Queue, " + (sharded ? "sharded" : "shared") + ", " +
+					 threads + " thread" + (threads == 1 ? "" : "s"),
+					 t2-t1, n * TARGETS);
+				}
+			}
+		}
+
+	/**
+	 * Set the given system property if it is not already set.
+	 */
+	private static void setDefault
+		(String name,
+		 String value)
+		{
+		if (System.getProperty (name) == null)
+			{
+			System.setProperty (name, value);
+			}
+		}
+
+	private static void print
+		(String label,
+		 long nanos,
+		 int n)
+		{
+		System.out.println
+			(pad (label, 36) +
+			 padLeft ("" + (n * 1000000000L / nanos), 15) +
+			 padLeft ("" + (nanos / n), 21));
+		}
+
+	private static String pad
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.append (' ');
+		return buf.toString();
+		}
+
+	private static String padLeft
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.insert (0, ' ');
+		return buf.toString();
+		}
+
+	private static void usage()
+		{
+		System.err.println ("Usage: java edu.rit.m2mi.test.InvocationBench [<invocations>]");
+		System.exit (1);
+		}
+
+	}
@@ -0,0 +1,405 @@
+//******************************************************************************
+//
+// File:    InvokerBench.java
+// Package: edu.rit.m2mi.test
+// Unit:    Class edu.rit.m2mi.test.InvokerBench
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the RIT Classfile Library ("The Library").
+// The Library is free software; you can redistribute it and/or modify it under
+// the terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mi.test;
+
+import edu.rit.m2mi.CompactObjectInput;
+import edu.rit.m2mi.CompactObjectOutput;
+import edu.rit.m2mi.Eoid;
+import edu.rit.m2mi.M2MI;
+import edu.rit.m2mi.MethodDescriptor;
+import edu.rit.m2mi.MethodHandleInvoker;
+import edu.rit.m2mi.MethodInvoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Class InvokerBench is a benchmark main program that compares the two kinds
+ * of method invokers the M2MI Layer can use for incoming invocations:
+ * synthesized method invoker classes and {@link
+ * edu.rit.m2mi.MethodHandleInvoker </CODE>MethodHandleInvoker<CODE>}s. For each
+ * method of a sample target interface it measures two things:
+ * <OL TYPE=1>
+ * <LI>
+ * <B>First call.</B> The time to create the first method invoker for the
+ * method, read its argument values, and invoke it. For a synthesized method
+ * invoker this includes synthesizing and loading the class (or loading it from
+ * the class file cache, if the M2MI property <TT>edu.rit.m2mi.cache</TT> is
+ * set); for a method handle invoker it includes looking up the method handle.
+ * Since this only happens once per JVM, the first call is measured for only
+ * one kind of method invoker per run, given on the command line, and before
+ * anything else.
+ * <LI>
+ * <B>Dispatch.</B> For both kinds of method invoker, the average time to
+ * invoke an existing method invoker on the target object, and the average time
+ * to create a method invoker, read its argument values, and invoke it, which
+ * is what the M2MI Layer does for each incoming invocation. Each measurement is
+ * run once to warm up the JVM and then again for the reported figures.
+ * </OL>
+ * <P>
+ * Usage: java edu.rit.m2mi.test.InvokerBench <I>kind</I>
+ * [<I>iterations</I>]
+ * <BR><I>kind</I> = Kind of method invoker for the first call measurement,
+ * <TT>synthesized</TT> or <TT>methodhandle</TT>
+ * <BR><I>iterations</I> = Number of invocations per dispatch measurement
+ * (default 1000000)
+ * <P>
+ * The M2MI properties must be defined as for the other test programs;
+ * <TT>edu.rit.m2mi.messaging</TT> may be 0.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class InvokerBench
+	{
+
+	/**
+	 * Interface InvokerBench.Probe is the sample target interface. Its methods
+	 * take the kinds of arguments the game's methods do.
+	 */
+	public static interface Probe
+		{
+		public void ping();
+
+		public void tick
+			(int i);
+
+		public void move
+			(Eoid id,
+			 int x,
+			 int y);
+
+		public void say
+			(Eoid id,
+			 String text);
+
+		public void report
+			(Eoid id,
+			 String name,
+			 int x,
+			 int y,
+			 int[] versions);
+
+		public void status
+			(boolean alive,
+			 long time,
+			 double health,
+			 char mark);
+		}
+
+	/**
+	 * Class InvokerBench.ProbeImpl counts the calls on it.
+	 */
+	private static class ProbeImpl
+		implements Probe
+		{
+		public int myCount;
+
+		public void ping()
+			{
+			++ myCount;
+			}
+
+		public void tick
+			(int i)
+			{
+			myCount += i;
+			}
+
+		public void move
+			(Eoid id,
+			 int x,
+			 int y)
+			{
+			myCount += x + y;
+			}
+
+		public void say
+			(Eoid id,
+			 String text)
+			{
+			myCount += text.length();
+			}
+
+		public void report
+			(Eoid id,
+			 String name,
+			 int x,
+			 int y,
+			 int[] versions)
+			{
+			myCount += versions.length;
+			}
+
+		public void status
+			(boolean alive,
+			 long time,
+			 double health,
+			 char mark)
+			{
+			if (alive) ++ myCount;
+			}
+		}
+
+	// Names and argument types of the methods of interface Probe.
+	private static final String[] METHODS = new String[]
+		{"ping", "tick", "move", "say", "report", "status"};
+	private static final String[] ARGUMENT_TYPES = new String[]
+		{"()V",
+		 "(I)V",
+		 "(Ledu/rit/m2mi/Eoid;II)V",
+		 "(Ledu/rit/m2mi/Eoid;Ljava/lang/String;)V",
+		 "(Ledu/rit/m2mi/Eoid;Ljava/lang/String;II[I)V",
+		 "(ZJDC)V"};
+
+// Prevent construction.
+
+	private InvokerBench()
+		{
+		}
+
+// Main program.
+
+	/**
+	 * Main program.
+	 */
+	public static void main
+		(String[] args)
+		{
+		try
+			{
+			if (args.length < 1 || args.length > 2) usage();
+			boolean firstHandle;
+			if (args[0].equals ("synthesized"))
+				{
+				firstHandle = false;
+				}
+			else if (args[0].equals ("methodhandle"))
+				{
+				firstHandle = true;
+				}
+			else
+				{
+				usage();
+				return;
+				}
+			int n = 1000000;
+			if (args.length == 2) n = Integer.parseInt (args[1]);
+
+			M2MI.initialize();
+
+			ProbeImpl target = new ProbeImpl();
+			MethodDescriptor[] md = new MethodDescriptor [METHODS.length];
+			byte[][] argBytes = new byte [METHODS.length] [];
+			for (int i = 0; i < METHODS.length; ++ i)
+				{
+				md[i] =
+					new MethodDescriptor
+						(Probe.class.getName(), METHODS[i], ARGUMENT_TYPES[i]);
+				argBytes[i] = argumentBytes (i);
+				}
+
+			System.out.println
+				("First call, " + args[0] + "   Microsec");
+			long total = 0L;
+			for (int i = 0; i < METHODS.length; ++ i)
+				{
+				long t1 = System.nanoTime();
+				readAndInvoke (firstHandle, md[i], argBytes[i], target);
+				long t2 = System.nanoTime();
+				total += t2 - t1;
+				System.out.println
+					(pad ("Probe." + METHODS[i], 24) +
+					 padLeft ("" + ((t2-t1)/1000), 10));
+				}
+			System.out.println
+				(pad ("Total", 24) + padLeft ("" + (total/1000), 10));
+			System.out.println();
+
+			System.out.println
+				("Method          Invoker         Invoke ns   Read+invoke ns");
+			for (int i = 0; i < METHODS.length; ++ i)
+				{
+				bench (false, md[i], argBytes[i], target, n);
+				bench (true, md[i], argBytes[i], target, n);
+				}
+			System.exit (0);
+			}
+		catch (Throwable exc)
+			{
+			System.err.println ("InvokerBench: Uncaught exception");
+			exc.printStackTrace (System.err);
+			System.exit (1);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Measure dispatch for one method and one kind of method invoker.
+	 *
+	 * @param  handle  True for a method handle invoker, false for a
+	 *                 synthesized method invoker.
+	 * @param  md      Method descriptor.
+	 * @param  args    Method arguments, in the compact format.
+	 * @param  target  Target object.
+	 * @param  n       Number of invocations.
+	 */
+	private static void bench
+		(boolean handle,
+		 MethodDescriptor md,
+		 byte[] args,
+		 ProbeImpl target,
+		 int n)
+		throws Exception
+		{
+		MethodInvoker mi = readAndInvoke (handle, md, args, target);
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				mi.invoke (target);
+				}
+			long t2 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				readAndInvoke (handle, md, args, target);
+				}
+			long t3 = System.nanoTime();
+			if (pass == 1)
+				{
+				System.out.println
+					(pad (md.getTargetMethod(), 16) +
+					 pad (handle ? "methodhandle" : "synthesized", 13) +
+					 padLeft ("" + ((t2-t1)/n), 12) +
+					 padLeft ("" + ((t3-t2)/n), 17));
+				}
+			}
+		}
+
+	/**
+	 * Create a method invoker, read its argument values, and invoke it, the
+	 * way the M2MI Layer does for an incoming invocation.
+	 *
+	 * @param  handle  True for a method handle invoker, false for a
+	 *                 synthesized method invoker.
+	 * @param  md      Method descriptor.
+	 * @param  args    Method arguments, in the compact format.
+	 * @param  target  Target object.
+	 *
+	 * @return  Method invoker.
+	 */
+	private static MethodInvoker readAndInvoke
+		(boolean handle,
+		 MethodDescriptor md,
+		 byte[] args,
+		 ProbeImpl target)
+		throws Exception
+		{
+		MethodInvoker mi =
+			handle ?
+				(MethodInvoker) new MethodHandleInvoker (md) :
+				(MethodInvoker)
+					M2MI.getClassLoader().getMethodInvokerClass (md)
+						.newInstance();
+		mi.read (new CompactObjectInput (new ByteArrayInputStream (args)));
+		mi.invoke (target);
+		return mi;
+		}
+
+	/**
+	 * Returns sample arguments for the given method of interface Probe, in the
+	 * compact format.
+	 */
+	private static byte[] argumentBytes
+		(int i)
+		throws Exception
+		{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		CompactObjectOutput out = new CompactObjectOutput (baos);
+		Eoid id = Eoid.next();
+		switch (i)
+			{
+			case 1:
+				out.writeInt (42);
+				break;
+			case 2:
+				out.writeObject (id);
+				out.writeInt (12);
+				out.writeInt (34);
+				break;
+			case 3:
+				out.writeObject (id);
+				out.writeObject ("Hail, traveler");
+				break;
+			case 4:
+				out.writeObject (id);
+				out.writeObject ("Goblin");
+				out.writeInt (12);
+				out.writeInt (34);
+				out.writeObject (new int[] {3, 1, 4, 1, 5});
+				break;
+			case 5:
+				out.writeBoolean (true);
+				out.writeLong (System.currentTimeMillis());
+				out.writeDouble (0.75);
+				out.writeChar ('G');
+				break;
+			}
+		out.flush();
+		return baos.toByteArray();
+		}
+
+	private static String pad
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.append (' ');
+		return buf.toString();
+		}
+
+	private static String padLeft
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.insert (0, ' ');
+		return buf.toString();
+		}
+
+	private static void usage()
+		{
+		System.err.println ("Usage: java edu.rit.m2mi.test.InvokerBench synthesized|methodhandle [<iterations>]");
+		System.exit (1);
+		}
+
+	}
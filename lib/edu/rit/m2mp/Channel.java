@@ -49,6 +49,12 @@ import java.lang.reflect.InvocationTargetException;
  * multicast address and port.
  * <BR>&nbsp;
  * <LI>
+ * Class {@link edu.rit.m2mp.udp.NioUDPMulticastChannel
+ * </CODE>NioUDPMulticastChannel<CODE>} -- The same as UDPMulticastChannel,
+ * but using a non-blocking NIO datagram channel that receives datagrams in
+ * batches and never blocks when sending.
+ * <BR>&nbsp;
+ * <LI>
  * Class {@link edu.rit.m2mp.udp.UDPUnicastChannel
  * </CODE>UDPUnicastChannel<CODE>} -- A point-to-point channel that sends
  * messages to and receives messages from one other host at a given IP unicast
@@ -95,7 +101,7 @@ import java.lang.reflect.InvocationTargetException;
  * </UL>
  *
  * @author  Alan Kaminsky
- * @version 28-Oct-2004
+ * @version 17-Oct-2026
  */
 public abstract class Channel
 	{
@@ -186,6 +192,24 @@ public abstract class Channel
 		(Packet thePacket)
 		throws IOException;
 
+	/**
+	 * Determine whether several threads can usefully receive packets from
+	 * this channel at once. If so, the M2MP Layer may use more than one thread
+	 * to call <TT>receivePacket()</TT> and process the packets (see the
+	 * <TT>edu.rit.m2mp.receivers</TT> property in class {@link M2MPProperties
+	 * </CODE>M2MPProperties<CODE>}). The channel's incoming packets are then no
+	 * longer processed strictly in the order they were received.
+	 * <P>
+	 * The default implementation returns false. A subclass can override this
+	 * method.
+	 *
+	 * @return  True if several threads can receive at once, false otherwise.
+	 */
+	public boolean receivesConcurrently()
+		{
+		return false;
+		}
+
 // Hidden operations.
 
 	/**
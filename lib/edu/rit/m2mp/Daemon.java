@@ -38,11 +38,16 @@ import edu.rit.util.Platform;
 import java.io.IOException;
 
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 
 /**
  * Class Daemon is the main program for the M2MP Daemon process.
@@ -68,35 +73,128 @@ import java.util.LinkedList;
  * using the channel defined by the <TT>edu.rit.m2mp.channel.class</TT>
  * property.
  * <P>
+ * The M2MP Daemon process serves all the client processes from one thread,
+ * using non-blocking sockets and a selector, so that no client process can hold
+ * up the others. Every packet is forwarded to all the client processes and the
+ * external network, except the one it came from, by putting a copy on each
+ * one's outgoing queue. A client process's queue is written to its socket
+ * whenever the socket will take more, with as many queued packets as possible
+ * in each write. The external network's queue is sent by a separate thread, so
+ * that waiting for flow control there does not hold up the client processes
+ * either. When a queue is full, further packets for it are dropped, as the
+ * network itself would have done; and a client process whose queue has stayed
+ * full for the <TT>edu.rit.m2mp.daemon.stall</TT> interval is disconnected. If
+ * the <TT>edu.rit.m2mp.daemon.stats</TT> property gives an interval, the
+ * M2MP Daemon process periodically prints each queue's depth, peak depth, and
+ * packets sent and dropped on the standard error stream.
+ * <P>
  * Usage: java edu.rit.m2mp.Daemon
  *
  * @author  Alan Kaminsky
- * @version 27-Sep-2004
+ * @version 17-Oct-2026
  */
 public class Daemon
 	{
 
+// Hidden constants.
+
+	// Size of each client process's buffer of received bytes.
+	private static final int INPUT_SIZE = 16 * (2 + Packet.MAXIMUM_SIZE);
+
+	// Most packets written to a client process's socket at once.
+	private static final int MAX_GATHER = 256;
+
 // Hidden data members.
 
-	// Server socket.
+	// Server socket channel and selector.
 	private int myDaemonPort;
-	private ServerSocket myServerSocket;
+	private ServerSocketChannel myServerChannel;
+	private Selector mySelector;
 
 	// Packet pool.
 	private PacketPool myPacketPool;
 
-	// List of channels (type Channel).
-	private LinkedList myChannelList;
-
-	// Queue of packets and their sources (type PacketInfo).
-	private LinkedList myPacketQueue;
+	// Configuration parameters.
+	private int myQueueSize;
+	private long myStallTimeout;
+	private long myStatsInterval;
+	private int debugReceiverThread;
+
+	// Connected client processes (type Client). Used only by the selector
+	// thread.
+	private ArrayList myClients = new ArrayList();
+
+	// Number of client processes disconnected for being too slow.
+	private long myStalledCount;
+
+	// External channel.
+	private Channel myExternalChannel;
+
+	// Queue of packets for the external channel, with statistics. Locked by
+	// myExternalLock.
+	private Packet[] myExternalQueue;
+	private int myExternalFirst;
+	private int myExternalCount;
+	private int myExternalPeak;
+	private long myExternalSent;
+	private long myExternalDropped;
+	private boolean myExternalFailed;
+	private Object myExternalLock = new Object();
+
+	// Packets received from the external channel, waiting for the selector
+	// thread to forward them. Locked by myIncomingLock.
+	private Packet myFirstIncoming;
+	private Packet myLastIncoming;
+	private Object myIncomingLock = new Object();
 
 // Hidden helper classes.
 
-	private static class PacketInfo
+	/**
+	 * Class Daemon.Client is the state of one connected client process.
+	 */
+	private class Client
 		{
-		public Packet myPacket;
-		public Channel mySource;
+		// Socket channel and its selection key.
+		public SocketChannel channel;
+		public SelectionKey key;
+
+		// Client process's address, for reports.
+		public String name;
+
+		// Bytes received and not yet made into packets.
+		public ByteBuffer input = ByteBuffer.allocate (INPUT_SIZE);
+
+		// Ring of outgoing packets, each with its 2-byte length and its
+		// contents as byte buffers, and the buffers for a gathering write.
+		public Packet[] ring = new Packet [myQueueSize];
+		public ByteBuffer[] lengths = new ByteBuffer [myQueueSize];
+		public ByteBuffer[] bodies = new ByteBuffer [myQueueSize];
+		public ByteBuffer[] gather =
+			new ByteBuffer [2 * Math.min (myQueueSize, MAX_GATHER)];
+		public int first;
+		public int count;
+
+		// True if packets were queued since the socket was last written.
+		public boolean dirty;
+
+		// Time the ring became full (msec), or 0 if it is not full.
+		public long fullSince;
+
+		// Statistics.
+		public int peak;
+		public long sent;
+		public long dropped;
+
+		public Client
+			(SocketChannel theChannel)
+			{
+			channel = theChannel;
+			name = theChannel.socket().getRemoteSocketAddress().toString();
+			for (int i = 0; i < myQueueSize; ++ i)
+				{
+				lengths[i] = ByteBuffer.allocate (2);
+				}
+			}
 		}
 
 	private class SenderThread
@@ -108,12 +206,16 @@ public class Daemon
 				{
 				for (;;)
 					{
-					sendPacket();
+					sendExternalPacket();
 					}
 				}
 			catch (Throwable exc)
 				{
 				// Terminate thread on any exception.
+				synchronized (myExternalLock)
+					{
+					myExternalFailed = true;
+					}
 				}
 			}
 		}
@@ -121,21 +223,13 @@ public class Daemon
 	private class ReceiverThread
 		extends Thread
 		{
-		private Channel myChannel;
-
-		public ReceiverThread
-			(Channel theChannel)
-			{
-			myChannel = theChannel;
-			}
-
 		public void run()
 			{
 			try
 				{
 				for (;;)
 					{
-					receivePacket (myChannel);
+					receiveExternalPacket();
 					}
 				}
 			catch (Throwable exc)
@@ -164,12 +258,21 @@ public class Daemon
 			throw exc2;
 			}
 
-		// Set up server socket.
+		// Get configuration parameters.
+		myQueueSize = M2MPProperties.getDaemonQueue();
+		myStallTimeout = M2MPProperties.getDaemonStall();
+		myStatsInterval = M2MPProperties.getDaemonStats() * 1000L;
+		debugReceiverThread = M2MPProperties.getDebugReceiverThread();
+
+		// Set up server socket channel and selector.
 		try
 			{
-			myServerSocket = new ServerSocket();
-			myServerSocket.bind
+			mySelector = Selector.open();
+			myServerChannel = ServerSocketChannel.open();
+			myServerChannel.socket().bind
 				(new InetSocketAddress ("127.0.0.1", myDaemonPort));
+			myServerChannel.configureBlocking (false);
+			myServerChannel.register (mySelector, SelectionKey.OP_ACCEPT);
 			}
 		catch (IOException exc)
 			{
@@ -182,14 +285,8 @@ public class Daemon
 		// Set up packet pool.
 		myPacketPool = new PacketPool();
 
-		// Set up channel list.
-		myChannelList = new LinkedList();
-
-		// Set up packet queue.
-		myPacketQueue = new LinkedList();
-
-		// Set up sender thread.
-		new SenderThread() .start();
+		// Set up external packet queue.
+		myExternalQueue = new Packet [myQueueSize];
 
 		// Set up pseudorandom number generator.
 		MuH1Random prng = new MuH1Random();
@@ -198,111 +295,527 @@ public class Daemon
 		prng.accumulateSeed (System.currentTimeMillis());
 
 		// Set up M2MP external channel.
-		Channel externalChannel =
+		myExternalChannel =
 			new FlowController
 				(myPacketPool,
 				 Channel.getExternalChannel (myPacketPool));
-		myChannelList.add (externalChannel);
-		new ReceiverThread (externalChannel) .start();
+
+		// Set up sender and receiver threads.
+		new SenderThread() .start();
+		new ReceiverThread() .start();
 		}
 
 // Hidden operations.
 
 	/**
-	 * Obtain a packet from the packet queue and send it out on all the channels
-	 * except the one it came from.
+	 * Serve the client processes until an I/O error occurs on the server
+	 * socket.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
 	 */
-	private void sendPacket()
+	private void run()
+		throws IOException
 		{
-		// Get a packet from the packet queue.
-		PacketInfo info;
-		synchronized (myPacketQueue)
+		long nextReport = System.currentTimeMillis() + myStatsInterval;
+		for (;;)
 			{
-			while (myPacketQueue.size() == 0)
+			// Wait for something to do, waking up now and then to check for
+			// stalled client processes and to report statistics.
+			long timeout = 0L;
+			if (myStallTimeout > 0L)
+				{
+				timeout = Math.max (myStallTimeout / 4L, 1L);
+				}
+			if (myStatsInterval > 0L)
 				{
+				long untilReport =
+					Math.max (nextReport - System.currentTimeMillis(), 1L);
+				timeout =
+					timeout == 0L ? untilReport : Math.min (timeout, untilReport);
+				}
+			mySelector.select (timeout);
+			long now = System.currentTimeMillis();
+
+			// Accept connections, and read from and note writable sockets.
+			Iterator iter = mySelector.selectedKeys().iterator();
+			while (iter.hasNext())
+				{
+				SelectionKey key = (SelectionKey) iter.next();
+				iter.remove();
+				if (! key.isValid())
+					{
+					continue;
+					}
+				if (key.isAcceptable())
+					{
+					accept();
+					continue;
+					}
+				Client client = (Client) key.attachment();
 				try
 					{
-					myPacketQueue.wait();
+					if (key.isReadable())
+						{
+						readClient (client, now);
+						}
+					if (key.isValid() && key.isWritable())
+						{
+						client.dirty = true;
+						}
 					}
-				catch (InterruptedException exc)
+				catch (IOException exc)
 					{
+					disconnect (client);
 					}
 				}
-			info = (PacketInfo) myPacketQueue.removeFirst();
-			}
 
-		// Iterate over the channel list.
-		synchronized (myChannelList)
-			{
-			Iterator iter = myChannelList.iterator();
-			while (iter.hasNext())
+			// Forward the packets received from the external channel.
+			Packet packet;
+			synchronized (myIncomingLock)
 				{
-				Channel channel = (Channel) iter.next();
+				packet = myFirstIncoming;
+				myFirstIncoming = null;
+				myLastIncoming = null;
+				}
+			while (packet != null)
+				{
+				Packet next = packet.getNext();
+				packet.setNext (null);
+				forward (packet, null, now);
+				packet = next;
+				}
 
-				// Send packet out on channel, unless it came from there.
-				if (info.mySource != channel)
+			// Write queued packets, and disconnect stalled client processes.
+			for (int i = myClients.size() - 1; i >= 0; -- i)
+				{
+				Client client = (Client) myClients.get (i);
+				try
 					{
-					try
+					if (client.dirty)
 						{
-						channel.transmitPacket (info.myPacket);
+						writeClient (client, now);
 						}
-					catch (IOException exc)
+					if (myStallTimeout > 0L && client.fullSince != 0L &&
+							now - client.fullSince >= myStallTimeout)
 						{
-						// If there's an error, remove channel from list.
-						iter.remove();
+						reportStalled (client);
+						disconnect (client);
 						}
 					}
+				catch (IOException exc)
+					{
+					disconnect (client);
+					}
+				}
+
+			// Report statistics.
+			if (myStatsInterval > 0L && now >= nextReport)
+				{
+				reportStatistics();
+				nextReport = now + myStatsInterval;
 				}
 			}
+		}
 
-		// Deallocate packet.
-		myPacketPool.deallocate (info.myPacket);
+	/**
+	 * Accept a connection from an M2MP client process, if one is pending.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred on the server socket.
+	 */
+	private void accept()
+		throws IOException
+		{
+		SocketChannel channel = myServerChannel.accept();
+		if (channel == null)
+			{
+			return;
+			}
+		try
+			{
+			channel.configureBlocking (false);
+			channel.socket().setTcpNoDelay (true);
+			Client client = new Client (channel);
+			client.key =
+				channel.register (mySelector, SelectionKey.OP_READ, client);
+			myClients.add (client);
+			}
+		catch (IOException exc)
+			{
+			try { channel.close(); } catch (IOException exc2) {}
+			}
 		}
 
 	/**
-	 * Receive a packet from the given channel and append it to the packet
-	 * queue.
+	 * Read whatever the given client process has sent, and forward each
+	 * complete packet.
 	 *
-	 * @param  theChannel  Channel to receive from.
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred or the client process closed the
+	 *     connection.
+	 */
+	private void readClient
+		(Client client,
+		 long now)
+		throws IOException
+		{
+		ByteBuffer input = client.input;
+		if (client.channel.read (input) < 0)
+			{
+			throw new IOException ("Connection closed");
+			}
+		input.flip();
+		for (;;)
+			{
+			int p = input.position();
+			if (input.remaining() < 2)
+				{
+				break;
+				}
+			int n = input.getShort (p) & 0xFFFF;
+			if (! Packet.isValidLength (n))
+				{
+				// Invalid. Ignore it.
+				reportInvalidLength (n);
+				input.position (p + 2);
+				continue;
+				}
+			if (input.remaining() < 2 + n)
+				{
+				break;
+				}
+			Packet packet = myPacketPool.allocate();
+			input.position (p + 2);
+			input.get (packet.getBuffer(), 0, n);
+			packet.limit (n);
+			forward (packet, client, now);
+			}
+		input.compact();
+		}
+
+	/**
+	 * Queue a packet for all the client processes and the external network
+	 * except the one it came from. The packet is handed to the external
+	 * channel's queue, or deallocated.
+	 *
+	 * @param  thePacket  Packet.
+	 * @param  theSource  Client process the packet came from, or null if it
+	 *                    came from the external network.
+	 * @param  now        Current time (msec).
+	 */
+	private void forward
+		(Packet thePacket,
+		 Client theSource,
+		 long now)
+		{
+		int n = myClients.size();
+		for (int i = 0; i < n; ++ i)
+			{
+			Client client = (Client) myClients.get (i);
+			if (client != theSource)
+				{
+				enqueue (client, thePacket, now);
+				}
+			}
+		if (theSource != null)
+			{
+			enqueueExternal (thePacket);
+			}
+		else
+			{
+			myPacketPool.deallocate (thePacket);
+			}
+		}
+
+	/**
+	 * Put a copy of the given packet on the given client process's queue, or
+	 * drop it if the queue is full.
+	 */
+	private void enqueue
+		(Client client,
+		 Packet thePacket,
+		 long now)
+		{
+		if (client.count == myQueueSize)
+			{
+			++ client.dropped;
+			return;
+			}
+		int i = (client.first + client.count) % myQueueSize;
+		Packet copy = myPacketPool.allocate();
+		copy.copy (thePacket);
+		client.ring[i] = copy;
+		client.bodies[i] = copy.getByteBuffer();
+		ByteBuffer length = client.lengths[i];
+		length.clear();
+		length.putShort ((short) copy.limit());
+		length.flip();
+		++ client.count;
+		client.peak = Math.max (client.peak, client.count);
+		if (client.count == myQueueSize)
+			{
+			client.fullSince = now;
+			}
+		client.dirty = true;
+		}
+
+	/**
+	 * Write as many of the given client process's queued packets as its socket
+	 * will take, in one gathering write, and note whether to wait for the
+	 * socket to become writable again.
 	 *
 	 * @exception  IOException
 	 *     Thrown if an I/O error occurred.
 	 */
-	private void receivePacket
-		(Channel theChannel)
+	private void writeClient
+		(Client client,
+		 long now)
 		throws IOException
 		{
-		PacketInfo info = new PacketInfo();
-		info.myPacket = theChannel.receivePacket();
-		info.mySource = theChannel;
-		synchronized (myPacketQueue)
+		client.dirty = false;
+		if (client.count > 0)
+			{
+			int k = Math.min (client.count, MAX_GATHER);
+			for (int j = 0; j < k; ++ j)
+				{
+				int i = (client.first + j) % myQueueSize;
+				client.gather[2*j] = client.lengths[i];
+				client.gather[2*j+1] = client.bodies[i];
+				}
+			client.channel.write (client.gather, 0, 2*k);
+
+			// Free the packets that were written completely.
+			while (client.count > 0 &&
+					! client.bodies[client.first].hasRemaining())
+				{
+				myPacketPool.deallocate (client.ring[client.first]);
+				client.ring[client.first] = null;
+				client.bodies[client.first] = null;
+				client.first = (client.first + 1) % myQueueSize;
+				-- client.count;
+				++ client.sent;
+				}
+			Arrays.fill (client.gather, 0, 2*k, null);
+			}
+		if (client.count < myQueueSize)
+			{
+			client.fullSince = 0L;
+			}
+		client.key.interestOps
+			(client.count > 0 ?
+				SelectionKey.OP_READ | SelectionKey.OP_WRITE :
+				SelectionKey.OP_READ);
+		}
+
+	/**
+	 * Close the connection to the given client process and discard its queue.
+	 */
+	private void disconnect
+		(Client client)
+		{
+		if (! myClients.remove (client))
 			{
-			myPacketQueue.addLast (info);
-			myPacketQueue.notifyAll();
+			return;
+			}
+		client.key.cancel();
+		try { client.channel.close(); } catch (IOException exc) {}
+		while (client.count > 0)
+			{
+			myPacketPool.deallocate (client.ring[client.first]);
+			client.ring[client.first] = null;
+			client.first = (client.first + 1) % myQueueSize;
+			-- client.count;
 			}
 		}
 
 	/**
-	 * Accept the next connection from an M2MP client process.
+	 * Put the given packet on the external channel's queue, or drop it if the
+	 * queue is full or the external channel has failed.
+	 */
+	private void enqueueExternal
+		(Packet thePacket)
+		{
+		synchronized (myExternalLock)
+			{
+			if (myExternalFailed || myExternalCount == myQueueSize)
+				{
+				++ myExternalDropped;
+				myPacketPool.deallocate (thePacket);
+				return;
+				}
+			myExternalQueue[(myExternalFirst + myExternalCount) % myQueueSize] =
+				thePacket;
+			++ myExternalCount;
+			myExternalPeak = Math.max (myExternalPeak, myExternalCount);
+			myExternalLock.notifyAll();
+			}
+		}
+
+	/**
+	 * Obtain a packet from the external channel's queue and send it.
 	 *
 	 * @exception  IOException
 	 *     Thrown if an I/O error occurred.
 	 */
-	private void accept()
+	private void sendExternalPacket()
+		throws IOException
+		{
+		// Get a packet from the queue.
+		Packet packet;
+		synchronized (myExternalLock)
+			{
+			while (myExternalCount == 0)
+				{
+				try
+					{
+					myExternalLock.wait();
+					}
+				catch (InterruptedException exc)
+					{
+					}
+				}
+			packet = myExternalQueue[myExternalFirst];
+			myExternalQueue[myExternalFirst] = null;
+			myExternalFirst = (myExternalFirst + 1) % myQueueSize;
+			-- myExternalCount;
+			}
+
+		// Send it, then deallocate it.
+		try
+			{
+			myExternalChannel.transmitPacket (packet);
+			}
+		finally
+			{
+			myPacketPool.deallocate (packet);
+			}
+		synchronized (myExternalLock)
+			{
+			++ myExternalSent;
+			}
+		}
+
+	/**
+	 * Receive a packet from the external channel and pass it to the selector
+	 * thread.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private void receiveExternalPacket()
 		throws IOException
 		{
-		// Get socket connection.
-		Socket socket = myServerSocket.accept();
+		Packet packet = myExternalChannel.receivePacket();
+		packet.setNext (null);
+		synchronized (myIncomingLock)
+			{
+			if (myFirstIncoming == null)
+				{
+				myFirstIncoming = packet;
+				}
+			else
+				{
+				myLastIncoming.setNext (packet);
+				}
+			myLastIncoming = packet;
+			}
+		mySelector.wakeup();
+		}
 
-		// Set up channel.
-		Channel channel = new DaemonChannel (myPacketPool, socket);
-		synchronized (myChannelList)
+	/**
+	 * Print each queue's depth, peak depth, and packets sent and dropped on
+	 * the standard error stream.
+	 */
+	private void reportStatistics()
+		{
+		synchronized (System.err)
 			{
-			myChannelList.add (channel);
+			System.err.print ("edu.rit.m2mp.Daemon: ");
+			System.err.print (myClients.size());
+			System.err.print (" clients, ");
+			System.err.print (myStalledCount);
+			System.err.println (" disconnected for stalling");
+			synchronized (myExternalLock)
+				{
+				reportQueue
+					("external", myExternalCount, myExternalPeak,
+					 myExternalSent, myExternalDropped);
+				if (myExternalFailed)
+					{
+					System.err.println ("    external channel failed");
+					}
+				}
+			int n = myClients.size();
+			for (int i = 0; i < n; ++ i)
+				{
+				Client client = (Client) myClients.get (i);
+				reportQueue
+					(client.name, client.count, client.peak,
+					 client.sent, client.dropped);
+				}
 			}
+		}
 
-		// Set up receiver thread.
-		new ReceiverThread (channel) .start();
+	/**
+	 * Print one queue's statistics.
+	 */
+	private void reportQueue
+		(String name,
+		 int depth,
+		 int peak,
+		 long sent,
+		 long dropped)
+		{
+		System.err.print ("    ");
+		System.err.print (name);
+		System.err.print (": queue ");
+		System.err.print (depth);
+		System.err.print ("/");
+		System.err.print (myQueueSize);
+		System.err.print (", peak ");
+		System.err.print (peak);
+		System.err.print (", sent ");
+		System.err.print (sent);
+		System.err.print (", dropped ");
+		System.err.println (dropped);
+		}
+
+	/**
+	 * Report that a client process was disconnected for stalling.
+	 */
+	private void reportStalled
+		(Client client)
+		{
+		++ myStalledCount;
+		if (myStatsInterval > 0L || debugReceiverThread >= 2)
+			{
+			synchronized (System.err)
+				{
+				System.err.print ("edu.rit.m2mp.Daemon: Disconnected ");
+				System.err.print (client.name);
+				System.err.print (", queue full for ");
+				System.err.print (myStallTimeout);
+				System.err.println (" msec");
+				}
+			}
+		}
+
+	/**
+	 * Report an invalid length.
+	 */
+	private void reportInvalidLength
+		(int n)
+		{
+		if (debugReceiverThread >= 2)
+			{
+			synchronized (System.err)
+				{
+				System.err.print
+					("edu.rit.m2mp.Daemon: Invalid packet length = ");
+				System.err.println (n);
+				}
+			}
 		}
 
 // Main program.
@@ -315,11 +828,7 @@ public class Daemon
 		{
 		try
 			{
-			Daemon daemon = new Daemon();
-			for (;;)
-				{
-				daemon.accept();
-				}
+			new Daemon() .run();
 			}
 		catch (Throwable exc)
 			{
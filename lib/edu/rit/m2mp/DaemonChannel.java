@@ -29,6 +29,7 @@
 
 package edu.rit.m2mp;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -46,9 +47,14 @@ import java.net.Socket;
  * packets to the other clients and to the external network (via some other
  * channel). The daemon also receives packets from the external network and
  * forwards the packets to the clients.
+ * <P>
+ * Each packet is written to the socket, length and contents together, in one
+ * write, with Nagle's algorithm turned off, so the daemon gets each packet as
+ * soon as it is sent. Class DaemonChannel is multiple thread safe for
+ * transmitting.
  *
  * @author  Alan Kaminsky
- * @version 27-Sep-2004
+ * @version 17-Oct-2026
  */
 public class DaemonChannel
 	extends Channel
@@ -64,6 +70,9 @@ public class DaemonChannel
 	private DataInputStream myDataInputStream;
 	private DataOutputStream myDataOutputStream;
 
+	// Packet length and contents for one write. Locked by this channel.
+	private byte[] myOutputBuffer = new byte [2 + Packet.MAXIMUM_SIZE];
+
 	private int debugReceiverThread;
 
 // Exported constructors.
@@ -88,7 +97,8 @@ public class DaemonChannel
 		{
 		super (thePacketPool);
 		mySocket = theSocket;
-		myInputStream = theSocket.getInputStream();
+		mySocket.setTcpNoDelay (true);
+		myInputStream = new BufferedInputStream (theSocket.getInputStream());
 		myOutputStream = theSocket.getOutputStream();
 		myDataInputStream = new DataInputStream (myInputStream);
 		myDataOutputStream = new DataOutputStream (myOutputStream);
@@ -150,7 +160,7 @@ public class DaemonChannel
 	 * @exception  IOException
 	 *     Thrown if an I/O error occurred.
 	 */
-	public void transmitPacket
+	public synchronized void transmitPacket
 		(Packet thePacket)
 		throws IOException
 		{
@@ -158,8 +168,10 @@ public class DaemonChannel
 		try
 			{
 			int n = thePacket.limit();
-			myDataOutputStream.writeShort (n);
-			myDataOutputStream.write (thePacket.getBuffer(), 0, n);
+			myOutputBuffer[0] = (byte) (n >> 8);
+			myOutputBuffer[1] = (byte) n;
+			System.arraycopy (thePacket.getBuffer(), 0, myOutputBuffer, 2, n);
+			myOutputStream.write (myOutputBuffer, 0, 2 + n);
 			}
 		catch (IOException exc)
 			{
@@ -45,14 +45,44 @@ import java.io.InterruptedIOException;
  * A flow controller is a {@link Channel </CODE>Channel<CODE>} object that is
  * interposed between the rest of the M2MP Layer and the channel object that
  * interfaces with the external network.
+ * <P>
+ * Normally the flow controller sends one outgoing packet and then waits until
+ * the packet has been looped back, so a device sends at most one packet per
+ * loopback round trip. If the <TT>edu.rit.m2mp.flowwindow</TT> property gives
+ * a window size (see class {@link M2MPProperties
+ * </CODE>M2MPProperties<CODE>}), the flow controller instead lets up to that
+ * many outgoing packets wait for their loopbacks at once. How many it actually
+ * lets out, the congestion window, depends on how fast the loopbacks come back:
+ * the window grows while the loopback round trip time stays near the smallest
+ * seen, and is halved, at most once per round trip, when the round trip time
+ * grows (packets are queuing up somewhere) or a loopback does not show up
+ * within the flow control timeout. A token bucket spreads the packets of each
+ * window over the round trip instead of sending them in one burst.
  *
  * @author  Alan Kaminsky
- * @version 28-Oct-2004
+ * @version 17-Oct-2026
  */
 public class FlowController
 	extends Channel
 	{
 
+// Hidden constants.
+
+	// Congestion window when windowed flow control starts (packets).
+	private static final double INITIAL_WINDOW = 4.0;
+
+	// Amount by which the smoothed loopback round trip time may exceed twice
+	// the smallest one before the congestion window is cut (nsec).
+	private static final long QUEUE_ALLOWANCE = 1000000L;
+
+	// How long the smallest loopback round trip time is trusted before it is
+	// measured afresh (nsec).
+	private static final long MIN_RTT_LIFETIME = 10000000000L;
+
+	// Rate of the token bucket relative to one congestion window per round
+	// trip, so pacing smooths out bursts without holding the window back.
+	private static final double PACING_GAIN = 2.0;
+
 // Hidden data members.
 
 	// External channel.
@@ -60,6 +90,7 @@ public class FlowController
 
 	// Configuration parameters.
 	private int myFlowTimeout;
+	private int myFlowWindow;
 	private int debugReceiverThread;
 
 	// Flow control state.
@@ -82,6 +113,32 @@ public class FlowController
 	private TimerThread myTimerThread;
 	private Timer myTimer;
 
+	// Windowed flow control state, used if myFlowWindow > 0 and locked by
+	// myStateLock. Outgoing packets waiting for loopback, oldest first, are
+	// kept in a ring as their headers (message ID in the upper half, last
+	// packet flag and fragment number in the lower half) and send times
+	// (nsec).
+	private long[] myInFlightHeaders;
+	private long[] myInFlightTimes;
+	private int myInFlightFirst;
+	private int myInFlightCount;
+
+	// Congestion window and slow start threshold (packets).
+	private double myCongestionWindow;
+	private double mySlowStartThreshold;
+
+	// Smallest loopback round trip time and when it was measured, smoothed
+	// round trip time, and earliest time the congestion window may be cut
+	// again (nsec).
+	private long myMinRtt;
+	private long myMinRttTime;
+	private long mySmoothedRtt;
+	private long myNextCut;
+
+	// Token bucket: tokens on hand, and when they were last topped up (nsec).
+	private double myTokens;
+	private long myTokenTime;
+
 	// FIFO queue of incoming packets.
 	private Packet myFirstIncomingPacket;
 	private Packet myLastIncomingPacket;
@@ -146,8 +203,18 @@ public class FlowController
 
 		// Get configuration parameters.
 		myFlowTimeout = M2MPProperties.getFlowTimeout();
+		myFlowWindow = M2MPProperties.getFlowWindow();
 		debugReceiverThread = M2MPProperties.getDebugReceiverThread();
 
+		// Set up windowed flow control if enabled.
+		if (myFlowWindow > 0)
+			{
+			myInFlightHeaders = new long [myFlowWindow];
+			myInFlightTimes = new long [myFlowWindow];
+			myCongestionWindow = Math.min (INITIAL_WINDOW, myFlowWindow);
+			mySlowStartThreshold = myFlowWindow;
+			}
+
 		// Set up flow control timer.
 		myTimerThread = new TimerThread();
 		myTimerThread.setDaemon (true);
@@ -224,6 +291,20 @@ public class FlowController
 			// Update flow controller state.
 			synchronized (myStateLock)
 				{
+				if (myFlowWindow > 0)
+					{
+					if (! receiveLoopback (packet))
+						{
+						// Not one of our outgoing packets. Return this
+						// packet.
+						break searchloop;
+						}
+					// Discard the looped-back packet and wait for the next
+					// incoming packet.
+					myPacketPool.deallocate (packet);
+					continue searchloop;
+					}
+
 				switch (myState)
 					{
 					case WAITING_FOR_OUTGOING:
@@ -297,6 +378,12 @@ public class FlowController
 		(Packet thePacket)
 		throws IOException
 		{
+		if (myFlowWindow > 0)
+			{
+			transmitWindowed (thePacket);
+			return;
+			}
+
 		synchronized (myStateLock)
 			{
 			// Wait until flow control is finished for the previous packet.
@@ -352,8 +439,221 @@ public class FlowController
 			}
 		}
 
+	/**
+	 * Determine whether several threads can usefully receive packets from
+	 * this channel at once. This is so if it is so for the external channel.
+	 *
+	 * @return  True if several threads can receive at once, false otherwise.
+	 */
+	public boolean receivesConcurrently()
+		{
+		return myExternalChannel.receivesConcurrently();
+		}
+
 // Hidden operations.
 
+	/**
+	 * Send the given M2MP packet with windowed flow control. Blocks until the
+	 * congestion window has room and the token bucket has a token, then sends
+	 * the packet without waiting for its loopback.
+	 */
+	private void transmitWindowed
+		(Packet thePacket)
+		throws IOException
+		{
+		long header = headerOf (thePacket);
+		long now;
+		synchronized (myStateLock)
+			{
+			try
+				{
+				for (;;)
+					{
+					now = System.nanoTime();
+					expireInFlight (now);
+					long delay;
+					if (myInFlightCount >= (int) myCongestionWindow)
+						{
+						// Window is full. Wait for a loopback, or for the
+						// oldest packet's loopback to time out.
+						delay =
+							myInFlightTimes[myInFlightFirst] +
+							myFlowTimeout * 1000000L - now;
+						}
+					else
+						{
+						refillTokens (now);
+						if (myTokens >= 1.0) break;
+						// Wait for the next token.
+						delay =
+							(long) ((1.0 - myTokens) * mySmoothedRtt /
+								(PACING_GAIN * myCongestionWindow));
+						}
+					long millis = Math.max (delay / 1000000L, 1L);
+					myStateLock.wait (millis);
+					}
+				}
+			catch (InterruptedException exc)
+				{
+				IOException exc2 =
+					new InterruptedIOException
+						("edu.rit.m2mp.FlowController.transmitPacket() interrupted");
+				exc2.initCause (exc);
+				throw exc2;
+				}
+
+			// Take a token and put the packet in flight.
+			myTokens -= 1.0;
+			int i = (myInFlightFirst + myInFlightCount) % myFlowWindow;
+			myInFlightHeaders[i] = header;
+			myInFlightTimes[i] = now;
+			++ myInFlightCount;
+			}
+
+		// Send this packet.
+		myExternalChannel.transmitPacket (thePacket);
+		}
+
+	/**
+	 * Check whether the given incoming packet is the loopback of a packet in
+	 * flight. If so, take it out of flight, and use its round trip time to
+	 * adjust the congestion window. Assumes the state lock is held.
+	 *
+	 * @return  True if the packet is a loopback, false otherwise.
+	 */
+	private boolean receiveLoopback
+		(Packet thePacket)
+		{
+		long header = headerOf (thePacket);
+		for (int k = 0; k < myInFlightCount; ++ k)
+			{
+			int i = (myInFlightFirst + k) % myFlowWindow;
+			if (myInFlightHeaders[i] == header)
+				{
+				long now = System.nanoTime();
+				long rtt = now - myInFlightTimes[i];
+
+				// Close up the ring.
+				for (; k > 0; -- k)
+					{
+					int j = (myInFlightFirst + k - 1) % myFlowWindow;
+					myInFlightHeaders[i] = myInFlightHeaders[j];
+					myInFlightTimes[i] = myInFlightTimes[j];
+					i = j;
+					}
+				myInFlightFirst = (myInFlightFirst + 1) % myFlowWindow;
+				-- myInFlightCount;
+
+				// Adjust the congestion window.
+				if (myMinRtt == 0L || rtt <= myMinRtt ||
+						now - myMinRttTime > MIN_RTT_LIFETIME)
+					{
+					myMinRtt = Math.max (rtt, 1L);
+					myMinRttTime = now;
+					}
+				mySmoothedRtt =
+					mySmoothedRtt == 0L ?
+						rtt :
+						mySmoothedRtt + (rtt - mySmoothedRtt) / 8;
+				if (mySmoothedRtt > 2 * myMinRtt + QUEUE_ALLOWANCE)
+					{
+					cutWindow (now);
+					}
+				else if (myCongestionWindow < mySlowStartThreshold)
+					{
+					myCongestionWindow =
+						Math.min (myCongestionWindow + 1.0, myFlowWindow);
+					}
+				else
+					{
+					myCongestionWindow =
+						Math.min
+							(myCongestionWindow + 1.0 / myCongestionWindow,
+							 myFlowWindow);
+					}
+				myStateLock.notifyAll();
+				return true;
+				}
+			}
+		return false;
+		}
+
+	/**
+	 * Take packets whose loopbacks have not shown up within the flow control
+	 * timeout out of flight, assuming they got lost, and cut the congestion
+	 * window if there were any. Assumes the state lock is held.
+	 */
+	private void expireInFlight
+		(long now)
+		{
+		long timeout = myFlowTimeout * 1000000L;
+		boolean expired = false;
+		while (myInFlightCount > 0 &&
+				now - myInFlightTimes[myInFlightFirst] >= timeout)
+			{
+			myInFlightFirst = (myInFlightFirst + 1) % myFlowWindow;
+			-- myInFlightCount;
+			expired = true;
+			}
+		if (expired)
+			{
+			cutWindow (now);
+			}
+		}
+
+	/**
+	 * Halve the congestion window, unless it was already cut within the last
+	 * round trip. Assumes the state lock is held.
+	 */
+	private void cutWindow
+		(long now)
+		{
+		if (now >= myNextCut)
+			{
+			myCongestionWindow = Math.max (myCongestionWindow / 2.0, 1.0);
+			mySlowStartThreshold = myCongestionWindow;
+			myNextCut = now + mySmoothedRtt;
+			}
+		}
+
+	/**
+	 * Top up the token bucket. Tokens accrue at <TT>PACING_GAIN</TT> times
+	 * one congestion window per smoothed round trip time, up to a quarter of
+	 * the congestion window (at least one token). Until a round trip time has
+	 * been measured, the bucket is always full. Assumes the state lock is
+	 * held.
+	 */
+	private void refillTokens
+		(long now)
+		{
+		double depth = Math.max (myCongestionWindow / 4.0, 1.0);
+		if (mySmoothedRtt == 0L)
+			{
+			myTokens = depth;
+			}
+		else
+			{
+			myTokens =
+				Math.min
+					(myTokens +
+						(now - myTokenTime) * PACING_GAIN * myCongestionWindow /
+							mySmoothedRtt,
+					 depth);
+			}
+		myTokenTime = now;
+		}
+
+	/**
+	 * Returns the given packet's header as a long.
+	 */
+	private static long headerOf
+		(Packet thePacket)
+		{
+		return
+			((long) thePacket.getMessageID() << 32) |
+			(thePacket.getLastPacketAndFragmentNumber() & 0xFFFFFFFFL);
+		}
+
 	/**
 	 * Process a flow control timeout.
 	 */
@@ -0,0 +1,190 @@
+//******************************************************************************
+//
+// File:    LoopbackChannel.java
+// Package: edu.rit.m2mp
+// Unit:    Class edu.rit.m2mp.LoopbackChannel
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.util.ArrayList;
+
+/**
+ * Class LoopbackChannel provides an M2MP {@link Channel </CODE>Channel<CODE>}
+ * implementation that connects the M2MP Layers in one process to each other
+ * without using the network. Every packet transmitted on any loopback channel
+ * is received by every loopback channel in the process, including the one that
+ * transmitted it, just as a multicast socket with loopback enabled would do.
+ * Packets are never lost, duplicated, or reordered.
+ * <P>
+ * A loopback channel is intended for benchmarks and tests that need a real
+ * M2MP Layer but do not want the network's speed, losses, or other traffic to
+ * show up in the results. To use it, configure the M2MP Layer with
+ * <TT>edu.rit.m2mp.daemon.port</TT> = 0 and
+ * <TT>edu.rit.m2mp.channel.class</TT> = <TT>edu.rit.m2mp.LoopbackChannel</TT>.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class LoopbackChannel
+	extends Channel
+	{
+
+// Hidden data members.
+
+	// All the loopback channels in this process.
+	private static ArrayList theChannels = new ArrayList();
+
+	// FIFO queue of packets received but not yet returned by receivePacket().
+	private Packet myFirstPacket;
+	private Packet myLastPacket;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new loopback channel. It receives the packets transmitted on
+	 * all loopback channels in this process from now on.
+	 *
+	 * @param  thePacketPool  Packet pool.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>thePacketPool</TT> is null.
+	 */
+	public LoopbackChannel
+		(PacketPool thePacketPool)
+		{
+		super (thePacketPool);
+		synchronized (theChannels)
+			{
+			theChannels.add (this);
+			}
+		}
+
+// Exported operations.
+
+	/**
+	 * Receive a packet from this channel. This method blocks until a packet
+	 * has been transmitted on some loopback channel in this process.
+	 *
+	 * @return  Packet that was received.
+	 *
+	 * @exception  IOException
+	 *     Thrown if the calling thread was interrupted while waiting.
+	 */
+	public synchronized Packet receivePacket()
+		throws IOException
+		{
+		try
+			{
+			while (myFirstPacket == null)
+				{
+				wait();
+				}
+			}
+		catch (InterruptedException exc)
+			{
+			IOException exc2 =
+				new InterruptedIOException
+					("edu.rit.m2mp.LoopbackChannel.receivePacket() interrupted");
+			exc2.initCause (exc);
+			throw exc2;
+			}
+
+		Packet packet = myFirstPacket;
+		myFirstPacket = packet.getNext();
+		if (myFirstPacket == null)
+			{
+			myLastPacket = null;
+			}
+		packet.setNext (null);
+		return packet;
+		}
+
+	/**
+	 * Transmit the given packet on this channel. A copy of the packet is put
+	 * into the queue of every loopback channel in this process. This method
+	 * does not block.
+	 *
+	 * @param  thePacket  Packet to be transmitted.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public void transmitPacket
+		(Packet thePacket)
+		throws IOException
+		{
+		Object[] channels;
+		synchronized (theChannels)
+			{
+			channels = theChannels.toArray();
+			}
+		for (int i = 0; i < channels.length; ++ i)
+			{
+			((LoopbackChannel) channels[i]).enqueue (thePacket);
+			}
+		}
+
+	/**
+	 * Close this loopback channel. It no longer receives packets transmitted
+	 * on the other loopback channels.
+	 */
+	public void close()
+		{
+		synchronized (theChannels)
+			{
+			theChannels.remove (this);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Put a copy of the given packet at the end of this channel's queue.
+	 *
+	 * @param  thePacket  Packet.
+	 */
+	private synchronized void enqueue
+		(Packet thePacket)
+		{
+		Packet packet = myPacketPool.allocate();
+		packet.copy (thePacket);
+		packet.setNext (null);
+		if (myFirstPacket == null)
+			{
+			myFirstPacket = packet;
+			}
+		else
+			{
+			myLastPacket.setNext (packet);
+			}
+		myLastPacket = packet;
+		notifyAll();
+		}
+
+	}
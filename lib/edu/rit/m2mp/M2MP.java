@@ -44,7 +44,8 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Class M2MP provides the Many-to-Many Protocol (M2MP) Layer.
@@ -108,13 +109,57 @@ import java.util.HashMap;
  * words, an instance of the M2MP Layer broadcasts outgoing messages everywhere,
  * except to itself.
  * </OL>
+ * <P>
+ * If the <TT>edu.rit.m2mp.repair</TT> property gives a retransmit buffer size,
+ * the M2MP Layer also <B>repairs lost packets.</B> A receiving M2MP Layer
+ * holds on to fragments that arrive ahead of a gap, and when a message's next
+ * fragment is overdue it broadcasts a NACK packet asking for the missing ones,
+ * again each NACK interval until the message timeout. A receiving M2MP Layer
+ * that gets later fragments of a message before its first fragment, which it
+ * always keeps a few of in case the first fragment was merely overtaken,
+ * asks for the first fragment. The sending M2MP Layer answers
+ * from its retransmit buffer. The
+ * packet redundancy then starts at 1. From the fragments of incoming messages
+ * that go missing, the M2MP Layer estimates how many packets the network
+ * loses, and uses the smallest redundancy, up to the
+ * <TT>edu.rit.m2mp.redundancy</TT> value, at which fewer than about one
+ * packet in a thousand would be lost in every copy. This matters most for
+ * one-packet messages, which no receiver can tell it has missed.
+ * <P>
+ * If the <TT>edu.rit.m2mp.fec</TT> property gives a group size, the M2MP Layer
+ * also sends a <B>parity packet</B> after each group of that many data packets
+ * of an outgoing message, so a receiver can rebuild one lost data packet per
+ * group on the spot instead of waiting for a repair or timing out. Every M2MP
+ * Layer rebuilds lost data packets from the parity packets it receives.
+ * <P>
+ * Incoming packets are normally received and processed by one thread. With a
+ * channel that several threads can receive from at once, such as {@link
+ * edu.rit.m2mp.udp.NioUDPMulticastChannel </CODE>NioUDPMulticastChannel<CODE>},
+ * the <TT>edu.rit.m2mp.receivers</TT> property can ask for more.
  *
  * @author  Alan Kaminsky
- * @version 05-Nov-2004
+ * @version 17-Oct-2026
  */
 public class M2MP
 	{
 
+// Hidden constants.
+
+	// Number of recently seen message IDs to remember.
+	private static final int RECENT_MESSAGES = 1024;
+
+	// Number of packets to keep for messages whose first packet hasn't
+	// arrived. Enough for a sender's whole flow control window to overtake
+	// the first packet.
+	private static final int MAX_ORPHANS = 64;
+
+	// Number of incoming fragments between adjustments of the packet
+	// redundancy.
+	private static final int REDUNDANCY_WINDOW = 32;
+
+	// Fraction of packets it is acceptable to lose in every copy.
+	private static final double TARGET_LOSS = 0.001;
+
 // Hidden data members.
 
 	// Debug levels.
@@ -128,6 +173,48 @@ public class M2MP
 	// Packet redundancy.
 	private int myRedundancy;
 
+	// Packet redundancy in use. Without repair this is always myRedundancy;
+	// with repair it follows the estimated packet loss rate.
+	private int myCurrentRedundancy;
+
+	// Number of data packets per parity packet, or 0 for no parity packets.
+	private int myParityGroup;
+
+	// Retransmit buffer, or null if not repairing lost packets.
+	private RetransmitBuffer myRetransmitBuffer;
+
+	// NACK interval (msec).
+	private int myNackInterval;
+
+	// Mapping from message ID (type Integer) to a flag (type Boolean) for
+	// recently seen messages not in progress, oldest first. True means we
+	// NACKed the message's first fragment; false means the message was
+	// already accepted, rejected, or sent by us.
+	private LinkedHashMap myRecentMessages;
+
+	// Incoming fragments received, and found missing, since the packet
+	// redundancy was last adjusted, and the smoothed estimate of the fraction
+	// of packets the network loses.
+	private int myReceivedCount;
+	private int myLostCount;
+	private double myLossRate;
+	private Object myRedundancyLock = new Object();
+
+	// Queue of packets for messages whose first packet hasn't arrived, oldest
+	// first. The lock is also held while a message's first packet is set up,
+	// so a later packet of the message processed by another receiver thread
+	// either gets queued before the message takes its orphans, or finds the
+	// message.
+	private Packet myFirstOrphan;
+	private Packet myLastOrphan;
+	private int myOrphanCount;
+	private Object myOrphanLock = new Object();
+
+	// Queue of NACK and repair packets waiting for the repair thread.
+	private Packet myFirstRepairPacket;
+	private Packet myLastRepairPacket;
+	private Object myRepairLock = new Object();
+
 	// Packet pool.
 	private PacketPool myPacketPool;
 
@@ -137,9 +224,8 @@ public class M2MP
 	// Message router.
 	private MessageRouter myMessageRouter;
 
-	// Mapping from message ID (type Integer) to message input stream (type
-	// MessageInputStream).
-	private HashMap myIncomingMessageMap;
+	// Mapping from message ID to message input stream.
+	private MessageMap myIncomingMessageMap;
 
 	// Queue of incoming M2MP messages waiting to be accepted by the client.
 	private MessageQueue myIncomingMessageQueue;
@@ -148,8 +234,11 @@ public class M2MP
 	// network.
 	private Channel myChannel;
 
-	// Receiver thread.
-	private ReceiverThread myReceiverThread;
+	// Receiver threads.
+	private ReceiverThread[] myReceiverThreads;
+
+	// Repair thread, or null if not repairing lost packets.
+	private RepairThread myRepairThread;
 
 // Hidden helper classes.
 
@@ -174,6 +263,30 @@ public class M2MP
 			}
 		}
 
+	// The repair thread sends NACK and repair packets. They can't be sent by
+	// the receiver thread, which must stay free to receive the flow control
+	// loopback of each packet sent.
+	private class RepairThread
+		extends Thread
+		{
+		public void run()
+			{
+			for (;;)
+				{
+				try
+					{
+					sendRepairPacket();
+					}
+				catch (Throwable exc)
+					{
+					reportException
+						("edu.rit.m2mp.M2MP.RepairThread: Uncaught exception",
+						 exc);
+					}
+				}
+			}
+		}
+
 // Exported constructors.
 
 	/**
@@ -199,9 +312,27 @@ public class M2MP
 
 		// Set up packet redundancy.
 		myRedundancy = M2MPProperties.getRedundancy();
+		myCurrentRedundancy = myRedundancy;
+
+		// Set up packet repair and parity packets if enabled.
+		int repair = M2MPProperties.getRepair();
+		myParityGroup = M2MPProperties.getFec();
 
 		// Set up packet pool.
 		myPacketPool = new PacketPool();
+		if (repair > 0)
+			{
+			myCurrentRedundancy = 1;
+			myNackInterval =
+				Math.max
+					(Math.min
+						(2 * M2MPProperties.getFlowTimeout(),
+						 myMessageTimeout / 2),
+					 1);
+			myRetransmitBuffer =
+				new RetransmitBuffer
+					(myPacketPool, repair, myNackInterval / 2);
+			}
 
 		// Set up pseudorandom number generator.
 		myPrng = new MuH1Random();
@@ -212,8 +343,19 @@ public class M2MP
 		// Set up message router.
 		myMessageRouter = new MessageRouter (debugMessageFilters);
 
+		// Set up recently seen message IDs.
+		myRecentMessages =
+			new LinkedHashMap()
+				{
+				protected boolean removeEldestEntry
+					(Map.Entry eldest)
+					{
+					return size() > RECENT_MESSAGES;
+					}
+				};
+
 		// Set up incoming message map.
-		myIncomingMessageMap = new HashMap();
+		myIncomingMessageMap = new MessageMap();
 
 		// Set up incoming message queue.
 		myIncomingMessageQueue = new MessageQueue();
@@ -258,10 +400,28 @@ public class M2MP
 				}
 			}
 
-		// Set up receiver thread.
-		myReceiverThread = new ReceiverThread();
-		myReceiverThread.setDaemon (true);
-		myReceiverThread.start();
+		// Set up receiver threads. Use more than one only if the channel
+		// benefits.
+		int receivers =
+			myChannel.receivesConcurrently() ?
+				M2MPProperties.getReceivers() :
+				1;
+
+		myReceiverThreads = new ReceiverThread [receivers];
+		for (int i = 0; i < receivers; ++ i)
+			{
+			myReceiverThreads[i] = new ReceiverThread();
+			myReceiverThreads[i].setDaemon (true);
+			myReceiverThreads[i].start();
+			}
+
+		// Set up repair thread if enabled.
+		if (myRetransmitBuffer != null)
+			{
+			myRepairThread = new RepairThread();
+			myRepairThread.setDaemon (true);
+			myRepairThread.start();
+			}
 		}
 
 // Exported operations.
@@ -279,7 +439,8 @@ public class M2MP
 		{
 		return
 			new MessageOutputStream
-				(this, myPacketPool, myPrng, myRedundancy);
+				(this, myPacketPool, myPrng, myCurrentRedundancy,
+				 myParityGroup);
 		}
 
 	/**
@@ -419,17 +580,25 @@ public class M2MP
 	/**
 	 * Send the given M2MP packet as part of an outgoing M2MP message.
 	 *
-	 * @param  thePacket  Packet.
+	 * @param  thePacket      Packet.
+	 * @param  theRedundancy  Number of times to send the packet.
 	 *
 	 * @exception  IOException
 	 *     Thrown if an I/O error occurred.
 	 */
 	void sendOutgoingPacket
-		(Packet thePacket)
+		(Packet thePacket,
+		 int theRedundancy)
 		throws IOException
 		{
+		// Never NACK or accept our own message if it comes back.
+		if (thePacket.getFragmentNumber() == 0)
+			{
+			rememberMessage (thePacket.getMessageID(), Boolean.FALSE);
+			}
+
 		// Send the packet one or more times, depending on redundancy.
-		for (int i = 0; i < myRedundancy; ++ i)
+		for (int i = 0; i < theRedundancy; ++ i)
 			{
 			// Debug printout.
 			reportPacket ("Outgoing packet sent", thePacket);
@@ -437,6 +606,73 @@ public class M2MP
 			// Send packet.
 			myChannel.transmitPacket (thePacket);
 			}
+
+		// Keep a copy in case a receiver NACKs it. Receivers never NACK parity
+		// packets.
+		if (myRetransmitBuffer != null && ! thePacket.isParity())
+			{
+			myRetransmitBuffer.add (thePacket);
+			}
+		}
+
+	/**
+	 * Broadcast a NACK packet asking for fragments <TT>theFirst</TT> through
+	 * <TT>theLast-1</TT> of the given incoming message.
+	 *
+	 * @param  theMessageID  Message ID.
+	 * @param  theFirst      First fragment number.
+	 * @param  theLast       One past the last fragment number, or -1 for all
+	 *                       the rest of the message.
+	 */
+	void sendNack
+		(int theMessageID,
+		 int theFirst,
+		 int theLast)
+		{
+		Packet thePacket = myPacketPool.allocate();
+		thePacket.setNack (theMessageID, theFirst, theLast);
+		thePacket.setNext (null);
+		putRepairPackets (thePacket);
+		}
+
+	/**
+	 * Count incoming fragments received and found missing, and adjust the
+	 * packet redundancy at the end of each window.
+	 *
+	 * @param  theReceived  Number of fragments received.
+	 * @param  theLost      Number of fragments found missing.
+	 */
+	void countFragments
+		(int theReceived,
+		 int theLost)
+		{
+		synchronized (myRedundancyLock)
+			{
+			myReceivedCount += theReceived;
+			myLostCount += theLost;
+			int total = myReceivedCount + myLostCount;
+			if (total >= REDUNDANCY_WINDOW)
+				{
+				// A fragment goes missing only if every copy was lost; assume
+				// the other senders use the same redundancy we do.
+				double missing = (double) myLostCount / total;
+				myLossRate =
+					0.75 * myLossRate +
+					0.25 * Math.pow (missing, 1.0 / myCurrentRedundancy);
+
+				// Use the smallest redundancy that meets the target.
+				int r = 1;
+				double lossInEveryCopy = myLossRate;
+				while (r < myRedundancy && lossInEveryCopy > TARGET_LOSS)
+					{
+					++ r;
+					lossInEveryCopy *= myLossRate;
+					}
+				myCurrentRedundancy = r;
+				myReceivedCount = 0;
+				myLostCount = 0;
+				}
+			}
 		}
 
 	/**
@@ -453,11 +689,13 @@ public class M2MP
 
 		// Look up message ID in the incoming message map.
 		int msgid = thePacket.getMessageID();
-		Integer key = new Integer (msgid);
-		MessageInputStream msg;
-		synchronized (myIncomingMessageMap)
+		MessageInputStream msg = myIncomingMessageMap.get (msgid);
+
+		// Handle a NACK packet.
+		if (thePacket.isNack())
 			{
-			msg = (MessageInputStream) myIncomingMessageMap.get (key);
+			receiveNack (thePacket, msg);
+			return;
 			}
 
 		// Get fragment number.
@@ -467,23 +705,7 @@ public class M2MP
 		if (fragnum == 0 && msg == null)
 			{
 			// First packet of a message and message ID not in progress.
-			// Determine if we will accept this message.
-			if (myMessageRouter.acceptMessage (thePacket))
-				{
-				// We will accept it. Set up a new incoming message.
-				msg = new MessageInputStream
-					(/*theMap           */ myIncomingMessageMap,
-					 /*theKey           */ key,
-					 /*thePacketPool    */ myPacketPool,
-					 /*theMessageTimeout*/ myMessageTimeout);
-				myIncomingMessageQueue.put (msg);
-				msg.addPacket (thePacket);
-				}
-			else
-				{
-				// We won't accept it.
-				myPacketPool.deallocate (thePacket);
-				}
+			receiveFirstPacket (thePacket);
 			}
 		else if (fragnum > 0 && msg != null)
 			{
@@ -491,11 +713,287 @@ public class M2MP
 			// Continue the message.
 			msg.addPacket (thePacket);
 			}
+		else if (fragnum > 0 && recentMessage (msgid) != Boolean.FALSE)
+			{
+			// Subsequent packet of a message whose first packet, which tells
+			// whether we want the message, hasn't arrived. Keep this packet
+			// until it does, and if we are repairing lost packets, the first
+			// time, ask for the first packet.
+			if (putOrphan (thePacket) && myRetransmitBuffer != null &&
+					recentMessage (msgid) == null)
+				{
+				rememberMessage (msgid, Boolean.TRUE);
+				sendNack (msgid, 0, 1);
+				}
+			}
 		else
 			{
 			// First packet of a message but message ID already in progress, or
-			// subsequent packet of a message but message ID not in progress.
-			// Don't send this packet.
+			// subsequent packet of a message already accepted, rejected, or
+			// sent by us but no longer in progress. Don't send this packet.
+			myPacketPool.deallocate (thePacket);
+			}
+		}
+
+	/**
+	 * Process the first packet of an incoming message whose message ID was not
+	 * in progress. Another receiver thread may have set up the message
+	 * meanwhile, from another copy of the packet; if so, discard the packet.
+	 */
+	private void receiveFirstPacket
+		(Packet thePacket)
+		{
+		int msgid = thePacket.getMessageID();
+		MessageInputStream msg = null;
+		Packet orphans = null;
+		boolean created = false;
+		synchronized (myOrphanLock)
+			{
+			if (myIncomingMessageMap.get (msgid) == null &&
+					recentMessage (msgid) != Boolean.FALSE)
+				{
+				// Determine if we will accept this message.
+				if (myMessageRouter.acceptMessage (thePacket))
+					{
+					// We will accept it. Set up a new incoming message.
+					msg = new MessageInputStream
+						(/*theMap           */ myIncomingMessageMap,
+						 /*theMessageID     */ msgid,
+						 /*thePacketPool    */ myPacketPool,
+						 /*theMessageTimeout*/ myMessageTimeout,
+						 /*theLayer         */
+							myRetransmitBuffer == null ? null : this,
+						 /*theNackInterval  */ myNackInterval);
+					created = true;
+					}
+				rememberMessage (msgid, Boolean.FALSE);
+				orphans = takeOrphans (msgid);
+				}
+			}
+
+		if (created)
+			{
+			myIncomingMessageQueue.put (msg);
+			msg.addPacket (thePacket);
+			}
+		else
+			{
+			// We won't accept it, or it is already in progress.
+			myPacketPool.deallocate (thePacket);
+			}
+
+		// Hand over or discard the packets that arrived ahead of this one.
+		while (orphans != null)
+			{
+			Packet next = orphans.getNext();
+			orphans.setNext (null);
+			if (msg == null)
+				{
+				myPacketPool.deallocate (orphans);
+				}
+			else
+				{
+				msg.addPacket (orphans);
+				}
+			orphans = next;
+			}
+		}
+
+	/**
+	 * Process an incoming NACK packet. If the NACK is for one of our own
+	 * messages, queue the packets it asks for to be sent again. If it is for a
+	 * message we are receiving too, tell the message input stream, so it does
+	 * not NACK the same fragments again right away.
+	 */
+	private void receiveNack
+		(Packet thePacket,
+		 MessageInputStream msg)
+		{
+		if (myRetransmitBuffer != null)
+			{
+			Packet repairs = myRetransmitBuffer.getRepairs (thePacket);
+			if (repairs != null)
+				{
+				putRepairPackets (repairs);
+				}
+			if (msg != null)
+				{
+				msg.nackSeen
+					(thePacket.getNackFirst(), thePacket.getNackLast());
+				}
+			}
+		myPacketPool.deallocate (thePacket);
+		}
+
+	/**
+	 * Returns the flag for the given recently seen message ID, or null if the
+	 * message ID was not seen recently.
+	 */
+	private Boolean recentMessage
+		(int msgid)
+		{
+		synchronized (myRecentMessages)
+			{
+			return (Boolean) myRecentMessages.get (new Integer (msgid));
+			}
+		}
+
+	/**
+	 * Record the flag for the given recently seen message ID.
+	 */
+	private void rememberMessage
+		(int msgid,
+		 Boolean flag)
+		{
+		synchronized (myRecentMessages)
+			{
+			myRecentMessages.put (new Integer (msgid), flag);
+			}
+		}
+
+	/**
+	 * Add a packet to the queue of packets for messages whose first packet
+	 * hasn't arrived, dropping the oldest if the queue is full. However, if
+	 * another receiver thread has set up the packet's message meanwhile, add
+	 * the packet to the message instead. Returns true if the packet was
+	 * queued, false otherwise.
+	 */
+	private boolean putOrphan
+		(Packet thePacket)
+		{
+		MessageInputStream msg;
+		synchronized (myOrphanLock)
+			{
+			msg = myIncomingMessageMap.get (thePacket.getMessageID());
+			if (msg == null)
+				{
+				if (myOrphanCount == MAX_ORPHANS)
+					{
+					Packet oldest = myFirstOrphan;
+					myFirstOrphan = oldest.getNext();
+					myPacketPool.deallocate (oldest);
+					-- myOrphanCount;
+					}
+				thePacket.setNext (null);
+				if (myFirstOrphan == null)
+					{
+					myFirstOrphan = thePacket;
+					}
+				else
+					{
+					myLastOrphan.setNext (thePacket);
+					}
+				myLastOrphan = thePacket;
+				++ myOrphanCount;
+				return true;
+				}
+			}
+		msg.addPacket (thePacket);
+		return false;
+		}
+
+	/**
+	 * Take the packets for the given message out of the queue of packets for
+	 * messages whose first packet hasn't arrived. Assumes the queue is locked.
+	 * Returns the packets linked together with <TT>setNext()</TT>, oldest
+	 * first, or null if there are none.
+	 */
+	private Packet takeOrphans
+		(int msgid)
+		{
+		Packet first = null;
+		Packet last = null;
+		Packet prev = null;
+		Packet packet = myFirstOrphan;
+		while (packet != null)
+			{
+			Packet next = packet.getNext();
+			if (packet.getMessageID() == msgid)
+				{
+				if (prev == null)
+					{
+					myFirstOrphan = next;
+					}
+				else
+					{
+					prev.setNext (next);
+					}
+				if (myLastOrphan == packet)
+					{
+					myLastOrphan = prev;
+					}
+				-- myOrphanCount;
+				packet.setNext (null);
+				if (first == null)
+					{
+					first = packet;
+					}
+				else
+					{
+					last.setNext (packet);
+					}
+				last = packet;
+				}
+			else
+				{
+				prev = packet;
+				}
+			packet = next;
+			}
+		return first;
+		}
+
+	/**
+	 * Append the given list of packets to the repair thread's queue.
+	 */
+	private void putRepairPackets
+		(Packet thePackets)
+		{
+		Packet last = thePackets;
+		while (last.getNext() != null) last = last.getNext();
+		synchronized (myRepairLock)
+			{
+			if (myFirstRepairPacket == null)
+				{
+				myFirstRepairPacket = thePackets;
+				}
+			else
+				{
+				myLastRepairPacket.setNext (thePackets);
+				}
+			myLastRepairPacket = last;
+			myRepairLock.notifyAll();
+			}
+		}
+
+	/**
+	 * Take the next packet off the repair thread's queue and send it.
+	 */
+	private void sendRepairPacket()
+		throws IOException, InterruptedException
+		{
+		Packet thePacket;
+		synchronized (myRepairLock)
+			{
+			while (myFirstRepairPacket == null)
+				{
+				myRepairLock.wait();
+				}
+			thePacket = myFirstRepairPacket;
+			myFirstRepairPacket = thePacket.getNext();
+			if (myFirstRepairPacket == null)
+				{
+				myLastRepairPacket = null;
+				}
+			thePacket.setNext (null);
+			}
+		try
+			{
+			reportPacket ("Repair packet sent", thePacket);
+			myChannel.transmitPacket (thePacket);
+			}
+		finally
+			{
 			myPacketPool.deallocate (thePacket);
 			}
 		}
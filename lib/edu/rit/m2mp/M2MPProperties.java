@@ -72,6 +72,19 @@ import java.util.Properties;
  * Processing</A>" for further information.
  * <BR>&nbsp;
  * <LI>
+ * <TT><B>edu.rit.m2mp.flowwindow</B></TT>
+ * <BR>
+ * The M2MP flow control window size in packets. It must be a decimal integer
+ * in the range 0 through 256. If it is 0, or if the property is not defined,
+ * the M2MP Layer waits for each outgoing packet to be looped back before
+ * sending the next one, as described above. If it is greater than 0, up to
+ * that many outgoing packets may be waiting for their loopbacks at once; the
+ * M2MP Layer lets out fewer while the loopbacks show the packets are queuing
+ * up, and paces them over the loopback round trip time (see class {@link
+ * FlowController </CODE>FlowController<CODE>}). The flow control timeout then
+ * applies to each packet separately. This property is optional.
+ * <BR>&nbsp;
+ * <LI>
  * <TT><B>edu.rit.m2mp.redundancy</B></TT>
  * <BR>
  * The M2MP packet redundancy. It must be a decimal integer greater than 0. To
@@ -81,6 +94,45 @@ import java.util.Properties;
  * for further information.
  * <BR>&nbsp;
  * <LI>
+ * <TT><B>edu.rit.m2mp.repair</B></TT>
+ * <BR>
+ * The M2MP retransmit buffer size in packets. It must be a decimal integer
+ * greater than or equal to 0. If it is 0, or if the property is not defined,
+ * the M2MP Layer relies on packet redundancy alone, as described above. If it
+ * is greater than 0, the M2MP Layer keeps copies of that many of the most
+ * recently sent packets. A receiving M2MP Layer that notices a gap in a
+ * message's fragment numbers, or that waits too long for a message's next
+ * fragment, broadcasts a negative acknowledgment (NACK) packet naming the
+ * missing fragments, and the sending M2MP Layer sends them again from its
+ * retransmit buffer. The M2MP Layer then starts out sending each packet only
+ * once, and raises the redundancy toward <TT>edu.rit.m2mp.redundancy</TT>
+ * only while the rate of NACKs for its own packets shows the network is
+ * losing them. This property is optional too.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mp.fec</B></TT>
+ * <BR>
+ * The M2MP forward error correction group size. It must be a decimal integer
+ * in the range 0 through 32. If it is 0, or if the property is not defined,
+ * the M2MP Layer sends no parity packets. If it is greater than 0, then after
+ * every that many data packets of an outgoing message, and after the last
+ * data packet, the M2MP Layer sends a parity packet from which a receiver can
+ * rebuild any one lost data packet of the group without waiting for it to be
+ * sent again. Every M2MP Layer uses parity packets it receives, whatever this
+ * property is set to. This property is optional too.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mp.receivers</B></TT>
+ * <BR>
+ * The number of M2MP Layer threads that receive incoming packets from the
+ * channel. It must be a decimal integer in the range 1 through 16. It matters
+ * only with a channel that several threads can usefully receive from at once,
+ * such as {@link edu.rit.m2mp.udp.NioUDPMulticastChannel
+ * </CODE>NioUDPMulticastChannel<CODE>}; with any other channel, or if the
+ * property is not defined, one thread receives all incoming packets. This
+ * property is optional too.
+ * <BR>&nbsp;
+ * <LI>
  * <TT><B>edu.rit.m2mp.debug.ReceiverThread</B></TT>
  * <BR>
  * The ReceiverThread debug level telling which, if any, debugging messages the
@@ -131,6 +183,31 @@ import java.util.Properties;
  * property.
  * <BR>&nbsp;
  * <LI>
+ * <TT><B>edu.rit.m2mp.daemon.queue</B></TT>
+ * <BR>
+ * The number of outgoing packets the M2MP Daemon process queues for each
+ * client process, and for the external network. It must be a decimal integer
+ * in the range 1 through 65535. If it is not defined, 256 is used. When a
+ * queue is full, further packets for it are dropped.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mp.daemon.stall</B></TT>
+ * <BR>
+ * How long, in milliseconds, a client process's queue in the M2MP Daemon
+ * process may stay full before the M2MP Daemon process disconnects the client
+ * process. It must be a decimal integer greater than or equal to 0. If it is
+ * 0, slow client processes are never disconnected, only have packets dropped.
+ * If it is not defined, 5000 is used.
+ * <BR>&nbsp;
+ * <LI>
+ * <TT><B>edu.rit.m2mp.daemon.stats</B></TT>
+ * <BR>
+ * How often, in seconds, the M2MP Daemon process prints each queue's depth,
+ * peak depth, and packets sent and dropped on the standard error stream. It
+ * must be a decimal integer greater than or equal to 0. If it is 0, or if the
+ * property is not defined, no statistics are printed.
+ * <BR>&nbsp;
+ * <LI>
  * <TT><B>edu.rit.m2mp.channel.class</B></TT>
  * <BR>
  * The fully-qualified class name for the channel the M2MP Layer will use to
@@ -181,8 +258,12 @@ import java.util.Properties;
  * java.util.Properties </CODE>java.util.Properties<CODE>}.
  * <P>
  * To run the M2MP Layer, <I>all</I> the properties listed above (other than
- * <TT>edu.rit.m2mp.properties</TT>) <I>must</I> be defined, either as system
- * properties, or in the M2MP properties file. There are no default values.
+ * <TT>edu.rit.m2mp.properties</TT>, <TT>edu.rit.m2mp.flowwindow</TT>,
+ * <TT>edu.rit.m2mp.repair</TT>, <TT>edu.rit.m2mp.fec</TT>,
+ * <TT>edu.rit.m2mp.receivers</TT>, and the <TT>edu.rit.m2mp.daemon</TT>
+ * properties other than <TT>edu.rit.m2mp.daemon.port</TT>) <I>must</I> be
+ * defined, either as system properties, or in the M2MP properties file. There
+ * are no default values for them.
  * Also, all the device properties must be defined, either as system properties,
  * or in the device properties file; see class {@link
  * edu.rit.device.DeviceProperties </CODE>DeviceProperties<CODE>} for further
@@ -205,8 +286,20 @@ import java.util.Properties;
  * # Flow control timeout, milliseconds (decimal integer &gt; 0)
  * edu.rit.m2mp.flowtimeout = 100
  *
+ * # Flow control window, packets (decimal integer 0 .. 256, 0 = stop and wait)
+ * edu.rit.m2mp.flowwindow = 0
+ *
  * # Packet redundancy (decimal integer &gt; 0)
  * edu.rit.m2mp.redundancy = 2
+ *
+ * # Retransmit buffer size, packets (decimal integer &gt;= 0, 0 = no repair)
+ * edu.rit.m2mp.repair = 0
+ *
+ * # Data packets per parity packet (decimal integer 0 .. 32, 0 = no parity)
+ * edu.rit.m2mp.fec = 0
+ *
+ * # Receiver threads (decimal integer 1 .. 16, used only by NIO channels)
+ * edu.rit.m2mp.receivers = 1
  * 
  * # ReceiverThread debug level (integer)
  * # 0 = Don't print
@@ -228,6 +321,18 @@ import java.util.Properties;
  * 
  * # M2MP Daemon process's port number (0 if no M2MP Daemon process)
  * edu.rit.m2mp.daemon.port = 5678
+ *
+ * # M2MP Daemon process's queue size per client, packets (decimal integer
+ * # 1 .. 65535)
+ * edu.rit.m2mp.daemon.queue = 256
+ *
+ * # Time a client's queue may stay full before the client is disconnected,
+ * # milliseconds (decimal integer &gt;= 0, 0 = never)
+ * edu.rit.m2mp.daemon.stall = 5000
+ *
+ * # Interval between queue statistics reports, seconds (decimal integer
+ * # &gt;= 0, 0 = none)
+ * edu.rit.m2mp.daemon.stats = 0
  * 
  * # M2MP channel implementation class name
  * edu.rit.m2mp.channel.class = edu.rit.m2mp.udp.UDPMulticastChannel
@@ -238,7 +343,7 @@ import java.util.Properties;
  * </TABLE>
  *
  * @author  Alan Kaminsky
- * @version 01-Nov-2004
+ * @version 17-Oct-2026
  */
 public class M2MPProperties
 	{
@@ -297,6 +402,37 @@ public class M2MPProperties
 			 "is not a decimal integer");
 		}
 
+	/**
+	 * Returns the M2MP flow control window size, property
+	 * <TT>edu.rit.m2mp.flowwindow</TT>. If the property is not defined, 0 is
+	 * returned. The same value is returned if the M2MP properties file cannot
+	 * be found or cannot be read.
+	 *
+	 * @return  Flow control window size (packets), or 0 for stop and wait.
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer in the range 0 through 256.
+	 */
+	public static int getFlowWindow()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.flowwindow", 10, 0, 256,
+				 "is not in the range 0 through 256",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 0;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 0;
+			}
+		}
+
 	/**
 	 * Returns the M2MP packet redundancy, property
 	 * <TT>edu.rit.m2mp.redundancy</TT>.
@@ -318,6 +454,100 @@ public class M2MPProperties
 			 "is not a decimal integer");
 		}
 
+	/**
+	 * Returns the M2MP retransmit buffer size, property
+	 * <TT>edu.rit.m2mp.repair</TT>. If the property is not defined, 0 is
+	 * returned. The same value is returned if the M2MP properties file cannot
+	 * be found or cannot be read.
+	 *
+	 * @return  Retransmit buffer size (packets), or 0 for no repair.
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer greater than or equal to zero.
+	 */
+	public static int getRepair()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.repair", 10, 0, Integer.MAX_VALUE,
+				 "is less than zero",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 0;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 0;
+			}
+		}
+
+	/**
+	 * Returns the M2MP forward error correction group size, property
+	 * <TT>edu.rit.m2mp.fec</TT>. If the property is not defined, 0 is returned.
+	 * The same value is returned if the M2MP properties file cannot be found or
+	 * cannot be read.
+	 *
+	 * @return  Number of data packets per parity packet, or 0 for no parity
+	 *          packets.
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer in the range 0 through 32.
+	 */
+	public static int getFec()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.fec", 10, 0, Packet.MAXIMUM_PARITY_GROUP,
+				 "is not in the range 0 through 32",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 0;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 0;
+			}
+		}
+
+	/**
+	 * Returns the number of M2MP receiver threads, property
+	 * <TT>edu.rit.m2mp.receivers</TT>. If the property is not defined, 1 is
+	 * returned. The same value is returned if the M2MP properties file cannot
+	 * be found or cannot be read.
+	 *
+	 * @return  Number of receiver threads.
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer in the range 1 through 16.
+	 */
+	public static int getReceivers()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.receivers", 10, 1, 16,
+				 "is not in the range 1 through 16",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 1;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 1;
+			}
+		}
+
 	/**
 	 * Returns the debug level for the ReceiverThread, property 
 	 * <TT>edu.rit.m2mp.debug.ReceiverThread</TT>.
@@ -404,6 +634,100 @@ public class M2MPProperties
 			 "is not a decimal integer");
 		}
 
+	/**
+	 * Returns the M2MP Daemon process's queue size, property
+	 * <TT>edu.rit.m2mp.daemon.queue</TT>. If the property is not defined, 256
+	 * is returned. The same value is returned if the M2MP properties file
+	 * cannot be found or cannot be read.
+	 *
+	 * @return  Queue size (packets).
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer in the range 1 through 65535.
+	 */
+	public static int getDaemonQueue()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.daemon.queue", 10, 1, 65535,
+				 "is not in the range 1 through 65535",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 256;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 256;
+			}
+		}
+
+	/**
+	 * Returns how long a client process's queue in the M2MP Daemon process may
+	 * stay full before the client process is disconnected, property
+	 * <TT>edu.rit.m2mp.daemon.stall</TT>. If the property is not defined, 5000
+	 * is returned. The same value is returned if the M2MP properties file
+	 * cannot be found or cannot be read.
+	 *
+	 * @return  Stall timeout (msec), or 0 for never.
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer greater than or equal to zero.
+	 */
+	public static int getDaemonStall()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.daemon.stall", 10, 0, Integer.MAX_VALUE,
+				 "is less than zero",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 5000;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 5000;
+			}
+		}
+
+	/**
+	 * Returns the M2MP Daemon process's statistics report interval, property
+	 * <TT>edu.rit.m2mp.daemon.stats</TT>. If the property is not defined, 0 is
+	 * returned. The same value is returned if the M2MP properties file cannot
+	 * be found or cannot be read.
+	 *
+	 * @return  Report interval (sec), or 0 for no reports.
+	 *
+	 * @exception  M2MPPropertyValueException
+	 *     (unchecked exception) Thrown if the property value is not a decimal
+	 *     integer greater than or equal to zero.
+	 */
+	public static int getDaemonStats()
+		{
+		try
+			{
+			return getIntProperty
+				("edu.rit.m2mp.daemon.stats", 10, 0, Integer.MAX_VALUE,
+				 "is less than zero",
+				 "is not a decimal integer");
+			}
+		catch (M2MPPropertyMissingException exc)
+			{
+			return 0;
+			}
+		catch (M2MPPropertyFileException exc)
+			{
+			return 0;
+			}
+		}
+
 	/**
 	 * Returns the M2MP channel implementation class name, property
 	 * <TT>edu.rit.m2mp.channel.class</TT>.
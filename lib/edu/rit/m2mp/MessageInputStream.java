@@ -33,17 +33,27 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.InputStream;
 
-import java.util.Map;
-
 /**
  * Class MessageInputStream provides an input stream for reading the contents
  * of an incoming Many-to-Many Protocol (M2MP) message. A message input stream
  * is not constructed directly. Rather, it is obtained by calling the
  * <TT>acceptIncomingMessage()</TT> method in class {@link M2MP
  * </CODE>M2MP<CODE>}.
+ * <P>
+ * A message input stream holds on to fragments that arrive ahead of the next
+ * one it needs. If the sender sends parity packets, the message input stream
+ * uses them to rebuild a lost fragment as soon as the rest of its group has
+ * arrived (see class {@link ParityDecoder </CODE>ParityDecoder<CODE>}).
+ * <P>
+ * If the M2MP Layer is repairing lost packets, then while the reader waits for
+ * the next fragment, the message input stream asks the M2MP Layer to NACK the
+ * missing fragments: after a quarter of the NACK interval if later
+ * fragments have already arrived (the missing ones were most likely lost, not
+ * just reordered), otherwise after a whole NACK interval; and again each such
+ * interval, until the message timeout.
  *
  * @author  Alan Kaminsky
- * @version 13-Sep-2004
+ * @version 17-Oct-2026
  */
 public class MessageInputStream
 	extends InputStream
@@ -51,11 +61,15 @@ public class MessageInputStream
 
 // Hidden data members.
 
-	private Map myMap;
-	private Integer myKey;
+	private MessageMap myMap;
+	private int myMessageID;
 	private PacketPool myPacketPool;
 	private int myMessageTimeout;
 
+	// M2MP Layer to send NACKs through, or null if not repairing lost packets.
+	private M2MP myLayer;
+	private int myNackInterval;
+
 	private int myState = WAITING_FOR_PACKET;
 		private static final int WAITING_FOR_PACKET = 0;
 		private static final int PACKET             = 1;
@@ -70,6 +84,19 @@ public class MessageInputStream
 	private Node myHead = null;
 	private Node myTail = null;
 
+	// Packets that arrived ahead of the next fragment number, in fragment
+	// number order.
+	private Node myHeld = null;
+	private int myHeldCount = 0;
+	private static final int MAX_HELD = 64;
+
+	// Time of the latest NACK for this message, ours or another receiver's.
+	private long myNackTime = 0L;
+
+	// Parity decoder, created when the message turns out to have more than one
+	// fragment.
+	private ParityDecoder myParityDecoder;
+
 // Hidden helper classes.
 
 	private static class Node
@@ -93,25 +120,29 @@ public class MessageInputStream
 	 *
 	 * @param  theMap             Map into which to put this message input
 	 *                            stream.
-	 * @param  theKey             Map key for this message input stream.
+	 * @param  theMessageID       Message ID.
 	 * @param  thePacketPool      M2MP Layer's packet pool.
 	 * @param  theMessageTimeout  Message timeout interval (msec).
+	 * @param  theLayer           M2MP Layer to send NACKs through, or null if
+	 *                            not repairing lost packets.
+	 * @param  theNackInterval    NACK interval (msec).
 	 */
 	MessageInputStream
-		(Map theMap,
-		 Integer theKey,
+		(MessageMap theMap,
+		 int theMessageID,
 		 PacketPool thePacketPool,
-		 int theMessageTimeout)
+		 int theMessageTimeout,
+		 M2MP theLayer,
+		 int theNackInterval)
 		{
 		myMap = theMap;
-		myKey = theKey;
+		myMessageID = theMessageID;
 		myPacketPool = thePacketPool;
 		myMessageTimeout = theMessageTimeout;
+		myLayer = theLayer;
+		myNackInterval = theNackInterval;
 
-		synchronized (myMap)
-			{
-			myMap.put (theKey, this);
-			}
+		myMap.put (theMessageID, this);
 		}
 
 // Exported operations.
@@ -390,8 +421,10 @@ public class MessageInputStream
 		}
 
 	/**
-	 * Add a packet to the incoming message. However, if the packet has the
-	 * wrong fragment number, discard it.
+	 * Add a packet to the incoming message. If the packet is a later fragment
+	 * than the next one needed, hold on to it. If the packet is an earlier
+	 * fragment, discard it. If the packet is a parity packet, use it to
+	 * rebuild a lost fragment.
 	 */
 	synchronized void addPacket
 		(Packet thePacket)
@@ -400,14 +433,21 @@ public class MessageInputStream
 			{
 			case WAITING_FOR_PACKET:
 			case PACKET:
-				if (thePacket.getFragmentNumber() == myNextFragmentNumber)
+				if (thePacket.isParity())
 					{
-					++ myNextFragmentNumber;
-					appendPacket (thePacket);
+					getParityDecoder().addParity (thePacket);
 					}
 				else
 					{
-					myPacketPool.deallocate (thePacket);
+					addDataPacket (thePacket);
+					}
+				if (myParityDecoder != null)
+					{
+					Packet rebuilt;
+					while ((rebuilt = myParityDecoder.recover()) != null)
+						{
+						addDataPacket (rebuilt);
+						}
 					}
 				break;
 			case EOF:
@@ -416,10 +456,7 @@ public class MessageInputStream
 				// remove the message from the M2MP Layer.
 				if (thePacket.isLastPacket())
 					{
-					synchronized (myMap)
-						{
-						myMap.remove (myKey);
-						}
+					myMap.remove (myMessageID, this);
 					}
 				myPacketPool.deallocate (thePacket);
 				break;
@@ -428,12 +465,142 @@ public class MessageInputStream
 			}
 		}
 
+	/**
+	 * Add a data packet to the incoming message.
+	 */
+	private void addDataPacket
+		(Packet thePacket)
+		{
+		int fragnum = thePacket.getFragmentNumber();
+
+		// Keep a copy for rebuilding lost fragments, unless this is the only
+		// fragment of the message.
+		if (fragnum > myNextFragmentNumber ||
+				(fragnum == myNextFragmentNumber &&
+					(fragnum > 0 || ! thePacket.isLastPacket())))
+			{
+			getParityDecoder().addData (thePacket);
+			}
+
+		if (fragnum == myNextFragmentNumber)
+			{
+			++ myNextFragmentNumber;
+			appendPacket (thePacket);
+			appendHeldPackets();
+			}
+		else if (fragnum > myNextFragmentNumber)
+			{
+			holdPacket (thePacket);
+			}
+		else
+			{
+			myPacketPool.deallocate (thePacket);
+			}
+		}
+
+	/**
+	 * Returns the parity decoder, creating it if necessary.
+	 */
+	private ParityDecoder getParityDecoder()
+		{
+		if (myParityDecoder == null)
+			{
+			myParityDecoder = new ParityDecoder (myPacketPool);
+			}
+		return myParityDecoder;
+		}
+
+	/**
+	 * Record that some receiver NACKed fragments <TT>theFirst</TT> through
+	 * <TT>theLast-1</TT> of this message (-1 meaning all the rest). If that
+	 * includes the next fragment we need, we put off our own NACK.
+	 */
+	synchronized void nackSeen
+		(int theFirst,
+		 int theLast)
+		{
+		if (theFirst <= myNextFragmentNumber &&
+				(theLast < 0 || theLast > myNextFragmentNumber))
+			{
+			myNackTime = System.currentTimeMillis();
+			}
+		}
+
+	/**
+	 * Hold on to a packet that arrived ahead of the next fragment number.
+	 */
+	private void holdPacket
+		(Packet thePacket)
+		{
+		int fragnum = thePacket.getFragmentNumber();
+
+		// Find where the packet goes in the held list.
+		Node prev = null;
+		Node node = myHeld;
+		while (node != null && node.packet.getFragmentNumber() < fragnum)
+			{
+			prev = node;
+			node = node.next;
+			}
+		if (myHeldCount == MAX_HELD ||
+				(node != null && node.packet.getFragmentNumber() == fragnum))
+			{
+			// No room, or a duplicate.
+			myPacketPool.deallocate (thePacket);
+			return;
+			}
+		Node held = new Node (thePacket, node);
+		if (prev == null)
+			{
+			myHeld = held;
+			}
+		else
+			{
+			prev.next = held;
+			}
+		++ myHeldCount;
+		}
+
+	/**
+	 * Move held packets that are now next in order to the end of the queue.
+	 */
+	private void appendHeldPackets()
+		{
+		while (myHeld != null &&
+				myHeld.packet.getFragmentNumber() <= myNextFragmentNumber)
+			{
+			Packet packet = myHeld.packet;
+			myHeld = myHeld.next;
+			-- myHeldCount;
+			if (packet.getFragmentNumber() == myNextFragmentNumber)
+				{
+				++ myNextFragmentNumber;
+				appendPacket (packet);
+				}
+			else
+				{
+				myPacketPool.deallocate (packet);
+				}
+			}
+		}
+
 	/**
 	 * Append a packet to the end of the queue.
 	 */
 	private void appendPacket
 		(Packet thePacket)
 		{
+		// If we are repairing lost packets and this is the last packet, the
+		// message is complete. The M2MP Layer remembers the message ID, so
+		// later copies of the message's packets will be ignored.
+		if (myLayer != null && thePacket.isLastPacket())
+			{
+			myMap.remove (myMessageID, this);
+			}
+		if (myLayer != null)
+			{
+			myLayer.countFragments (1, 0);
+			}
 		thePacket.rewind();
 		Node node = new Node (thePacket, null);
 		if (myHead == null)
@@ -470,7 +637,40 @@ public class MessageInputStream
 		{
 		try
 			{
-			wait (myMessageTimeout);
+			if (myLayer == null)
+				{
+				wait (myMessageTimeout);
+				}
+			else
+				{
+				// NACK the overdue fragments each interval until the message
+				// timeout. If later fragments are held, the interval is
+				// shorter.
+				long now = System.currentTimeMillis();
+				long deadline = now + myMessageTimeout;
+				while (myState == WAITING_FOR_PACKET && now < deadline)
+					{
+					long interval =
+						myHeld == null ?
+							myNackInterval :
+							Math.max (myNackInterval / 4, 1);
+					wait (Math.min (interval, deadline - now));
+					now = System.currentTimeMillis();
+					if (myState == WAITING_FOR_PACKET && now < deadline &&
+							now - myNackTime >= interval)
+						{
+						int last =
+							myHeld == null ?
+								-1 :
+								myHeld.packet.getFragmentNumber();
+						myNackTime = now;
+						myLayer.sendNack
+							(myMessageID, myNextFragmentNumber, last);
+						myLayer.countFragments
+							(0, last < 0 ? 1 : last - myNextFragmentNumber);
+						}
+					}
+				}
 			if (myState == WAITING_FOR_PACKET)
 				{
 				doClose ("Incoming M2MP message timed out");
@@ -497,13 +697,25 @@ public class MessageInputStream
 			{
 			if (myHead.packet.isLastPacket())
 				{
-				synchronized (myMap)
-					{
-					myMap.remove (myKey);
-					}
+				myMap.remove (myMessageID, this);
 				}
 			removePacket();
 			}
+		while (myHeld != null)
+			{
+			myPacketPool.deallocate (myHeld.packet);
+			myHeld = myHeld.next;
+			}
+		myHeldCount = 0;
+		if (myParityDecoder != null)
+			{
+			myParityDecoder.close();
+			myParityDecoder = null;
+			}
+		if (myLayer != null)
+			{
+			myMap.remove (myMessageID, this);
+			}
 
 		// Change state.
 		myState = CLOSED;
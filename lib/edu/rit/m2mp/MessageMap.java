@@ -0,0 +1,256 @@
+//******************************************************************************
+//
+// File:    MessageMap.java
+// Package: edu.rit.m2mp
+// Unit:    Class edu.rit.m2mp.MessageMap
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp;
+
+/**
+ * Class MessageMap provides the M2MP Layer's mapping from message ID to the
+ * {@link MessageInputStream </CODE>MessageInputStream<CODE>} for each incoming
+ * message in progress. The M2MP Layer looks up every incoming packet's message
+ * ID in the map, so the map is built for that: message IDs are kept as
+ * <TT>int</TT>s, not boxed into <TT>Integer</TT> objects, in open-addressing
+ * hash tables with linear probing. The map is split into <TT>STRIPES</TT>
+ * separately locked tables, chosen by the message ID's hash, so that several
+ * receiver threads and the message input streams removing themselves seldom
+ * wait for one another.
+ * <P>
+ * <B><I>Note:</I></B> Class MessageMap is multiple thread safe.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+class MessageMap
+	{
+
+// Hidden constants.
+
+	// Number of stripes; must be a power of 2.
+	private static final int STRIPES = 16;
+
+	// Initial number of slots in each stripe; must be a power of 2.
+	private static final int INITIAL_SLOTS = 16;
+
+// Hidden data members.
+
+	/**
+	 * Class MessageMap.Stripe is one separately locked hash table. An empty
+	 * slot has a null stream. At most half the slots are used.
+	 */
+	private static class Stripe
+		{
+		public int[] ids = new int [INITIAL_SLOTS];
+		public MessageInputStream[] streams =
+			new MessageInputStream [INITIAL_SLOTS];
+		public int size;
+		}
+
+	private Stripe[] myStripes = new Stripe [STRIPES];
+
+// Exported constructors.
+
+	/**
+	 * Construct a new, empty message map.
+	 */
+	public MessageMap()
+		{
+		for (int i = 0; i < STRIPES; ++ i)
+			{
+			myStripes[i] = new Stripe();
+			}
+		}
+
+// Exported operations.
+
+	/**
+	 * Obtain the message input stream for the given message ID.
+	 *
+	 * @param  theMessageID  Message ID.
+	 *
+	 * @return  Message input stream, or null if none.
+	 */
+	public MessageInputStream get
+		(int theMessageID)
+		{
+		int h = hashOf (theMessageID);
+		Stripe stripe = myStripes[h & (STRIPES - 1)];
+		synchronized (stripe)
+			{
+			int mask = stripe.ids.length - 1;
+			int i = (h >>> 4) & mask;
+			MessageInputStream stream;
+			while ((stream = stripe.streams[i]) != null)
+				{
+				if (stripe.ids[i] == theMessageID) return stream;
+				i = (i + 1) & mask;
+				}
+			return null;
+			}
+		}
+
+	/**
+	 * Map the given message ID to the given message input stream, replacing
+	 * any message input stream already mapped to the message ID.
+	 *
+	 * @param  theMessageID  Message ID.
+	 * @param  theStream     Message input stream.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>theStream</TT> is null.
+	 */
+	public void put
+		(int theMessageID,
+		 MessageInputStream theStream)
+		{
+		if (theStream == null)
+			{
+			throw new NullPointerException();
+			}
+		int h = hashOf (theMessageID);
+		Stripe stripe = myStripes[h & (STRIPES - 1)];
+		synchronized (stripe)
+			{
+			if (insert (stripe, h, theMessageID, theStream))
+				{
+				++ stripe.size;
+				if (2 * stripe.size > stripe.ids.length)
+					{
+					grow (stripe);
+					}
+				}
+			}
+		}
+
+	/**
+	 * Remove the mapping for the given message ID, if the message ID is mapped
+	 * to the given message input stream. A later message input stream for the
+	 * same message ID is left alone.
+	 *
+	 * @param  theMessageID  Message ID.
+	 * @param  theStream     Message input stream.
+	 */
+	public void remove
+		(int theMessageID,
+		 MessageInputStream theStream)
+		{
+		int h = hashOf (theMessageID);
+		Stripe stripe = myStripes[h & (STRIPES - 1)];
+		synchronized (stripe)
+			{
+			int[] ids = stripe.ids;
+			MessageInputStream[] streams = stripe.streams;
+			int mask = ids.length - 1;
+			int i = (h >>> 4) & mask;
+			while (streams[i] != null &&
+					(ids[i] != theMessageID || streams[i] != theStream))
+				{
+				i = (i + 1) & mask;
+				}
+			if (streams[i] == null) return;
+
+			// Close up the gap, so every remaining entry can still be found by
+			// probing from its home slot without crossing an empty slot.
+			int j = i;
+			for (;;)
+				{
+				j = (j + 1) & mask;
+				if (streams[j] == null) break;
+				int home = (hashOf (ids[j]) >>> 4) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask))
+					{
+					ids[i] = ids[j];
+					streams[i] = streams[j];
+					i = j;
+					}
+				}
+			streams[i] = null;
+			-- stripe.size;
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Put the given mapping into the given stripe, which must be locked.
+	 * Returns true if a new slot was used, false if an existing mapping was
+	 * replaced.
+	 */
+	private static boolean insert
+		(Stripe stripe,
+		 int h,
+		 int theMessageID,
+		 MessageInputStream theStream)
+		{
+		int mask = stripe.ids.length - 1;
+		int i = (h >>> 4) & mask;
+		while (stripe.streams[i] != null)
+			{
+			if (stripe.ids[i] == theMessageID)
+				{
+				stripe.streams[i] = theStream;
+				return false;
+				}
+			i = (i + 1) & mask;
+			}
+		stripe.ids[i] = theMessageID;
+		stripe.streams[i] = theStream;
+		return true;
+		}
+
+	/**
+	 * Double the number of slots in the given stripe, which must be locked.
+	 */
+	private static void grow
+		(Stripe stripe)
+		{
+		int[] oldIds = stripe.ids;
+		MessageInputStream[] oldStreams = stripe.streams;
+		stripe.ids = new int [2 * oldIds.length];
+		stripe.streams = new MessageInputStream [2 * oldIds.length];
+		for (int i = 0; i < oldIds.length; ++ i)
+			{
+			if (oldStreams[i] != null)
+				{
+				insert
+					(stripe, hashOf (oldIds[i]), oldIds[i], oldStreams[i]);
+				}
+			}
+		}
+
+	/**
+	 * Returns the hash of the given message ID. Message IDs are random, but a
+	 * custom channel could number them consecutively, so the bits are mixed.
+	 */
+	private static int hashOf
+		(int theMessageID)
+		{
+		int h = theMessageID * 0x9E3779B9;
+		return h ^ (h >>> 16);
+		}
+
+	}
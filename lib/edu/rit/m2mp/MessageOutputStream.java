@@ -40,9 +40,14 @@ import java.io.OutputStream;
  * is not constructed directly. Rather, it is obtained by calling the
  * <TT>createOutgoingMessage()</TT> method in class {@link M2MP
  * </CODE>M2MP<CODE>}.
+ * <P>
+ * If the M2MP Layer is sending parity packets, each data packet of the message
+ * holds at most 498 bytes, and a parity packet follows every group of data
+ * packets, as well as the last data packet of a message with more than one
+ * data packet.
  *
  * @author  Alan Kaminsky
- * @version 05-Nov-2004
+ * @version 17-Oct-2026
  */
 public class MessageOutputStream
 	extends OutputStream
@@ -60,6 +65,16 @@ public class MessageOutputStream
 	private int myMessageID;
 	private int myFragmentNumber;
 
+	// Number of data packets per parity packet, or 0 for no parity packets.
+	private int myParityGroup;
+
+	// Parity of the data packets sent so far in the current group: the XOR of
+	// their lengths (2 bytes) followed by the XOR of their message fragments.
+	private byte[] myParity;
+	private int myParityLength;
+	private int myParityFirst;
+	private int myParityCount;
+
 // Hidden constructors.
 
 	/**
@@ -69,20 +84,28 @@ public class MessageOutputStream
 	 * @param  thePacketPool  The M2MP Layer's packet pool.
 	 * @param  thePrng        The M2MP Layer's pseudorandom number generator.
 	 * @param  theRedundancy  Packet redundancy.
+	 * @param  theParityGroup Number of data packets per parity packet, or 0
+	 *                        for no parity packets.
 	 */
 	MessageOutputStream
 		(M2MP theLayer,
 		 PacketPool thePacketPool,
 		 MuH1Random thePrng,
-		 int theRedundancy)
+		 int theRedundancy,
+		 int theParityGroup)
 		{
 		myLayer = theLayer;
 		myPacketPool = thePacketPool;
 		myPrng = thePrng;
 		myRedundancy = theRedundancy;
+		myParityGroup = theParityGroup;
+		if (myParityGroup > 0)
+			{
+			myParity = new byte [Packet.DATA_SIZE];
+			}
 
 		myPacket = myPacketPool.allocate();
-		myPacket.clear();
+		clearPacket();
 
 		myMessageID = myPrng.next();
 		myFragmentNumber = 0;
@@ -270,12 +293,16 @@ public class MessageOutputStream
 		myPacket.setLastPacketAndFragmentNumber
 			(isLastPacket,
 			 myFragmentNumber);
+		if (myParityGroup > 0)
+			{
+			addToParity();
+			}
 		++ myFragmentNumber;
 
 		// Send packet to the M2MP Layer.
 		try
 			{
-			myLayer.sendOutgoingPacket (myPacket);
+			myLayer.sendOutgoingPacket (myPacket, myRedundancy);
 			}
 		catch (IOException exc)
 			{
@@ -283,8 +310,93 @@ public class MessageOutputStream
 			throw exc;
 			}
 
+		// Send a parity packet at the end of each group, and at the end of a
+		// message with more than one data packet.
+		if (myParityCount > 0 &&
+				(myParityCount == myParityGroup ||
+					(isLastPacket && myFragmentNumber > 1)))
+			{
+			sendParityPacket (isLastPacket);
+			}
+
 		// Prepare to collect more bytes in the packet.
-		myPacket.clear();
+		clearPacket();
+		}
+
+	/**
+	 * Begin collecting bytes in the packet, leaving room for the parity
+	 * packet's length field if necessary.
+	 */
+	private void clearPacket()
+		{
+		if (myParityGroup > 0)
+			{
+			myPacket.clear (Packet.PARITY_DATA_SIZE);
+			}
+		else
+			{
+			myPacket.clear();
+			}
+		}
+
+	/**
+	 * XOR the packet about to be sent into the current parity group.
+	 */
+	private void addToParity()
+		{
+		if (myParityCount == 0)
+			{
+			for (int i = 0; i < myParity.length; ++ i)
+				{
+				myParity[i] = 0;
+				}
+			myParityLength = 0;
+			myParityFirst = myFragmentNumber;
+			}
+		byte[] buf = myPacket.getBuffer();
+		int len = myPacket.limit() - Packet.HEADER_SIZE;
+		myParity[0] ^= (byte) (len >> 8);
+		myParity[1] ^= (byte) len;
+		for (int i = 0; i < len; ++ i)
+			{
+			myParity[i+2] ^= buf[i+Packet.HEADER_SIZE];
+			}
+		myParityLength = Math.max (myParityLength, len);
+		++ myParityCount;
+		}
+
+	/**
+	 * Send the parity packet for the current parity group.
+	 *
+	 * @param  isFinal  True if the group ends the message, false otherwise.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private void sendParityPacket
+		(boolean isFinal)
+		throws IOException
+		{
+		Packet parity = myPacketPool.allocate();
+		try
+			{
+			parity.clear();
+			parity.put (myParity, 0, myParityLength + 2);
+			parity.flip();
+			parity.setParity
+				(myMessageID, myParityFirst, myParityCount, isFinal);
+			myLayer.sendOutgoingPacket (parity, 1);
+			}
+		catch (IOException exc)
+			{
+			doClose();
+			throw exc;
+			}
+		finally
+			{
+			myPacketPool.deallocate (parity);
+			myParityCount = 0;
+			}
 		}
 
 	/**
@@ -37,6 +37,8 @@ import java.io.OutputStream;
 
 import java.net.SocketAddress;
 
+import java.nio.ByteBuffer;
+
 /**
  * Class Packet provides an M2MP packet.
  * <P>
@@ -61,6 +63,29 @@ import java.net.SocketAddress;
  * fragment byte, then call the <TT>flip()</TT> method to record the packet's
  * length.
  * <P>
+ * A <B>NACK packet</B> is a negative acknowledgment asking the sender of a
+ * message to send some of the message's fragments again. Its message ID field
+ * is that of the message, its fragment number field has the <TT>NACK_FLAG</TT>
+ * bit set, and its message fragment holds the first fragment number wanted and
+ * one past the last fragment number wanted (or -1 for all the rest of the
+ * message), as two 4-byte integers. To build a NACK packet, call the
+ * <TT>setNack()</TT> method; to read one, call the <TT>isNack()</TT>,
+ * <TT>getNackFirst()</TT>, and <TT>getNackLast()</TT> methods. A receiver that
+ * does not know about NACK packets discards them, since their fragment numbers
+ * never match a message in progress.
+ * <P>
+ * A <B>parity packet</B> lets a receiver rebuild one lost data packet out of a
+ * group of consecutive data packets of a message. Its message ID field is that
+ * of the message, and its fragment number field has the <TT>PARITY_FLAG</TT>
+ * bit set and holds the first fragment number of the group, the number of data
+ * packets in the group, and whether the group ends the message. Its message
+ * fragment is the XOR of the group's data packet lengths (2 bytes) followed by
+ * the XOR of the group's message fragments. To build a parity packet, call the
+ * <TT>setParity()</TT> method; to read one, call the <TT>isParity()</TT>,
+ * <TT>getParityFirst()</TT>, <TT>getParityCount()</TT>, and
+ * <TT>isParityFinal()</TT> methods. Like NACK packets, parity packets are
+ * discarded by a receiver that does not know about them.
+ * <P>
  * To fill in a packet from an external source, such as a network datagram, call
  * the packet object's <TT>getBuffer()</TT> method to get the byte buffer; store
  * the packet's contents, including the header, in the byte buffer starting at
@@ -71,7 +96,7 @@ import java.net.SocketAddress;
  * one thread at a time calls methods on a packet object.
  *
  * @author  Alan Kaminsky
- * @version 28-Oct-2004
+ * @version 17-Oct-2026
  */
 public class Packet
 	{
@@ -83,6 +108,28 @@ public class Packet
 	static final int DATA_SIZE    = 500;
 	static final int MAXIMUM_SIZE = 508;
 
+	// Bit in the fragment number field that marks a NACK packet. Ordinary
+	// fragment numbers never get this large.
+	static final int NACK_FLAG = 0x40000000;
+
+	// Bit in the fragment number field that marks a parity packet.
+	static final int PARITY_FLAG = 0x20000000;
+
+	// Largest message fragment in a data packet of a message that has parity
+	// packets. The parity packet's message fragment holds the XOR of the data
+	// packets' lengths (2 bytes) followed by the XOR of their message
+	// fragments.
+	static final int PARITY_DATA_SIZE = DATA_SIZE - 2;
+
+	// Largest number of data packets one parity packet covers.
+	static final int MAXIMUM_PARITY_GROUP = 32;
+
+	// Parts of a parity packet's fragment number field, below the flags.
+	private static final int PARITY_COUNT_SHIFT = 24;
+	private static final int PARITY_COUNT_MASK  = 0x1F;
+	private static final int PARITY_FINAL_FLAG  = 0x00800000;
+	private static final int PARITY_FIRST_MASK  = 0x007FFFFF;
+
 	// Indexes of the packet fields.
 	private static final int MESSAGE_ID_INDEX       = 0;
 	private static final int LAST_PACKET_FLAG_INDEX = 4;
@@ -101,6 +148,9 @@ public class Packet
 	// Byte buffer containing this packet's header and data.
 	private byte[] myBuffer = new byte [MAXIMUM_SIZE];
 
+	// NIO view of myBuffer, created when first needed.
+	private ByteBuffer myByteBuffer;
+
 	// This packet's limit, the total number of bytes including header and data.
 	private int myLimit;
 
@@ -244,6 +294,144 @@ public class Packet
 		return readIntField (FRAGMENT_NUMBER_INDEX, FRAGMENT_NUMBER_LENGTH);
 		}
 
+	/**
+	 * Determine whether this packet is a NACK packet.
+	 *
+	 * @return  True if this packet is a NACK packet, false if it isn't.
+	 */
+	public boolean isNack()
+		{
+		return
+			! isLastPacket() &&
+			(getLastPacketAndFragmentNumber() & NACK_FLAG) != 0 &&
+			myLimit >= HEADER_SIZE + 8;
+		}
+
+	/**
+	 * Obtain the first fragment number a NACK packet asks for.
+	 *
+	 * @return  First fragment number.
+	 */
+	public int getNackFirst()
+		{
+		return readIntField (MESSAGE_FRAGMENT_INDEX, 4);
+		}
+
+	/**
+	 * Obtain one past the last fragment number a NACK packet asks for.
+	 *
+	 * @return  One past the last fragment number, or -1 if the NACK packet
+	 *          asks for all the rest of the message.
+	 */
+	public int getNackLast()
+		{
+		return readIntField (MESSAGE_FRAGMENT_INDEX + 4, 4);
+		}
+
+	/**
+	 * Determine whether this packet is a parity packet.
+	 *
+	 * @return  True if this packet is a parity packet, false if it isn't.
+	 */
+	public boolean isParity()
+		{
+		int field = getLastPacketAndFragmentNumber();
+		return
+			(field & (0x80000000 | NACK_FLAG)) == 0 &&
+			(field & PARITY_FLAG) != 0;
+		}
+
+	/**
+	 * Obtain the first fragment number of the data packets a parity packet
+	 * covers.
+	 *
+	 * @return  First fragment number.
+	 */
+	public int getParityFirst()
+		{
+		return getLastPacketAndFragmentNumber() & PARITY_FIRST_MASK;
+		}
+
+	/**
+	 * Obtain the number of data packets a parity packet covers.
+	 *
+	 * @return  Number of data packets, 1 through 32.
+	 */
+	public int getParityCount()
+		{
+		return
+			((getLastPacketAndFragmentNumber() >> PARITY_COUNT_SHIFT) &
+				PARITY_COUNT_MASK) + 1;
+		}
+
+	/**
+	 * Determine whether the last data packet a parity packet covers is the
+	 * last packet of the message.
+	 *
+	 * @return  True if the parity packet's group ends the message, false
+	 *          otherwise.
+	 */
+	public boolean isParityFinal()
+		{
+		return (getLastPacketAndFragmentNumber() & PARITY_FINAL_FLAG) != 0;
+		}
+
+	/**
+	 * Set this packet's header fields to make it a parity packet for the given
+	 * group of data packets. The message fragment is not changed.
+	 *
+	 * @param  theMessageID  Message ID.
+	 * @param  theFirst      First fragment number in the group.
+	 * @param  theCount      Number of data packets in the group, 1 through 32.
+	 * @param  isFinal       True if the group ends the message, false
+	 *                       otherwise.
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theCount</TT> is not in the range
+	 *     1 through 32, or <TT>theFirst</TT> is too large to fit.
+	 */
+	public void setParity
+		(int theMessageID,
+		 int theFirst,
+		 int theCount,
+		 boolean isFinal)
+		{
+		if (theCount < 1 || theCount > MAXIMUM_PARITY_GROUP ||
+				(theFirst & ~PARITY_FIRST_MASK) != 0)
+			{
+			throw new IllegalArgumentException();
+			}
+		setMessageID (theMessageID);
+		setLastPacketAndFragmentNumber
+			(PARITY_FLAG |
+			 ((theCount - 1) << PARITY_COUNT_SHIFT) |
+			 (isFinal ? PARITY_FINAL_FLAG : 0) |
+			 theFirst);
+		}
+
+	/**
+	 * Make this packet a NACK packet asking for fragments <TT>theFirst</TT>
+	 * through <TT>theLast-1</TT> of the given message. This packet's limit is
+	 * set to the end of the NACK packet.
+	 *
+	 * @param  theMessageID  Message ID.
+	 * @param  theFirst      First fragment number.
+	 * @param  theLast       One past the last fragment number, or -1 for all
+	 *                       the rest of the message.
+	 */
+	public void setNack
+		(int theMessageID,
+		 int theFirst,
+		 int theLast)
+		{
+		setMessageID (theMessageID);
+		setLastPacketAndFragmentNumber (NACK_FLAG);
+		writeIntField (theFirst, MESSAGE_FRAGMENT_INDEX, 4);
+		writeIntField (theLast, MESSAGE_FRAGMENT_INDEX + 4, 4);
+		myLimit = HEADER_SIZE + 8;
+		myPosition = MESSAGE_FRAGMENT_INDEX;
+		}
+
 	/**
 	 * Begin reading the message fragment bytes from this packet. This packet's
 	 * limit is unchanged and its position is set to the beginning of the
@@ -389,6 +577,29 @@ public class Packet
 		myPosition = MESSAGE_FRAGMENT_INDEX;
 		}
 
+	/**
+	 * Begin writing at most the given number of message fragment bytes into
+	 * this packet. This packet's limit is set to leave room for that many
+	 * bytes and its position is set to the beginning of the message fragment
+	 * field.
+	 *
+	 * @param  theSize  Maximum number of message fragment bytes.
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theSize</TT> is not in the range
+	 *     0 through 500.
+	 */
+	public void clear
+		(int theSize)
+		{
+		if (theSize < 0 || theSize > DATA_SIZE)
+			{
+			throw new IllegalArgumentException();
+			}
+		myLimit = MESSAGE_FRAGMENT_INDEX + theSize;
+		myPosition = MESSAGE_FRAGMENT_INDEX;
+		}
+
 	/**
 	 * Write the next message fragment byte into this packet. This packet's
 	 * position is increased by 1.
@@ -459,6 +670,24 @@ public class Packet
 		return myBuffer;
 		}
 
+	/**
+	 * Returns an NIO byte buffer backed by this packet's byte buffer, for use
+	 * by channels that send and receive with NIO. The byte buffer's position is
+	 * 0 and its limit is this packet's limit. To receive into this packet, set
+	 * the byte buffer's limit to <TT>getBuffer().length</TT> first. The same
+	 * byte buffer object is returned on every call.
+	 */
+	public ByteBuffer getByteBuffer()
+		{
+		if (myByteBuffer == null)
+			{
+			myByteBuffer = ByteBuffer.wrap (myBuffer);
+			}
+		myByteBuffer.clear();
+		myByteBuffer.limit (myLimit);
+		return myByteBuffer;
+		}
+
 	/**
 	 * Sets the total number of bytes in this packet. This method assumes that
 	 * this packet's byte buffer has been filled in from an external source,
@@ -0,0 +1,264 @@
+//******************************************************************************
+//
+// File:    ParityDecoder.java
+// Package: edu.rit.m2mp
+// Unit:    Class edu.rit.m2mp.ParityDecoder
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp;
+
+/**
+ * Class ParityDecoder rebuilds lost data packets of one incoming M2MP message
+ * from the message's parity packets (see class {@link Packet
+ * </CODE>Packet<CODE>}). The decoder keeps a copy of each of the most recent
+ * data packets of the message, enough to cover the largest parity group, and
+ * holds on to a few parity packets whose groups are not yet complete. As soon
+ * as every data packet but one of a parity packet's group has arrived, the
+ * decoder rebuilds the missing one by XORing the parity packet with the
+ * others. Packets are obtained from the M2MP Layer's {@link PacketPool
+ * </CODE>PacketPool<CODE>}.
+ * <P>
+ * <B><I>Note:</I></B> Class ParityDecoder is not multiple thread safe. Its
+ * {@link MessageInputStream </CODE>MessageInputStream<CODE>} only calls it
+ * while synchronized.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+class ParityDecoder
+	{
+
+// Hidden constants.
+
+	// Number of parity packets to hold on to.
+	private static final int MAX_PARITY = 4;
+
+// Hidden data members.
+
+	// Packet pool.
+	private PacketPool myPacketPool;
+
+	// Copies of the most recent data packets, indexed by fragment number
+	// modulo the window size, with each one's fragment number.
+	private Packet[] myData = new Packet [Packet.MAXIMUM_PARITY_GROUP];
+	private int[] myFragment = new int [Packet.MAXIMUM_PARITY_GROUP];
+
+	// Parity packets whose groups are not yet complete, oldest first.
+	private Packet[] myParity = new Packet [MAX_PARITY];
+	private int myParityCount = 0;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new parity decoder.
+	 *
+	 * @param  thePacketPool  Packet pool.
+	 */
+	public ParityDecoder
+		(PacketPool thePacketPool)
+		{
+		myPacketPool = thePacketPool;
+		}
+
+// Exported operations.
+
+	/**
+	 * Keep a copy of the given data packet.
+	 *
+	 * @param  thePacket  Data packet.
+	 */
+	public void addData
+		(Packet thePacket)
+		{
+		int frag = thePacket.getFragmentNumber();
+		int i = frag % myData.length;
+		if (myData[i] == null)
+			{
+			myData[i] = myPacketPool.allocate();
+			}
+		myData[i].copy (thePacket);
+		myFragment[i] = frag;
+		}
+
+	/**
+	 * Hold on to the given parity packet. The oldest parity packet is dropped
+	 * if too many are being held.
+	 *
+	 * @param  thePacket  Parity packet. The decoder takes it over.
+	 */
+	public void addParity
+		(Packet thePacket)
+		{
+		if (myParityCount == MAX_PARITY)
+			{
+			removeParity (0);
+			}
+		myParity[myParityCount++] = thePacket;
+		}
+
+	/**
+	 * Rebuild a lost data packet if possible. Parity packets whose groups are
+	 * complete, or too old to rebuild, are dropped along the way.
+	 *
+	 * @return  Rebuilt data packet, allocated from the packet pool, or null if
+	 *          no data packet can be rebuilt now.
+	 */
+	public Packet recover()
+		{
+		int j = 0;
+		while (j < myParityCount)
+			{
+			Packet parity = myParity[j];
+			int first = parity.getParityFirst();
+			int count = parity.getParityCount();
+
+			// Find the group's missing data packets.
+			int missing = -1;
+			int nMissing = 0;
+			boolean tooOld = false;
+			for (int frag = first; frag < first + count; ++ frag)
+				{
+				int i = frag % myData.length;
+				if (myData[i] != null && myFragment[i] == frag)
+					{
+					// Have it.
+					}
+				else if (myData[i] != null && myFragment[i] > frag)
+					{
+					tooOld = true;
+					}
+				else
+					{
+					missing = frag;
+					++ nMissing;
+					}
+				}
+
+			if (tooOld || nMissing == 0)
+				{
+				removeParity (j);
+				}
+			else if (nMissing == 1)
+				{
+				Packet result = rebuild (parity, first, count, missing);
+				removeParity (j);
+				if (result != null) return result;
+				}
+			else
+				{
+				++ j;
+				}
+			}
+		return null;
+		}
+
+	/**
+	 * Deallocate all the packets this decoder holds.
+	 */
+	public void close()
+		{
+		for (int i = 0; i < myData.length; ++ i)
+			{
+			if (myData[i] != null)
+				{
+				myPacketPool.deallocate (myData[i]);
+				myData[i] = null;
+				}
+			}
+		while (myParityCount > 0)
+			{
+			removeParity (0);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Rebuild the given missing data packet from the given parity packet and
+	 * the rest of its group. Returns null if the parity packet turns out to be
+	 * malformed.
+	 */
+	private Packet rebuild
+		(Packet parity,
+		 int first,
+		 int count,
+		 int missing)
+		{
+		int h = Packet.HEADER_SIZE;
+		byte[] pbuf = parity.getBuffer();
+		int plen = parity.limit() - h;
+		if (plen < 2) return null;
+
+		// Start from the parity packet.
+		Packet result = myPacketPool.allocate();
+		byte[] rbuf = result.getBuffer();
+		int len = ((pbuf[h] & 0xFF) << 8) | (pbuf[h+1] & 0xFF);
+		int n = Math.min (plen - 2, Packet.PARITY_DATA_SIZE);
+		System.arraycopy (pbuf, h + 2, rbuf, h, n);
+		for (int k = n; k < Packet.PARITY_DATA_SIZE; ++ k)
+			{
+			rbuf[h+k] = 0;
+			}
+
+		// XOR in the other data packets.
+		for (int frag = first; frag < first + count; ++ frag)
+			{
+			if (frag == missing) continue;
+			Packet data = myData[frag % myData.length];
+			byte[] dbuf = data.getBuffer();
+			int dlen = Math.min (data.limit() - h, Packet.PARITY_DATA_SIZE);
+			len ^= dlen;
+			for (int k = 0; k < dlen; ++ k)
+				{
+				rbuf[h+k] ^= dbuf[h+k];
+				}
+			}
+
+		if (len < 0 || len > Packet.PARITY_DATA_SIZE)
+			{
+			myPacketPool.deallocate (result);
+			return null;
+			}
+		result.setMessageID (parity.getMessageID());
+		result.setLastPacketAndFragmentNumber
+			(parity.isParityFinal() && missing == first + count - 1,
+			 missing);
+		result.limit (h + len);
+		return result;
+		}
+
+	/**
+	 * Deallocate and remove the parity packet at the given index.
+	 */
+	private void removeParity
+		(int j)
+		{
+		myPacketPool.deallocate (myParity[j]);
+		-- myParityCount;
+		System.arraycopy (myParity, j + 1, myParity, j, myParityCount - j);
+		myParity[myParityCount] = null;
+		}
+
+	}
@@ -0,0 +1,195 @@
+//******************************************************************************
+//
+// File:    RetransmitBuffer.java
+// Package: edu.rit.m2mp
+// Unit:    Class edu.rit.m2mp.RetransmitBuffer
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp;
+
+import java.util.HashMap;
+
+/**
+ * Class RetransmitBuffer provides the M2MP Layer's buffer of recently sent
+ * packets, from which the M2MP Layer answers NACK packets. The buffer holds
+ * copies of a fixed number of the most recently sent packets; when the buffer
+ * is full, adding a packet drops the oldest one. The packets are obtained from
+ * the M2MP Layer's {@link PacketPool </CODE>PacketPool<CODE>}.
+ * <P>
+ * Several receivers may miss the same packet and NACK it at nearly the same
+ * time. So that the sender does not send it again once per receiver, a packet
+ * is handed out for retransmission at most once per holdoff interval. The
+ * first NACK for a packet is always answered.
+ * <P>
+ * <B><I>Note:</I></B> Class RetransmitBuffer is multiple thread safe.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+class RetransmitBuffer
+	{
+
+// Hidden data members.
+
+	// Packet pool.
+	private PacketPool myPacketPool;
+
+	// Holdoff interval (msec).
+	private long myHoldoff;
+
+	// Ring of buffered packets, with each one's key and the time it was last
+	// sent again (0 if never).
+	private Packet[] myPackets;
+	private long[] myKeys;
+	private long[] mySendTimes;
+
+	// Index in the ring where the next packet goes.
+	private int myNext = 0;
+
+	// Mapping from key (type Long) to index in the ring (type Integer).
+	private HashMap myIndexes = new HashMap();
+
+// Exported constructors.
+
+	/**
+	 * Construct a new retransmit buffer.
+	 *
+	 * @param  thePacketPool  Packet pool.
+	 * @param  theSize        Number of packets to hold.
+	 * @param  theHoldoff     Holdoff interval (msec).
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theSize</TT> &lt;= 0.
+	 */
+	public RetransmitBuffer
+		(PacketPool thePacketPool,
+		 int theSize,
+		 long theHoldoff)
+		{
+		if (theSize <= 0)
+			{
+			throw new IllegalArgumentException();
+			}
+		myPacketPool = thePacketPool;
+		myHoldoff = theHoldoff;
+		myPackets = new Packet [theSize];
+		myKeys = new long [theSize];
+		mySendTimes = new long [theSize];
+		}
+
+// Exported operations.
+
+	/**
+	 * Add a copy of the given packet, which has just been sent, to this
+	 * retransmit buffer.
+	 *
+	 * @param  thePacket  Packet.
+	 */
+	public synchronized void add
+		(Packet thePacket)
+		{
+		Packet copy = myPackets[myNext];
+		if (copy == null)
+			{
+			copy = myPacketPool.allocate();
+			myPackets[myNext] = copy;
+			}
+		else
+			{
+			myIndexes.remove (new Long (myKeys[myNext]));
+			}
+		copy.copy (thePacket);
+		long key =
+			keyOf (thePacket.getMessageID(), thePacket.getFragmentNumber());
+		myKeys[myNext] = key;
+		mySendTimes[myNext] = 0L;
+		myIndexes.put (new Long (key), new Integer (myNext));
+		myNext = (myNext + 1) % myPackets.length;
+		}
+
+	/**
+	 * Obtain copies of the buffered packets a NACK packet asks for. Packets
+	 * that are no longer in this retransmit buffer, or that were sent within
+	 * the holdoff interval, are left out. The copies are allocated from the
+	 * packet pool and linked together with <TT>setNext()</TT>; the caller must
+	 * deallocate them when done with them.
+	 *
+	 * @param  theNack  NACK packet.
+	 *
+	 * @return  First packet to send again, or null if there are none.
+	 */
+	public synchronized Packet getRepairs
+		(Packet theNack)
+		{
+		int msgid = theNack.getMessageID();
+		int first = Math.max (theNack.getNackFirst(), 0);
+		int last = theNack.getNackLast();
+		long now = System.currentTimeMillis();
+		Packet head = null;
+		Packet tail = null;
+		for (int frag = first;
+				(last < 0 || frag < last) && frag - first < myPackets.length;
+				++ frag)
+			{
+			Integer index = (Integer)
+				myIndexes.get (new Long (keyOf (msgid, frag)));
+			if (index == null)
+				{
+				// An open-ended NACK stops at the end of the message.
+				if (last < 0) break;
+				continue;
+				}
+			int i = index.intValue();
+			if (now - mySendTimes[i] < myHoldoff) continue;
+			mySendTimes[i] = now;
+			Packet copy = myPacketPool.allocate();
+			copy.copy (myPackets[i]);
+			copy.setNext (null);
+			if (head == null)
+				{
+				head = copy;
+				}
+			else
+				{
+				tail.setNext (copy);
+				}
+			tail = copy;
+			}
+		return head;
+		}
+
+// Hidden operations.
+
+	/**
+	 * Returns the key for the given message ID and fragment number.
+	 */
+	private static long keyOf
+		(int msgid,
+		 int frag)
+		{
+		return ((long) msgid << 32) | (frag & 0xFFFFFFFFL);
+		}
+
+	}
@@ -0,0 +1,164 @@
+//******************************************************************************
+//
+// File:    SimulatedChannel.java
+// Package: edu.rit.m2mp
+// Unit:    Class edu.rit.m2mp.SimulatedChannel
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Class SimulatedChannel provides an M2MP {@link Channel </CODE>Channel<CODE>}
+ * implementation that sends and receives packets on the in-memory {@link
+ * SimulatedNetwork </CODE>SimulatedNetwork<CODE>}, which can be set up to lose
+ * and delay packets. Every packet transmitted on any simulated channel is
+ * received by every simulated channel, including the one that transmitted it,
+ * unless the simulated network loses it.
+ * <P>
+ * Unlike a {@link LoopbackChannel </CODE>LoopbackChannel<CODE>}, which only
+ * connects the M2MP Layers loaded by one class loader, a simulated channel
+ * connects the M2MP Layers in all the class loaders that share one loaded copy
+ * of class SimulatedNetwork. This lets a load test run many M2MI clients in
+ * one process, each with its own M2MI and M2MP Layer, that can only reach each
+ * other through the (simulated) network. To use it, configure the M2MP Layer
+ * with <TT>edu.rit.m2mp.daemon.port</TT> = 0 and
+ * <TT>edu.rit.m2mp.channel.class</TT> = <TT>edu.rit.m2mp.SimulatedChannel</TT>.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class SimulatedChannel
+	extends Channel
+	{
+
+// Hidden data members.
+
+	// Queue of packet contents received from the simulated network.
+	private BlockingQueue myQueue = new LinkedBlockingQueue();
+
+	// Message ID of the last message whose last packet was transmitted, used
+	// to count each message once no matter what the packet redundancy is.
+	private int myLastMessageID;
+	private boolean myLastMessageValid;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new simulated channel. It receives the packets transmitted
+	 * on all simulated channels from now on.
+	 *
+	 * @param  thePacketPool  Packet pool.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>thePacketPool</TT> is null.
+	 */
+	public SimulatedChannel
+		(PacketPool thePacketPool)
+		{
+		super (thePacketPool);
+		SimulatedNetwork.register (myQueue);
+		}
+
+// Exported operations.
+
+	/**
+	 * Receive a packet from this channel. This method blocks until a packet
+	 * arrives from the simulated network.
+	 *
+	 * @return  Packet that was received.
+	 *
+	 * @exception  IOException
+	 *     Thrown if the calling thread was interrupted while waiting.
+	 */
+	public Packet receivePacket()
+		throws IOException
+		{
+		byte[] contents;
+		try
+			{
+			contents = (byte[]) myQueue.take();
+			}
+		catch (InterruptedException exc)
+			{
+			IOException exc2 =
+				new InterruptedIOException
+					("edu.rit.m2mp.SimulatedChannel.receivePacket() interrupted");
+			exc2.initCause (exc);
+			throw exc2;
+			}
+
+		Packet packet = myPacketPool.allocate();
+		System.arraycopy
+			(contents, 0, packet.getBuffer(), 0, contents.length);
+		packet.limit (contents.length);
+		return packet;
+		}
+
+	/**
+	 * Transmit the given packet on this channel. This method does not block.
+	 *
+	 * @param  thePacket  Packet to be transmitted.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	public void transmitPacket
+		(Packet thePacket)
+		throws IOException
+		{
+		boolean isNewMessage = false;
+		if (thePacket.isLastPacket())
+			{
+			synchronized (this)
+				{
+				int id = thePacket.getMessageID();
+				if (! myLastMessageValid || id != myLastMessageID)
+					{
+					isNewMessage = true;
+					myLastMessageID = id;
+					myLastMessageValid = true;
+					}
+				}
+			}
+		SimulatedNetwork.transmit
+			(thePacket.getBuffer(), thePacket.limit(), isNewMessage);
+		}
+
+	/**
+	 * Close this simulated channel. It no longer receives packets from the
+	 * simulated network.
+	 */
+	public void close()
+		{
+		SimulatedNetwork.unregister (myQueue);
+		}
+
+	}
@@ -0,0 +1,320 @@
+//******************************************************************************
+//
+// File:    SimulatedNetwork.java
+// Package: edu.rit.m2mp
+// Unit:    Class edu.rit.m2mp.SimulatedNetwork
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class SimulatedNetwork provides an in-memory broadcast medium with
+ * configurable packet loss and latency. It is the shared half of {@link
+ * SimulatedChannel </CODE>SimulatedChannel<CODE>}: each simulated channel
+ * registers a receive queue with the simulated network, and every packet
+ * transmitted on any simulated channel is delivered to every registered queue,
+ * including the transmitter's own, unless it is lost on the way to that queue.
+ * <P>
+ * Class SimulatedNetwork deliberately uses only Java platform types in its
+ * interface (byte arrays and blocking queues). A load test can therefore load
+ * this one class in a parent class loader and run several complete M2MI/M2MP
+ * stacks, each in its own child class loader, that all talk to each other
+ * through it.
+ * <P>
+ * Each delivery to each queue is lost independently with the given loss
+ * probability. A delivery that is not lost is delayed by the given latency
+ * plus a uniformly distributed random jitter, so packets with jitter may be
+ * reordered, just as datagrams on a real network may be. The defaults are no
+ * loss and no latency.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class SimulatedNetwork
+	{
+
+// Hidden helper classes.
+
+	/**
+	 * Class Delivery is one packet on its way to one receive queue.
+	 */
+	private static class Delivery
+		implements Delayed
+		{
+		// Receive queue and packet contents.
+		private BlockingQueue myQueue;
+		private byte[] myPacket;
+
+		// Time at which the packet arrives (nanoseconds).
+		private long myArrival;
+
+		public Delivery
+			(BlockingQueue theQueue,
+			 byte[] thePacket,
+			 long theArrival)
+			{
+			myQueue = theQueue;
+			myPacket = thePacket;
+			myArrival = theArrival;
+			}
+
+		public long getDelay
+			(TimeUnit unit)
+			{
+			return unit.convert
+				(myArrival - System.nanoTime(), TimeUnit.NANOSECONDS);
+			}
+
+		public int compareTo
+			(Delayed obj)
+			{
+			long other = ((Delivery) obj).myArrival;
+			return myArrival < other ? -1 : myArrival > other ? 1 : 0;
+			}
+		}
+
+// Hidden data members.
+
+	// Registered receive queues.
+	private static ArrayList theQueues = new ArrayList();
+
+	// Loss probability, latency (milliseconds), and jitter (milliseconds).
+	private static double theLossRate = 0.0;
+	private static long theLatency = 0L;
+	private static long theJitter = 0L;
+
+	// PRNG for losses and jitter.
+	private static Random thePrng = new Random();
+
+	// Deliveries waiting out their latency, and the thread that completes them.
+	private static DelayQueue theDeliveries = new DelayQueue();
+	private static Thread theDeliveryThread;
+
+	// Statistics.
+	private static long thePacketsTransmitted;
+	private static long thePacketsDelivered;
+	private static long thePacketsLost;
+	private static long theMessagesTransmitted;
+
+// Prevent construction.
+
+	private SimulatedNetwork()
+		{
+		}
+
+// Exported operations.
+
+	/**
+	 * Configure the simulated network. The new settings apply to packets
+	 * transmitted from now on.
+	 *
+	 * @param  theLossRate  Probability that one delivery of a packet to one
+	 *                      receive queue is lost, 0.0 through 1.0.
+	 * @param  theLatency   Delay before a packet arrives (milliseconds).
+	 * @param  theJitter    Maximum random delay added to the latency
+	 *                      (milliseconds).
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if any argument is out of range.
+	 */
+	public static synchronized void configure
+		(double theLossRate,
+		 long theLatency,
+		 long theJitter)
+		{
+		if (theLossRate < 0.0 || theLossRate > 1.0 ||
+				theLatency < 0L || theJitter < 0L)
+			{
+			throw new IllegalArgumentException();
+			}
+		SimulatedNetwork.theLossRate = theLossRate;
+		SimulatedNetwork.theLatency = theLatency;
+		SimulatedNetwork.theJitter = theJitter;
+		}
+
+	/**
+	 * Register the given receive queue. Every packet transmitted from now on is
+	 * put into the queue as a byte array exactly as long as the packet, unless
+	 * it is lost.
+	 *
+	 * @param  theQueue  Receive queue.
+	 */
+	public static synchronized void register
+		(BlockingQueue theQueue)
+		{
+		theQueues.add (theQueue);
+		}
+
+	/**
+	 * Unregister the given receive queue. Packets still on their way to it are
+	 * put into it when they arrive.
+	 *
+	 * @param  theQueue  Receive queue.
+	 */
+	public static synchronized void unregister
+		(BlockingQueue theQueue)
+		{
+		theQueues.remove (theQueue);
+		}
+
+	/**
+	 * Transmit a packet on the simulated network. The packet's bytes are copied
+	 * before this method returns. This method does not block.
+	 *
+	 * @param  theBuffer     Buffer holding the packet.
+	 * @param  theLength     Length of the packet.
+	 * @param  isNewMessage  True if the packet is the first transmission of the
+	 *                       last packet of a message, false otherwise. Used
+	 *                       only to count messages.
+	 */
+	public static synchronized void transmit
+		(byte[] theBuffer,
+		 int theLength,
+		 boolean isNewMessage)
+		{
+		byte[] packet = new byte [theLength];
+		System.arraycopy (theBuffer, 0, packet, 0, theLength);
+		++ thePacketsTransmitted;
+		if (isNewMessage)
+			{
+			++ theMessagesTransmitted;
+			}
+
+		int n = theQueues.size();
+		for (int i = 0; i < n; ++ i)
+			{
+			BlockingQueue queue = (BlockingQueue) theQueues.get (i);
+			if (theLossRate > 0.0 && thePrng.nextDouble() < theLossRate)
+				{
+				++ thePacketsLost;
+				}
+			else
+				{
+				++ thePacketsDelivered;
+				long delay = theLatency;
+				if (theJitter > 0L)
+					{
+					delay += (long) (thePrng.nextDouble() * (theJitter + 1));
+					}
+				if (delay == 0L)
+					{
+					queue.offer (packet);
+					}
+				else
+					{
+					startDeliveryThread();
+					theDeliveries.put
+						(new Delivery
+							(queue, packet, System.nanoTime() + delay*1000000L));
+					}
+				}
+			}
+		}
+
+	/**
+	 * Returns the number of packets transmitted so far.
+	 */
+	public static synchronized long getPacketsTransmitted()
+		{
+		return thePacketsTransmitted;
+		}
+
+	/**
+	 * Returns the number of packet deliveries so far. Each transmitted packet
+	 * is delivered once to each receive queue that did not lose it.
+	 */
+	public static synchronized long getPacketsDelivered()
+		{
+		return thePacketsDelivered;
+		}
+
+	/**
+	 * Returns the number of packet deliveries lost so far.
+	 */
+	public static synchronized long getPacketsLost()
+		{
+		return thePacketsLost;
+		}
+
+	/**
+	 * Returns the number of messages transmitted so far.
+	 */
+	public static synchronized long getMessagesTransmitted()
+		{
+		return theMessagesTransmitted;
+		}
+
+	/**
+	 * Reset the statistics to zero.
+	 */
+	public static synchronized void resetStatistics()
+		{
+		thePacketsTransmitted = 0L;
+		thePacketsDelivered = 0L;
+		thePacketsLost = 0L;
+		theMessagesTransmitted = 0L;
+		}
+
+// Hidden operations.
+
+	/**
+	 * Start the thread that puts delayed packets into their receive queues, if
+	 * it is not running yet. Must be called while synchronized on the class.
+	 */
+	private static void startDeliveryThread()
+		{
+		if (theDeliveryThread == null)
+			{
+			theDeliveryThread = new Thread ("SimulatedNetwork")
+				{
+				public void run()
+					{
+					for (;;)
+						{
+						try
+							{
+							Delivery d = (Delivery) theDeliveries.take();
+							d.myQueue.offer (d.myPacket);
+							}
+						catch (InterruptedException exc)
+							{
+							}
+						}
+					}
+				};
+			theDeliveryThread.setDaemon (true);
+			theDeliveryThread.start();
+			}
+		}
+
+	}
@@ -0,0 +1,250 @@
+//******************************************************************************
+//
+// File:    M2MPBench.java
+// Package: edu.rit.m2mp.test
+// Unit:    Class edu.rit.m2mp.test.M2MPBench
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp.test;
+
+import edu.rit.m2mp.M2MP;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Class M2MPBench is a benchmark main program for the M2MP Layer. It sets up
+ * two M2MP Layers on {@link edu.rit.m2mp.LoopbackChannel
+ * </CODE>LoopbackChannel<CODE>}s, so that no network is involved, and sends
+ * messages of several sizes from one to the other. (Two layers are needed
+ * because an M2MP Layer's flow controller consumes its own packets when they
+ * loop back.) Sending exercises the fragmenting of a
+ * message into packets in class {@link edu.rit.m2mp.MessageOutputStream
+ * </CODE>MessageOutputStream<CODE>}; receiving exercises the packet receiving
+ * and message reassembly in class {@link edu.rit.m2mp.M2MP
+ * </CODE>M2MP<CODE>}. For each message size the program prints the number of
+ * messages per second and the average time per message from the start of
+ * sending to the end of reading. Each measurement is run once to warm up the
+ * JVM and then again for the reported figures.
+ * <P>
+ * Usage: java edu.rit.m2mp.test.M2MPBench [<I>messages</I>]
+ * <BR><I>messages</I> = Number of messages per measurement (default 10000)
+ * <P>
+ * No M2MP or device properties file is needed. The program uses a loopback
+ * channel and no M2MP Daemon; any other M2MP or device property not given on
+ * the command line with <TT>-D</TT> gets the value from the sample properties
+ * files.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class M2MPBench
+	{
+
+// Hidden constants.
+
+	// Message sizes to measure, in bytes.
+	private static final int[] SIZES = new int[] {64, 1024, 16384};
+
+	// Message prefix of the benchmark messages.
+	private static final byte[] PREFIX = new byte[]
+		{(byte) 'B', (byte) 'N', (byte) 'C', (byte) 'H'};
+
+// Prevent construction.
+
+	private M2MPBench()
+		{
+		}
+
+// Main program.
+
+	/**
+	 * Main program.
+	 */
+	public static void main
+		(String[] args)
+		{
+		try
+			{
+			int n = 10000;
+			if (args.length > 1) usage();
+			if (args.length == 1) n = Integer.parseInt (args[0]);
+
+			setLoopbackProperties();
+			M2MP sender = new M2MP();
+			M2MP receiver = new M2MP();
+			receiver.addMessageFilter (PREFIX);
+
+			System.out.println
+				("Message bytes      Messages/sec   Microsec/message");
+			for (int i = 0; i < SIZES.length; ++ i)
+				{
+				bench (sender, receiver, SIZES[i], n);
+				}
+			System.exit (0);
+			}
+		catch (Throwable exc)
+			{
+			System.err.println ("M2MPBench: Uncaught exception");
+			exc.printStackTrace (System.err);
+			System.exit (1);
+			}
+		}
+
+// Exported operations.
+
+	/**
+	 * Set the M2MP properties for an M2MP Layer on a loopback channel. The
+	 * daemon port and channel class are always set. The other M2MP properties
+	 * and the device ID are set to the values in the sample properties files
+	 * unless they were given on the command line.
+	 */
+	public static void setLoopbackProperties()
+		{
+		System.setProperty ("edu.rit.m2mp.daemon.port", "0");
+		System.setProperty
+			("edu.rit.m2mp.channel.class", "edu.rit.m2mp.LoopbackChannel");
+		setDefault ("edu.rit.m2mp.messagetimeout", "5000");
+		setDefault ("edu.rit.m2mp.flowtimeout", "100");
+		setDefault ("edu.rit.m2mp.flowwindow", "0");
+		setDefault ("edu.rit.m2mp.redundancy", "2");
+		setDefault ("edu.rit.m2mp.repair", "0");
+		setDefault ("edu.rit.m2mp.fec", "0");
+		setDefault ("edu.rit.m2mp.receivers", "1");
+		setDefault ("edu.rit.m2mp.debug.ReceiverThread", "0");
+		setDefault ("edu.rit.m2mp.debug.packets", "0");
+		setDefault ("edu.rit.m2mp.debug.messagefilters", "0");
+		setDefault ("edu.rit.device.id", "00087443BC87");
+		}
+
+// Hidden operations.
+
+	/**
+	 * Measure one message size.
+	 *
+	 * @param  sender    M2MP Layer that sends the messages.
+	 * @param  receiver  M2MP Layer that receives the messages.
+	 * @param  size      Message size in bytes, including the prefix.
+	 * @param  n         Number of messages.
+	 */
+	private static void bench
+		(M2MP sender,
+		 final M2MP receiver,
+		 int size,
+		 final int n)
+		throws Exception
+		{
+		byte[] message = new byte [size];
+		System.arraycopy (PREFIX, 0, message, 0, PREFIX.length);
+		for (int i = PREFIX.length; i < size; ++ i)
+			{
+			message[i] = (byte) i;
+			}
+
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			// Read the messages in a separate thread, as an application would.
+			final long[] received = new long [1];
+			Thread reader = new Thread()
+				{
+				public void run()
+					{
+					try
+						{
+						byte[] buf = new byte [4096];
+						for (int i = 0; i < n; ++ i)
+							{
+							InputStream in = receiver.acceptIncomingMessage();
+							int len;
+							while ((len = in.read (buf)) != -1)
+								{
+								received[0] += len;
+								}
+							in.close();
+							}
+						}
+					catch (Exception exc)
+						{
+						exc.printStackTrace (System.err);
+						}
+					}
+				};
+			reader.start();
+
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				OutputStream out = sender.createOutgoingMessage();
+				out.write (message);
+				out.close();
+				}
+			reader.join();
+			long t2 = System.nanoTime();
+
+			if (received[0] != (long) size * n)
+				{
+				System.err.println
+					("M2MPBench: Received " + received[0] + " bytes, expected " +
+					 ((long) size * n));
+				}
+			if (pass == 1)
+				{
+				System.out.println
+					(padLeft ("" + size, 13) +
+					 padLeft ("" + (n * 1000000000L / (t2-t1)), 18) +
+					 padLeft ("" + ((t2-t1) / 1000L / n), 19));
+				}
+			}
+		}
+
+	/**
+	 * Set the given system property if it is not already set.
+	 */
+	private static void setDefault
+		(String name,
+		 String value)
+		{
+		if (System.getProperty (name) == null)
+			{
+			System.setProperty (name, value);
+			}
+		}
+
+	private static String padLeft
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.insert (0, ' ');
+		return buf.toString();
+		}
+
+	private static void usage()
+		{
+		System.err.println ("Usage: java edu.rit.m2mp.test.M2MPBench [<messages>]");
+		System.exit (1);
+		}
+
+	}
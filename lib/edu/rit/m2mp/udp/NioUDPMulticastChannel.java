@@ -0,0 +1,456 @@
+//******************************************************************************
+//
+// File:    NioUDPMulticastChannel.java
+// Package: edu.rit.m2mp.udp
+// Unit:    Class edu.rit.m2mp.udp.NioUDPMulticastChannel
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.m2mp.udp;
+
+import edu.rit.m2mp.M2MPInitializationException;
+import edu.rit.m2mp.M2MPProperties;
+import edu.rit.m2mp.Packet;
+import edu.rit.m2mp.PacketPool;
+
+import java.io.IOException;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import java.util.LinkedList;
+
+/**
+ * Class NioUDPMulticastChannel provides a broadcast M2MP {@link
+ * edu.rit.m2mp.Channel </CODE>Channel<CODE>} that uses UDP datagrams to
+ * transport M2MP packets, like class {@link UDPMulticastChannel
+ * </CODE>UDPMulticastChannel<CODE>}, but does its I/O through a non-blocking
+ * NIO datagram channel. The two classes send and receive the same datagrams and
+ * can be mixed freely among the hosts in a multicast group.
+ * <P>
+ * The receiving side waits for datagrams in a selector. Each time the selector
+ * wakes up, all the datagrams already queued in the socket (up to
+ * <TT>BATCH_SIZE</TT> of them) are received straight into packets from the
+ * packet pool, and later calls of <TT>receivePacket()</TT> return the queued
+ * packets without going back to the operating system. The sending side never
+ * blocks: if the socket's send buffer is full, the packet is copied onto a
+ * pending queue and sent by the receiving thread as soon as the socket becomes
+ * writable again. If more than <TT>MAX_PENDING</TT> packets are already pending,
+ * the packet is dropped, as the network itself would have done.
+ * <P>
+ * The configuration parameters are the same as for class {@link
+ * UDPMulticastChannel </CODE>UDPMulticastChannel<CODE>}:
+ * <TT>edu.rit.m2mp.udp.address</TT> (default 239.255.0.1),
+ * <TT>edu.rit.m2mp.udp.port</TT> (default 5678),
+ * <TT>edu.rit.m2mp.udp.localaddress</TT>, and <TT>edu.rit.m2mp.udp.ttl</TT>
+ * (default 1). To use this channel, put the following in the M2MP properties
+ * file:
+ * <PRE>
+ *     edu.rit.m2mp.channel.class = edu.rit.m2mp.udp.NioUDPMulticastChannel</PRE>
+ * <P>
+ * Several M2MP Layer threads can receive from this channel at once; see the
+ * <TT>edu.rit.m2mp.receivers</TT> property in class {@link
+ * edu.rit.m2mp.M2MPProperties </CODE>M2MPProperties<CODE>}.
+ * <P>
+ * If the M2MP property <TT>"edu.rit.m2mp.debug.ReceiverThread"</TT> is 2 or
+ * higher, a message is printed on the standard error stream whenever an
+ * outgoing packet is dropped.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class NioUDPMulticastChannel
+	extends UDPChannel
+	{
+
+// Exported constants.
+
+	/**
+	 * Maximum number of datagrams received each time the selector wakes up.
+	 */
+	public static final int BATCH_SIZE = 32;
+
+	/**
+	 * Maximum number of outgoing packets waiting for the socket to become
+	 * writable.
+	 */
+	public static final int MAX_PENDING = 256;
+
+// Hidden data members.
+
+	// These are set up by initializeSocket(), which is called by the
+	// superclass constructor, so they must not have initializers.
+
+	// Configuration parameters.
+	private int myTTL;
+	private InetSocketAddress myGroup;
+
+	// NIO datagram channel, multicast group membership, and selector.
+	private DatagramChannel myChannel;
+	private MembershipKey myMembership;
+	private Selector mySelector;
+	private SelectionKey mySelectionKey;
+
+	// True once the datagram channel has been closed. The channel, selector,
+	// and selection key are closed but kept, so a thread that gets past the
+	// check gets an exception from them rather than a null reference.
+	private volatile boolean myClosed;
+
+	// These are set up by the constructor.
+
+	// Received packets not yet returned by receivePacket(). Also used as the
+	// lock for receiving.
+	private LinkedList myIncoming;
+
+	// Copies of outgoing packets waiting for the socket to become writable.
+	// Also used as the lock for sending.
+	private LinkedList myPending;
+
+	// Packet to receive the next datagram into.
+	private Packet mySparePacket;
+
+	private int debugReceiverThread;
+
+// Exported constructors.
+
+	/**
+	 * Construct a new NIO UDP multicast channel. To receive incoming packets,
+	 * the channel implementation will obtain {@link edu.rit.m2mp.Packet
+	 * </CODE>Packet<CODE>} objects from the given {@link
+	 * edu.rit.m2mp.PacketPool </CODE>PacketPool<CODE>}.
+	 *
+	 * @param  thePacketPool  Packet pool.
+	 *
+	 * @exception  NullPointerException
+	 *     (unchecked exception) Thrown if <TT>thePacketPool</TT> is null.
+	 * @exception  M2MPInitializationException
+	 *     (unchecked exception) Thrown if the channel cannot be initialized.
+	 */
+	public NioUDPMulticastChannel
+		(PacketPool thePacketPool)
+		{
+		super (thePacketPool, "239.255.0.1");
+		myIncoming = new LinkedList();
+		myPending = new LinkedList();
+		debugReceiverThread = M2MPProperties.getDebugReceiverThread();
+		}
+
+// Exported operations.
+
+	/**
+	 * Receive an M2MP packet via this channel.
+	 *
+	 * @return  M2MP packet that was received.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred. Thrown if the channel has been
+	 *     closed.
+	 */
+	public Packet receivePacket()
+		throws IOException
+		{
+		synchronized (myIncoming)
+			{
+			checkOpen();
+			try
+				{
+				while (myIncoming.isEmpty())
+					{
+					mySelector.select();
+					mySelector.selectedKeys().clear();
+					sendPending();
+					receiveBatch();
+					}
+				return (Packet) myIncoming.removeFirst();
+				}
+			catch (ClosedSelectorException exc)
+				{
+				throw closedException();
+				}
+			catch (CancelledKeyException exc)
+				{
+				throw closedException();
+				}
+			catch (IOException exc)
+				{
+				// I/O error, shut down the channel.
+				closeSocket();
+				throw exc;
+				}
+			}
+		}
+
+	/**
+	 * Send the given M2MP packet via this channel. This method does not block.
+	 *
+	 * @param  thePacket  M2MP packet to be sent.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred. Thrown if the channel has been
+	 *     closed.
+	 */
+	public void transmitPacket
+		(Packet thePacket)
+		throws IOException
+		{
+		synchronized (myPending)
+			{
+			checkOpen();
+			try
+				{
+				if (myPending.isEmpty() &&
+						myChannel.send (thePacket.getByteBuffer(), myGroup) > 0)
+					{
+					return;
+					}
+				if (myPending.size() >= MAX_PENDING)
+					{
+					reportDroppedPacket();
+					return;
+					}
+				Packet copy = myPacketPool.allocate();
+				copy.copy (thePacket);
+				myPending.addLast (copy);
+				mySelectionKey.interestOps
+					(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			catch (CancelledKeyException exc)
+				{
+				throw closedException();
+				}
+			catch (IOException exc)
+				{
+				closeSocket();
+				throw exc;
+				}
+			}
+		mySelector.wakeup();
+		}
+
+	/**
+	 * Determine whether several threads can usefully receive packets from
+	 * this channel at once. This is so, since each wakeup of the selector
+	 * receives a whole batch of datagrams for the receiving threads to share.
+	 *
+	 * @return  True.
+	 */
+	public boolean receivesConcurrently()
+		{
+		return true;
+		}
+
+// Hidden operations.
+
+	/**
+	 * Throw an IOException if the datagram channel has been closed.
+	 */
+	private void checkOpen()
+		throws IOException
+		{
+		if (myClosed)
+			{
+			throw closedException();
+			}
+		}
+
+	/**
+	 * Returns the IOException thrown when the datagram channel has been
+	 * closed.
+	 */
+	private static IOException closedException()
+		{
+		return new IOException ("Multicast datagram channel closed");
+		}
+
+	/**
+	 * Receive the datagrams that are ready, up to <TT>BATCH_SIZE</TT> of them,
+	 * onto the incoming queue. Assumes the incoming queue is locked.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private void receiveBatch()
+		throws IOException
+		{
+		int i, n;
+		for (i = 0; i < BATCH_SIZE; ++ i)
+			{
+			if (mySparePacket == null)
+				{
+				mySparePacket = myPacketPool.allocate();
+				}
+			ByteBuffer buf = mySparePacket.getByteBuffer();
+			buf.limit (buf.capacity());
+			if (myChannel.receive (buf) == null)
+				{
+				// No more datagrams are ready.
+				return;
+				}
+			n = buf.position();
+			try
+				{
+				mySparePacket.limit (n);
+				myIncoming.addLast (mySparePacket);
+				mySparePacket = null;
+				}
+			catch (IllegalArgumentException exc)
+				{
+				// Length is invalid. Ignore datagram, reuse packet.
+				reportInvalidLength (n);
+				}
+			}
+		}
+
+	/**
+	 * Send as many pending packets as the socket will take.
+	 *
+	 * @exception  IOException
+	 *     Thrown if an I/O error occurred.
+	 */
+	private void sendPending()
+		throws IOException
+		{
+		synchronized (myPending)
+			{
+			while (! myPending.isEmpty())
+				{
+				Packet packet = (Packet) myPending.getFirst();
+				if (myChannel.send (packet.getByteBuffer(), myGroup) == 0)
+					{
+					return;
+					}
+				myPending.removeFirst();
+				myPacketPool.deallocate (packet);
+				}
+			mySelectionKey.interestOps (SelectionKey.OP_READ);
+			}
+		}
+
+	/**
+	 * Report that an outgoing packet was dropped.
+	 */
+	private void reportDroppedPacket()
+		{
+		if (debugReceiverThread >= 2)
+			{
+			synchronized (System.err)
+				{
+				System.err.print
+					("edu.rit.m2mp.udp.NioUDPMulticastChannel: ");
+				System.err.print ("Outgoing packet dropped, ");
+				System.err.print (MAX_PENDING);
+				System.err.println (" pending");
+				}
+			}
+		}
+
+	/**
+	 * Initialize the datagram channel.
+	 *
+	 * @exception  M2MPInitializationException
+	 *     (unchecked exception) Thrown if the channel cannot be initialized.
+	 */
+	void initializeSocket()
+		{
+		try
+			{
+			// Make sure the localport is the same as the port.
+			myLocalPort = myPort;
+
+			// Get configuration parameters.
+			myTTL = UDPMulticastChannel.getUdpTTL();
+			myGroup = new InetSocketAddress (myAddress, myPort);
+			NetworkInterface intf =
+				NetworkInterface.getByInetAddress (myLocalAddress);
+			if (intf == null)
+				{
+				throw new M2MPInitializationException
+					("Cannot find network interface for " +
+						myLocalAddress.getHostAddress());
+				}
+
+			// Initialize datagram channel.
+			ProtocolFamily family =
+				myAddress instanceof Inet6Address ?
+					StandardProtocolFamily.INET6 :
+					StandardProtocolFamily.INET;
+			myChannel = DatagramChannel.open (family);
+			myChannel.setOption
+				(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+			myChannel.bind (new InetSocketAddress (myLocalPort));
+			myChannel.setOption
+				(StandardSocketOptions.IP_MULTICAST_IF, intf);
+			myChannel.setOption
+				(StandardSocketOptions.IP_MULTICAST_TTL, new Integer (myTTL));
+			myChannel.setOption
+				(StandardSocketOptions.IP_MULTICAST_LOOP, Boolean.TRUE);
+			myMembership = myChannel.join (myAddress, intf);
+			myChannel.configureBlocking (false);
+			mySelector = Selector.open();
+			mySelectionKey =
+				myChannel.register (mySelector, SelectionKey.OP_READ);
+			}
+
+		catch (IOException exc)
+			{
+			closeSocket();
+			throw new M2MPInitializationException
+				("Cannot open multicast datagram channel", exc);
+			}
+		}
+
+	/**
+	 * Close the datagram channel.
+	 */
+	void closeSocket()
+		{
+		myClosed = true;
+		if (myMembership != null)
+			{
+			myMembership.drop();
+			myMembership = null;
+			}
+		if (mySelector != null)
+			{
+			try { mySelector.close(); } catch (IOException exc) {}
+			}
+		if (myChannel != null)
+			{
+			try { myChannel.close(); } catch (IOException exc) {}
+			}
+		}
+
+	}
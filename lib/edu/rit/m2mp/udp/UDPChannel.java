@@ -511,7 +511,7 @@ public abstract class UDPChannel
 	/**
 	 * Report an invalid length in a datagram.
 	 */
-	private void reportInvalidLength
+	void reportInvalidLength
 		(int n)
 		{
 		if (debugReceiverThread >= 2)
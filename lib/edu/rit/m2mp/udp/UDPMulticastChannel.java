@@ -158,7 +158,7 @@ public class UDPMulticastChannel
 	 *     (unchecked exception) Thrown if the property value is not a decimal
 	 *     integer in the range 0 .. 255.
 	 */
-	private static int getUdpTTL()
+	static int getUdpTTL()
 		{
 		String name = "edu.rit.m2mp.udp.ttl";
 		String prop = null;
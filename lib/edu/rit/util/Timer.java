@@ -156,6 +156,9 @@ public class Timer
 	// Interval for periodic timeouts (milliseconds).
 	long myInterval;
 
+	// Special value for trigger() meaning don't check the timeout.
+	static final long ANY_TIMEOUT = Long.MIN_VALUE;
+
 // Hidden constructors.
 
 	/**
@@ -431,10 +434,31 @@ public class Timer
 	void trigger
 		(long theTriggerTime)
 		{
+		trigger (theTriggerTime, ANY_TIMEOUT);
+		}
+
+	/**
+	 * Trigger this timer, provided it is still scheduled for the given
+	 * timeout. This is used when the trigger is handed off to another thread;
+	 * if this timer was stopped and restarted in the meantime, the stale
+	 * trigger is ignored.
+	 *
+	 * @param  theTriggerTime
+	 *     Time at which the trigger occurred (milliseconds since midnight
+	 *     01-Jan-1970 UTC).
+	 * @param  theTimeout
+	 *     Timeout for which the trigger occurred, or <TT>ANY_TIMEOUT</TT> to
+	 *     trigger regardless of the timeout.
+	 */
+	void trigger
+		(long theTriggerTime,
+		 long theTimeout)
+		{
 		synchronized (this)
 			{
-			// Make sure we're started.
+			// Make sure we're started, and still for the same timeout.
 			if (myState != STARTED) return;
+			if (theTimeout != ANY_TIMEOUT && theTimeout != myTimeout) return;
 
 			// Switch to the triggered state.
 			myState = TRIGGERED;
@@ -62,6 +62,24 @@ package edu.rit.util;
  * thread is not created until the first call to
  * <TT>TimerThread.getDefault()</TT>.
  * <P>
+ * A timer thread keeps its started timers in a sorted list, so starting or
+ * stopping a timer takes time proportional to the number of started timers.
+ * For programs with thousands of timers, the default timer thread can instead
+ * be a {@link TimerWheelThread </CODE>TimerWheelThread<CODE>}, which starts
+ * and stops timers in constant time and can perform actions in a pool of
+ * worker threads. This is selected with the following system properties:
+ * <UL>
+ * <LI>
+ * <TT>edu.rit.util.timer.wheel</TT> -- If 1, the default timer thread is a
+ * timer wheel thread. Default: 0.
+ * <LI>
+ * <TT>edu.rit.util.timer.tick</TT> -- Tick length of the timer wheel
+ * (milliseconds). Default: 50.
+ * <LI>
+ * <TT>edu.rit.util.timer.workers</TT> -- Number of worker threads of the timer
+ * wheel, or 0 to perform actions in the timer wheel thread. Default: 0.
+ * </UL>
+ * <P>
  * Classes {@link Timer </CODE>Timer<CODE>}, {@link TimerTask
  * </CODE>TimerTask<CODE>}, and TimerThread provide capabilities similar to
  * classes java.util.Timer and java.util.TimerTask. Unlike the latter, they also
@@ -125,7 +143,19 @@ public class TimerThread
 		{
 		if (theDefaultTimerThread == null)
 			{
-			theDefaultTimerThread = new TimerThread();
+			if (getIntProperty ("edu.rit.util.timer.wheel", 0) != 0)
+				{
+				theDefaultTimerThread = new TimerWheelThread
+					(getIntProperty
+						("edu.rit.util.timer.tick",
+						 (int) TimerWheelThread.DEFAULT_TICK),
+					 TimerWheelThread.DEFAULT_WHEEL_SIZE,
+					 getIntProperty ("edu.rit.util.timer.workers", 0));
+				}
+			else
+				{
+				theDefaultTimerThread = new TimerThread();
+				}
 			theDefaultTimerThread.setDaemon (true);
 			theDefaultTimerThread.start();
 			}
@@ -299,6 +329,33 @@ public class TimerThread
 		notifyAll();
 		}
 
+	/**
+	 * Returns the value of the given integer system property, or the given
+	 * default value if the property is not set, is not an integer, or cannot
+	 * be read.
+	 *
+	 * @param  theName     Property name.
+	 * @param  theDefault  Default value.
+	 */
+	private static int getIntProperty
+		(String theName,
+		 int theDefault)
+		{
+		try
+			{
+			String value = System.getProperty (theName);
+			return value == null ? theDefault : Integer.parseInt (value);
+			}
+		catch (NumberFormatException exc)
+			{
+			return theDefault;
+			}
+		catch (SecurityException exc)
+			{
+			return theDefault;
+			}
+		}
+
 // Unit test main program.
 
 //	/**
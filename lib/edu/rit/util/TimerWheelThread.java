@@ -0,0 +1,511 @@
+//******************************************************************************
+//
+// File:    TimerWheelThread.java
+// Package: edu.rit.util
+// Unit:    Class edu.rit.util.TimerWheelThread
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.util;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Class TimerWheelThread is a {@link TimerThread </CODE>TimerThread<CODE>} that
+ * keeps its timers in a hashed timing wheel instead of a sorted list. It is
+ * used exactly like a timer thread; {@link Timer </CODE>Timer<CODE>}s and
+ * {@link TimerTask </CODE>TimerTask<CODE>}s do not know the difference.
+ * <P>
+ * Time is divided into <I>ticks</I> of a fixed number of milliseconds. The
+ * wheel is an array of buckets, and a timer is placed in the bucket for the
+ * tick in which it times out, modulo the number of buckets. Starting or
+ * stopping a timer is therefore a constant-time operation no matter how many
+ * timers there are, whereas a plain timer thread takes time proportional to
+ * the number of started timers. A timer whose timeout is more than one
+ * revolution of the wheel away simply stays in its bucket until the wheel comes
+ * around to it on the right revolution. The price is that timeouts are only
+ * resolved to the nearest tick, and that the thread wakes up once per tick
+ * while any timer is started.
+ * <P>
+ * A timer wheel thread can also be given a pool of worker threads. If it has
+ * workers, the timer wheel thread hands each triggered timer to a worker, which
+ * calls the timer task's <TT>action()</TT> method; thus one slow action does not
+ * delay the timeouts of all the other timers. A single timer's actions are
+ * still performed one at a time: if a timer triggers again (for example,
+ * because its action restarted it) while a worker is still performing its
+ * previous action, the new trigger is deferred until that worker is done, and
+ * that same worker then performs it. If it has no workers, the timer wheel
+ * thread performs the actions itself, one at a time, like a plain timer thread.
+ * <P>
+ * The default timer thread returned by <TT>TimerThread.getDefault()</TT> is a
+ * timer wheel thread if the <TT>edu.rit.util.timer.wheel</TT> system property
+ * is set; see {@link TimerThread </CODE>TimerThread<CODE>}.
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class TimerWheelThread
+	extends TimerThread
+	{
+
+// Hidden data members.
+
+	/**
+	 * Default tick length (milliseconds).
+	 */
+	public static final long DEFAULT_TICK = 50L;
+
+	/**
+	 * Default number of buckets in the wheel.
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	/**
+	 * Tick length (milliseconds).
+	 */
+	private long myTick;
+
+	/**
+	 * The wheel. Each bucket points to a sentinel timer at the head of a
+	 * circular doubly linked list of the timers in that bucket, in no
+	 * particular order.
+	 */
+	private Timer[] myWheel;
+
+	/**
+	 * Bit mask for turning a tick number into a bucket index. The number of
+	 * buckets is a power of 2.
+	 */
+	private int myMask;
+
+	/**
+	 * Number of the next tick to be processed (tick number = time / tick
+	 * length).
+	 */
+	private long myNextTick;
+
+	/**
+	 * Number of timers in the wheel.
+	 */
+	private int myCount;
+
+	/**
+	 * True if this timer wheel thread is running, false if it's shut down.
+	 */
+	private boolean iamRunning = true;
+
+	/**
+	 * Worker threads, or a zero-length array to perform actions in this
+	 * thread.
+	 */
+	private Worker[] myWorkers;
+
+	/**
+	 * Queue of triggered timers waiting for a worker. Each entry is a
+	 * Dispatch.
+	 */
+	private LinkedList myReadyQueue = new LinkedList();
+
+	/**
+	 * Map from each timer whose action a worker is performing to a queue of
+	 * the timer's Dispatches that triggered meanwhile and must wait their turn.
+	 * Guarded by myReadyQueue.
+	 */
+	private HashMap myBusyTimers = new HashMap();
+
+	/**
+	 * Class TimerWheelThread.Dispatch records a triggered timer together with
+	 * the timeout for which it was triggered.
+	 */
+	private static class Dispatch
+		{
+		public Timer myTimer;
+		public long myTimeout;
+
+		public Dispatch
+			(Timer theTimer,
+			 long theTimeout)
+			{
+			myTimer = theTimer;
+			myTimeout = theTimeout;
+			}
+		}
+
+	/**
+	 * Class TimerWheelThread.Worker is a thread that performs the actions of
+	 * triggered timers.
+	 */
+	private class Worker
+		extends Thread
+		{
+		public void run()
+			{
+			try
+				{
+				for (;;)
+					{
+					Dispatch theDispatch;
+					synchronized (myReadyQueue)
+						{
+						while (iamRunning && myReadyQueue.isEmpty())
+							{
+							myReadyQueue.wait();
+							}
+						if (! iamRunning) return;
+						theDispatch = (Dispatch) myReadyQueue.removeFirst();
+
+						// If another worker is performing this timer's action,
+						// leave this trigger for that worker to perform next.
+						LinkedList deferred = (LinkedList)
+							myBusyTimers.get (theDispatch.myTimer);
+						if (deferred != null)
+							{
+							deferred.addLast (theDispatch);
+							continue;
+							}
+						myBusyTimers.put (theDispatch.myTimer, new LinkedList());
+						}
+
+					// Perform this timer's triggers, including any that were
+					// deferred while we were at it.
+					while (theDispatch != null)
+						{
+						perform (theDispatch);
+						synchronized (myReadyQueue)
+							{
+							LinkedList deferred = (LinkedList)
+								myBusyTimers.get (theDispatch.myTimer);
+							if (deferred.isEmpty())
+								{
+								myBusyTimers.remove (theDispatch.myTimer);
+								theDispatch = null;
+								}
+							else
+								{
+								theDispatch = (Dispatch) deferred.removeFirst();
+								}
+							}
+						}
+					}
+				}
+			catch (InterruptedException exc)
+				{
+				System.err.println ("TimerWheelThread worker interrupted");
+				exc.printStackTrace (System.err);
+				}
+			}
+		}
+
+// Exported constructors.
+
+	/**
+	 * Construct a new timer wheel thread with the default tick length, the
+	 * default number of buckets, and no worker threads. After constructing it,
+	 * you must call the timer wheel thread's <TT>start()</TT> method, or no
+	 * timeouts will occur.
+	 */
+	public TimerWheelThread()
+		{
+		this (DEFAULT_TICK, DEFAULT_WHEEL_SIZE, 0);
+		}
+
+	/**
+	 * Construct a new timer wheel thread. After constructing it, you must call
+	 * the timer wheel thread's <TT>start()</TT> method, or no timeouts will
+	 * occur. The worker threads are started along with the timer wheel thread
+	 * and are daemon threads if the timer wheel thread is.
+	 *
+	 * @param  theTick
+	 *     Tick length (milliseconds).
+	 * @param  theWheelSize
+	 *     Number of buckets in the wheel. This is rounded up to a power of 2.
+	 * @param  theWorkerCount
+	 *     Number of worker threads, or 0 to perform actions in the timer wheel
+	 *     thread itself.
+	 *
+	 * @exception  IllegalArgumentException
+	 *     (unchecked exception) Thrown if <TT>theTick</TT> &lt;= 0, if
+	 *     <TT>theWheelSize</TT> &lt;= 0, or if <TT>theWorkerCount</TT> &lt; 0.
+	 */
+	public TimerWheelThread
+		(long theTick,
+		 int theWheelSize,
+		 int theWorkerCount)
+		{
+		super();
+		if (theTick <= 0L)
+			{
+			throw new IllegalArgumentException
+				("TimerWheelThread(): theTick = " + theTick + " illegal");
+			}
+		if (theWheelSize <= 0)
+			{
+			throw new IllegalArgumentException
+				("TimerWheelThread(): theWheelSize = " + theWheelSize +
+				 " illegal");
+			}
+		if (theWorkerCount < 0)
+			{
+			throw new IllegalArgumentException
+				("TimerWheelThread(): theWorkerCount = " + theWorkerCount +
+				 " illegal");
+			}
+		int n = 1;
+		while (n < theWheelSize) n <<= 1;
+		myTick = theTick;
+		myWheel = new Timer [n];
+		myMask = n - 1;
+		for (int i = 0; i < n; ++ i)
+			{
+			Timer sentinel = new Timer();
+			sentinel.myPredecessor = sentinel;
+			sentinel.mySuccessor = sentinel;
+			myWheel[i] = sentinel;
+			}
+		myNextTick = System.currentTimeMillis() / myTick;
+		myWorkers = new Worker [theWorkerCount];
+		}
+
+// Exported operations.
+
+	/**
+	 * Shut down this timer wheel thread and its worker threads.
+	 */
+	public void shutdown()
+		{
+		synchronized (this)
+			{
+			iamRunning = false;
+			notifyAll();
+			}
+		synchronized (myReadyQueue)
+			{
+			myReadyQueue.notifyAll();
+			}
+		}
+
+	/**
+	 * Perform this timer wheel thread's processing. (Never call the
+	 * <TT>run()</TT> method yourself!)
+	 *
+	 * @exception  IllegalStateException
+	 *     (unchecked exception) Thrown if some thread other than this timer
+	 *     wheel thread called the <TT>run()</TT> method.
+	 */
+	public void run()
+		{
+		// Only this timer wheel thread itself can call the run() method.
+		if (Thread.currentThread() != this)
+			{
+			throw new IllegalStateException
+				("Wrong thread called the run() method");
+			}
+
+		// Start the workers.
+		for (int i = 0; i < myWorkers.length; ++ i)
+			{
+			myWorkers[i] = new Worker();
+			myWorkers[i].setDaemon (isDaemon());
+			myWorkers[i].start();
+			}
+
+		try
+			{
+			LinkedList triggered = new LinkedList();
+			while (iamRunning)
+				{
+				long now;
+
+				synchronized (this)
+					{
+					now = System.currentTimeMillis();
+					long nowTick = now / myTick;
+
+					// If the wheel is empty, wait until notified.
+					if (myCount == 0)
+						{
+						wait();
+						continue;
+						}
+
+					// If the next tick is in the future, wait until it
+					// arrives or until notified.
+					if (myNextTick > nowTick)
+						{
+						wait (myNextTick * myTick - now);
+						continue;
+						}
+
+					// Sweep the buckets for all ticks up to now, but go
+					// around the wheel no more than once.
+					long last = Math.min (nowTick, myNextTick + myMask);
+					for (long tick = myNextTick; tick <= last; ++ tick)
+						{
+						sweep (myWheel[(int) (tick & myMask)], now, triggered);
+						}
+					myNextTick = nowTick + 1;
+					}
+
+				// Perform or hand off the triggered timers' actions. Do this
+				// outside the synchronized block, or a deadlock may happen if a
+				// timer is restarted.
+				while (! triggered.isEmpty())
+					{
+					Dispatch theDispatch = (Dispatch) triggered.removeFirst();
+					if (myWorkers.length == 0)
+						{
+						perform (theDispatch);
+						}
+					else
+						{
+						synchronized (myReadyQueue)
+							{
+							myReadyQueue.addLast (theDispatch);
+							myReadyQueue.notify();
+							}
+						}
+					}
+				}
+			}
+
+		catch (InterruptedException exc)
+			{
+			System.err.println ("TimerWheelThread interrupted");
+			exc.printStackTrace (System.err);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Schedule the given timer.
+	 *
+	 * @param  theTimer    Timer.
+	 */
+	synchronized void schedule
+		(Timer theTimer)
+		{
+		// Take theTimer out of the wheel if necessary.
+		deschedule (theTimer);
+
+		// If the wheel was empty, the timer wheel thread has been idle and has
+		// no ticks to catch up on.
+		if (myCount == 0)
+			{
+			myNextTick = System.currentTimeMillis() / myTick;
+			}
+
+		// The timer goes in the bucket for the first tick that starts at or
+		// after its timeout, so it is due whenever that bucket is swept. Timers
+		// that are already due go in the next bucket to be swept.
+		long tick = Math.max
+			((theTimer.myTimeout + myTick - 1) / myTick, myNextTick);
+		Timer q = myWheel[(int) (tick & myMask)];
+		Timer p = q.myPredecessor;
+
+		// Insert the timer at the end of the bucket.
+		p.mySuccessor = theTimer;
+		theTimer.myPredecessor = p;
+		theTimer.mySuccessor = q;
+		q.myPredecessor = theTimer;
+		++ myCount;
+
+		// Wake up the timer wheel thread if it was idle. Otherwise it is
+		// already waiting for the next tick.
+		if (myCount == 1)
+			{
+			notifyAll();
+			}
+		}
+
+	/**
+	 * Deschedule the given timer.
+	 *
+	 * @param  theTimer    Timer.
+	 */
+	synchronized void deschedule
+		(Timer theTimer)
+		{
+		// If theTimer is not in the wheel, do nothing.
+		if (theTimer.myPredecessor == null) return;
+
+		// Unlink theTimer from its bucket.
+		theTimer.myPredecessor.mySuccessor = theTimer.mySuccessor;
+		theTimer.mySuccessor.myPredecessor = theTimer.myPredecessor;
+		theTimer.myPredecessor = null;
+		theTimer.mySuccessor = null;
+		-- myCount;
+		}
+
+	/**
+	 * Unlink every timer in the given bucket that has timed out and add it to
+	 * the given list. Timers due on a later revolution of the wheel are left
+	 * where they are. Must be called while synchronized on this.
+	 *
+	 * @param  theBucket  Sentinel of the bucket.
+	 * @param  now        Current time.
+	 * @param  triggered  List of Dispatches to add to.
+	 */
+	private void sweep
+		(Timer theBucket,
+		 long now,
+		 LinkedList triggered)
+		{
+		Timer theTimer = theBucket.mySuccessor;
+		while (theTimer != theBucket)
+			{
+			Timer next = theTimer.mySuccessor;
+			if (theTimer.myTimeout <= now)
+				{
+				long timeout = theTimer.myTimeout;
+				deschedule (theTimer);
+				triggered.addLast (new Dispatch (theTimer, timeout));
+				}
+			theTimer = next;
+			}
+		}
+
+	/**
+	 * Perform a triggered timer's action.
+	 *
+	 * @param  theDispatch  Triggered timer and its timeout.
+	 */
+	private void perform
+		(Dispatch theDispatch)
+		{
+		try
+			{
+			theDispatch.myTimer.trigger
+				(System.currentTimeMillis(), theDispatch.myTimeout);
+			}
+		catch (Throwable exc)
+			{
+			// Don't let one timer task's failure stop every other timer.
+			System.err.println ("TimerWheelThread: Uncaught exception");
+			exc.printStackTrace (System.err);
+			}
+		}
+
+	}
@@ -0,0 +1,184 @@
+//******************************************************************************
+//
+// File:    TimerBench.java
+// Package: edu.rit.util.test
+// Unit:    Class edu.rit.util.test.TimerBench
+//
+// This Java source file is copyright (C) 2001-2004 by Alan Kaminsky. All rights
+// reserved. For further information, contact the author, Alan Kaminsky, at
+// ark@cs.rit.edu.
+//
+// This Java source file is part of the M2MI Library ("The Library"). The
+// Library is free software; you can redistribute it and/or modify it under the
+// terms of the GNU General Public License as published by the Free Software
+// Foundation; either version 2 of the License, or (at your option) any later
+// version.
+//
+// The Library is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+// FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+// details.
+//
+// A copy of the GNU General Public License is provided in the file gpl.txt. You
+// may also obtain a copy of the GNU General Public License on the World Wide
+// Web at http://www.gnu.org/licenses/gpl.html or by writing to the Free
+// Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+// USA.
+//
+//******************************************************************************
+
+package edu.rit.util.test;
+
+import edu.rit.util.Timer;
+import edu.rit.util.TimerTask;
+import edu.rit.util.TimerThread;
+import edu.rit.util.TimerWheelThread;
+
+/**
+ * Class TimerBench is a benchmark main program that compares the timer
+ * scheduling cost of class {@link edu.rit.util.TimerThread
+ * </CODE>TimerThread<CODE>} against class {@link edu.rit.util.TimerWheelThread
+ * </CODE>TimerWheelThread<CODE>}. With a given number of other timers already
+ * pending, it repeatedly starts a timer and stops it again before it times out,
+ * as the M2MP flow controller and message timeouts do, and prints the average
+ * time in nanoseconds for one start and stop. Each measurement is run once to
+ * warm up the JVM and then again for the reported figures.
+ * <P>
+ * Usage: java edu.rit.util.test.TimerBench [<I>iterations</I>]
+ * <BR><I>iterations</I> = Number of starts and stops per measurement (default
+ * 100000)
+ *
+ * @author  Alan Kaminsky
+ * @version 17-Oct-2026
+ */
+public class TimerBench
+	{
+
+// Hidden constants.
+
+	// Numbers of pending timers to measure with.
+	private static final int[] PENDING = new int[] {0, 100, 1000, 10000};
+
+	// Timeout interval (milliseconds), long enough that no timer times out
+	// during a measurement.
+	private static final long TIMEOUT = 600000L;
+
+	// Timer task that does nothing.
+	private static final TimerTask NO_ACTION = new TimerTask()
+		{
+		public void action
+			(Timer theTimer)
+			{
+			}
+		};
+
+// Prevent construction.
+
+	private TimerBench()
+		{
+		}
+
+// Main program.
+
+	/**
+	 * Main program.
+	 */
+	public static void main
+		(String[] args)
+		{
+		try
+			{
+			int n = 100000;
+			if (args.length > 1) usage();
+			if (args.length == 1) n = Integer.parseInt (args[0]);
+
+			System.out.println
+				("Pending timers   TimerThread ns   TimerWheelThread ns");
+			for (int i = 0; i < PENDING.length; ++ i)
+				{
+				TimerThread heap = new TimerThread();
+				heap.setDaemon (true);
+				heap.start();
+				TimerThread wheel = new TimerWheelThread();
+				wheel.setDaemon (true);
+				wheel.start();
+				long tHeap = bench (heap, PENDING[i], n);
+				long tWheel = bench (wheel, PENDING[i], n);
+				System.out.println
+					(padLeft ("" + PENDING[i], 14) +
+					 padLeft ("" + tHeap, 17) +
+					 padLeft ("" + tWheel, 22));
+				heap.shutdown();
+				wheel.shutdown();
+				}
+			}
+		catch (Throwable exc)
+			{
+			System.err.println ("TimerBench: Uncaught exception");
+			exc.printStackTrace (System.err);
+			System.exit (1);
+			}
+		}
+
+// Hidden operations.
+
+	/**
+	 * Measure one timer thread.
+	 *
+	 * @param  theTimerThread  Timer thread.
+	 * @param  pending         Number of other pending timers.
+	 * @param  n               Number of iterations.
+	 *
+	 * @return  Average nanoseconds for one start and stop.
+	 */
+	private static long bench
+		(TimerThread theTimerThread,
+		 int pending,
+		 int n)
+		{
+		// Spread the pending timers' timeouts out so a start lands in the
+		// middle of them.
+		Timer[] others = new Timer [pending];
+		for (int i = 0; i < pending; ++ i)
+			{
+			others[i] = theTimerThread.createTimer (NO_ACTION);
+			others[i].start (TIMEOUT / 2 + TIMEOUT * i / pending);
+			}
+
+		Timer timer = theTimerThread.createTimer (NO_ACTION);
+		long t = 0L;
+		for (int pass = 0; pass < 2; ++ pass)
+			{
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; ++ i)
+				{
+				timer.start (TIMEOUT);
+				timer.stop();
+				}
+			long t2 = System.nanoTime();
+			t = (t2-t1) / n;
+			}
+
+		for (int i = 0; i < pending; ++ i)
+			{
+			others[i].stop();
+			}
+		return t;
+		}
+
+	private static String padLeft
+		(String s,
+		 int n)
+		{
+		StringBuffer buf = new StringBuffer (s);
+		while (buf.length() < n) buf.insert (0, ' ');
+		return buf.toString();
+		}
+
+	private static void usage()
+		{
+		System.err.println ("Usage: java edu.rit.util.test.TimerBench [<iterations>]");
+		System.exit (1);
+		}
+
+	}
@@ -2,6 +2,8 @@ package m2mimud.command;
 import m2mimud.command.special.*;
 import java.io.*;
 import java.util.regex.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import m2mimud.state.PlayerCharacter;
 
  /**
@@ -15,7 +17,12 @@ import m2mimud.state.PlayerCharacter;
 
 public class Parser
 {
+    private static final int CACHE_SIZE = 128; // how many recent commands to remember
+    
     private String [] theCommands;
+    private Pattern theMatcher; // every command pattern in one alternation, in command code order
+    private int [] commandGroups; // the group in theMatcher which wraps each command, 0 for none
+    private LinkedHashMap recentCommands; // the last CACHE_SIZE commands parsed, least recent first
     
     /**
      * Constructor
@@ -29,12 +36,47 @@ public class Parser
 			( new FileInputStream( "data/commands.data" ) );
 	        theCommands = (String[])oStream.readObject();
         	oStream.close();
+        	buildMatcher();
         }
         catch( Exception e )
         {
             e.printStackTrace();
             System.exit( 1 );
         }
+        recentCommands = new LinkedHashMap( CACHE_SIZE, 0.75f, true )
+        {
+        	protected boolean removeEldestEntry( Map.Entry eldest )
+        	{
+        		return size() > CACHE_SIZE;
+        	}
+        };
+    }
+    
+    /**
+     * Compiles the command table into a single pattern, each command wrapped
+     * in its own group.  The alternatives are tried in order, so the first
+     * command that matches the whole input wins, just as when the patterns were
+     * tried one at a time.  The command patterns must not use backreferences,
+     * since wrapping them shifts their group numbers.
+     */
+    private void buildMatcher()
+    {
+    	StringBuffer combined = new StringBuffer();
+    	commandGroups = new int[theCommands.length];
+    	int group = 1;
+    	for( int i = 0; i < theCommands.length; i++ )
+    	{
+    		if( theCommands[i] != null )
+    		{
+    			String regex = theCommands[i].trim();
+    			if( combined.length() > 0 )
+    				combined.append( '|' );
+    			combined.append( '(' ).append( regex ).append( ')' );
+    			commandGroups[i] = group;
+    			group += 1 + Pattern.compile( regex ).matcher( "" ).groupCount();
+    		}
+    	}
+    	theMatcher = Pattern.compile( combined.toString() );
     }
     
     /**
@@ -44,35 +86,47 @@ public class Parser
      */
     public Command parse( String command )
     {
-    	Command retVal = null;      
-    	int commandCode = getCommandCode( command );               
-    	if( isBasicCommand( commandCode ) )
-        	retVal = new Command( commandCode );
-    	else
-       		retVal = processCommand( commandCode, command.trim() );
+    	String trimmed = command.trim();
+    	Command retVal = null;
+    	synchronized( recentCommands )
+    	{
+    		retVal = (Command)recentCommands.get( trimmed );
+    	}
+    	if( retVal == null )
+    	{
+    		int commandCode = getCommandCode( trimmed );
+    		if( isBasicCommand( commandCode ) )
+        		retVal = new Command( commandCode );
+    		else
+       			retVal = processCommand( commandCode, trimmed );
+       		synchronized( recentCommands )
+       		{
+       			recentCommands.put( trimmed, retVal );
+       		}
+    	}
     	return retVal;
     }
     
     /**
      * Given a string command, this determines what the integer code
      * is for the appropriate Command object
-     * @param theCommand The string command
+     * @param theCommand The string command, already trimmed
      */
     private int getCommandCode( String theCommand )
     {
         int retVal = Command.INVALID_COMMAND;
-        boolean found = false;
-        for( int i = 0; i < theCommands.length && !found ; i++)
+        Matcher commMatcher = theMatcher.matcher( theCommand );
+        if( commMatcher.matches() )
         {
-	    if( theCommands[i] != null )	        
-            {
-	    	Pattern commPattern = Pattern.compile( theCommands[i].trim() );		
-		if( commPattern.matcher( theCommand.trim() ).matches() )
-		{			
-			retVal = i;
-	                found = true;
-		}
-            }
+        	boolean found = false;
+        	for( int i = 0; i < commandGroups.length && !found; i++ )
+        	{
+        		if( commandGroups[i] != 0 && commMatcher.start( commandGroups[i] ) != -1 )
+        		{
+        			retVal = i;
+        			found = true;
+        		}
+        	}
         }
         return retVal;
     }
@@ -218,4 +218,12 @@
 	 *         countdown
 	 */
 	public void errorDetected( Eoid pId, int partNum );		 
+	 
+	/**
+	 * This function is used when a unit has missed one of the delta
+	 * reports sent by another unit, and asks that unit to send out a full
+	 * report so the two can get back in step.
+	 * @param pId The player id of the unit whose full report is wanted
+	 */
+	public void requestSnapshot( Eoid pId, int partNum );
  }
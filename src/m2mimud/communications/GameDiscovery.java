@@ -15,4 +15,10 @@
 	 * the number if units in in the game.
 	 */
 	public void report( SessionAd theSession );
+	
+	/**
+	 * Report only the changes a unit has made to the state of the session
+	 * since its last report.  Full reports are only sent when asked for.
+	 */
+	public void reportDelta( SessionDelta theDelta );
  }
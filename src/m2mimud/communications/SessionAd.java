@@ -4,6 +4,7 @@
  import java.util.Iterator;
  import m2mimud.state.PlayerCharacter;
  import m2mimud.state.GameState;
+ import edu.rit.m2mi.Coalescible;
 
   /**
   * The SessionAd is the class which contain all the information
@@ -15,13 +16,15 @@
   */
 
  public class SessionAd
- implements Externalizable
+ implements Externalizable, Coalescible
  {
  
  	public String sessionName;      // The name of the session
 	public int sessionCount;        // The number of players in the session
 	public Game sessionHandle;      // Session's mulithandle		
 	public GameState sessionState;  // The state of the game, ie the locations of the ponds, house, merchants, etc.
+	public int[] sessionVersions;   // The version counters of the state, used to check the deltas which follow
+	public long[] sessionDigests;   // The content digests of the state, so it can be checked without reading it in
 	
 	/**
 	 * Creates a new session as object
@@ -35,6 +38,8 @@
 		sessionHandle = sessHand;	
 		sessionState = sessState;
 		sessionCount = sessState.numPlayers();
+		sessionVersions = sessState.getVersions();
+		sessionDigests = sessState.getContentDigests();
 	}
 	
 	/**
@@ -58,6 +63,8 @@
 		out.writeObject( sessionHandle );
 		out.writeInt( sessionCount );
 		out.writeObject( sessionState );							
+		out.writeObject( sessionVersions );
+		out.writeObject( sessionDigests );
 	}
 	
 	/**
@@ -72,6 +79,8 @@
 		sessionHandle = (Game)in.readObject();
 		sessionCount = in.readInt();
 		sessionState = (GameState)in.readObject();				
+		sessionVersions = (int[])in.readObject();
+		sessionDigests = (long[])in.readObject();
 	}
 	
 	public String toString()
@@ -79,4 +88,16 @@
 		return "Game: " + sessionName + ", number of players: " +
 		sessionCount;
 	}
+
+	/**
+	 * Returns the key the M2MI layer coalesces reports by, which is the id of
+	 * the unit that sent the report, so only the newest waiting report from
+	 * each unit is processed.  An ad without an id is never coalesced.
+	 */
+	public Object getCoalescingKey()
+	{
+		if( sessionState.getId() == null )
+			return this;
+		return sessionState.getId();
+	}
 }
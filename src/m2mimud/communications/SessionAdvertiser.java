@@ -27,6 +27,9 @@
 	// The omnihandle for all other games
 	protected GameDiscovery allGameUnits;
 	
+	// Set when the next report must be a full one rather than a delta
+	protected boolean fullReportNeeded;
+	
 	/**
 	 * This private class is used to repeatedly invoke the report()
 	 * function on all other games in the world
@@ -56,6 +59,7 @@
 		allGameUnits = (GameDiscovery)M2MI.getOmnihandle( GameDiscovery.class );		
 		intervalPRNG = new Random();
 		reportTimer = TimerThread.getDefault().createTimer( new ReportTimerTask() );		
+		fullReportNeeded = true;
 	}
 			
 	/**
@@ -73,13 +77,22 @@
 	 * @param theAd The SessionAd object of a session being played.
 	 */
 	public abstract void report( SessionAd theAd );
+	
+	/**
+	 * Reports the changes a session member made since its last report.
+	 * @param theDelta The SessionDelta object of a session being played.
+	 */
+	public abstract void reportDelta( SessionDelta theDelta );
 	  
 	  
 	/** 
 	 * The request function causes the unit to speed up it advertisements.
+	 * Since the requester has nothing to apply deltas to, the next one is
+	 * a full report.
 	 */
 	public void request()
 	{
+		fullReportNeeded = true;
 		scheduleFastReport();
 	}
 	
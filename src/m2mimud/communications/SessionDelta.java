@@ -0,0 +1,79 @@
+ package m2mimud.communications;
+ import java.io.*;
+ import m2mimud.state.StateDelta;
+
+  /**
+  * The SessionDelta is the lightweight counterpart of the SessionAd.  Instead
+  * of the whole state of the game it carries a StateDelta which holds only
+  * what the reporting unit changed since its last report.
+  *
+  * @author Robert Whitcomb
+  *
+  * @version $Id$
+  */
+
+ public class SessionDelta
+ implements Externalizable
+ {
+
+ 	public String sessionName;      // The name of the session
+	public int sessionCount;        // The number of players in the session
+	public Game sessionHandle;      // Session's mulithandle
+	public StateDelta sessionDelta; // The changes to the state of the game since the last report
+
+	/**
+	 * Creates a new session delta
+	 * @param sessName The name of the session
+	 * @param sessHand The session multihandle
+	 * @param sessCount The number of players in the session
+	 * @param sessDelta The changes to the state of the session
+	 */
+	public SessionDelta( String sessName, Game sessHand, int sessCount, StateDelta sessDelta )
+	{
+		sessionName = sessName;
+		sessionHandle = sessHand;
+		sessionCount = sessCount;
+		sessionDelta = sessDelta;
+	}
+
+	/**
+	 * This is a dummy constructor used by Externalizable
+	 * NEVER CALL
+	 */
+	public SessionDelta()
+	{
+		sessionName = new String();
+	}
+
+	/**
+	 * Write the session delta to output
+	 * @param out The outpurt object to write to
+	 */
+	public void writeExternal( ObjectOutput out )
+	throws IOException
+	{
+		out.writeObject( sessionName );
+		out.writeObject( sessionHandle );
+		out.writeInt( sessionCount );
+		out.writeObject( sessionDelta );
+	}
+
+	/**
+	 * Reads an object in from input
+	 * @param in The input object to read from
+	 */
+	public void readExternal( ObjectInput in )
+	throws IOException, ClassNotFoundException
+	{
+		sessionName = (String)in.readObject();
+		sessionHandle = (Game)in.readObject();
+		sessionCount = in.readInt();
+		sessionDelta = (StateDelta)in.readObject();
+	}
+
+	public String toString()
+	{
+		return "Game: " + sessionName + ", number of players: " +
+		sessionCount;
+	}
+}
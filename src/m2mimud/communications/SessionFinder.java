@@ -109,7 +109,10 @@
 				data.mySession.sessionCount = theAd.sessionCount;
 			}
 			
-			if( !data.mySession.sessionState.equals( theAd.sessionState ) )
+			boolean same = ( theAd.sessionDigests != null ?
+				data.mySession.sessionState.sameContent( theAd.sessionDigests ) :
+				data.mySession.sessionState.equals( theAd.sessionState ) );
+			if( !same )
 			{
 				listener.sessionStateChanged( data.mySession.sessionHandle, theAd.sessionState );
 				data.mySession.sessionState = theAd.sessionState;
@@ -119,6 +122,36 @@
 		
 	 }
 	 
+	 /**
+	  * The delta report function.  A known session has its count and state
+	  * brought up to date; an unknown one is asked for a full report, since
+	  * there is nothing to apply the delta to.
+	  */
+	 public synchronized void reportDelta( SessionDelta theDelta )
+	 {
+		InfoRecord data = (InfoRecord)sessionMap.get( theDelta.sessionHandle );
+		if( data == null )
+		{
+			if( theDelta.sessionHandle != null )
+				theDelta.sessionHandle.request();
+		}
+		else
+		{
+			if( data.mySession.sessionCount != theDelta.sessionCount ) 
+			{
+				listener.sessionCountChanged( data.mySession.sessionHandle, theDelta.sessionCount );
+				data.mySession.sessionCount = theDelta.sessionCount;
+			}
+			
+			if( !data.mySession.sessionState.matches( theDelta.sessionDelta ) )
+			{
+				data.mySession.sessionState.replaceCollections( theDelta.sessionDelta );
+				listener.sessionStateChanged( data.mySession.sessionHandle, data.mySession.sessionState );
+			}
+			data.leaseTimer.start( 30000 );
+		}
+	 }
+	 
 	 /**
 	  * Removes the record from the hashmap, since a session has timed out
 	  * @param theTimer The timer which  timed out
@@ -0,0 +1,146 @@
+ package m2mimud.game;
+ import java.awt.Color;
+ import edu.rit.util.Timer;
+ import edu.rit.util.TimerTask;
+ import edu.rit.util.TimerThread;
+ import m2mimud.state.TextMessage;
+
+ /**
+  * The BatchedCommunicator is the base for PlayerCommunicators which print
+  * lines in batches instead of one at a time.  The print functions only add
+  * the line to the current OutputBatch; flush() hands the whole batch to
+  * deliver() at once.  The GameSystem flushes at the end of every command and
+  * every event, and anything printed from somewhere else is flushed by a timer
+  * shortly afterwards, so no line is held back for long.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+
+ public abstract class BatchedCommunicator
+ implements PlayerCommunicator
+ {
+	private static final long FLUSH_DELAY = 50; // how long a line waits for a flush before the timer does it, in ms
+
+	private OutputBatch myBatch; // the lines printed since the last flush
+	private Timer myFlushTimer; // flushes lines which nobody else flushed
+	private Object myFlushLock; // held while a batch is delivered, so batches are delivered in order
+
+	/**
+	 * Constructor
+	 */
+	public BatchedCommunicator()
+	{
+		myBatch = new OutputBatch();
+		myFlushLock = new Object();
+		myFlushTimer = TimerThread.getDefault().createTimer( new TimerTask()
+		{
+			public void action( Timer theTimer )
+			{
+				if( theTimer.isTriggered() )
+					flush();
+			}
+		} );
+	}
+
+	/**
+	 * Prints a message in black, followed by a blank line
+	 * @param theObject The object to print
+	 */
+	public void printMessage( Object theObject )
+	{
+		if( theObject != null )
+			add( theObject.toString(), Color.black, OutputBatch.SPACED );
+	}
+
+	/**
+	 * Prints a message in the given color, followed by a blank line
+	 * @param theObject The object to print
+	 * @param theColor The color to print it in
+	 */
+	public void printMessage( Object theObject, Color theColor )
+	{
+		if( theObject != null )
+			add( theObject.toString(), theColor, OutputBatch.SPACED );
+	}
+
+	/**
+	 * Prints an error message in bold red
+	 * @param theObject The error message to print
+	 */
+	public void printError( Object theObject )
+	{
+		if( theObject != null )
+			add( "ERROR[" + theObject.toString() + "]", Color.red,
+			     OutputBatch.BOLD | OutputBatch.SPACED );
+	}
+
+	/**
+	 * Prints each line of a TextMessage in its color
+	 * @param theMessage The message to print
+	 */
+	public void printTextMessage( TextMessage theMessage )
+	{
+		synchronized( this )
+		{
+			for( int i = 0; i < theMessage.getSize(); i++ )
+				add( theMessage.getMessage( i ), theMessage.getColor( i ), 0 );
+		}
+	}
+
+	/**
+	 * Prints a line to the combat log
+	 * @param line The line to print
+	 * @param theColor The color to paint the text
+	 * @param player True if the player generated this line, which makes it bold
+	 */
+	public void printCombatMessage( String line, Color theColor, boolean player )
+	{
+		if( line != null )
+			add( line, theColor, OutputBatch.COMBAT | ( player ? OutputBatch.BOLD : 0 ) );
+	}
+
+	/**
+	 * Delivers everything printed since the last flush, as one batch.
+	 */
+	public void flush()
+	{
+		synchronized( myFlushLock )
+		{
+			OutputBatch theBatch = null;
+			synchronized( this )
+			{
+				if( myBatch.getSize() > 0 )
+				{
+					theBatch = myBatch;
+					myBatch = new OutputBatch();
+					myFlushTimer.stop();
+				}
+			}
+			if( theBatch != null )
+				deliver( theBatch );
+		}
+	}
+
+	/**
+	 * Shows a batch of lines to the player.  Batches are delivered one at a
+	 * time, in the order they were printed, and the batch is not touched again
+	 * by the communicator afterwards.
+	 * @param theBatch The lines to show
+	 */
+	protected abstract void deliver( OutputBatch theBatch );
+
+	/**
+	 * Adds a line to the current batch, starting the flush timer if it is the
+	 * first one.
+	 * @param line The text of the line
+	 * @param theColor The color of the line
+	 * @param style The style flags of the line
+	 */
+	private synchronized void add( String line, Color theColor, int style )
+	{
+		myBatch.add( line, theColor, style );
+		if( myBatch.getSize() == 1 )
+			myFlushTimer.start( FLUSH_DELAY );
+	}
+ }
@@ -0,0 +1,148 @@
+ package m2mimud.game;
+ import java.util.LinkedList;
+ import java.util.HashMap;
+
+ /**
+  * The EventLoop is a single thread which runs the events posted to it one
+  * at a time, in the order they were posted.  The GameSystem keeps one of
+  * these for each of its subsystems (chat, combat, the world and state
+  * synchronization) so that the M2MI invocation threads only have to hand a
+  * message off to the right loop instead of waiting for the whole game system
+  * to become free.  Events posted to the same loop never overlap, events
+  * posted to different loops may run at the same time.
+  * <P>
+  * An event may also be posted with a key, for messages such as heartbeats
+  * where only the newest one matters.  A keyed event which is still waiting
+  * when a newer event with the same key is posted is dropped, and the newer
+  * one runs in its own turn, so a backlog of heartbeats from one unit costs
+  * one run instead of one per heartbeat.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+
+ public class EventLoop
+ implements Runnable
+ {
+	private String myName; // the name of the loop, used for the thread and error messages
+	private LinkedList myEvents; // the events waiting to be run
+	private Runnable myAfterEvent; // run after each event, may be null
+	private Thread myThread; // the thread which runs the events
+	private HashMap myNewest; // the newest waiting keyed event for each key
+
+	/**
+	 * A keyed event waiting in the loop
+	 */
+	private static class KeyedEvent
+	implements Runnable
+	{
+		public Object key; // the key of the event
+		public Runnable event; // the event to run
+
+		public KeyedEvent( Object theKey, Runnable theEvent )
+		{
+			key = theKey;
+			event = theEvent;
+		}
+
+		public void run()
+		{
+			event.run();
+		}
+	}
+
+	/**
+	 * Constructor, creates and starts the loop's thread.
+	 * @param name The name of the loop
+	 * @param afterEvent Run by the loop's thread after each event, may be null
+	 */
+	public EventLoop( String name, Runnable afterEvent )
+	{
+		myName = name;
+		myEvents = new LinkedList();
+		myNewest = new HashMap();
+		myAfterEvent = afterEvent;
+		myThread = new Thread( this, name );
+		myThread.setDaemon( true );
+		myThread.start();
+	}
+
+	/**
+	 * Posts an event to the loop.  This returns right away, the event is run
+	 * later by the loop's thread after every event posted before it.
+	 * @param event The event to run
+	 */
+	public void post( Runnable event )
+	{
+		synchronized( myEvents )
+		{
+			myEvents.addLast( event );
+			myEvents.notify();
+		}
+	}
+
+	/**
+	 * Posts a keyed event to the loop.  Any event posted earlier with an equal
+	 * key which has not started running yet is dropped.
+	 * @param key The key of the event
+	 * @param event The event to run
+	 */
+	public void post( Object key, Runnable event )
+	{
+		KeyedEvent theEvent = new KeyedEvent( key, event );
+		synchronized( myEvents )
+		{
+			myNewest.put( key, theEvent );
+			myEvents.addLast( theEvent );
+			myEvents.notify();
+		}
+	}
+
+	/**
+	 * Runs the posted events, forever.  An event which throws is reported and
+	 * the loop goes on with the next one.
+	 */
+	public void run()
+	{
+		for( ;; )
+		{
+			Runnable event = null;
+			synchronized( myEvents )
+			{
+				while( myEvents.isEmpty() )
+				{
+					try
+					{
+						myEvents.wait();
+					}
+					catch( InterruptedException e )
+					{
+					}
+				}
+				event = (Runnable)myEvents.removeFirst();
+				if( event instanceof KeyedEvent )
+				{
+					KeyedEvent theEvent = (KeyedEvent)event;
+					if( myNewest.get( theEvent.key ) == theEvent )
+						myNewest.remove( theEvent.key );
+					else
+						event = null; // a newer one is waiting
+				}
+			}
+			if( event == null )
+				continue;
+
+			try
+			{
+				event.run();
+				if( myAfterEvent != null )
+					myAfterEvent.run();
+			}
+			catch( Throwable e )
+			{
+				System.err.println( "Error in the " + myName + " loop:" );
+				e.printStackTrace();
+			}
+		}
+	}
+ }
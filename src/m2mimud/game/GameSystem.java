@@ -3,6 +3,9 @@ import java.io.*;
 import java.util.Iterator;
 import java.util.Vector;
 import java.util.Random;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.Arrays;
 import java.awt.Color;
 import edu.rit.util.Timer;
 import edu.rit.util.TimerTask;
@@ -26,7 +29,10 @@ import java.util.Date;
  * object can be seen as the controller for the entire system.  Commands are processe by it,
  * sent out by it, and received by it.  This is intentional, as one of the aims was to have 
  * the message that concern the state of the session to be sent and recieved by only on object
- * in order to ensure that one event happens at a time.  Of course, this comes at a price.
+ * in order to ensure that one event happens at a time.  The messages
+ * are split between event loops for chat, combat, the world and state synchronization,
+ * so that each subsystem handles its own messages in order and a burst of one kind
+ * does not hold up the others.  Of course, this comes at a price.
  * This class is very large. In fact it is the single largest class in the system.
  * 
  * @author Robert Whitcomb
@@ -44,6 +50,18 @@ MobListener, PlayerCacheListener
 	private boolean inSession; // indicates if the unit is in a session
 	private String mySessionName; // name of the session the unit isa member of
 	private Game mySession; // handle to the session this game is a part of
+	private HashMap peerVersions; // player id to the state versions last reported by that player's unit
+	private HashMap myRoomHandles; // subhandle key to the room multihandles this unit is attached to
+	private Vector myMoveRooms; // the keys of the rooms whose moves this unit is listening for
+	private Vector mySayRooms; // the keys of the rooms whose says this unit is listening for
+	private Vector myRegions; // the keys of the regions this unit is listening to
+
+	// Each room has two subhandles of the session multihandle, one for moves and one for says.
+	// A region has a third, on the room at its corner, for what goes on anywhere in the region.
+	private static final int MOVE_CHANNEL = 0;
+	private static final int SAY_CHANNEL = 1;
+	private static final int REGION_CHANNEL = 2;
+	private static final int CHANNELS = 3;
 
 	// State related state members
 	private PlayerCharacter myPlayer; // the player for this unit
@@ -54,11 +72,12 @@ MobListener, PlayerCacheListener
 	private ItemData myItemData;  // the item data of the game
 	String stateName; // the file name of that state, this is sed for the shortcut save command
 
-	// combat related data members
-	private Mob theMobTarget; // The mob target the player is attacking
-	private PlayerCharacter thePlayerTarget; // the player target the player is currently fighting.
-	private boolean hasBalance; // indicated if this persdon curretly has balance
-	private int round; // the round of attack this is
+	// combat related data members.  The targets and the balance are read by
+	// the combat loop without this object's lock, see doPrintAttack().
+	private volatile Mob theMobTarget; // The mob target the player is attacking
+	private volatile PlayerCharacter thePlayerTarget; // the player target the player is currently fighting.
+	private volatile boolean hasBalance; // indicated if this persdon curretly has balance
+	private int round; // the round of attack this is, only touched by the combat loop
 	private boolean consideringDuel; // indicates if this toon is currently considering a duel
 	private Eoid currentChallenger; // the current duel challenger
 	private Timer attackTimer; // timer used to notify when the player has balance
@@ -68,7 +87,7 @@ MobListener, PlayerCacheListener
 	// Misc data members
 	private PlayerCommunicator comm; // used to talk to the player
 	private String[] attacks; // an array used to print out the type of attack
-	private MapWindow myMapWindow; // the map windoe
+	private MapViewer myMapWindow; // the map window, or the viewer given in its place
 	private Random mobMover; //  A random used to generate the movement of the next mob
 	private Vector lookupVector; // the vector which stores the data from a lookup
 	private FriendsList myFriendsList; // a friends' listing for this user
@@ -78,8 +97,42 @@ MobListener, PlayerCacheListener
 
     	SessionFinder sessionFinder; // the object used to find sessions.
 
-	// Used for synchronization
-	private boolean available;
+	// The subsystem event loops.  Game messages are handed off to these by the
+	// M2MI invocation threads.  This object's lock is the state lock: it guards
+	// the GameState and the World, which the world and sync events share and
+	// so take it while they run.  The blows of a fight only change the local
+	// player, which guards its own combat data, so the combat loop runs those
+	// without the state lock and never waits for a report to be taken.  Only
+	// the rarer combat events which change the state, such as deaths, take it.
+	//
+	// Says run on the chat loop and moves on the world loop, so a say may be
+	// printed before a move which arrived ahead of it.  Each say carries the
+	// speaker's location, so it is still heard in the right room, and a
+	// speaker found out of place is moved by the world loop; only the order
+	// of the lines printed can differ from the order they were sent in.
+	private EventLoop chatLoop; // runs says, yells and private messages
+	private EventLoop combatLoop; // runs fights, duels, deaths and respawns
+	private EventLoop worldLoop; // runs joins, leaves, movement and the rest of the world events
+	private EventLoop syncLoop; // runs state reports and error recovery
+	private EventLoop reportLoop; // serializes and sends the reports, so that the state is not locked while that is done
+	private ChatView myChatView; // the chat loop's copy of what it needs from the state, only touched by the chat loop
+	private ChatView myPublishedView; // the last view handed to the chat loop, guarded by the state lock
+
+	/**
+	 * The ChatView is the part of the game state which the chat loop needs,
+	 * copied out so that chat messages can be printed without waiting for
+	 * the rest of the game system.  A new one is passed to the chat loop
+	 * whenever the other loops or a command have changed what is in it.
+	 */
+	private static class ChatView
+	{
+		Eoid playerId; // the id of this unit's player
+		XYloc location; // the location of this unit's player
+		int partNum; // the partition number
+		Game session; // the session handle, null if not in a session
+		HashMap names; // player id to player name
+		HashMap locations; // player id to player location
+	}
 
 	private class AttackTimerTask
 	implements TimerTask
@@ -104,6 +157,18 @@ MobListener, PlayerCacheListener
 	 */
 	public GameSystem( PlayerCommunicator theComm )
 	throws Exception 
+	{
+		this( theComm, new MapWindow() );
+	}
+
+	/**
+	 * Constructor for a game system which shows the map with the given viewer
+	 * instead of a map window, so that it can run without a display.
+	 * @param theComm Used to talk to the player
+	 * @param theViewer Shown the map around the player
+	 */
+	public GameSystem( PlayerCommunicator theComm, MapViewer theViewer )
+	throws Exception 
 	{
 		// Basically this initializes the program's data members
 		super();
@@ -119,17 +184,72 @@ MobListener, PlayerCacheListener
 		intervalPRNG = new Random();
         	attackTimer = TimerThread.getDefault().createTimer( new AttackTimerTask() );
 
+		// Start the subsystem loops.  Every loop flushes what its event
+		// printed, and everything but chat publishes a fresh chat view if the
+		// event changed it.  The combat loop leaves that to the world loop, as
+		// publishing takes the state lock; repeated requests are run once.
+		Runnable flusher = new Runnable()
+		{
+			public void run()
+			{
+				comm.flush();
+			}
+		};
+		Runnable publisher = new Runnable()
+		{
+			public void run()
+			{
+				publishChatView();
+				comm.flush();
+			}
+		};
+		final Runnable publishTask = new Runnable()
+		{
+			public void run()
+			{
+				publishChatView();
+			}
+		};
+		Runnable combatPublisher = new Runnable()
+		{
+			public void run()
+			{
+				worldLoop.post( publishTask, publishTask );
+				comm.flush();
+			}
+		};
+		myChatView = null;
+		myPublishedView = null;
+		chatLoop = new EventLoop( "chat", flusher );
+		combatLoop = new EventLoop( "combat", combatPublisher );
+		worldLoop = new EventLoop( "world", publisher );
+		syncLoop = new EventLoop( "sync", publisher );
+		reportLoop = new EventLoop( "report", null );
+
 		// Set up the M2MI communications
+		WireTypes.register();
        		M2MI.export( this, Game.class );
 		M2MI.export( this, GameDiscovery.class );
+
+		// Heartbeats, clock ticks and full reports arrive from every unit on
+		// a timer and only the newest of each matters, so M2MI may skip the
+		// older ones still waiting behind it: refreshes per player, clock
+		// ticks per partition and reports per sending unit
+		M2MI.coalesce( Game.class, "refreshPlayer", new int[] { 0, 1 } );
+		M2MI.coalesce( Game.class, "notifyTimePassage", new int[] { 1 } );
+		M2MI.coalesce( GameDiscovery.class, "report", new int[] { 0 } );
         	myHandle = (Game)M2MI.getUnihandle( this, Game.class );
         	stateName = null;
         	myPartNum = 0;
+        	peerVersions = new HashMap();
+        	myRoomHandles = new HashMap();
+        	myMoveRooms = new Vector();
+        	mySayRooms = new Vector();
+        	myRegions = new Vector();
 
         	myTimeManager = new TimeManager( this );
         	lookupVector = new Vector();
         	loadItemData();
-        	available = true;
         	attacks = new String[4];
         	attacks[0] = "punch";
         	attacks[1] = "kick";
@@ -140,7 +260,7 @@ MobListener, PlayerCacheListener
 		consideringDuel = false;
         	currentChallenger = null;
 		incomingState = null;
-        	myMapWindow = new MapWindow();
+        	myMapWindow = theViewer;
         	myPlayer = null;
         	myMap = null;
         	comm.printMessage( "Welcome to M2MIMud! Please create or load a new character." );
@@ -154,60 +274,41 @@ MobListener, PlayerCacheListener
         	mobMover = new Random();
 	}
 /********************************************************************************************************************************/
+	// The functions of the Game interface, which are used to maintain state and such
+
         /*
-         * These two functions provide some synchronization for the game system.
-         * Their sole function is to ensure that the game system performs one task at a time,
-         * so that the task is completed in the state that it started in, and that the task is not lost
+         * Each of the functions of the Game interface hands its message to the
+         * event loop of the subsystem it belongs to and returns.  The loop then
+         * runs the matching do function, so that messages for one subsystem are
+         * handled one at a time, in the order they arrived, without holding up
+         * the messages for the others.
          */
 
 	/**
-	 * Attempts to lock the GameSystem
+	 * Prints out the user's message.  Unlike a say, this is broadcast to everyone on the map.
+	 * @param theMessage The object that contains the information about the yell
 	 */
-    	private void attemptLock() 
+	public void yell( final SayData theMessage, final int partition ) 
 	{
-		while( available == false ) 
+		chatLoop.post( new Runnable()
 		{
-			try 
-			{
-				wait();
-			}
-			catch( Exception e ) 
+			public void run()
 			{
+				doYell( theMessage, partition );
 			}
-        }
-		available = false;
+		} );
 	}
 
-	/**
-	 * Unlocks the game system, and notifes all waiting threads that the
- 	 * system in now available.
-	*/
-	private void unlock() 
-	{
-        	available = true;
-        	notifyAll();
-	}
-/********************************************************************************************************************************/
-	// The functions of the Game interface, which are used to maintain state and such
-
-	/**
-	 * Prints out the user's message.  Unlike a say, this is broadcast to everyone on the map.
-	 * @param theMessage The object that contains the information about the yell
-	 */
-	public synchronized void yell( SayData theMessage, int partition ) 
+	private void doYell( SayData theMessage, int partition ) 
 	{
-		if( partition == myPartNum ) 
+		ChatView view = myChatView;
+		if( view != null && partition == view.partNum ) 
 		{
-			attemptLock();
-			if( !myPlayer.getId().equals( theMessage.playerId ) ) 
+			if( !view.playerId.equals( theMessage.playerId ) ) 
 			{
-				PlayerCharacter thePlayer = checkId( theMessage.playerId );
-				String name = "Someone";
-				if( thePlayer != null )
-					name = thePlayer.getName();
+				String name = chatName( view, theMessage.playerId );
 				comm.printMessage( name + " yells, \"" + theMessage.myMessage + "\"" );
 			}
-			unlock();
 		}
 	}
 
@@ -216,24 +317,43 @@ MobListener, PlayerCacheListener
 	 * player is in the same room as the player who did the say
 	 * @param theMessage The object that contains the information needed to do the message.
 	 */
-	public synchronized void say( SayData theMessage, int partition )
+	public void say( final SayData theMessage, final int partition )
 	{
-		if( partition == myPartNum )
+		chatLoop.post( new Runnable()
 		{
-			attemptLock();
-			if( !myPlayer.getId().equals( theMessage.playerId ) )
+			public void run()
 			{
-				PlayerCharacter thePlayer = checkId( theMessage.playerId );
-				String name = "Someone";
-				if( thePlayer != null ) 
+				doSay( theMessage, partition );
+			}
+		} );
+	}
+
+	private void doSay( final SayData theMessage, int partition )
+	{
+		ChatView view = myChatView;
+		if( view != null && partition == view.partNum )
+		{
+			if( !view.playerId.equals( theMessage.playerId ) )
+			{
+				String name = chatName( view, theMessage.playerId );
+				XYloc theirLoc = (XYloc)view.locations.get( theMessage.playerId );
+
+				// If the speaker isn't where this unit thinks they are, the world
+				// loop has to move them
+				if( theirLoc != null && theMessage.playerLoc != null &&
+				    !theirLoc.equals( theMessage.playerLoc ) )
 				{
-					name = thePlayer.getName();
-					checkLocation( thePlayer, theMessage.playerLoc );
-        	        	}
-				if( myMap.checkLoc( theMessage.playerLoc ) )
+					worldLoop.post( new Runnable()
+					{
+						public void run()
+						{
+							doCheckLocation( theMessage.playerId, theMessage.playerLoc );
+						}
+					} );
+				}
+				if( view.location.equals( theMessage.playerLoc ) )
 				comm.printMessage( name + " says, \"" + theMessage.myMessage + "\"" );
             		}
-			unlock();
 		}
 	}
 
@@ -242,11 +362,21 @@ MobListener, PlayerCacheListener
 	* Tells the session someone is joining.
 	* @param player The player character data of the player
 	*/
-	public synchronized void joinSession( PlayerCharacter player, int partition )
+	public void joinSession( final PlayerCharacter player, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doJoinSession( player, partition );
+			}
+		} );
+	}
+
+	private synchronized void doJoinSession( PlayerCharacter player, int partition )
 	{
         	if( partition == myPartNum )
 		{
-			attemptLock();
 	
 			// First things first - stop the report
 			// timer and add the player.
@@ -280,7 +410,6 @@ MobListener, PlayerCacheListener
 					myPartNum );
 				}
 			}
-			unlock();
 		}
 	}
 
@@ -288,11 +417,21 @@ MobListener, PlayerCacheListener
 	* Tells the session someone is leaving.
 	* @param playerId The id of the player who left.
 	*/
-	public synchronized void leaveSession( Eoid playerId, int partition )	
+	public void leaveSession( final Eoid playerId, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doLeaveSession( playerId, partition );
+			}
+		} );
+	}
+
+	private synchronized void doLeaveSession( Eoid playerId, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			reportTimer.stop();
 			PlayerCharacter leavingPlayer = checkId( playerId );
 			if( leavingPlayer != null ) 
@@ -348,6 +487,7 @@ MobListener, PlayerCacheListener
                 		if( !myPlayer.getId().equals( playerId ) ) 
 				{
 					myState.remove( GameState.PLAYER, leavingPlayer.getId() );
+					peerVersions.remove( leavingPlayer.getId() );
 					comm.printMessage( name + " has left our world." );
 					if( myFriendsList.hasPlayer( playerId ) )
 						comm.printMessage( "Your friend, " + name +
@@ -356,7 +496,6 @@ MobListener, PlayerCacheListener
         		    	}
 			}
 			scheduleNormalReport();
-			unlock();
 		}
 	}
 
@@ -364,11 +503,21 @@ MobListener, PlayerCacheListener
 	 * Moves a player or a mob
 	 * @param aMove An object which contains the data need to perform the move
 	 */
-	public synchronized void processMove( MoveData aMove, int partition ) 
+	public void processMove( final MoveData aMove, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doProcessMove( aMove, partition );
+			}
+		} );
+	}
+
+	private synchronized void doProcessMove( MoveData aMove, int partition )
 	{
 		if( partition == myPartNum )
 		{
-			attemptLock();
 			switch( aMove.getType() )
 	    		{
 				case MoveData.PLAYER:
@@ -377,7 +526,7 @@ MobListener, PlayerCacheListener
 					if( !myPlayer.getId().equals( theMove.getUser() ) )
 					{
 						PlayerCharacter thePlayer = checkId( theMove.getUser() );
-						if( thePlayer != null )
+						if( thePlayer != null && !isRepeatedMove( theMove, thePlayer.getLocation() ) )
 						{
 							 String name = thePlayer.getName();
 							// If the player is in combat....
@@ -439,8 +588,12 @@ MobListener, PlayerCacheListener
 				{
 					MobMove theMove = (MobMove)aMove;
 					Mob theMob = (Mob)myState.get( GameState.MOB, theMove.getKey() );
+					if( isRepeatedMove( theMove, theMob.getCurrentLocation() ) )
+					{
+						// Already heard this one from the other room
+					}
 					// Yep.   If the mob is dead or fighting.. there's an error.
-					if( !theMob.isAlive() || theMob.isUnderAttack() )
+					else if( !theMob.isAlive() || theMob.isUnderAttack() )
 						mySession.errorDetected( myPlayer.getId(), myPartNum );
 					else
 					{
@@ -467,19 +620,42 @@ MobListener, PlayerCacheListener
 				 }
                			 break;
 			}
-			unlock();
 		}
 	}
+
+	/**
+	 * Returns whether or not the given move has already been carried out by
+	 * this unit.  A move between two rooms is sent to the units listening to
+	 * either room, so a unit listening to both gets it twice, and by the
+	 * second time the mover is already in the room it moved to.
+	 * @param theMove The move
+	 * @param current Where this unit has the mover now
+	 */
+	private boolean isRepeatedMove( MoveData theMove, XYloc current )
+	{
+		XYloc to = theMove.getLoc( MoveData.TO );
+		return !theMove.getLoc( MoveData.FROM ).equals( to ) && to.equals( current );
+	}
     
 	/**
 	 * Notifies this unit that a player has timed out and must thus be removed.
 	 * @param playerId The id of the player who timed out
 	 */
-	public synchronized void notifyPlayerTimeout( Eoid playerId, int partition ) 
+	public void notifyPlayerTimeout( final Eoid playerId, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doNotifyPlayerTimeout( playerId, partition );
+			}
+		} );
+	}
+
+	private synchronized void doNotifyPlayerTimeout( Eoid playerId, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			if( myPlayer.getId().equals( playerId ) && inSession )
 			{
 				leave();
@@ -489,7 +665,6 @@ MobListener, PlayerCacheListener
 			else 
 				mySession.leaveSession( playerId, myPartNum );
             	}
-           	unlock();
         }    
 
 
@@ -498,11 +673,21 @@ MobListener, PlayerCacheListener
 	 * @param location The location to place the pond at
 	 * @param playerId The id of the player who dug the pond
 	 */
-	public synchronized void setPond( XYloc location, Eoid playerId, int partition )
+	public void setPond( final XYloc location, final Eoid playerId, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doSetPond( location, playerId, partition );
+			}
+		} );
+	}
+
+	private synchronized void doSetPond( XYloc location, Eoid playerId, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			if( !myPlayer.getId().equals( playerId ) )
 			{
 				PlayerCharacter thePlayer = checkId( playerId );
@@ -515,7 +700,6 @@ MobListener, PlayerCacheListener
 					comm.printMessage( name + " digs a small pond in the ground." );
             		}
 			myState.add( GameState.POND, location );
-			unlock();
 		}
 	}
 
@@ -525,11 +709,21 @@ MobListener, PlayerCacheListener
 	 * @param from The location the player warped from
 	 * @param to The location the player warped to
 	 */
-	public synchronized void warp( Eoid playerId, XYloc from, XYloc to, int partition ) 
+	public void warp( final Eoid playerId, final XYloc from, final XYloc to, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doWarp( playerId, from, to, partition );
+			}
+		} );
+	}
+
+	private synchronized void doWarp( Eoid playerId, XYloc from, XYloc to, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			if( !myPlayer.getId().equals( playerId ) )
 			{
 				PlayerCharacter thePlayer = checkId( playerId );
@@ -544,7 +738,6 @@ MobListener, PlayerCacheListener
 				}
 
 			}
-			unlock();
 		}
 	}
 
@@ -552,11 +745,21 @@ MobListener, PlayerCacheListener
 	 * Sets up a house
 	 * @param theHouse The house object which contains the location and owner of the house
 	 */
-	public synchronized void addHouse( House theHouse, int partition ) 
+	public void addHouse( final House theHouse, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doAddHouse( theHouse, partition );
+			}
+		} );
+	}
+
+	private synchronized void doAddHouse( House theHouse, int partition )
 	{
 		if( partition == myPartNum )
 		{
-			attemptLock();
 			if( !theHouse.getOwner().equals( myPlayer.getId() ) )
 			{
 				// Place the house onto the map, checking to make sure
@@ -574,24 +777,34 @@ MobListener, PlayerCacheListener
 					comm.printMessage( name + " builds their house here." );
 
             		}
-			unlock();
 		}
 	}
 
 	/**
-	 * Notifies the system that the time has changed
+	 * Notifies the system that the time has changed.  If several of these are
+	 * waiting for the world loop, only the newest is run.
 	 * @param newTime The new time of the game
 	 */
-	public synchronized void notifyTimePassage( int newTime, int partition ) 
+	public void notifyTimePassage( final int newTime, final int partition )
+	{
+		worldLoop.post( Arrays.asList( new Object[] { "notifyTimePassage",
+		                new Integer( partition ) } ), new Runnable()
+		{
+			public void run()
+			{
+				doNotifyTimePassage( newTime, partition );
+			}
+		} );
+	}
+
+	private synchronized void doNotifyTimePassage( int newTime, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			myTimeManager.synchronize( newTime );
 			myState.setTime( newTime );
 			myMapWindow.updateTime( newTime );
 			comm.printMessage( myTimeManager.getTimePassageString( newTime ) );
-			unlock();
 		}
 	}
 
@@ -601,16 +814,25 @@ MobListener, PlayerCacheListener
 	 * @param merchantType The type of merchant which is broadcasting
 	 * @param location The location of the merchant
 	 */
-	public synchronized void merchantBroadcast( int merchantType, XYloc location, int partition ) 
+	public void merchantBroadcast( final int merchantType, final XYloc location, final int partition )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doMerchantBroadcast( merchantType, location, partition );
+			}
+		} );
+	}
+
+	private synchronized void doMerchantBroadcast( int merchantType, XYloc location, int partition )
 	{
 		if( partition == myPartNum )
 		{
-			attemptLock();
 			if( myMap.checkLoc( location ) )
 				comm.printMessage( myMap.getMerchantBroadcast( merchantType ) );
 			Merchant theMerch = (Merchant)myState.get( GameState.MERCHANT, location );
 			theMerch.scheduleNextMessage();
-			unlock();
 		}
 	}
 
@@ -619,17 +841,24 @@ MobListener, PlayerCacheListener
 	 * @param playerId The id of the player who sent the message
 	 * @param message The message they sent
 	 */
-	public synchronized void sendPM( Eoid playerId, String message, int partition ) 
+	public void sendPM( final Eoid playerId, final String message, final int partition ) 
 	{
-		if( partition == myPartNum ) 
+		chatLoop.post( new Runnable()
 		{
-			attemptLock();
-			String name = "Someone";
-			PlayerCharacter thePlayer = checkId( playerId );
-			if( thePlayer != null )
-				name = thePlayer.getName();
+			public void run()
+			{
+				doSendPM( playerId, message, partition );
+			}
+		} );
+	}
+
+	private void doSendPM( Eoid playerId, String message, int partition ) 
+	{
+		ChatView view = myChatView;
+		if( view != null && partition == view.partNum ) 
+		{
+			String name = chatName( view, playerId );
 			comm.printMessage( name + " sends, \"" + message + "\"" );
-		unlock();
 		}
 	}
 
@@ -644,11 +873,21 @@ MobListener, PlayerCacheListener
 	 * @param theKey The MobKey of the mob in question
 	 * @param playerId the id of the player.
 	 */
-	public synchronized void registerAttacker( XYloc loc, MobKey theKey, Eoid playerId, Date ts, int partition )
+	public void registerAttacker( final XYloc loc, final MobKey theKey, final Eoid playerId, final Date ts, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doRegisterAttacker( loc, theKey, playerId, ts, partition );
+			}
+		} );
+	}
+
+	private synchronized void doRegisterAttacker( XYloc loc, MobKey theKey, Eoid playerId, Date ts, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			Mob theMob = (Mob)myState.get( GameState.MOB, theKey );
 			if( !myPlayer.getId().equals( playerId ) )
 			{
@@ -683,7 +922,6 @@ MobListener, PlayerCacheListener
 					}
                 		}
 			}
-			unlock();
 		}
 	}
 
@@ -693,11 +931,21 @@ MobListener, PlayerCacheListener
 	 * @param p2 The id of the other player in combat
  	 * @param loc The location where the teo are fighting
 	 */
-	public synchronized void notifyFight( Eoid p1, Eoid p2, XYloc loc, int partition )
+	public void notifyFight( final Eoid p1, final Eoid p2, final XYloc loc, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doNotifyFight( p1, p2, loc, partition );
+			}
+		} );
+	}
+
+	private synchronized void doNotifyFight( Eoid p1, Eoid p2, XYloc loc, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			PlayerCharacter playerOne = checkId( p1 );
 			PlayerCharacter playerTwo = checkId( p2 );
 			String name1 = "Someone";
@@ -734,7 +982,6 @@ MobListener, PlayerCacheListener
 			// Inform the player of the combat
 			if( myMap.checkLoc( loc ) && !isMe )
 				comm.printMessage( name1 + " and " + name2 + " begin fighting!" );
-			unlock();
 		}
 	}
 
@@ -745,14 +992,28 @@ MobListener, PlayerCacheListener
 	 *            sure that the unit that called this function is indeed the person who
 	 *           the local player believes she is fighting
 	 */
-	public synchronized void printAttack( int damage, int partition, Eoid pId ) 
+	public void printAttack( final int damage, final int partition, final Eoid pId )
 	{
-		if( partition == myPartNum &&
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doPrintAttack( damage, partition, pId );
+			}
+		} );
+	}
+
+	private void doPrintAttack( int damage, int partition, Eoid pId )
+	{
+		// This runs without the state lock.  The local player guards its own
+		// combat data, and the target is read once, since a world event may
+		// end the fight at any time.
+		PlayerCharacter target = thePlayerTarget;
+		if( partition == myPartNum && target != null &&
 			( myPlayer.isInCombat() &&
 			pId.equals( myPlayer.getTarget() ) ) ) 
 		{
-			attemptLock();
-			String pName = thePlayerTarget.getName();
+			String pName = target.getName();
 			
 			// Determine the amount of damage done.  This is done by suvtracting
 			// the armor's combat bonus value from the base damage
@@ -764,44 +1025,58 @@ MobListener, PlayerCacheListener
 			
 			// Report back to the other player the amount of damage she did 
 			// to the local player
-			thePlayerTarget.getHandle().reportBackDamage( damage, myPartNum );
+			target.getHandle().reportBackDamage( damage, myPartNum );
 			comm.printCombatMessage( pName + " attacks you for " + damage + 
 				               " damage!", Color.red.darker(), true );
 			
 			myPlayer.adjustHP( -1 * damage );
 			comm.setActivePlayer( myPlayer );
 			
-			// If the attack has killed the local player, end combat, 
-			// and place the local player back at location (0,0) 
-			// Also, infoem everyone of the death
 			if( !myPlayer.isAlive() )
-			{
-				comm.printMessage( "You were just killed by " + pName );
-				myPlayer.clearTargetData();
-				thePlayerTarget.clearTargetData();
-				myMap.warp( 0, 0 );
-				myPlayer.ressurect();
-				comm.setActivePlayer( myPlayer );
-				comm.clearCombatLog();
-				printCurrentRoom();
-				DeathData theInfo =
-					new DeathData( myPlayer.getId(), thePlayerTarget.getId() );
-				thePlayerTarget = null;
-                		mySession.notifyPlayerDeath( theInfo, myPartNum );
-            		}
-            		unlock();
+				killedByPlayer( target );
 		}
 	}
 
+	/**
+	 * The local player has been killed by another player.  End combat, place
+	 * the local player back at location (0,0) and inform everyone of the death.
+	 * @param target The player who killed the local player
+	 */
+	private synchronized void killedByPlayer( PlayerCharacter target )
+	{
+		comm.printMessage( "You were just killed by " + target.getName() );
+		myPlayer.clearTargetData();
+		target.clearTargetData();
+		myMap.warp( 0, 0 );
+		myPlayer.ressurect();
+		comm.setActivePlayer( myPlayer );
+		comm.clearCombatLog();
+		printCurrentRoom();
+		DeathData theInfo =
+			new DeathData( myPlayer.getId(), target.getId() );
+		thePlayerTarget = null;
+		mySession.notifyPlayerDeath( theInfo, myPartNum );
+	}
+
 	/**
 	 * Tells this unit to respawn the mob of the given key.
 	 * @param theKey They key of the mob to respawn
 	 */
-	public synchronized void notifyMobRespawn( MobKey theKey, int partition ) 
+	public void notifyMobRespawn( final MobKey theKey, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doNotifyMobRespawn( theKey, partition );
+			}
+		} );
+	}
+
+	private synchronized void doNotifyMobRespawn( MobKey theKey, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			Mob theMob = (Mob)myState.get( GameState.MOB, theKey );
 
 			// This is part of the state checking mechanism.
@@ -816,7 +1091,6 @@ MobListener, PlayerCacheListener
             		}
             		else
                 		mySession.errorDetected( myPlayer.getId(), myPartNum );
-            		unlock();
         	}
 	}
 
@@ -825,11 +1099,21 @@ MobListener, PlayerCacheListener
 	 * @param theInfo The information about the player who was killed
 	 *  and what killed him
 	 */
-	public synchronized void notifyPlayerDeath( DeathData theInfo, int partition ) 
+	public void notifyPlayerDeath( final DeathData theInfo, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doNotifyPlayerDeath( theInfo, partition );
+			}
+		} );
+	}
+
+	private synchronized void doNotifyPlayerDeath( DeathData theInfo, int partition )
 	{
 		if( myPartNum == partition ) 
 		{
-			attemptLock();
 			if( !myPlayer.getId().equals( theInfo.getKilled() ) ) 
 			{
 				PlayerCharacter thePlayer = checkId( theInfo.getKilled() );
@@ -884,7 +1168,6 @@ MobListener, PlayerCacheListener
                 		}
                 		comm.printMessage( name + " was killed by " + name2 );
 			}
-			unlock();
 		}
 	}
 	
@@ -893,31 +1176,51 @@ MobListener, PlayerCacheListener
 	 * a new unit joins the session.
 	 * @param theState The state to merge with
 	 */
-	public synchronized void updateState( GameState theState, int partition ) 
+	public void updateState( final GameState theState, final int partition )
+	{
+		syncLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doUpdateState( theState, partition );
+			}
+		} );
+	}
+
+	private synchronized void doUpdateState( GameState theState, int partition )
 	{
 		if( myPartNum == partition ) 
 		{
-			attemptLock();
 			
 			// Straightforward - this simply calls merge on the state
 			myState.merge( theState, myMap );
-			unlock();
 		}
 	}
 
 	/**
-	 * Refreshes the player's timers
+	 * Refreshes the player's timers.  If several refreshes for the same
+	 * player are waiting for the world loop, only the newest is run.
 	 * @param playerId The id of the player	
 	 */
-	public synchronized void refreshPlayer( Eoid playerId, int partNum ) 
+	public void refreshPlayer( final Eoid playerId, final int partNum )
+	{
+		worldLoop.post( Arrays.asList( new Object[] { "refreshPlayer",
+		                playerId, new Integer( partNum ) } ), new Runnable()
+		{
+			public void run()
+			{
+				doRefreshPlayer( playerId, partNum );
+			}
+		} );
+	}
+
+	private synchronized void doRefreshPlayer( Eoid playerId, int partNum )
 	{
         	if( myPartNum == partNum ) 
 		{
-			attemptLock();
 			PlayerCharacter thePlayer = checkId( playerId );
 			if( thePlayer != null )
 				myState.refreshPlayer( playerId );
-			unlock();
 		}
 	}
 
@@ -927,11 +1230,21 @@ MobListener, PlayerCacheListener
  	 * @param pId the id of the player
 	 * @param houseId the id of the house
  	 */
-	public synchronized void moveHouse( Eoid pId, Eoid houseId, boolean enter, int partNum ) 
+	public void moveHouse( final Eoid pId, final Eoid houseId, final boolean enter, final int partNum )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doMoveHouse( pId, houseId, enter, partNum );
+			}
+		} );
+	}
+
+	private synchronized void doMoveHouse( Eoid pId, Eoid houseId, boolean enter, int partNum )
 	{
 		if( myPartNum == partNum && !myPlayer.getId().equals( pId ) ) 
 		{
-			attemptLock();
 			boolean inRoom = false;
 			String which = null;
 			PlayerCharacter thePlayer = checkId( pId );
@@ -964,7 +1277,6 @@ MobListener, PlayerCacheListener
 					comm.printMessage( pName + " " + which + " " + hName + "\'s house." );
 				}
 			}
-			unlock();
 		}
 	}
 
@@ -974,11 +1286,21 @@ MobListener, PlayerCacheListener
 	 * that the state can be fixed
 	 * @param pId The id of the unit that called this
 	 */
-	public synchronized void errorDetected( Eoid pId, int partNum ) 
+	public void errorDetected( final Eoid pId, final int partNum )
+	{
+		syncLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doErrorDetected( pId, partNum );
+			}
+		} );
+	}
+
+	private synchronized void doErrorDetected( Eoid pId, int partNum )
 	{
 		if( myPartNum == partNum ) 
 		{
-			attemptLock();
 			// One of the aspects of M2MIMud is that there is no "one" state
 			// that units can rely on when the realize their state is no longer
 			// in sync with the global state. When an error is detected, the only
@@ -994,7 +1316,6 @@ MobListener, PlayerCacheListener
 				scheduleEmergencyReport();
 			else
 				scheduleNormalReport();
-			unlock();
 		}
 	}
 
@@ -1005,11 +1326,21 @@ MobListener, PlayerCacheListener
 	 * Informs this system that a challeneg to a duel has been issued
 	 * @param pId The player if of the person who issued the duel
 	 */
-	public synchronized void requestDuel( Eoid pId, int partition ) 
+	public void requestDuel( final Eoid pId, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doRequestDuel( pId, partition );
+			}
+		} );
+	}
+
+	private synchronized void doRequestDuel( Eoid pId, int partition )
 	{
 		if( myPartNum == partition ) 
 		{
-			attemptLock();
 			PlayerCharacter challenger = checkId( pId );
 			if( challenger != null ) 
 			{
@@ -1029,7 +1360,6 @@ MobListener, PlayerCacheListener
 			}
 			else
 				mySession.errorDetected( myPlayer.getId(), myPartNum );
-			unlock();
 		}
 	}
 
@@ -1038,16 +1368,25 @@ MobListener, PlayerCacheListener
 	* @param reason The reason the player declined the duel
 	* @param pId The id of the person who declined the duel
 	*/
-	public synchronized void declineDuel( String reason, Eoid pId, int partition )
+	public void declineDuel( final String reason, final Eoid pId, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doDeclineDuel( reason, pId, partition );
+			}
+		} );
+	}
+
+	private synchronized void doDeclineDuel( String reason, Eoid pId, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			String pName = ((PlayerCharacter)myState.get( GameState.PLAYER, pId )).getName();
 			comm.printMessage( pName + reason );
 			thePlayerTarget = null;
 			consideringDuel = false;
-			unlock();
 		}
 	}
 
@@ -1055,18 +1394,27 @@ MobListener, PlayerCacheListener
 	 * Informs the unit that duel challenge has been accepted.
 	 * @param pId The id of the player who accepted the duel.
 	 */
-	public synchronized void acceptDuel( Eoid pId, int partition ) 
+	public void acceptDuel( final Eoid pId, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doAcceptDuel( pId, partition );
+			}
+		} );
+	}
+
+	private synchronized void doAcceptDuel( Eoid pId, int partition )
 	{
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			PlayerCharacter thePlayer = (PlayerCharacter)myState.get( GameState.PLAYER, pId );
 			comm.printMessage( thePlayer.getName() + " has accepted your challenge! Begin fighting!" );
 			consideringDuel = false;
 			thePlayerTarget = thePlayer;
 			myPlayer.registerTarget( pId );
 			comm.setTarget( thePlayer.getName() );
-			unlock();
 		}
 	}
 
@@ -1077,10 +1425,23 @@ MobListener, PlayerCacheListener
 	 * Receives a session report.  If this report constans the data for
 	 * the session this unit is a part of, then the state it contains is checked with
 	 * the game's current state to makes sure that it is consistent.
-	 * Also, the timer is restarted to reduce network traffic.
+	 * Also, the timer is restarted to reduce network traffic.  If several
+	 * reports from the same unit are waiting, only the newest is checked.
 	 * @param theAd An ad for a game session.
 	 */
-	public synchronized void report( SessionAd theAd ) 
+	public void report( final SessionAd theAd )
+	{
+		syncLoop.post( Arrays.asList( new Object[] { "report",
+		               theAd.getCoalescingKey() } ), new Runnable()
+		{
+			public void run()
+			{
+				doReport( theAd );
+			}
+		} );
+	}
+
+	private synchronized void doReport( SessionAd theAd )
 	{
 
 		if(
@@ -1088,52 +1449,201 @@ MobListener, PlayerCacheListener
 		    theAd.sessionState.getPartNum() == myPartNum
 		  ) 
 		{
-			attemptLock();
 			
-			// If the states are equal, simple schedule the next broadcast
-			if( myState.equals( theAd.sessionState ) ||
-			   myPlayer.getId().equals( theAd.sessionState.getPlayer().getId() ) )
+			// Remember where this unit's versions stand, so the deltas it
+			// sends from here on can be checked for gaps.
+			peerVersions.put( theAd.sessionState.getId(), theAd.sessionVersions );
+			
+			// If the states are equal, simple schedule the next broadcast.
+			// The digests settle that without reading the reported state in.
+			if( myPlayer.getId().equals( theAd.sessionState.getId() ) ||
+			   ( theAd.sessionDigests != null ?
+			     myState.sameContent( theAd.sessionDigests ) :
+			     myState.equals( theAd.sessionState ) ) )
 				scheduleNormalReport();
 			else 
+				synchronizeState( theAd.sessionState );
+		}
+	}
+	
+	/**
+	 * Receives a delta report.  If the delta follows the last report seen
+	 * from the unit that sent it, the collections it carries are checked against
+	 * this game's state just like a full report.  If a report was missed, the
+	 * sending unit is asked for a full one instead.
+	 * @param theDelta The changes made by a member of a game session.
+	 */
+	public void reportDelta( final SessionDelta theDelta )
+	{
+		syncLoop.post( new Runnable()
+		{
+			public void run()
 			{
-				// The states are not equal.  Run the synchronization
-				// routine.
-				comm.disable();
-				boolean wasInCombat = myPlayer.isInCombat();
-				myState.synchronize( theAd.sessionState, myMap );
-				
-				// If theplayer was in combat, but is no longer,
-				// stop the fight and inform her of this
-				if( wasInCombat && !myPlayer.isInCombat() ) 
-				{
-					comm.printMessage( "The gods have ended your fight." );
-					theMobTarget = null;
-					thePlayerTarget = null;
-					comm.clearCombatLog();
-				}
-				currentChallenger = null;
-				comm.enable();
+				doReportDelta( theDelta );
+			}
+		} );
+	}
 
-				// Since things were changed, schedule an
-				// emergency report to get out the changes asap.
+	private synchronized void doReportDelta( SessionDelta theDelta )
+	{
+		if(
+		  ( mySession != null && mySession.equals( theDelta.sessionHandle ) ) &&
+		    theDelta.sessionDelta.getPartNum() == myPartNum
+		  ) 
+		{
+			Eoid sender = theDelta.sessionDelta.getPlayerId();
+			if( myPlayer.getId().equals( sender ) )
+				scheduleNormalReport();
+			else if( !theDelta.sessionDelta.follows( (int[])peerVersions.get( sender ) ) )
+			{
+				// Either this unit has never had a full report from the sender
+				// or a delta went missing.  Either way the delta can't be trusted
+				// to hold everything that changed.
+				peerVersions.remove( sender );
+				mySession.requestSnapshot( sender, myPartNum );
+				scheduleNormalReport();
+			}
+			else
+			{
+				peerVersions.put( sender, theDelta.sessionDelta.getVersions() );
+				if( myState.matches( theDelta.sessionDelta ) )
+					scheduleNormalReport();
+				else
+					synchronizeState( new GameState( theDelta.sessionDelta ) );
+			}
+		}
+	}
+	
+	/**
+	 * Runs the synchronization routine against a state, or fragment of a
+	 * state, which does not agree with this unit's.
+	 * @param otherState The state reported by another unit
+	 */
+	private void synchronizeState( GameState otherState )
+	{
+		comm.disable();
+		boolean wasInCombat = myPlayer.isInCombat();
+		myState.synchronize( otherState, myMap );
+		
+		// If theplayer was in combat, but is no longer,
+		// stop the fight and inform her of this
+		if( wasInCombat && !myPlayer.isInCombat() ) 
+		{
+			comm.printMessage( "The gods have ended your fight." );
+			theMobTarget = null;
+			thePlayerTarget = null;
+			comm.clearCombatLog();
+		}
+		currentChallenger = null;
+		comm.enable();
+
+		// Since things were changed, schedule an
+		// emergency report to get out the changes asap.
+		scheduleEmergencyReport();
+	}
+	
+	/**
+	 * Asks this unit to send out a full report, since another unit has
+	 * missed one of its deltas.
+	 * @param pId The id of the player whose unit should report
+	 * @param partNum The partition number
+	 */
+	public void requestSnapshot( final Eoid pId, final int partNum )
+	{
+		syncLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doRequestSnapshot( pId, partNum );
+			}
+		} );
+	}
+
+	private synchronized void doRequestSnapshot( Eoid pId, int partNum )
+	{
+		if( myPartNum == partNum ) 
+		{
+			if( myPlayer.getId().equals( pId ) && !fullReportNeeded )
+			{
+				fullReportNeeded = true;
 				scheduleEmergencyReport();
 			}
-			unlock();
 		}
 	}
 
     
 	/**
-	 * This is the method called when the reportTimer go off.
+	 * This is the method called when the reportTimer go off.  Normally
+	 * only the changes since the last report are sent out; a full report
+	 * is sent when one has been asked for.
 	 * @param theTimer The timer that went off
 	 */
-	protected synchronized void invokeReport( Timer theTimer ) 
+	protected void invokeReport( Timer theTimer ) 
 	{
 		if( theTimer.isTriggered() ) 
 		{
-			allGameUnits.report
-				( new SessionAd( mySessionName, mySession,
-				myState ) );
+			syncLoop.post( new Runnable()
+			{
+				public void run()
+				{
+					doInvokeReport();
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Starts this unit's report, on the sync loop.  Only a copy of the state's
+	 * collections is taken under this object's lock; it is handed to the
+	 * report loop, which serializes it, works out what changed and sends the
+	 * report once the lock has been let go.
+	 */
+	private synchronized void doInvokeReport()
+	{
+		if( mySession != null )
+		{
+			final GameState theState = myState;
+			final GameState theCopy = myState.copy();
+			final String theName = mySessionName;
+			final Game theSession = mySession;
+			final boolean isFull = fullReportNeeded;
+			fullReportNeeded = false;
+
+			reportLoop.post( new Runnable()
+			{
+				public void run()
+				{
+					sendReport( theState, theCopy, theName, theSession, isFull );
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Builds and sends a report from a copy of the state, on the report loop.
+	 * Normally only the collections which changed since the last report are
+	 * sent; the whole state is sent when a full report was asked for.
+	 * @param theState The state the copy was taken from
+	 * @param theCopy The copy of the state
+	 * @param theName The name of the session
+	 * @param theSession The session's multihandle
+	 * @param isFull Whether or not to send the whole state
+	 */
+	private void sendReport( GameState theState, GameState theCopy,
+		String theName, Game theSession, boolean isFull )
+	{
+		if( isFull )
+		{
+			GameState snapshot = theState.snapshot( theCopy );
+			theState.markReported( snapshot.getVersions() );
+			allGameUnits.report( new SessionAd( theName, theSession, snapshot ) );
+		}
+		else
+		{
+			StateDelta theDelta = theState.createDelta( theCopy );
+			theState.markReported( theDelta.getVersions() );
+			allGameUnits.reportDelta( new SessionDelta( theName, theSession,
+				theCopy.numPlayers(), theDelta ) );
 		}
 	}
 /********************************************************************************************************************************/
@@ -1180,14 +1690,17 @@ MobListener, PlayerCacheListener
 				}
 			}
 
-			mySession.updateState( myState, myPartNum );
+			mySession.updateState( myState.snapshot(), myPartNum );
 			myState.merge( incomingState, myMap );
+			peerVersions.clear();
+			fullReportNeeded = true;
 			myState.updateListeners( this, this, myMap );
 
 			myTimeManager.synchronize( theAd.sessionState.getTime() );
 			myTimeManager.start();
 
 			((Multihandle)mySession).attach( this );
+			updateRooms();
 			mySession.joinSession( myPlayer, myPartNum );
 			myPlayerRefresher = new PlayerRefresher( myPlayer.getId(), mySession );
 			myPlayerRefresher.start();
@@ -1204,6 +1717,44 @@ MobListener, PlayerCacheListener
 		}
 	}
 
+	/**
+	 * Starts listening for sessions.  The listener is told about each session
+	 * found, and whatever it reports to joins one of them by calling
+	 * sessionSelected().  The find command does this with a game chooser
+	 * window, a client without a display can pass its own listener.
+	 * @param listener The listener for the sessions found
+	 */
+	public synchronized void findSessions( GameDiscoveryListener listener )
+	{
+		sessionFinder = new SessionFinder( listener );
+		sessionFinder.export();
+	}
+
+	/**
+	 * Returns where this unit thinks each player in its state is, one
+	 * "name x,y" line per player, sorted by name.  Units whose states
+	 * agree on everyone's location return the same string.
+	 */
+	public synchronized String getPlayerLocations()
+	{
+		if( myState == null )
+			return "";
+		Vector lines = new Vector();
+		Iterator players = myState.getCollection( GameState.PLAYER );
+		while( players.hasNext() )
+		{
+			PlayerCharacter player = (PlayerCharacter)players.next();
+			XYloc loc = player.getLocation();
+			lines.add( player.getName() + " " + loc.x + "," + loc.y );
+		}
+		Collections.sort( lines );
+
+		StringBuffer retVal = new StringBuffer();
+		for( int i = 0; i < lines.size(); i++ )
+			retVal.append( lines.get( i ) ).append( '\n' );
+		return retVal.toString();
+	}
+
 	/**
          * Leaves a session
          */
@@ -1215,16 +1766,164 @@ MobListener, PlayerCacheListener
 		if( mySession != null )
 			mySession.leaveSession( myPlayer.getId(), myPartNum );
 		((Multihandle)mySession).detach( this );
+		leaveRooms();
 		myPlayerRefresher.stop();
 		myState.clear( GameState.PLAYER );
 		myMap.clearSessionInfo();
 		M2MI.unexport( this );
+		// Send the leave and the last moves now, not a batching window later
+		M2MI.flush();
 		myPlayer.save();
 		myFriendsList.save();
 		leftSession = true;
 		inSession = false;
 		myState.add( GameState.PLAYER, myPlayer );
 	}
+	/**
+	 * Returns the multihandle which reaches the units listening for the given
+	 * kind of message about the given location.  These are subhandles of the
+	 * session multihandle, so every unit in the session arrives at the same
+	 * ones without any handles being sent around.
+	 * @param theLoc The location
+	 * @param channel MOVE_CHANNEL, SAY_CHANNEL or REGION_CHANNEL
+	 */
+	private Game getRoomHandle( XYloc theLoc, int channel )
+	{
+		return getRoomHandle( myMap.getRoomKey( theLoc ), channel );
+	}
+
+	/**
+	 * Returns the multihandle for the given kind of message about the room
+	 * with the given key.  The handles this unit is attached to are kept,
+	 * any other is made again each time.
+	 * @param roomKey The key of the room
+	 * @param channel MOVE_CHANNEL, SAY_CHANNEL or REGION_CHANNEL
+	 */
+	private Game getRoomHandle( int roomKey, int channel )
+	{
+		Integer key = new Integer( roomKey * CHANNELS + channel );
+		Game retVal = (Game)myRoomHandles.get( key );
+		if( retVal == null )
+			retVal = (Game)((Multihandle)mySession).getSubhandle( key.intValue() );
+		return retVal;
+	}
+
+	/**
+	 * Sends a move to the units listening for moves in the room moved into
+	 * and, if it is a different room, in the room moved out of.  Otherwise a
+	 * unit at the edge of its listening area would never hear the mover
+	 * leave it.
+	 * @param theMove The move
+	 */
+	private void sendMove( MoveData theMove )
+	{
+		int from = myMap.getRoomKey( theMove.getLoc( MoveData.FROM ) );
+		int to = myMap.getRoomKey( theMove.getLoc( MoveData.TO ) );
+		getRoomHandle( to, MOVE_CHANNEL ).processMove( theMove, myPartNum );
+		if( from != to )
+			getRoomHandle( from, MOVE_CHANNEL ).processMove( theMove, myPartNum );
+	}
+
+	/**
+	 * Returns whether or not this unit is listening for moves in the room
+	 * at the given location.
+	 * @param theLoc The location
+	 */
+	private boolean hearsRoom( XYloc theLoc )
+	{
+		return myMoveRooms.contains( new Integer( myMap.getRoomKey( theLoc ) ) );
+	}
+
+	/**
+	 * Returns whether or not this unit is listening to the region which
+	 * holds the given location.
+	 * @param theLoc The location
+	 */
+	private boolean hearsRegion( XYloc theLoc )
+	{
+		return myRegions.contains( new Integer( myMap.getRegionKey( theLoc ) ) );
+	}
+
+	/**
+	 * Attaches this unit to the room multihandles near its player and
+	 * detaches it from the rest.  Moves are heard from every room within
+	 * INTEREST_RADIUS, says only from the player's room and its eight
+	 * neighbours, and merchant broadcasts from every region within
+	 * INTEREST_RADIUS.  Detaching removes the room's message prefix from the M2MP
+	 * layer, so packets about far away rooms are dropped before they are ever read.
+	 */
+	private void updateRooms()
+	{
+		XYloc here = myPlayer.getLocation();
+		updateRooms( myMoveRooms, MOVE_CHANNEL, myMap.getRoomsAround( here, World.INTEREST_RADIUS ) );
+		updateRooms( mySayRooms, SAY_CHANNEL, myMap.getRoomsAround( here, 1 ) );
+		updateRooms( myRegions, REGION_CHANNEL, myMap.getRegionsAround( here ) );
+	}
+
+	/**
+	 * Brings one set of room attachments up to date
+	 * @param attached The keys of the rooms attached to so far, updated in place
+	 * @param channel MOVE_CHANNEL, SAY_CHANNEL or REGION_CHANNEL
+	 * @param wanted The keys of the rooms to be attached to
+	 */
+	private void updateRooms( Vector attached, int channel, Vector wanted )
+	{
+		Iterator rooms = attached.iterator();
+		while( rooms.hasNext() )
+		{
+			Integer room = (Integer)rooms.next();
+			if( !wanted.contains( room ) )
+			{
+				detachRoom( room.intValue(), channel );
+				rooms.remove();
+			}
+		}
+
+		rooms = wanted.iterator();
+		while( rooms.hasNext() )
+		{
+			Integer room = (Integer)rooms.next();
+			if( !attached.contains( room ) )
+			{
+				Game handle = getRoomHandle( room.intValue(), channel );
+				((Multihandle)handle).attach( this );
+				myRoomHandles.put( new Integer( room.intValue() * CHANNELS + channel ), handle );
+				attached.add( room );
+			}
+		}
+	}
+
+	/**
+	 * Detaches this unit from a room multihandle and forgets the handle
+	 * @param roomKey The key of the room
+	 * @param channel MOVE_CHANNEL, SAY_CHANNEL or REGION_CHANNEL
+	 */
+	private void detachRoom( int roomKey, int channel )
+	{
+		Multihandle handle = (Multihandle)myRoomHandles.remove( new Integer( roomKey * CHANNELS + channel ) );
+		if( handle != null )
+			handle.detach( this );
+	}
+
+	/**
+	 * Detaches this unit from all of the room multihandles
+	 */
+	private void leaveRooms()
+	{
+		Iterator rooms = myMoveRooms.iterator();
+		while( rooms.hasNext() )
+			detachRoom( ((Integer)rooms.next()).intValue(), MOVE_CHANNEL );
+		rooms = mySayRooms.iterator();
+		while( rooms.hasNext() )
+			detachRoom( ((Integer)rooms.next()).intValue(), SAY_CHANNEL );
+		rooms = myRegions.iterator();
+		while( rooms.hasNext() )
+			detachRoom( ((Integer)rooms.next()).intValue(), REGION_CHANNEL );
+		myMoveRooms.clear();
+		mySayRooms.clear();
+		myRegions.clear();
+	}
+
 /********************************************************************************************************************************/
 // These are the non Game interface functions
 
@@ -1249,15 +1948,36 @@ MobListener, PlayerCacheListener
 	* @param merchantType  The type of merchant
 	* @param location The location the merchant is
 	*/
-	public synchronized void sendMessage( int merchantType, XYloc location ) 
+	public void sendMessage( final int merchantType, final XYloc location )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doSendMessage( merchantType, location );
+			}
+		} );
+	}
+
+	private synchronized void doSendMessage( int merchantType, XYloc location )
 	{
-		attemptLock();
 		
 		// The check for null here is if a merchant times out
 		// when the game is in the process of leaving the session
 		if( mySession != null )
-			mySession.merchantBroadcast( merchantType, location, myPartNum );
-		unlock();
+		{
+			if( hearsRegion( location ) )
+				getRoomHandle( myMap.getRegionKey( location ), REGION_CHANNEL )
+					.merchantBroadcast( merchantType, location, myPartNum );
+			else
+			{
+				// No one near this unit's player can hear the merchant, so
+				// leave the broadcasting to the units whose players are nearby.
+				Merchant theMerch = (Merchant)myState.get( GameState.MERCHANT, location );
+				if( theMerch != null )
+					theMerch.scheduleNextMessage();
+			}
+		}
 	}
 
 	/**
@@ -1266,33 +1986,68 @@ MobListener, PlayerCacheListener
 	 * @param damage The base damage the mob has done
 	 * @param name The name of the mob
 	 */
-	public synchronized void attackTarget( int damage, String name ) 
+	public void attackTarget( final int damage, final String name ) 
 	{
-		doAttack( damage, name );
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doAttack( damage, name );
+			}
+		} );
 	}
 
 	/**
 	 * Tells the game system that the mob has respawned at the given location
 	 * @param  key The key of the mob that respawned     	
 	 */
-	public synchronized void respawnMob( MobKey key ) 
+	public void respawnMob( final MobKey key )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doRespawnMob( key );
+			}
+		} );
+	}
+
+	private synchronized void doRespawnMob( MobKey key )
 	{
-		attemptLock();
 		if( mySession != null )
 			mySession.notifyMobRespawn( key, myPartNum );
-		unlock();
 	}
 
 	/**
 	 * Informs ths unit to tell everyone that a mob is moving and need to update
 	 * @param theMove The object which contains the movement data
 	 */
-	public synchronized void moveMob( MobMove theMove ) 
+	public void moveMob( final MobMove theMove )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doMoveMob( theMove );
+			}
+		} );
+	}
+
+	private synchronized void doMoveMob( MobMove theMove )
 	{
-        	attemptLock();
 		if( mySession != null && theMove != null )
-			mySession.processMove( theMove, myPartNum );
-		unlock();
+		{
+			if( hearsRoom( theMove.getLoc( MoveData.TO ) ) || hearsRoom( theMove.getLoc( MoveData.FROM ) ) )
+				sendMove( theMove );
+			else
+			{
+				// No one near this unit's player can see the mob, so leave
+				// moving it to the units whose players are nearby.
+				Mob theMob = (Mob)myState.get( GameState.MOB, theMove.getKey() );
+				if( theMob != null )
+					theMob.restartMovementTimer();
+			}
+		}
 	}
 
 
@@ -1300,15 +2055,24 @@ MobListener, PlayerCacheListener
 	 * This is called to indicate that a player has time out
 	 * @param playerId The id of the player who has timed out
 	 */
-	public synchronized void playerTimeout( Eoid playerId ) 
+	public void playerTimeout( final Eoid playerId )
+	{
+		worldLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doPlayerTimeout( playerId );
+			}
+		} );
+	}
+
+	private synchronized void doPlayerTimeout( Eoid playerId )
 	{
-		attemptLock();
 		if( mySession != null ) 
 		{
 			PlayerCharacter thePlayer = checkId( playerId );
 			mySession.notifyPlayerTimeout( playerId, myPartNum );
 		}
-		unlock();
 	}
 
 	/**
@@ -1316,9 +2080,9 @@ MobListener, PlayerCacheListener
 	 * @param damage The base damage of the mob
 	 * @param name The name of the mob that attacked
 	 */
-	private synchronized void doAttack( int damage, String name ) 
+	private void doAttack( int damage, String name ) 
 	{
-		attemptLock();
+		// Like doPrintAttack(), this runs without the state lock
 		int bonus = myItemData.getCombatBonus( myPlayer.getGear( PlayerCharacter.BODY ) );
 		// The amount of damage done is (damage - armor combar bonus)
 		if( bonus != -1 )
@@ -1336,39 +2100,59 @@ MobListener, PlayerCacheListener
 		if( round > 2 )
 			round = 0;
 
-		// If the player has been killed by the mob, several things happen.  The lose experience,
-		// and they are warped back to location (0,0).  The mob stops fighting and is healed
-		// back to full.  Then the entire session is notifed of the death which causes them
-		// to remove their copy of the player from combat with the mob.
 		if( !myPlayer.isAlive() ) 
-		{
-			theMobTarget.stopAttack();
-			int exp = theMobTarget.getExp();
-			myPlayer.incrementExp( -1 * exp );
-			comm.printMessage( "You were just killed by the " + name );
-			comm.printMessage( "You have lost " + exp + " exp points." );
-			myMap.warp( 0, 0 );
-			myPlayer.ressurect();
-			comm.setActivePlayer( myPlayer );
-			comm.clearCombatLog();
-			printCurrentRoom();
-			DeathData theInfo = new DeathData( myPlayer.getId(),
-			theMobTarget.getKey() );
-			mySession.notifyPlayerDeath( theInfo, myPartNum );
-			theMobTarget = null;
-		}
-		unlock();
+			killedByMob( name );
+	}
+
+	/**
+	 * The local player has been killed by a mob.  Several things happen.  The lose experience,
+	 * and they are warped back to location (0,0).  The mob stops fighting and is healed
+	 * back to full.  Then the entire session is notifed of the death which causes them
+	 * to remove their copy of the player from combat with the mob.
+	 * @param name The name of the mob
+	 */
+	private synchronized void killedByMob( String name )
+	{
+		// The fight may have been ended by a world event since the blow was
+		// struck, in which case there is no one to report the death against.
+		if( theMobTarget == null || myPlayer.isAlive() )
+			return;
+
+		theMobTarget.stopAttack();
+		int exp = theMobTarget.getExp();
+		myPlayer.incrementExp( -1 * exp );
+		comm.printMessage( "You were just killed by the " + name );
+		comm.printMessage( "You have lost " + exp + " exp points." );
+		myMap.warp( 0, 0 );
+		myPlayer.ressurect();
+		comm.setActivePlayer( myPlayer );
+		comm.clearCombatLog();
+		printCurrentRoom();
+		DeathData theInfo = new DeathData( myPlayer.getId(),
+		theMobTarget.getKey() );
+		mySession.notifyPlayerDeath( theInfo, myPartNum );
+		theMobTarget = null;
 	}
 
 	/**
 	 * Informs the session that a monster has been killed.
 	 * @param theInfo The information about the mob that was killed	 
 	 */
-	 public synchronized void notifyMobDeath( DeathData theInfo, int partition ) 
+	public void notifyMobDeath( final DeathData theInfo, final int partition )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doNotifyMobDeath( theInfo, partition );
+			}
+		} );
+	}
+
+	private synchronized void doNotifyMobDeath( DeathData theInfo, int partition )
 	 {
 		if( partition == myPartNum ) 
 		{
-			attemptLock();
 			// For a mob's death, this method returns
 			if( !myPlayer.getId().equals( theInfo.getKilled() ) ) 
 			{
@@ -1398,7 +2182,6 @@ MobListener, PlayerCacheListener
 					comm.printMessage( name + " kills the " + theMob.getName() );
 
 			}
-			 unlock();
 		}        
 	}
 
@@ -1406,23 +2189,43 @@ MobListener, PlayerCacheListener
 	 * Informs the player of how much damage he or she did to his or her target
 	 * @param damage The amount of damage done
 	 */
-	public synchronized void reportBackDamage( int damage, int partNum )
+	public void reportBackDamage( final int damage, final int partNum )
 	{
-		if( partNum == myPartNum ) 
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doReportBackDamage( damage, partNum );
+			}
+		} );
+	}
+
+	private void doReportBackDamage( int damage, int partNum )
+	{
+		PlayerCharacter target = thePlayerTarget;
+		if( partNum == myPartNum && target != null ) 
 		{
-			attemptLock();
-			comm.printCombatMessage( "You hit " + thePlayerTarget.getName() + " for " + damage + " damage!",
+			comm.printCombatMessage( "You hit " + target.getName() + " for " + damage + " damage!",
 			Color.red.darker(), false );
-			unlock();
 		}
 	}
 
 
-	public synchronized void surrender( int partNum, Eoid pId ) 
+	public void surrender( final int partNum, final Eoid pId )
+	{
+		combatLoop.post( new Runnable()
+		{
+			public void run()
+			{
+				doSurrender( partNum, pId );
+			}
+		} );
+	}
+
+	private synchronized void doSurrender( int partNum, Eoid pId )
 	{
 		if( partNum == myPartNum ) 
 		{
-			attemptLock();
 			if( !myPlayer.getId().equals( pId ) ) 
 			{
 				if( pId.equals( myPlayer.getTarget() ) ) 
@@ -1458,7 +2261,6 @@ MobListener, PlayerCacheListener
 					}
 				}
 			}
-			unlock();
 		}
 	}
 
@@ -1470,6 +2272,10 @@ MobListener, PlayerCacheListener
 	 */
 	private synchronized void printCurrentRoom()
 	{
+		// Every change to the player's location ends with the room being
+		// printed, so this is where the room attachments are kept current.
+		if( inSession )
+			updateRooms();
 		TextMessage desc = myMap.currentAreaDescription();
 		if( myPlayer.isInHouse() )
 			printHouse( desc );
@@ -1534,7 +2340,7 @@ MobListener, PlayerCacheListener
 					// Simply print out the name if the player is not in comabt
 					if( !thePlayer.isInCombat() ) 
 					{
-						playerName.append( thePlayer.getName() + " " );
+						playerName.append( thePlayer.getName() ).append( ' ' );
 						hasNonCombat = true;
 					}
 					else 
@@ -1552,16 +2358,16 @@ MobListener, PlayerCacheListener
 								PlayerCharacter theTarget = checkId( pId );
 								if( theTarget != null )
 									pName = theTarget.getName();
-								combatPlayers.append( thePlayer.getName() + 
-								                      " is fighting " + pName + "\n" );
+								combatPlayers.append( thePlayer.getName() ).append( " is fighting " )
+								             .append( pName ).append( '\n' );
                             				}
                         			}
                         			else 
 						{
 							MobKey key = (MobKey)thePlayer.getTarget();
 							String name = ((Mob)myState.get( GameState.MOB, key )).getName();
-							combatPlayers.append( thePlayer.getName() + " is fighting a " + 
-							                      name + "!" );
+							combatPlayers.append( thePlayer.getName() ).append( " is fighting a " )
+							             .append( name ).append( '!' );
 						}
 					}
 				}
@@ -1673,12 +2479,10 @@ MobListener, PlayerCacheListener
 	 * can move or perform an attack.
 	 * @patam balance If the user has regained their balance, this value is true.
 	 */
-	private synchronized void setBalance( boolean balance ) 
+	private void setBalance( boolean balance ) 
 	{
-		attemptLock();
 		hasBalance = balance;
 		comm.setStatus( true, hasBalance );
-		unlock();
 	}
 
 	/**
@@ -2089,6 +2893,104 @@ MobListener, PlayerCacheListener
 		if( !thePlayer.getLocation().equals( theLoc ) && theLoc != null )
 			myMap.performWarp( thePlayer.getId(), theLoc );
 	}
+
+	/**
+	 * Performs a checkLocation for the chat loop, which only has the id of
+	 * the player it found out of place.
+	 * @param pId The id of the player
+	 * @param theLoc The location the player is supposed to be
+	 */
+	private synchronized void doCheckLocation( Eoid pId, XYloc theLoc ) 
+	{
+		if( myState != null && myState.has( GameState.PLAYER, pId ) )
+			checkLocation( (PlayerCharacter)myState.get( GameState.PLAYER, pId ), theLoc );
+	}
+
+	/**
+	 * Copies what the chat loop needs out of the state and hands it to the
+	 * chat loop.  This is run after every event on the other loops and after
+	 * every command, so that the chat loop never falls more than one event behind.
+	 * Nothing is copied or handed over if the last view handed over still matches.
+	 */
+	private synchronized void publishChatView() 
+	{
+		boolean hasView = myPlayer != null && myState != null;
+		if( hasView ? !isPublished() : myPublishedView != null ) 
+		{
+			ChatView view = null;
+			if( hasView ) 
+			{
+				view = new ChatView();
+				view.playerId = myPlayer.getId();
+				view.location = new XYloc( myPlayer.getLocation() );
+				view.partNum = myPartNum;
+				view.session = mySession;
+				view.names = new HashMap();
+				view.locations = new HashMap();
+				Iterator it = myState.getCollection( GameState.PLAYER );
+				while( it.hasNext() ) 
+				{
+					PlayerCharacter thePlayer = (PlayerCharacter)it.next();
+					view.names.put( thePlayer.getId(), thePlayer.getName() );
+					view.locations.put( thePlayer.getId(), new XYloc( thePlayer.getLocation() ) );
+				}
+			}
+
+			final ChatView theView = view;
+			myPublishedView = view;
+			chatLoop.post( new Runnable()
+			{
+				public void run()
+				{
+					myChatView = theView;
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Checks if the last view handed to the chat loop still matches the state,
+	 * without copying anything out of it.  The caller holds the state lock.
+	 */
+	private boolean isPublished() 
+	{
+		ChatView view = myPublishedView;
+		boolean retVal = view != null && view.playerId.equals( myPlayer.getId() ) &&
+			view.location.equals( myPlayer.getLocation() ) &&
+			view.partNum == myPartNum && view.session == mySession;
+
+		int count = 0;
+		Iterator it = myState.getCollection( GameState.PLAYER );
+		while( retVal && it.hasNext() ) 
+		{
+			PlayerCharacter thePlayer = (PlayerCharacter)it.next();
+			Eoid id = thePlayer.getId();
+			XYloc loc = (XYloc)view.locations.get( id );
+			retVal = loc != null && loc.equals( thePlayer.getLocation() ) &&
+				thePlayer.getName().equals( view.names.get( id ) );
+			count++;
+		}
+		return retVal && count == view.names.size();
+	}
+
+	/**
+	 * The chat loop's version of checkId, it returns the name of the player
+	 * with the given id.  If the player isn't known, the session is told
+	 * of the error and "Someone" is returned.
+	 * @param view The chat loop's view of the state
+	 * @param pId The id of the player
+	 */
+	private String chatName( ChatView view, Eoid pId ) 
+	{
+		String name = (String)view.names.get( pId );
+		if( name == null ) 
+		{
+			name = "Someone";
+			if( view.session != null )
+				view.session.errorDetected( view.playerId, view.partNum );
+		}
+		return name;
+	}
 /********************************************************************************************************************************/
     
 	/**
@@ -2096,7 +2998,25 @@ MobListener, PlayerCacheListener
 	 * to execute that command.
 	 * @param command The command object that represents the command to execute
 	 */
-	public synchronized void execute( Command command )
+	public void execute( Command command )
+	throws Exception 
+	{
+		try
+		{
+			executeCommand( command );
+		}
+		finally
+		{
+			publishChatView();
+			comm.flush();
+		}
+	}
+
+	/**
+	 * Performs the steps needed to execute a command, for execute.
+	 * @param command The command object that represents the command to execute
+	 */
+	private synchronized void executeCommand( Command command )
 	throws Exception 
 	{
 		/* 
@@ -2104,7 +3024,6 @@ MobListener, PlayerCacheListener
 		 * and then wait for the next command.  However, this function is large.
 		 * Very large. 
 		 */
-		attemptLock();
 		// If there is no player, a user may only execute a create or load player command
         	if( myPlayer == null &&
 		  ( command.getType() != Command.CREATE &&
@@ -2209,9 +3128,9 @@ MobListener, PlayerCacheListener
 							// If the user is considering a duel, cancel it
 							if( consideringDuel )
 								cancelDuel( " has left the area. Challenge Cancelled." );
-							// Finally inform everyone of the move
+							// Finally inform everyone near the rooms moved between
 							if( mySession != null ) 
-								mySession.processMove( movement, myPartNum );
+								sendMove( movement );
 
 						}
 						else
@@ -2243,6 +3162,7 @@ MobListener, PlayerCacheListener
 						mySessionName = ((StringCommand)command).getStringData();
 						mySession = (Game)M2MI.getMultihandle( Game.class );
 						((Multihandle)mySession).attach( this );
+						updateRooms();
 						myMap.spawnMerchants( this );
 						myMap.spawnMobs( this );
 						scheduleNormalReport();
@@ -2267,8 +3187,7 @@ MobListener, PlayerCacheListener
 						comm.printMessage( "Looking for games" );
 						comm.disable();
 						GameChooser gameChooser = new GameChooser();
-						sessionFinder = new SessionFinder( gameChooser );
-						sessionFinder.export();
+						findSessions( gameChooser );
 						GameChooserWindow gameChooserWindow = new GameChooserWindow( gameChooser, this );
 						gameChooserWindow.setVisible( true );
 					}
@@ -2298,7 +3217,7 @@ MobListener, PlayerCacheListener
 					{
 						SayData myMessage = new SayData( myPlayer.getId(), myPlayer.getLocation(),
 							((StringCommand)command).getStringData() );
-						mySession.say( myMessage, myPartNum );
+						getRoomHandle( myPlayer.getLocation(), SAY_CHANNEL ).say( myMessage, myPartNum );
 					}
 				}
 				break;
@@ -2867,7 +3786,11 @@ MobListener, PlayerCacheListener
 				break;
 				case Command.MAP: 
 				{
-					myMapWindow.setVisible( !myMapWindow.isVisible() );
+					if( myMapWindow instanceof MapWindow )
+					{
+						MapWindow theWindow = (MapWindow)myMapWindow;
+						theWindow.setVisible( !theWindow.isVisible() );
+					}
 				}
 				break;	
 				case Command.LOAD: 
@@ -3069,6 +3992,10 @@ MobListener, PlayerCacheListener
 						myPartNum = part;
 						myState.setPartNum( part );
 						myPlayerRefresher.setPartition( part );
+						// The units in the new partition have never seen
+						// this unit's versions
+						peerVersions.clear();
+						fullReportNeeded = true;
 						comm.printMessage
 						( "Partition set to " + myPartNum );
 					}
@@ -3235,12 +4162,12 @@ MobListener, PlayerCacheListener
 					else 
 					{	
 						myPlayer.save();
+						M2MI.flush();
 						System.exit( 0 );
 					}
 				}	
 				break;
 			}
 		}
-		unlock();
 	}
 }
@@ -0,0 +1,181 @@
+ package m2mimud.game;
+ import m2mimud.state.PlayerCharacter;
+
+ /**
+  * The HeadlessCommunicator is a PlayerCommunicator with no window.  It keeps
+  * the last lines printed to the player in a fixed size ring buffer, which is
+  * enough to run a simulated client, or many of them, in one JVM for load
+  * tests and to check afterwards what each one saw.  Lines for the combat log
+  * go into the same buffer as the rest of the output.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+
+ public class HeadlessCommunicator
+ extends BatchedCommunicator
+ {
+	private String[] myLines; // the ring buffer of lines
+	private int myNext; // the index in myLines to write the next line to
+	private long myCount; // the number of lines written since the last clear
+	private boolean isEnabled; // whether or not the client would take input
+	private PlayerCharacter myPlayer; // the active player
+	private String myStateName; // the name of the state
+	private String myTarget; // the name of the player's target
+
+	/**
+	 * Constructor
+	 * @param capacity How many of the most recent lines to keep
+	 */
+	public HeadlessCommunicator( int capacity )
+	{
+		super();
+		myLines = new String[capacity];
+		myNext = 0;
+		myCount = 0;
+		isEnabled = true;
+	}
+
+	/**
+	 * Writes a batch of lines into the ring buffer
+	 * @param theBatch The lines to write
+	 */
+	protected synchronized void deliver( OutputBatch theBatch )
+	{
+		for( int i = 0; i < theBatch.getSize(); i++ )
+		{
+			myLines[myNext] = theBatch.getLine( i );
+			myNext = ( myNext + 1 ) % myLines.length;
+			myCount++;
+		}
+	}
+
+	/**
+	 * Returns the lines in the ring buffer, oldest first.  Lines printed but
+	 * not flushed yet are not included.
+	 */
+	public synchronized String[] getRecentLines()
+	{
+		int size = (int)Math.min( myCount, myLines.length );
+		String[] retVal = new String[size];
+		int start = ( myNext - size + myLines.length ) % myLines.length;
+		for( int i = 0; i < size; i++ )
+			retVal[i] = myLines[( start + i ) % myLines.length];
+		return retVal;
+	}
+
+	/**
+	 * Returns the number of lines written since the last clear, including the
+	 * ones which have since been pushed out of the ring buffer.
+	 */
+	public synchronized long getLineCount()
+	{
+		return myCount;
+	}
+
+	/**
+	 * Clears the ring buffer, after flushing anything still waiting.
+	 */
+	public void clear()
+	{
+		flush();
+		synchronized( this )
+		{
+			for( int i = 0; i < myLines.length; i++ )
+				myLines[i] = null;
+			myNext = 0;
+			myCount = 0;
+		}
+	}
+
+	/**
+	 * Nothing to do, the combat log shares the ring buffer with the output
+	 */
+	public void clearCombatLog()
+	{
+	}
+
+	/**
+	 * Disables input
+	 */
+	public synchronized void disable()
+	{
+		isEnabled = false;
+	}
+
+	/**
+	 * Enables input
+	 */
+	public synchronized void enable()
+	{
+		isEnabled = true;
+	}
+
+	/**
+	 * Returns whether or not a real client would be taking input
+	 */
+	public synchronized boolean isEnabled()
+	{
+		return isEnabled;
+	}
+
+	/**
+	 * Sets the active player
+	 * @param thePlayer The active player
+	 */
+	public synchronized void setActivePlayer( PlayerCharacter thePlayer )
+	{
+		myPlayer = thePlayer;
+	}
+
+	/**
+	 * Returns the active player
+	 */
+	public synchronized PlayerCharacter getActivePlayer()
+	{
+		return myPlayer;
+	}
+
+	/**
+	 * The player's status is not shown anywhere
+	 * @param equi True if the player has mental equilibrium
+	 * @param balance True if the player has physical balance
+	 */
+	public void setStatus( boolean equi, boolean balance )
+	{
+	}
+
+	/**
+	 * Sets the name of the state
+	 * @param name The name of the state
+	 */
+	public synchronized void setStateName( String name )
+	{
+		myStateName = name;
+	}
+
+	/**
+	 * Returns the name of the state
+	 */
+	public synchronized String getStateName()
+	{
+		return myStateName;
+	}
+
+	/**
+	 * Sets the name of the current target
+	 * @param name The name of the target
+	 */
+	public synchronized void setTarget( String name )
+	{
+		myTarget = name;
+	}
+
+	/**
+	 * Returns the name of the current target
+	 */
+	public synchronized String getTarget()
+	{
+		return myTarget;
+	}
+ }
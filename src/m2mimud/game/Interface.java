@@ -1,12 +1,10 @@
  package m2mimud.game;
  import java.io.*;
- import java.awt.Color;
  import m2mimud.command.Command;
  import m2mimud.command.CommandExec;
  import m2mimud.command.Parser;
  import m2mimud.state.PlayerCharacter;
  import javax.swing.SwingUtilities;
- import m2mimud.state.TextMessage;
 
 /**
  * The interface class is responsible for controlling the interaction between the
@@ -18,7 +16,8 @@
  */
 
  public class Interface
- implements PlayerCommunicator, CommandExec
+ extends BatchedCommunicator
+ implements CommandExec
  {
  	private String command; // the user's command
 	private BufferedReader inStream; // the reader to read from standard in
@@ -30,6 +29,7 @@
 	throws Exception
 	{
 		// Set up the stream to read from standard in
+		super();
 		inStream = new BufferedReader( new InputStreamReader( System.in ) );
 		wind = new MudClient( "M2MIMud", this );
 		theParser = new Parser();
@@ -37,105 +37,29 @@
 	}
 
 	/**
-	 * This is a private class created so that the addition of text to the window can be
-	 * done asynchronously
+	 * Shows a batch of printed lines in the window.  The whole batch is added
+	 * by one task on the Swing thread.
+	 * @param theBatch The lines to show
 	 */
-	private class Logger
-	implements Runnable
+	protected void deliver( final OutputBatch theBatch )
 	{
-		private String myLine;
-		private Color myColor;
-		private boolean isError;
-		private boolean isCombat;
-
-		public Logger( String theLine, Color chatColor,
-		               boolean isError, boolean isCombat )
-		{
-			myLine = theLine;
-			myColor = chatColor;
-			this.isError = isError;
-			this.isCombat = isCombat;
-		}
-
-		public void run()
-		{
-			try
-			{
-				if( isCombat )
-					wind.printCombatMessage( myLine, myColor, isError );
-				else
-					wind.displayOutput( myLine, myColor, isError );
-			}
-			catch( Exception e )
+		SwingUtilities.invokeLater(
+			new Runnable()
 			{
-				e.printStackTrace();
-				System.exit( 1 );
+				public void run()
+				{
+					try
+					{
+						wind.displayBatch( theBatch );
+					}
+					catch( Exception e )
+					{
+						e.printStackTrace();
+						System.exit( 1 );
+					}
+				}
 			}
-		}
-	}
-
-	/**
-	 * Prints a message in white text
-	 * @param theObject The object to print
-	 */
-	public void printMessage( Object theObject )
-	{
-		if( theObject != null )
-                    SwingUtilities.invokeLater(
-                        new Logger( theObject.toString() + "\n", Color.black, false, false ) );
-	}
-
-
-        /**
-         * This prints out a TextMessage object
-         * @param theMessage The TextMessage object to print
-         */
-        public void printTextMessage(TextMessage theMessage)
-        {
-
-            for( int i = 0; i < theMessage.getSize(); i++ )
-                SwingUtilities.invokeLater(
-					new Logger( theMessage.getMessage( i ), theMessage.getColor( i ),
-                                    false, false ) );
-        }
-	
-	/**
-	 * Prints a message to standard out
-	 * @param theObject The object to print.
-	 * @param theColor
-	 */
-	public synchronized void printMessage( Object theObject, Color theColor )
-	{
-			if( theObject != null )
-				SwingUtilities.invokeLater(
-					new Logger( theObject.toString()+"\n", theColor, false, false ) );
-	}
-
-	/**
-	 * Prints an error message to standard error.
-	 * @param theObject The error message to print.
-	 */
-	public void printError( Object theObject )
-	{
-		if( theObject != null )
-			SwingUtilities.invokeLater(
-                            new Logger( "ERROR[" + theObject.toString() + "]\n",
-				Color.red, true, false ) );
-	}
-
-	/**
-	 * Prints a combat message
-	 * @param line The line to print
-	 * @param theColor The color to paint the text
-	 * @param player A value which indicates if the player generated this text,
-	 *        or the player's target. If the message is generated by the player's target,
-	 *        the message is bolded.
-	 */
-	public void printCombatMessage( String line, Color theColor, boolean player )
-	{
-		if( line != null )
-			SwingUtilities.invokeLater(
-				new Logger( line, theColor, player, true ) );
+		);
 	}
 
 	/**
@@ -163,7 +87,7 @@
 				System.exit( 1 );
 			}
 		}
-
+		flush();
 	}
 
 	/**
@@ -248,6 +172,7 @@
 	 */
 	public void clear()
 	{
+		flush();
 		SwingUtilities.invokeLater(
 			new Runnable()
 			{
@@ -264,6 +189,7 @@
 	 */
 	public void clearCombatLog()
 	{
+		flush();
 		SwingUtilities.invokeLater(
 			new Runnable()
 			{
@@ -168,6 +168,40 @@ extends JFrame
 		repaint();	
 	}
 	
+	/**
+	 * Adds a batch of lines to the output and combat windows, scrolling and
+	 * repainting once at the end instead of after every line.
+	 * @param theBatch The lines to add
+	 */
+	public void displayBatch( OutputBatch theBatch )
+	throws Exception
+	{
+		boolean output = false;
+		boolean combat = false;
+		for( int i = 0; i < theBatch.getSize(); i++ )
+		{
+			String line = theBatch.getLine( i );
+			if( theBatch.hasStyle( i, OutputBatch.SPACED ) )
+				line = line + "\n";
+			boolean bold = theBatch.hasStyle( i, OutputBatch.BOLD );
+			if( theBatch.hasStyle( i, OutputBatch.COMBAT ) )
+			{
+				combatWindow.insertText( line, theBatch.getColor( i ), bold );
+				combat = true;
+			}
+			else
+			{
+				myDisplayWindow.insertText( line, theBatch.getColor( i ), bold );
+				output = true;
+			}
+		}
+		if( output )
+			myDisplayWindow.scrollToEnd();
+		if( combat )
+			combatWindow.scrollToEnd();
+		repaint();
+	}
+	
 	/** 
 	 * Prints a combat message to the combatWindw window
 	 * @param line The message to print
@@ -292,6 +326,20 @@ extends JFrame
 		 */
 		public void addText( String theMessage, Color theColor, boolean error )
 		throws Exception
+		{
+			insertText( theMessage, theColor, error );
+			scrollToEnd();
+		}
+		
+		/**
+		 * Adds a string of text to the end of the output using the given color,
+		 * without scrolling or repainting.
+		 * @param theMessage The message to display
+		 * @param theColor The color of the message to display.
+		 * @param error True to bold the message
+		 */
+		public void insertText( String theMessage, Color theColor, boolean error )
+		throws Exception
 		{
 			// Save the current style and color values
 			Color a3 = StyleConstants.getForeground( style );
@@ -301,10 +349,6 @@ extends JFrame
 			StyleConstants.setFontFamily( style, a2 );
 			StyleConstants.setForeground( style, theColor );
 			
-			// This finds the end of the text
-			String s = getDocument().getText( 0, getDocument().getLength() );
-			int d1 = s.length();
-			
 			// If this is an error message, bold it
 			if( error )
 				StyleConstants.setBold( style, true );
@@ -320,8 +364,13 @@ extends JFrame
 			StyleConstants.setForeground( style, a3 );
 			if( error )
 				StyleConstants.setBold( style, false );
-			
-			// Auto scroll the window to the bottom
+		}
+		
+		/**
+		 * Scrolls the window to the bottom and repaints it
+		 */
+		public void scrollToEnd()
+		{
 			JScrollBar sb =  myScrollPane.getVerticalScrollBar();
 			sb.setValue( sb.getMaximum() );
 			repaint();
@@ -0,0 +1,97 @@
+ package m2mimud.game;
+ import java.awt.Color;
+
+ /**
+  * The OutputBatch holds the lines printed to the player between two flushes
+  * of a BatchedCommunicator, each with its color and style.  The lines are
+  * kept in plain arrays which grow as needed, so adding a line usually
+  * allocates nothing.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+
+ public class OutputBatch
+ {
+	public static final int BOLD = 1;   // the line is bold: an error, or a combat line from the player
+	public static final int COMBAT = 2; // the line goes to the combat log instead of the output
+	public static final int SPACED = 4; // the line is followed by a blank line
+
+	private String[] myLines; // the text of each line
+	private Color[] myColors; // the color of each line
+	private int[] myStyles; // the style flags of each line
+	private int mySize; // the number of lines in the batch
+
+	/**
+	 * Constructor, creates an empty batch
+	 */
+	public OutputBatch()
+	{
+		myLines = new String[16];
+		myColors = new Color[16];
+		myStyles = new int[16];
+		mySize = 0;
+	}
+
+	/**
+	 * Adds a line to the end of the batch
+	 * @param line The text of the line
+	 * @param theColor The color of the line
+	 * @param style The style flags of the line
+	 */
+	public void add( String line, Color theColor, int style )
+	{
+		if( mySize == myLines.length )
+		{
+			String[] newLines = new String[mySize * 2];
+			Color[] newColors = new Color[mySize * 2];
+			int[] newStyles = new int[mySize * 2];
+			System.arraycopy( myLines, 0, newLines, 0, mySize );
+			System.arraycopy( myColors, 0, newColors, 0, mySize );
+			System.arraycopy( myStyles, 0, newStyles, 0, mySize );
+			myLines = newLines;
+			myColors = newColors;
+			myStyles = newStyles;
+		}
+		myLines[mySize] = line;
+		myColors[mySize] = theColor;
+		myStyles[mySize] = style;
+		mySize++;
+	}
+
+	/**
+	 * Returns the number of lines in the batch
+	 */
+	public int getSize()
+	{
+		return mySize;
+	}
+
+	/**
+	 * Returns the text of a line
+	 * @param i The index of the line
+	 */
+	public String getLine( int i )
+	{
+		return myLines[i];
+	}
+
+	/**
+	 * Returns the color of a line
+	 * @param i The index of the line
+	 */
+	public Color getColor( int i )
+	{
+		return myColors[i];
+	}
+
+	/**
+	 * Returns whether a line has the given style flag
+	 * @param i The index of the line
+	 * @param style The style flag to check
+	 */
+	public boolean hasStyle( int i, int style )
+	{
+		return ( myStyles[i] & style ) != 0;
+	}
+ }
@@ -26,6 +26,11 @@
  public class PlayerCache
  implements Externalizable
  {
+	// The value of the compiled class in lib/, which wrote the saved states
+	// the clients ship with.  A newer compiler works out a different value
+	// from the same source, which could not read them back in.
+	private static final long serialVersionUID = 7135712861505998166L;
+
  	// the cache which holds the character data
 	private HashMap players;
 	private HashMap timers;
@@ -94,6 +99,19 @@
 		myPartNum = 0;		
 	}
 	
+	/**
+	 * Returns a copy of this cache which holds the same characters, for the
+	 * game state's reports to write out.  The copy has no listener and does
+	 * not time anyone out.
+	 */
+	public synchronized PlayerCache copy()
+	{
+		PlayerCache retVal = new PlayerCache();
+		retVal.players = (HashMap)players.clone();
+		retVal.myPartNum = myPartNum;
+		return retVal;
+	}
+
 	/**
 	 * Adds a character to the cache.
 	 * @param player The player to add.	
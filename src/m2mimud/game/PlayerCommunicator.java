@@ -73,6 +73,13 @@
      */
     public void printTextMessage( TextMessage theMessage );
 	
+	/**
+	 * Makes sure everything printed so far is shown to the player.  A
+	 * communicator may hold printed lines back and show them in batches; the
+	 * GameSystem calls this once it has finished a command or an event.
+	 */
+	public void flush();
+	
 	/**
 	 * Clears the combat window
 	 */
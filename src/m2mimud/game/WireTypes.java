@@ -0,0 +1,117 @@
+ package m2mimud.game;
+ import java.io.*;
+ import edu.rit.m2mi.CompactCodec;
+ import edu.rit.m2mi.TypeCodec;
+ import m2mimud.communications.SessionAd;
+ import m2mimud.communications.SessionDelta;
+ import m2mimud.state.*;
+
+ /**
+  * The WireTypes class registers the game's message types with the M2MI
+  * compact codec, which is used in place of Java serialization when the
+  * m2mi.properties file sets edu.rit.m2mi.codec to compact.  Each type gets
+  * a fixed numeric id, and every unit in a session must register the same ids,
+  * so new types must be added at the end and existing ids must never be
+  * reused.  The small types which are sent with nearly every move get their
+  * own codecs; the rest are written with their writeExternal methods.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+ public class WireTypes
+ {
+	// The type ids, these must match on every unit
+	public static final int XYLOC = 1;
+	public static final int MOB_KEY = 2;
+	public static final int USER_MOVE = 3;
+	public static final int MOB_MOVE = 4;
+	public static final int SAY_DATA = 5;
+	public static final int DEATH_DATA = 6;
+	public static final int PLAYER_CHARACTER = 7;
+	public static final int MOB = 8;
+	public static final int MERCHANT = 9;
+	public static final int HOUSE = 10;
+	public static final int ITEM_DATA = 11;
+	public static final int WORLD_CONFIGURATION = 12;
+	public static final int PLAYER_CACHE = 13;
+	public static final int GAME_STATE = 14;
+	public static final int STATE_DELTA = 15;
+	public static final int SESSION_AD = 16;
+	public static final int SESSION_DELTA = 17;
+
+	/**
+	 * Codec for an XYloc, which is written as its two coordinates.
+	 */
+	private static class XYlocCodec
+	implements TypeCodec
+	{
+		public void write( Object theObject, ObjectOutput out )
+		throws IOException
+		{
+			XYloc loc = (XYloc)theObject;
+			out.writeInt( loc.x );
+			out.writeInt( loc.y );
+		}
+
+		public Object read( ObjectInput in )
+		throws IOException
+		{
+			int x = in.readInt();
+			return new XYloc( x, in.readInt() );
+		}
+	}
+
+	/**
+	 * Codec for a MobKey.  The key only exposes its type, so the key writes
+	 * and reads its own two ints.
+	 */
+	private static class MobKeyCodec
+	implements TypeCodec
+	{
+		public void write( Object theObject, ObjectOutput out )
+		throws IOException
+		{
+			((MobKey)theObject).writeExternal( out );
+		}
+
+		public Object read( ObjectInput in )
+		throws IOException, ClassNotFoundException
+		{
+			MobKey theKey = new MobKey();
+			theKey.readExternal( in );
+			return theKey;
+		}
+	}
+
+	/**
+	 * This class should not be instantiated
+	 */
+	private WireTypes()
+	{
+	}
+
+	/**
+	 * Registers all of the game's message types with the compact codec.  It
+	 * is safe to call this more than once.
+	 */
+	public static void register()
+	{
+		CompactCodec.register( XYLOC, XYloc.class, new XYlocCodec() );
+		CompactCodec.register( MOB_KEY, MobKey.class, new MobKeyCodec() );
+		CompactCodec.register( USER_MOVE, UserMove.class );
+		CompactCodec.register( MOB_MOVE, MobMove.class );
+		CompactCodec.register( SAY_DATA, SayData.class );
+		CompactCodec.register( DEATH_DATA, DeathData.class );
+		CompactCodec.register( PLAYER_CHARACTER, PlayerCharacter.class );
+		CompactCodec.register( MOB, Mob.class );
+		CompactCodec.register( MERCHANT, Merchant.class );
+		CompactCodec.register( HOUSE, House.class );
+		CompactCodec.register( ITEM_DATA, ItemData.class );
+		CompactCodec.register( WORLD_CONFIGURATION, WorldConfiguration.class );
+		CompactCodec.register( PLAYER_CACHE, PlayerCache.class );
+		CompactCodec.register( GAME_STATE, GameState.class );
+		CompactCodec.register( STATE_DELTA, StateDelta.class );
+		CompactCodec.register( SESSION_AD, SessionAd.class );
+		CompactCodec.register( SESSION_DELTA, SessionDelta.class );
+	}
+ }
@@ -3,8 +3,11 @@
  import java.util.Vector;
  import java.util.HashMap;
  import java.util.Iterator;
+ import java.util.Arrays;
  import edu.rit.m2mi.Eoid;
  import java.util.Date;
+ import java.util.ConcurrentModificationException;
+ import java.util.zip.CRC32;
  import m2mimud.game.PlayerCache;
  import m2mimud.communications.Game;
  import m2mimud.game.PlayerCacheListener;
@@ -33,6 +36,13 @@
 	public static final int MERCHANT = 3;
 	public static final int HOUSE = 4;
 	
+	// Kept at the value it had before the version counters and digests were
+	// added, so that states saved in the old form can still be read in.
+	private static final long serialVersionUID = -4425440574656915862L;
+
+	// The number of collections above, used to size the version arrays
+	private static final int NUM_COLLECTIONS = 5;
+	
 	private Vector myPonds; // A vector which stores where the ponds are.
 	private HashMap myMobs; // the HashMap which stores the mob information
 	private HashMap myHouses; // the HashMap which stores the housing information
@@ -46,6 +56,34 @@
 	private boolean emergencyReport; // boolean to indicater if there is a serious state disparity thay needs
 					   // to be resolved asap.
 	private int myPartNum;					     
+	// The version counters, checksums and serialized collections are only
+	// brought up to date by the reports, which do that from a copy() of the
+	// state and not under the lock which guards the rest of it, so they are
+	// guarded by this object's own lock instead.
+	private int[] myVersions; // per-collection version counters, indexed by the codes above
+	private int[] myReportedVersions; // the versions sent out in the last report
+	private long[] myDigests; // the checksum of each collection when its version was last updated
+
+	// A snapshot keeps its collections serialized, as they were when it was
+	// taken, and only reads them back in if someone looks at them.  The live
+	// state keeps the bytes from its last report to take snapshots from.
+	private byte[][] myCollectionBytes; // the serialized collections, indexed by the codes above
+	private boolean isSnapshot; // whether myCollectionBytes is what this state is written out as
+	private volatile boolean isPacked; // whether the collections still have to be read back in
+	private int myPackedCount; // the number of players, for a state which is still packed
+	private long[] myContentDigests; // the content digests taken with a snapshot, null if they have to be computed
+
+	// The mobs, ponds and merchants can run into the hundreds, so the live
+	// state keeps the hash of each of them and the sum of those hashes up to
+	// date as they are added, removed and changed, and their digests come
+	// from the sums.  The players and houses are few, and change in place
+	// in too many ways to follow, so their digests are still worked out.
+	private HashMap[] myElementHashes; // the hash of each element by its key, indexed by the codes above, null if they have to be worked out again
+	private long[] myHashSums; // the sum of the element hashes of each collection
+
+	// Written at the start of a state in the form with serialized collections,
+	// so that states saved before it are still read in.
+	private static final String FORMAT = "GameState-2";
 	
 	/**
 	 * Normal Constructor
@@ -66,6 +104,7 @@
 		emergencyReport = false;
 		myPlayerId = playerId;
 		myPartNum = 0;
+		initVersions();
 	}
 	
 	/**
@@ -79,6 +118,32 @@
 		myHouses = new HashMap();
 		myMerchants = new HashMap();
 		myPlayers = new PlayerCache( null );
+		initVersions();
+	}
+	
+	/**
+	 * Constructor for a fragment of the global state, which holds only the
+	 * collections carried by the given delta.  The other collections are left
+	 * empty, which synchronize() treats as having nothing to add.
+	 * @param theDelta The delta to build the fragment from
+	 */
+	public GameState( StateDelta theDelta )
+	{
+		this();
+		myPlayerId = theDelta.getPlayerId();
+		myPartNum = theDelta.getPartNum();
+		myTime = theDelta.getTime();
+		replaceCollections( theDelta );
+	}
+	
+	/**
+	 * Sets up the version counters
+	 */
+	private void initVersions()
+	{
+		myVersions = new int[NUM_COLLECTIONS];
+		myReportedVersions = new int[NUM_COLLECTIONS];
+		myDigests = new long[NUM_COLLECTIONS];
 	}
 	
 	/**
@@ -87,6 +152,7 @@
 	 */
 	public void setPCList( PlayerCacheListener pcList )
 	{
+		unpack();
 		myPlayers.setListener( pcList );
 	}
 	
@@ -122,6 +188,15 @@
 	{
 		myPlayerId = id;
 	}
+
+	/**
+	 * Returns the id of the player this state is associated with.  Unlike
+	 * getPlayer() this does not need the players to be read in.
+	 */
+	public Eoid getId()
+	{
+		return myPlayerId;
+	}
 	
 	/** 
 	 * Sets the partition number
@@ -162,6 +237,8 @@
 	 */
 	public int numPlayers()
 	{
+		if( isPacked )
+			return myPackedCount;
 		return myPlayers.numPlayers();
 	}
 		
@@ -195,6 +272,7 @@
 	 */
 	public void add( int which, Object theObject )	
 	{
+		thaw();
 		switch( which )
 		{
 			case PLAYER:
@@ -207,13 +285,19 @@
 			{
 				Mob theMob = (Mob)theObject;
 				if( !myMobs.containsKey( theMob.getKey() ) )
+				{
 					myMobs.put( theMob.getKey(), theMob );
+					hashAdded( MOB, theMob.getKey(), theMob );
+				}
 			}
 			break;
 			case POND:
 			{
 				if( myPonds.indexOf( (XYloc)theObject ) == -1 )
+				{
 					myPonds.add( (XYloc)theObject );				
+					hashAdded( POND, theObject, theObject );
+				}
 			}
 			break;
 			case MERCHANT:
@@ -222,7 +306,10 @@
 				// Since there can only be only merchant per room, indexing them
 				// based on their location works
 				if( !myMerchants.containsKey( theMerchant.getLocation() ) )
+				{
 					myMerchants.put( theMerchant.getLocation(), theMerchant );
+					hashAdded( MERCHANT, theMerchant.getLocation(), theMerchant );
+				}
 			}
 			break;
 			case HOUSE:
@@ -245,6 +332,7 @@
 	 */
 	public Object get( int which, Object theKey )
 	{
+		unpack();
 		Object retVal = null;
 		switch( which )
 		{
@@ -284,6 +372,7 @@
 	 */
 	public boolean has( int which, Object theKey )
 	{
+		unpack();
 		boolean retVal = false;
 		switch( which )
 		{						
@@ -325,6 +414,7 @@
 	 */
 	public Iterator getCollection( int which )
 	{
+		unpack();
 		Iterator retVal = null;
 		switch( which )
 		{
@@ -357,6 +447,7 @@
 	 */
 	public Object remove( int which, Object key )
 	{
+		thaw();
 		Object retVal = null;
 		switch( which )
 		{
@@ -369,6 +460,7 @@
 			case MOB:
 			{
 				retVal = myMobs.remove( (MobKey)key );
+				hashRemoved( MOB, key );
 			}
 			break;
 			case POND:			
@@ -376,11 +468,13 @@
 				int index = myPonds.indexOf( (XYloc)key );
 				if( index < myPonds.size() )
 					retVal = myPonds.remove( index );
+				hashRemoved( POND, key );
 			}
 			break;
 			case MERCHANT:
 			{
 				retVal = myMerchants.remove( (XYloc)key );
+				hashRemoved( MERCHANT, key );
 			}
 			break;
 			case HOUSE:
@@ -409,10 +503,14 @@
 	 */
 	public void clear()
 	{
+		thaw();
 		myMobs.clear();
 		myHouses.clear();
 		myMerchants.clear();
 		myPonds.clear();
+		hashesCleared( MOB );
+		hashesCleared( POND );
+		hashesCleared( MERCHANT );
 	}
 	
 	/**
@@ -421,21 +519,25 @@
 	 */
 	public void clear( int which )
 	{
+		thaw();
 		switch( which )
 		{
 			case MOB:
 			{
 				myMobs.clear();
+				hashesCleared( MOB );
 			}
 			break;
 			case POND:
 			{
 				myPonds.clear();
+				hashesCleared( POND );
 			}
 			break;
 			case MERCHANT:
 			{
 				myMerchants.clear();
+				hashesCleared( MERCHANT );
 			}
 			break;
 			case HOUSE:
@@ -463,6 +565,8 @@
 		if( other != null && other.getClass().equals( GameState.class ) )
 		{			
                         GameState otherState = (GameState)other;		                        
+			unpack();
+			otherState.unpack();
                         retVal = ( myPlayers.equals( otherState.myPlayers ) &&
 				   myPonds.equals( otherState.myPonds ) &&
 			           myHouses.equals( otherState.myHouses ) &&
@@ -479,6 +583,7 @@
 	 */
 	public PlayerCharacter getPlayerByName( String name )
 	{
+		unpack();
 		return myPlayers.lookupByName( name );
 	}
 	
@@ -490,6 +595,7 @@
 	 */
 	public void doLookup( String name, Vector list )
 	{
+		unpack();
 		myPlayers.performLookup( name, list );
 	}
 	
@@ -498,6 +604,7 @@
 	 */
 	public String getPlayerCacheString()
 	{
+		unpack();
 		return myPlayers.toString();
 	}
 	
@@ -507,6 +614,7 @@
 	 */
 	public int getCount( String name )
 	{
+		unpack();
 		return myPlayers.getNameCount( name );
 	}
 	
@@ -516,6 +624,7 @@
 	 */
 	public void refreshPlayer( Eoid playerId )
 	{
+		thaw();
 		myPlayers.refreshTimer( playerId );
 	}
 	
@@ -524,6 +633,7 @@
 	 */
 	public Eoid getHouseId()
 	{
+		unpack();
 		Eoid retVal = null;
 		Iterator theHouses = myHouses.values().iterator();
 		while( theHouses.hasNext() && retVal == null )
@@ -543,6 +653,7 @@
 	 */
 	public void updateListeners( MobListener mobList, MerchantListener merchList, World world )
 	{
+		unpack();
 		Iterator theItems = myMobs.values().iterator();
 		while( theItems.hasNext() )
 		{
@@ -571,6 +682,7 @@
 	 */	 
 	public void synchronize( GameState other, World theWorld )
 	{	
+		thaw();
 		PlayerCharacter myPlayer = (PlayerCharacter)get( PLAYER, myPlayerId );
 		
 		// Step 1: Add any players, houses, and ponds not in the world
@@ -658,6 +770,7 @@
                                             (PlayerCharacter)get( GameState.PLAYER, theTarget );
                                             pChar.clearTargetData();
                                             myMob.stopAttack();
+                                            theWorld.mobChanged( myMob );
                                         }
                                         
                                         // Clear out the local copy of the fragment's
@@ -670,6 +783,7 @@
                                         theWorld.performWarp( myCopy.getId(), otMob.getCurrentLocation() );
                                         theWorld.moveMob( myMob.getKey(), otMob.getCurrentLocation() );
                                         myMob.startAttackSilent( myCopy.getId(), otMob.getCombatTimeStamp() );
+                                        theWorld.mobChanged( myMob );
                                         myCopy.registerTarget( myMob.getKey() );
                                 }                                    
                         }
@@ -726,7 +840,7 @@
         // of a player
         public void clearPlayerTarget( PlayerCharacter thePlayer )
         {
-		
+		thaw();
         	PlayerCharacter myPlayer = 
 			(PlayerCharacter)get( GameState.PLAYER, myPlayerId );
 		if( thePlayer.isInCombat() )
@@ -799,6 +913,8 @@
                                 {
                                     theWorld.placePlayer( (PlayerCharacter)theItem );				                                    
                                 }
+				else if( which == POND || which == MERCHANT )
+					theWorld.sceneryChanged( (XYloc)theKey );
 			}				
 		}			 		
 	}
@@ -831,6 +947,7 @@
 					myMob.respawn();
 				else
 					myMob.kill();
+				theWorld.mobChanged( myMob );
 			}
 		}
 	
@@ -843,6 +960,7 @@
 	 */
 	public void merge( GameState other, World theWorld )
 	{
+		thaw();
 		/**
 		 * Start off with the easy things, add all ponds
 		 * to this state which are not in the state.
@@ -852,7 +970,10 @@
 		{
 			XYloc pondLoc = (XYloc)data.next();
 			if( !has( GameState.POND, pondLoc ) )
+			{
 				add( GameState.POND, pondLoc );
+				theWorld.sceneryChanged( pondLoc );
+			}
 		}
 		
 		/** 
@@ -878,7 +999,11 @@
 		{
 			data = other.getCollection( GameState.MERCHANT );
 			while( data.hasNext() )
-				add( GameState.MERCHANT, (Merchant)data.next() );
+			{
+				Merchant theMerchant = (Merchant)data.next();
+				add( GameState.MERCHANT, theMerchant );
+				theWorld.sceneryChanged( theMerchant.getLocation() );
+			}
 		}
 		
 		/**
@@ -942,6 +1067,7 @@
 	 */	
 	public void clearHouses()
 	{
+		thaw();
 		Iterator myHouses = getCollection( HOUSE );
 		while( myHouses.hasNext() )
 		{
@@ -950,52 +1076,528 @@
 		}
 	}
 	
+	/**
+	 * Returns a copy of the current version counters
+	 */
+	public synchronized int[] getVersions()
+	{
+		return (int[])myVersions.clone();
+	}
+	
+	/**
+	 * Returns a copy of this state for a report.  Only the collections
+	 * themselves are copied, the mobs, players and so on in them are shared,
+	 * so this is cheap enough to take under the lock which guards this state,
+	 * and the copy can then be serialized by snapshot() or createDelta() once
+	 * that lock has been let go.  The copy is only to be read, and keeps the
+	 * content digests this state had when it was taken.
+	 */
+	public GameState copy()
+	{
+		unpack();
+		GameState retVal = new GameState();
+		retVal.myHandle = myHandle;
+		retVal.myTime = myTime;
+		retVal.myConfig = myConfig;
+		retVal.myPlayerId = myPlayerId;
+		retVal.myPartNum = myPartNum;
+		retVal.emergencyReport = emergencyReport;
+		retVal.myPlayers = myPlayers.copy();
+		retVal.myMobs = (HashMap)myMobs.clone();
+		retVal.myPonds = (Vector)myPonds.clone();
+		retVal.myMerchants = (HashMap)myMerchants.clone();
+		retVal.myHouses = (HashMap)myHouses.clone();
+		retVal.myContentDigests = getContentDigests();
+		return retVal;
+	}
+	
+	/**
+	 * Brings the version counters up to date from a copy of this state.
+	 * Most of the state is changed in place (mobs move, players fight) rather
+	 * than through add and remove, so each collection is serialized and
+	 * checksummed, and its version is bumped whenever the checksum differs
+	 * from the one taken the last time.  The serialized collections are kept
+	 * for snapshot() and createDelta().  A collection which can not be
+	 * serialized keeps the bytes and version from the last time it could be;
+	 * that includes one whose elements were being changed while it was
+	 * written out, which the next report picks up.
+	 * @param theCopy A copy() of this state
+	 */
+	private void updateVersions( GameState theCopy )
+	{
+		if( myCollectionBytes == null )
+			myCollectionBytes = new byte[NUM_COLLECTIONS][];
+		for( int i = 0; i < NUM_COLLECTIONS; i++ )
+		{
+			long digest;
+			Exception failure = null;
+			try
+			{
+				myCollectionBytes[i] = writeCollection( theCopy.getCollectionObject( i ) );
+			}
+			catch( IOException e )
+			{
+				failure = e;
+			}
+			catch( ConcurrentModificationException e )
+			{
+				failure = e;
+			}
+			if( failure == null )
+			{
+				CRC32 crc = new CRC32();
+				crc.update( myCollectionBytes[i] );
+				digest = crc.getValue();
+			}
+			else
+			{
+				// Can't serialize it now, so keep reporting it as it was the
+				// last time it could be; its version stays where it was
+				if( myCollectionBytes[i] == null )
+					throw new IllegalStateException( "Can not serialize the state: " + failure );
+				digest = myDigests[i];
+			}
+			if( digest != myDigests[i] )
+			{
+				myDigests[i] = digest;
+				myVersions[i]++;
+			}
+		}
+	}
+
+	/**
+	 * Brings the version counters up to date and returns a copy of this
+	 * state as it is now, which does not change when this state does.  It
+	 * can be sent out or compared without holding whatever lock guards this
+	 * state.  Its collections are only read back in if they are looked at.
+	 * This serializes the state while the caller holds the lock; reports
+	 * take a copy() under the lock and call snapshot( GameState ) without it.
+	 */
+	public GameState snapshot()
+	{
+		return snapshot( copy() );
+	}
+
+	/**
+	 * Brings the version counters up to date from a copy of this state and
+	 * returns a snapshot made from it.  The snapshot shares the serialized
+	 * collections made while doing that, so taking it costs nothing more.
+	 * @param theCopy A copy() of this state
+	 */
+	public synchronized GameState snapshot( GameState theCopy )
+	{
+		updateVersions( theCopy );
+		GameState retVal = new GameState();
+		retVal.myHandle = theCopy.myHandle;
+		retVal.myTime = theCopy.myTime;
+		retVal.myConfig = theCopy.myConfig;
+		retVal.myPlayerId = theCopy.myPlayerId;
+		retVal.myPartNum = theCopy.myPartNum;
+		retVal.emergencyReport = theCopy.emergencyReport;
+		retVal.myVersions = (int[])myVersions.clone();
+		retVal.myReportedVersions = (int[])myReportedVersions.clone();
+		retVal.myDigests = (long[])myDigests.clone();
+		retVal.pack( (byte[][])myCollectionBytes.clone(), theCopy.numPlayers() );
+		retVal.myContentDigests = theCopy.getContentDigests();
+		return retVal;
+	}
+	
+	/**
+	 * Records that the given versions have been sent out, so the next
+	 * delta only carries what changes from there on
+	 * @param theVersions The versions of the snapshot or delta sent out
+	 */
+	public synchronized void markReported( int[] theVersions )
+	{
+		myReportedVersions = (int[])theVersions.clone();
+	}
+	
+	/**
+	 * Brings the version counters up to date from a copy of this state and
+	 * creates a delta which holds the collections that have changed
+	 * since the last report.  The players are always sent, since synchronize()
+	 * needs the reporting unit's player, and the mobs are sent while that player
+	 * is fighting one so the receiver can check the fight.  The delta does not
+	 * change with this state.
+	 * @param theCopy A copy() of this state
+	 */
+	public synchronized StateDelta createDelta( GameState theCopy )
+	{
+		updateVersions( theCopy );
+		byte[][] collections = new byte[NUM_COLLECTIONS][];
+		PlayerCharacter myPlayer = theCopy.getPlayer();
+		for( int i = 0; i < NUM_COLLECTIONS; i++ )
+		{
+			if( i == PLAYER || myVersions[i] != myReportedVersions[i] ||
+			   ( i == MOB && myPlayer != null && myPlayer.isInCombat() && myPlayer.hasMobTarget() ) )
+				collections[i] = myCollectionBytes[i];
+		}
+		return new StateDelta( theCopy.myPlayerId, theCopy.myPartNum, theCopy.myTime,
+			(int[])myReportedVersions.clone(), (int[])myVersions.clone(), collections,
+			theCopy.getContentDigests() );
+	}
+	
+	/**
+	 * Returns whether or not the collections carried by the delta are
+	 * equal to the ones in this state.  This goes by the content digests the
+	 * delta carries, so the collections themselves are only read in when they
+	 * differ; a delta without digests is compared the long way.
+	 * @param theDelta The delta to check
+	 */
+	public boolean matches( StateDelta theDelta )
+	{
+		boolean retVal = true;
+		long[] digests = theDelta.getContentDigests();
+		long[] ownDigests = ( digests == null ? null : getContentDigests() );
+		for( int i = 0; i < NUM_COLLECTIONS && retVal; i++ )
+		{
+			if( theDelta.carries( i ) )
+			{
+				if( digests != null )
+					retVal = ( ownDigests[i] == digests[i] );
+				else
+					retVal = getCollectionObject( i ).equals( theDelta.getCollectionObject( i ) );
+			}
+		}
+		return retVal;
+	}
+	
+	/**
+	 * Replaces the collections of this state with the ones carried by
+	 * the delta.  This is used for the copies of remote states, such as the
+	 * ones kept by the session finder, not for the unit's own state.
+	 * @param theDelta The delta holding the new collections
+	 */
+	public void replaceCollections( StateDelta theDelta )
+	{
+		thaw();
+		myElementHashes = null;
+		if( theDelta.carries( PLAYER ) )
+			myPlayers = (PlayerCache)theDelta.getCollectionObject( PLAYER );
+		if( theDelta.carries( MOB ) )
+			myMobs = (HashMap)theDelta.getCollectionObject( MOB );
+		if( theDelta.carries( POND ) )
+			myPonds = (Vector)theDelta.getCollectionObject( POND );
+		if( theDelta.carries( MERCHANT ) )
+			myMerchants = (HashMap)theDelta.getCollectionObject( MERCHANT );
+		if( theDelta.carries( HOUSE ) )
+			myHouses = (HashMap)theDelta.getCollectionObject( HOUSE );
+		myTime = theDelta.getTime();
+	}
+	
+	/**
+	 * Returns the underlying collection for the given code
+	 * @param which The integer code for the collection
+	 */
+	private Object getCollectionObject( int which )
+	{
+		unpack();
+		Object retVal = null;
+		switch( which )
+		{
+			case PLAYER:
+				retVal = myPlayers;
+			break;
+			case MOB:
+				retVal = myMobs;
+			break;
+			case POND:
+				retVal = myPonds;
+			break;
+			case MERCHANT:
+				retVal = myMerchants;
+			break;
+			case HOUSE:
+				retVal = myHouses;
+			break;
+		}
+		return retVal;
+	}
+	
+	/**
+	 * Serializes a collection on its own
+	 * @param theCollection The collection to serialize
+	 */
+	static byte[] writeCollection( Object theCollection )
+	throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream( bytes );
+		out.writeObject( theCollection );
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads back in a collection serialized by writeCollection()
+	 * @param theBytes The serialized collection
+	 */
+	static Object readCollection( byte[] theBytes )
+	throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( theBytes ) );
+		Object retVal = in.readObject();
+		in.close();
+		return retVal;
+	}
+
+	/**
+	 * Makes this state one whose collections are held serialized until
+	 * they are looked at
+	 * @param theBytes The serialized collections
+	 * @param playerCount The number of players in them
+	 */
+	private void pack( byte[][] theBytes, int playerCount )
+	{
+		myCollectionBytes = theBytes;
+		myPackedCount = playerCount;
+		myPlayers = null;
+		myMobs = null;
+		myPonds = null;
+		myMerchants = null;
+		myHouses = null;
+		myElementHashes = null;
+		isSnapshot = true;
+		isPacked = true;
+	}
+
+	/**
+	 * Reads the collections back in, if they have not been yet.  Every
+	 * method which looks at the collections calls this first.
+	 */
+	private void unpack()
+	{
+		if( isPacked )
+		{
+			synchronized( this )
+			{
+				if( isPacked )
+				{
+					try
+					{
+						myPlayers = (PlayerCache)readCollection( myCollectionBytes[PLAYER] );
+						myMobs = (HashMap)readCollection( myCollectionBytes[MOB] );
+						myPonds = (Vector)readCollection( myCollectionBytes[POND] );
+						myMerchants = (HashMap)readCollection( myCollectionBytes[MERCHANT] );
+						myHouses = (HashMap)readCollection( myCollectionBytes[HOUSE] );
+					}
+					catch( Exception e )
+					{
+						// The bytes were made by writeCollection, so this can't happen
+						throw new IllegalStateException( "Can not read the state back in: " + e );
+					}
+					isPacked = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Readies the collections for a change.  Once a snapshot has been
+	 * changed its serialized collections are out of date, and it is written
+	 * out from the collections themselves.
+	 */
+	private void thaw()
+	{
+		unpack();
+		isSnapshot = false;
+		myContentDigests = null;
+	}
+
+	/**
+	 * Returns the content digest of each collection, indexed by the codes
+	 * above.  Two states whose collections are equal have the same digests,
+	 * so comparing these stands in for equals() without either state having
+	 * to be read in.  A snapshot or copy keeps the digests taken when it was
+	 * made.  For any other state the mobs, ponds and merchants come from the
+	 * element hashes kept as they change, and the players and houses are
+	 * worked out from the collections.
+	 */
+	public long[] getContentDigests()
+	{
+		if( myContentDigests != null )
+			return (long[])myContentDigests.clone();
+		unpack();
+		if( myElementHashes == null )
+			hashElements();
+		long[] retVal = new long[NUM_COLLECTIONS];
+		for( int i = 0; i < NUM_COLLECTIONS; i++ )
+		{
+			if( myElementHashes[i] != null )
+				retVal[i] = StateDigest.finish( myHashSums[i], myElementHashes[i].size() );
+			else
+				retVal[i] = StateDigest.digest( i, getCollection( i ) );
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns whether or not this state's collections have the given
+	 * content digests
+	 * @param digests The digests of another state, as from getContentDigests()
+	 */
+	public boolean sameContent( long[] digests )
+	{
+		return Arrays.equals( getContentDigests(), digests );
+	}
+
+	/**
+	 * Tells the state that one of its mobs has moved, or started or stopped
+	 * fighting, died or respawned, so its hash is worked out again
+	 * @param theMob The mob
+	 */
+	void mobChanged( Mob theMob )
+	{
+		if( myElementHashes != null && !isPacked && myMobs.get( theMob.getKey() ) == theMob )
+			hashAdded( MOB, theMob.getKey(), theMob );
+	}
+
+	/**
+	 * Works out the hash of every mob, pond and merchant, and the sums
+	 * of those hashes
+	 */
+	private void hashElements()
+	{
+		myElementHashes = new HashMap[NUM_COLLECTIONS];
+		myHashSums = new long[NUM_COLLECTIONS];
+		int[] hashed = { MOB, POND, MERCHANT };
+		for( int i = 0; i < hashed.length; i++ )
+		{
+			int which = hashed[i];
+			myElementHashes[which] = new HashMap();
+			Iterator items = getCollection( which );
+			while( items.hasNext() )
+			{
+				Object theItem = items.next();
+				if( which == MOB )
+					hashAdded( which, ((Mob)theItem).getKey(), theItem );
+				else if( which == MERCHANT )
+					hashAdded( which, ((Merchant)theItem).getLocation(), theItem );
+				else
+					hashAdded( which, theItem, theItem );
+			}
+		}
+	}
+
+	/**
+	 * Records the hash of an element which was added or changed, in place
+	 * of the one it had before
+	 * @param which The integer code for the collection
+	 * @param key The key the element is kept under
+	 * @param theObject The element
+	 */
+	private void hashAdded( int which, Object key, Object theObject )
+	{
+		if( myElementHashes != null )
+		{
+			long hash = StateDigest.hash( which, theObject );
+			Long oldHash = (Long)myElementHashes[which].put( key, new Long( hash ) );
+			if( oldHash != null )
+				myHashSums[which] -= oldHash.longValue();
+			myHashSums[which] += hash;
+		}
+	}
+
+	/**
+	 * Drops the hash of an element which was removed
+	 * @param which The integer code for the collection
+	 * @param key The key the element was kept under
+	 */
+	private void hashRemoved( int which, Object key )
+	{
+		if( myElementHashes != null )
+		{
+			Long oldHash = (Long)myElementHashes[which].remove( key );
+			if( oldHash != null )
+				myHashSums[which] -= oldHash.longValue();
+		}
+	}
+
+	/**
+	 * Drops the hashes of a collection which was cleared
+	 * @param which The integer code for the collection
+	 */
+	private void hashesCleared( int which )
+	{
+		if( myElementHashes != null )
+		{
+			myElementHashes[which].clear();
+			myHashSums[which] = 0;
+		}
+	}
+
 	/** 
-	 * Writes the GameState object out to output
+	 * Writes the GameState object out to output.  The collections are each
+	 * written as a serialized block, which a snapshot already has on hand.
 	 * @param out The output object to write to
 	 */
 	public void writeExternal( ObjectOutput out )
 	throws IOException
 	{
+		out.writeObject( FORMAT );
 		out.writeObject( myPlayerId );
 		out.writeInt( myPartNum );
-		
-		// writeExternal has already been defined for the player cache object
-		out.writeObject( myPlayers );
-		
-		// Write out the time
 		out.writeInt( myTime );
-		
-		// Write out the configuration
 		out.writeObject( myConfig );
-				
-		// Write out the mobs, ponds, merchants, and houses.
-		out.writeObject( myMobs );
-		out.writeObject( myPonds );
-		out.writeObject( myMerchants );
-		out.writeObject( myHouses );		
+		out.writeInt( numPlayers() );
+		for( int i = 0; i < NUM_COLLECTIONS; i++ )
+		{
+			byte[] theBytes;
+			if( isSnapshot )
+			{
+				theBytes = myCollectionBytes[i];
+				if( theBytes == null )
+					throw new NotSerializableException( "GameState collection " + i );
+			}
+			else
+				theBytes = writeCollection( getCollectionObject( i ) );
+			out.writeInt( theBytes.length );
+			out.write( theBytes );
+		}
 	}
 	
 	/**
-	 * Reads the GameState object in from input
+	 * Reads the GameState object in from input.  A state in the current form
+	 * is left packed, and its collections are only read in when they are
+	 * looked at.
 	 * @param in The input object read from
 	 */
 	public void readExternal( ObjectInput in )
 	throws IOException, ClassNotFoundException
 	{
-		
-		myPlayerId = (Eoid)in.readObject();
-		myPartNum = in.readInt();
-		// read in the players and the time
-		myPlayers = (PlayerCache)in.readObject();
-		myTime = in.readInt();
-		myConfig = (WorldConfiguration)in.readObject();
-		
-		// Read back in mobs, ponds, houses, and merchants
-		myMobs = (HashMap)in.readObject();
-		myPonds = (Vector)in.readObject();
-		myMerchants = (HashMap)in.readObject();
-		myHouses = (HashMap)in.readObject();	
+		// States saved before the collections were written as blocks start
+		// with the player id, and still load.
+		Object first = in.readObject();
+		if( FORMAT.equals( first ) )
+		{
+			myPlayerId = (Eoid)in.readObject();
+			myPartNum = in.readInt();
+			myTime = in.readInt();
+			myConfig = (WorldConfiguration)in.readObject();
+			int playerCount = in.readInt();
+			byte[][] theBytes = new byte[NUM_COLLECTIONS][];
+			for( int i = 0; i < NUM_COLLECTIONS; i++ )
+			{
+				theBytes[i] = new byte[in.readInt()];
+				in.readFully( theBytes[i] );
+			}
+			pack( theBytes, playerCount );
+		}
+		else
+		{
+			myPlayerId = (Eoid)first;
+			myPartNum = in.readInt();
+			// read in the players and the time
+			myPlayers = (PlayerCache)in.readObject();
+			myTime = in.readInt();
+			myConfig = (WorldConfiguration)in.readObject();
+			
+			// Read back in mobs, ponds, houses, and merchants
+			myMobs = (HashMap)in.readObject();
+			myPonds = (Vector)in.readObject();
+			myMerchants = (HashMap)in.readObject();
+			myHouses = (HashMap)in.readObject();	
+		}
 	}		
  }
  
@@ -205,6 +205,7 @@
 		underAttack = true;
 		myCurrentTarget = target;
 		timeStamp = new Date();		
+		describedChange();
 		return timeStamp;				
 				
 	}
@@ -221,6 +222,7 @@
 		underAttack = true;
 		myCurrentTarget = target;
 		timeStamp = theTimeStamp;		
+		describedChange();
        }
        
 	/**
@@ -239,6 +241,7 @@
 			currentHitPoints = maxHitPoints;
 			movementTimer.start( TWO_MINUTES +  movementPRNG.nextInt( THREE_MINUTES) );
 		}		
+		describedChange();
 	}
 
 	/**
@@ -397,6 +400,17 @@
 		currentHitPoints = maxHitPoints;
 		respawnTimer.stop();
 		restartMovementTimer();
+		describedChange();
+	}
+
+	/**
+	 * Tells the world that this mob now looks different to anyone
+	 * in its room, so the room's description is built again.
+	 */
+	private void describedChange()
+	{
+		if( myWorld != null )
+			myWorld.mobChanged( this );
 	}
 	
 	/**
@@ -10,6 +10,11 @@
 /** 
  * The PlayerCharacter class is the objeect representation of the player's
  * character, or toon.  This is the character with whom they play the game.
+ * Its hit points, experience and targets are changed by the combat loop of
+ * the game system without the game system's lock, so the methods which
+ * touch them are synchronized on the character itself.  So are the ones
+ * which change its inventory, since the state reports write characters out
+ * without the game system's lock as well.
  * 
  * @author Robert Whitcomb
  * @version $Id: PlayerCharacter.java,v 1.17 2005/01/13 15:47:06 rjw2183 Exp rjw2183 $
@@ -19,7 +24,10 @@
  public class PlayerCharacter
  implements Externalizable
  {
- 
+	// Kept at the value it had before the combat methods were synchronized,
+	// so that characters saved before then can still be read in.
+	private static final long serialVersionUID = 2272991405183117976L;
+
  	private String name; // character's name
 	private int[] stats; // the character's stats 
 	private String[] equipment;
@@ -366,7 +374,7 @@
 	 * @param id The id of the item
 	 * @param amount the amount of the item to add
 	 */
-	public void addItem( String id, int amount )
+	public synchronized void addItem( String id, int amount )
 	{
 		if( inventory.containsKey( id ) )
 		{
@@ -414,7 +422,7 @@
 	 * Adjusts the player's hit point by the given amount.
 	 * To decrement, just give a negative value
 	 */
-	public void adjustHP( int amount )
+	public synchronized void adjustHP( int amount )
 	{
 		currentHP += amount;
 		if( currentHP <= 0 )
@@ -426,7 +434,7 @@
 	/**
 	 * Returns if thisplayer is currently alive
 	 */
-	public boolean isAlive()
+	public synchronized boolean isAlive()
 	{
 		return alive;
 	}
@@ -503,7 +511,7 @@
 	  * @param id The id of the item to equip
 	  * @param slot The slot to use
 	  */
-	 public void equipItem( String id, int slot )
+	 public synchronized void equipItem( String id, int slot )
 	 {
 	 	transferItem( slot );
 		equipment[slot] = id;
@@ -556,7 +564,7 @@
 	  * Registers the target with playe
 	  * @param theTarget The target of the player
 	  */
-	 public void registerTarget( Object theTarget )	 	 
+	 public synchronized void registerTarget( Object theTarget )	 	 
 	 {
 	 	if( myMobTarget == null && myPlayerTarget == null )
 		{
@@ -573,7 +581,7 @@
 	 /**
 	  * Returns the target of the player
 	  */
-	 public Object getTarget()
+	 public synchronized Object getTarget()
 	 {
 	 	Object retVal = null;
 		if( myMobTarget != null )
@@ -595,7 +603,7 @@
 	/**
 	 * Return whether or not this player is in combat
 	 */
-	public boolean isInCombat()
+	public synchronized boolean isInCombat()
 	{
 		return inCombat;
 	}
@@ -603,7 +611,7 @@
 	/**
 	 * Returns whether or not the player has a mob for a target
 	 */
-	public boolean hasMobTarget() 
+	public synchronized boolean hasMobTarget() 
 	{
 		return myMobTarget != null;
 	}
@@ -611,7 +619,7 @@
 	/**
 	 * Clears the target data 
 	 */
-	public void clearTargetData()
+	public synchronized void clearTargetData()
 	{		
 		myMobTarget = null;
 		myPlayerTarget = null;
@@ -621,7 +629,7 @@
 	/** 
 	 * Adjusts the player's exp by the given amount
 	 */
-	public void incrementExp( int amount )
+	public synchronized void incrementExp( int amount )
 	{		
 		currentExp += amount;
 		if( currentExp >= 100 )
@@ -652,7 +660,7 @@
 	/**
 	 * Returns the amount of hp the player currently has
 	 */
-	public int getHP()
+	public synchronized int getHP()
 	{
 	 	return currentHP;
 	}
@@ -668,7 +676,7 @@
 	/**
 	 * Restores the player to life
 	 */
-	public void ressurect()
+	public synchronized void ressurect()
 	{
 	 	currentHP = maxHP;
 		alive = true;
@@ -718,7 +726,7 @@
 	  * Writes the character out to output.
 	  * @param out The object to write to.
 	  */
-	 public void writeExternal( ObjectOutput out ) 
+	 public synchronized void writeExternal( ObjectOutput out ) 
 	 throws IOException
 	 {	 			
 		out.writeObject( myId );
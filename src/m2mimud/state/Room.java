@@ -5,6 +5,7 @@
  import java.io.IOException;
  import java.util.Vector;
  import java.util.Iterator;
+ import java.util.Collections;
  import edu.rit.m2mi.Eoid;
  
 /**
@@ -25,6 +26,11 @@
 	public static final int WOODS = 2;
 	public static final int WATER = 3;
 	
+	// Kept at its old value so the rooms of worlds saved in the old form still load
+	private static final long serialVersionUID = -3769994448517321385L;
+	
+	// The players, mobs and houses vectors are only created once something is
+	// put into them, since most of the rooms in a large world stay empty.
 	private Vector myPlayers;  // unihandles to the players who are in this room
 	private Vector myMobs;  // a vector used to hold the myMobs in this room
 	
@@ -34,6 +40,12 @@
 	int roomType; //  the type of room this is
 	private Vector houses;
 	private XYloc myLoc;
+
+	// The description of the room is kept until something in the room changes
+	// or the time of day moves on; whatever changes the room, or the ponds,
+	// merchants and mobs in it, throws it away.  It is not written out with the room.
+	private TextMessage myDescription; // the cached description, null if there is none
+	private int myDescriptionTime; // the time of day the description was built for
 	
 	
 	/**
@@ -43,9 +55,6 @@
 	{
 		exits = new boolean[4];
 		exitsString = new String();
-		myPlayers = new Vector();				
-		myMobs = new Vector();	
-		houses = new Vector();	
 		myLoc = new XYloc();
 	}
 	
@@ -101,12 +110,8 @@
 		if( exits[west] == true )
 			extMess.append( "west " );
 		
-		exitsString = extMess.toString();
+		exitsString = extMess.toString().intern();
 		pondExists = false;
-		
-		myPlayers = new Vector();		
-		myMobs = new Vector();		
-		houses = new Vector();
 	}
 	
 	/**
@@ -140,6 +145,8 @@
 	 */
 	public void addPlayer( Eoid playerId )
 	{
+		if( myPlayers == null )
+			myPlayers = new Vector( 2 );
 		if( myPlayers.indexOf( playerId ) == -1 )
 			myPlayers.add( playerId );
 	}
@@ -150,7 +157,8 @@
 	 */
 	public void removePlayer( Eoid playerId )
 	{	 	
-		myPlayers.remove( playerId );
+		if( myPlayers != null )
+			myPlayers.remove( playerId );
 	}
 	 
 	/** 
@@ -158,7 +166,7 @@
 	 */
 	public Iterator getPlayers()
 	{
-		return myPlayers.iterator();
+		return iterator( myPlayers );
 	}
 	
 	/**
@@ -166,7 +174,7 @@
 	 */
 	public boolean hasPlayers()
 	{
-		return !myPlayers.isEmpty();
+		return myPlayers != null && !myPlayers.isEmpty();
 	}
 		
 	/**
@@ -175,8 +183,11 @@
 	 */
 	public void addMob( MobKey theMob )
 	{			
+		if( myMobs == null )
+			myMobs = new Vector( 2 );
 		if( myMobs.indexOf( theMob ) == -1 )
 			myMobs.add( theMob );
+		myDescription = null;
 	}
 	
 	/**
@@ -185,7 +196,7 @@
 	 */
 	boolean hasMob( MobKey theMob )
 	{
-		return ( myMobs.indexOf( theMob ) != -1 );
+		return ( myMobs != null && myMobs.indexOf( theMob ) != -1 );
 	}
 	
 	/**
@@ -193,7 +204,7 @@
 	 */
 	public int getMobCount()
 	{		
-		return myMobs.size();
+		return myMobs == null ? 0 : myMobs.size();
 	}
 	
 	/**
@@ -201,7 +212,7 @@
 	 */
 	public Iterator getMobs()
 	{
-		return myMobs.iterator();
+		return iterator( myMobs );
 	}
 	
 	
@@ -211,7 +222,9 @@
 	 */
 	public void removeMob( MobKey theKey )
 	{
-		myMobs.remove( theKey );		
+		if( myMobs != null )
+			myMobs.remove( theKey );		
+		myDescription = null;
 	}
 	
 	/** 
@@ -219,8 +232,9 @@
 	 */
 	public void clear()
 	{				
-		myMobs.clear();		
-		myPlayers.clear();				
+		myMobs = null;
+		myPlayers = null;
+		myDescription = null;
 	}		
 	
 	
@@ -229,8 +243,21 @@
 	 */
 	public synchronized void addHouse( House newHouse )
 	{
-		if( houses.indexOf( newHouse.getOwner() ) == -1 )
-			houses.add( newHouse.getOwner() );		
+		addHouseOwner( newHouse.getOwner() );
+	}
+	
+	/**
+	 * Adds a house to the room by the id of its owner, used when
+	 * the world is read back in.
+	 * @param owner The eoid of the house's owner
+	 */
+	synchronized void addHouseOwner( Eoid owner )
+	{
+		if( houses == null )
+			houses = new Vector( 2 );
+		if( houses.indexOf( owner ) == -1 )
+			houses.add( owner );		
+		myDescription = null;
 	}
 	
 	/**
@@ -240,7 +267,7 @@
 	public synchronized Eoid getHouse( int index )
 	{
 		Eoid retVal = null;
-		if( index < houses.size() )
+		if( houses != null && index < houses.size() )
 			retVal = (Eoid)houses.elementAt( index );
 		return retVal;
 	}
@@ -251,7 +278,9 @@
 	 */
 	public void removeHouse( Eoid id )
 	{
-		houses.remove( id );
+		if( houses != null )
+			houses.remove( id );
+		myDescription = null;
 	}
 	
 	/** 
@@ -259,7 +288,7 @@
 	 */
 	public boolean hasHouses()
 	{
-		return houses.size() > 0;
+		return houses != null && houses.size() > 0;
 	}
 		
 	/** 
@@ -267,7 +296,54 @@
 	 */
 	public Iterator getHouses()
 	{
-		return houses.iterator();
+		return iterator( houses );
+	}
+	
+	/**
+	 * Returns the cached description of this room, or null if there is
+	 * none for the given time of day
+	 * @param time The current time of day
+	 */
+	TextMessage getDescription( int time )
+	{
+		TextMessage retVal = null;
+		if( myDescriptionTime == time )
+			retVal = myDescription;
+		return retVal;
+	}
+
+	/**
+	 * Caches the description of this room
+	 * @param theDescription The description
+	 * @param time The time of day it was built for
+	 */
+	void setDescription( TextMessage theDescription, int time )
+	{
+		myDescription = theDescription;
+		myDescriptionTime = time;
+	}
+
+	/**
+	 * Throws away the cached description, for changes the room itself does
+	 * not see, such as a mob in it dying or a pond being dug
+	 */
+	void invalidateDescription()
+	{
+		myDescription = null;
+	}
+
+	/**
+	 * Returns an iterator over the given vector, which may not have been created yet
+	 * @param theVector The vector to iterate over, or null if it is empty
+	 */
+	private static Iterator iterator( Vector theVector )
+	{
+		Iterator retVal = null;
+		if( theVector == null )
+			retVal = Collections.EMPTY_LIST.iterator();
+		else
+			retVal = theVector.iterator();
+		return retVal;
 	}
 	
 	/**
@@ -295,9 +371,9 @@
 	public void writeExternal( ObjectOutput out )
 	throws IOException
 	{
-		int numHouses = houses.size();
+		int numHouses = houses == null ? 0 : houses.size();
 			
-		Iterator houseIter = houses.iterator();
+		Iterator houseIter = getHouses();
 		
 		out.writeInt( roomType );
 		out.writeObject( exitsString );		
@@ -318,13 +394,13 @@
 	throws IOException, ClassNotFoundException
 	{
 		roomType = in.readInt();
-		exitsString = (String)in.readObject();
+		exitsString = ((String)in.readObject()).intern();
 		for( int i = 0; i < 4; i++ )
 			exits[i] = ((Boolean)in.readObject()).booleanValue();	
 		
 		int numHouses = in.readInt();
 		for( int i = 0; i < numHouses; i++ )		
-	  		houses.add( (Eoid)in.readObject() );
+	  		addHouseOwner( (Eoid)in.readObject() );
 		myLoc = (XYloc)in.readObject();
 	}
  }
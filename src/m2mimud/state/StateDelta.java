@@ -0,0 +1,178 @@
+ package m2mimud.state;
+ import java.io.*;
+ import java.util.Arrays;
+ import edu.rit.m2mi.Eoid;
+
+ /**
+  * The StateDelta is the fragment of a GameState which a unit broadcasts in
+  * place of its whole state.  It carries only the collections whose version
+  * counters have moved since the unit's last report, along with the versions
+  * the unit reported last time and the versions it is reporting now.  A
+  * receiver which remembers the last versions it saw from the unit can tell
+  * from these whether it missed a report, in which case it asks the unit for
+  * a full snapshot instead of applying the fragment.  The collections are
+  * carried serialized, as the unit's GameState already had them, and are only
+  * read back in when the receiver asks for them.  The content digests of all
+  * of the unit's collections go along as well, so a receiver whose state
+  * already agrees never has to read them in at all.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+ public class StateDelta
+ implements Externalizable
+ {
+	private Eoid myPlayerId; // the id of the player whose unit generated this delta
+	private int myPartNum; // the partition the unit is in
+	private int myTime; // the current time of the session
+	private int[] myBaseVersions; // the versions sent in the unit's previous report
+	private int[] myVersions; // the versions being reported now
+	private byte[][] myCollections; // the changed collections, serialized, null for the unchanged ones
+	private Object[] myObjects; // the collections read back in so far
+	private long[] myContentDigests; // the content digests of all the unit's collections
+
+	/**
+	 * Normal Constructor
+	 * @param playerId The id of the player this delta is associated with
+	 * @param partNum The partition number
+	 * @param theTime The current time
+	 * @param baseVersions The versions sent in the previous report
+	 * @param versions The current versions
+	 * @param collections The serialized collections to carry, indexed by the GameState codes
+	 * @param contentDigests The content digests of all the collections
+	 */
+	StateDelta( Eoid playerId, int partNum, int theTime, int[] baseVersions,
+	            int[] versions, byte[][] collections, long[] contentDigests )
+	{
+		myPlayerId = playerId;
+		myPartNum = partNum;
+		myTime = theTime;
+		myBaseVersions = baseVersions;
+		myVersions = versions;
+		myCollections = collections;
+		myContentDigests = contentDigests;
+	}
+
+	/**
+	 * Constructor used by readExternal
+	 */
+	public StateDelta()
+	{
+	}
+
+	/**
+	 * Returns the id of the player whose unit generated this delta
+	 */
+	public Eoid getPlayerId()
+	{
+		return myPlayerId;
+	}
+
+	/**
+	 * Returns the partition number
+	 */
+	public int getPartNum()
+	{
+		return myPartNum;
+	}
+
+	/**
+	 * Returns the time of the session
+	 */
+	public int getTime()
+	{
+		return myTime;
+	}
+
+	/**
+	 * Returns the versions being reported by this delta
+	 */
+	public int[] getVersions()
+	{
+		return (int[])myVersions.clone();
+	}
+
+	/**
+	 * Returns whether or not this delta directly follows the given versions,
+	 * ie the receiver has seen every report from this unit up to this one.
+	 * @param lastVersions The versions last seen from the unit, may be null
+	 */
+	public boolean follows( int[] lastVersions )
+	{
+		return Arrays.equals( myBaseVersions, lastVersions );
+	}
+
+	/**
+	 * Returns the content digests of the unit's collections, indexed by the
+	 * GameState codes
+	 */
+	long[] getContentDigests()
+	{
+		return myContentDigests;
+	}
+
+	/**
+	 * Returns whether or not this delta carries the specified collection
+	 * @param which The integer code for the collection
+	 */
+	public boolean carries( int which )
+	{
+		return myCollections[which] != null;
+	}
+
+	/**
+	 * Returns the specified collection, or null if it is not carried
+	 * @param which The integer code for the collection
+	 */
+	synchronized Object getCollectionObject( int which )
+	{
+		if( myCollections[which] == null )
+			return null;
+		if( myObjects == null )
+			myObjects = new Object[myCollections.length];
+		if( myObjects[which] == null )
+		{
+			try
+			{
+				myObjects[which] = GameState.readCollection( myCollections[which] );
+			}
+			catch( Exception e )
+			{
+				throw new IllegalStateException( "Can not read the delta back in: " + e );
+			}
+		}
+		return myObjects[which];
+	}
+
+	/**
+	 * Writes the delta out to output
+	 * @param out The output object to write to
+	 */
+	public void writeExternal( ObjectOutput out )
+	throws IOException
+	{
+		out.writeObject( myPlayerId );
+		out.writeInt( myPartNum );
+		out.writeInt( myTime );
+		out.writeObject( myBaseVersions );
+		out.writeObject( myVersions );
+		out.writeObject( myCollections );
+		out.writeObject( myContentDigests );
+	}
+
+	/**
+	 * Reads the delta in from input
+	 * @param in The input object to read from
+	 */
+	public void readExternal( ObjectInput in )
+	throws IOException, ClassNotFoundException
+	{
+		myPlayerId = (Eoid)in.readObject();
+		myPartNum = in.readInt();
+		myTime = in.readInt();
+		myBaseVersions = (int[])in.readObject();
+		myVersions = (int[])in.readObject();
+		myCollections = (byte[][])in.readObject();
+		myContentDigests = (long[])in.readObject();
+	}
+ }
@@ -0,0 +1,195 @@
+ package m2mimud.state;
+ import java.util.Iterator;
+ import edu.rit.m2mi.Eoid;
+
+ /**
+  * The StateDigest computes the content digest of a GameState collection.
+  * Each element is hashed over the same fields its equals() method compares,
+  * and the element hashes are added together, so two collections which are
+  * equal have the same digest no matter what order they were built in, and
+  * two which differ almost certainly do not.  This lets a unit tell whether
+  * another unit's state agrees with its own from a handful of longs, without
+  * reading the other state in or comparing it element by element.
+  *
+  * @author Robert Whitcomb
+  * @version $Id$
+  */
+
+ class StateDigest
+ {
+	private long myHash; // the hash of the element being digested
+
+	/**
+	 * Computes the digest of one of the collections of a state
+	 * @param which The integer code for the collection
+	 * @param theItems The elements of the collection
+	 */
+	static long digest( int which, Iterator theItems )
+	{
+		long sum = 0;
+		int count = 0;
+		while( theItems.hasNext() )
+		{
+			sum += hash( which, theItems.next() );
+			count++;
+		}
+		return finish( sum, count );
+	}
+
+	/**
+	 * Computes the hash of one element of a collection, which is what the
+	 * collection's digest adds up
+	 * @param which The integer code for the collection
+	 * @param theObject The element
+	 */
+	static long hash( int which, Object theObject )
+	{
+		StateDigest theDigest = new StateDigest();
+		theDigest.myHash = which;
+		theDigest.addElement( which, theObject );
+		return theDigest.myHash;
+	}
+
+	/**
+	 * Computes the digest of a collection from the sum of its element hashes
+	 * @param sum The sum of the hashes of the elements
+	 * @param count The number of elements
+	 */
+	static long finish( long sum, int count )
+	{
+		// Mix in the count, so that adding an element whose hash happens to
+		// be zero still changes the digest
+		return sum ^ mix( count );
+	}
+
+	/**
+	 * Hashes the fields of an element which its equals() method compares
+	 * @param which The integer code for the collection the element is in
+	 * @param theObject The element
+	 */
+	private void addElement( int which, Object theObject )
+	{
+		switch( which )
+		{
+			case GameState.PLAYER:
+			{
+				PlayerCharacter thePlayer = (PlayerCharacter)theObject;
+				addEoid( thePlayer.getId() );
+				addLoc( thePlayer.getLocation() );
+				addBoolean( thePlayer.isInHouse() );
+				addBoolean( thePlayer.isInCombat() );
+				if( thePlayer.isInCombat() )
+					addTarget( thePlayer.getTarget() );
+				addEoid( thePlayer.getHouse() );
+			}
+			break;
+			case GameState.MOB:
+			{
+				Mob theMob = (Mob)theObject;
+				addTarget( theMob.getKey() );
+				addLoc( theMob.getCurrentLocation() );
+				addBoolean( theMob.isAlive() );
+				addBoolean( theMob.isUnderAttack() );
+				if( theMob.isUnderAttack() )
+					addEoid( theMob.getTarget() );
+			}
+			break;
+			case GameState.POND:
+				addLoc( (XYloc)theObject );
+			break;
+			case GameState.MERCHANT:
+			{
+				Merchant theMerchant = (Merchant)theObject;
+				add( theMerchant.getType() );
+				addLoc( theMerchant.getLocation() );
+			}
+			break;
+			case GameState.HOUSE:
+			{
+				House theHouse = (House)theObject;
+				addEoid( theHouse.getOwner() );
+				addLoc( theHouse.getLocation() );
+				addString( theHouse.getOwnerName() );
+				addString( theHouse.getDescription() );
+				addBoolean( theHouse.canEnter() );
+				Iterator players = theHouse.getPlayers();
+				while( players.hasNext() )
+					addEoid( (Eoid)players.next() );
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Adds an int to the hash of the element
+	 */
+	private void add( int value )
+	{
+		myHash = mix( myHash * 31 + value );
+	}
+
+	/**
+	 * Adds a boolean to the hash of the element
+	 */
+	private void addBoolean( boolean value )
+	{
+		add( value ? 1 : 0 );
+	}
+
+	/**
+	 * Adds a location, which may be null, to the hash of the element
+	 */
+	private void addLoc( XYloc loc )
+	{
+		if( loc == null )
+			add( -1 );
+		else
+		{
+			add( loc.x );
+			add( loc.y );
+		}
+	}
+
+	/**
+	 * Adds an id, which may be null, to the hash of the element
+	 */
+	private void addEoid( Eoid id )
+	{
+		add( id == null ? 0 : id.hashCode() );
+	}
+
+	/**
+	 * Adds a string, which may be null, to the hash of the element
+	 */
+	private void addString( String s )
+	{
+		add( s == null ? 0 : s.hashCode() );
+	}
+
+	/**
+	 * Adds a combat target, which is either a player's id or a mob's key
+	 */
+	private void addTarget( Object target )
+	{
+		if( target instanceof MobKey )
+		{
+			// The key's hash code is its type plus its number
+			MobKey theKey = (MobKey)target;
+			add( theKey.getType() );
+			add( theKey.hashCode() - theKey.getType() );
+		}
+		else
+			addEoid( (Eoid)target );
+	}
+
+	/**
+	 * Scrambles the bits of a value, so that nearby values (a mob one square
+	 * over) end up with unrelated hashes
+	 */
+	private static long mix( long z )
+	{
+		z = ( z ^ ( z >>> 33 ) ) * 0xff51afd7ed558ccdL;
+		z = ( z ^ ( z >>> 33 ) ) * 0xc4ceb9fe1a85ec53L;
+		return z ^ ( z >>> 33 );
+	}
+ }
@@ -1,5 +1,5 @@
  package m2mimud.state; 
- import java.util.Vector;
+ import java.util.ArrayList;
  import java.awt.Color; 
  import edu.rit.m2mi.Eoid;
  
@@ -13,22 +13,46 @@
  
  public class TextMessage
  {
- 	private Vector theMessage; // vector to hold the strings
-	private Vector theColors;  // the vector to hold the colors	
-        private Vector attackedMobs; // a hashmap which contains all
-				      // the mobsunder attack
-	private Vector 	mobTargets; // a vector containing the player id of the players
-				    // attacking the mobs			  	
+	private ArrayList theLines; // the lines of the message, each a Line
+	private ArrayList attackedMobs; // the mobs under attack, each an AttackedMob
+
+	/**
+	 * A line of the message and the color to print it in
+	 */
+	private static class Line
+	{
+		String text;
+		Color color;
+
+		Line( String text, Color color )
+		{
+			this.text = text;
+			this.color = color;
+		}
+	}
+
+	/**
+	 * A mob under attack and the id of the player attacking it
+	 */
+	private static class AttackedMob
+	{
+		String name;
+		Eoid player;
+
+		AttackedMob( String name, Eoid player )
+		{
+			this.name = name;
+			this.player = player;
+		}
+	}
 	
 	/**
 	 * Default constructor
 	 */
 	public TextMessage()
 	{
-		theMessage = new Vector();
-		theColors = new Vector();
-		attackedMobs = new Vector();
-		mobTargets = new Vector();
+		theLines = new ArrayList();
+		attackedMobs = new ArrayList();
 	}
 	
 	/**
@@ -37,8 +61,7 @@
 	 */
 	public void addString( Object theString )
 	{
-		theMessage.add( theString.toString() );
-		theColors.add( Color.black );
+		addString( theString, Color.black );
 	} 
 	
 	/**
@@ -48,8 +71,7 @@
 	 */
 	public void addString( Object theString, Color theColor )
 	{
-		theMessage.add( theString.toString() );
-		theColors.add( theColor );
+		theLines.add( new Line( theString.toString(), theColor ) );
 	}
 	
 	/** 
@@ -57,16 +79,16 @@
 	 */
 	public int getSize()
 	{
-		return theMessage.size();
+		return theLines.size();
 	}
 	
 	/**
 	 * Gets the portion of the message at the requesed locations
 	 * @param i The index to get
 	 */
-        public String getMessage( int i )
+	public String getMessage( int i )
 	{
-	 	return (String)theMessage.elementAt( i );
+	 	return ((Line)theLines.get( i )).text;
 	}
 
 	/**
@@ -75,7 +97,7 @@
 	 */
 	public Color getColor( int i )
 	{
-		return (Color)theColors.elementAt( i );
+		return ((Line)theLines.get( i )).color;
 	}
 	
 	/** 
@@ -85,8 +107,7 @@
 	 */
 	public void addAttackedMob( String mName, Eoid pId )
 	{
-		attackedMobs.add( mName );
-		mobTargets.add( pId );
+		attackedMobs.add( new AttackedMob( mName, pId ) );
 	}
 	
 	/** 
@@ -103,7 +124,7 @@
 	 */
 	public String getMobName( int i )
 	{
-		return (String)attackedMobs.elementAt( i );
+		return ((AttackedMob)attackedMobs.get( i )).name;
 	}
 	
 	/**
@@ -112,6 +133,6 @@
 	 */
 	public Eoid getPlayer( int i )
 	{
-		return (Eoid)mobTargets.elementAt( i );
+		return ((AttackedMob)attackedMobs.get( i )).player;
 	}
 }
@@ -21,7 +21,25 @@
  public class World
  implements Externalizable
  {		
-	private HashMap theWorld; // the array of roosm which makes up the world
+	/**
+	 * How many rooms away from the player a unit still wants to hear about
+	 * moves.  This covers the rooms shown on the map plus the rooms one step
+	 * beyond.  A move is sent to both the room left and the room entered, so
+	 * every move into or out of this area is seen.
+	 */
+	public static final int INTEREST_RADIUS = 2;
+	
+	/**
+	 * The world is also split into square regions of this many rooms on a
+	 * side, for what goes on all over an area rather than in one room.
+	 */
+	public static final int REGION_SIZE = 25;
+	
+	// Kept at the value it had before the rooms moved into an array, so that
+	// worlds saved in the old form can still be read in.
+	private static final long serialVersionUID = 1410147538919597170L;
+	
+	private Room[] theWorld; // the rooms which make up the world, row by row from (0,0)
 	int dimX, dimY;
 	
 	// These strings get printed out whenever the user enters into a room.
@@ -43,6 +61,12 @@
 	private String[] mercDesc;
 	private Eoid houseId; // the id of the house that the user is currently in	
 		
+	// The colors used in the room descriptions
+	private static final Color HOUSE_COLOR = Color.green.darker().darker();
+	private static final Color MOB_COLOR = Color.yellow.darker();
+	private static final Color CORPSE_COLOR = Color.cyan.darker();
+	private static final Color EXIT_COLOR = Color.blue.brighter();
+
 	private MapViewer myMapViewer; // the viewer for the map of the world
 	private GameState myState; // the state of the session
 	
@@ -52,7 +76,7 @@
 	public World()
 	throws Exception
 	{
-		theWorld = new HashMap();							
+		theWorld = new Room[0];
 		broadcastString = new String[3];
 		grassString = new String[6];
 		woodsString = new String[6];
@@ -70,16 +94,16 @@
  	public World( GameState theState )
 	throws Exception
 	{
-		theWorld = new HashMap();		
 		dimX = 100;
 		dimY = 100;
+		theWorld = new Room[dimX * dimY];
 		for( int x = 0; x < dimX; x++ )
 			for( int y = 0; y < dimY; y++ )
 			{
 				XYloc roomLoc = new XYloc( x, y );
 				Room tempRoom = new Room( roomLoc,
 				Room.GRASSY_FIELD, dimX, dimY );
-				theWorld.put( roomLoc, tempRoom );
+				theWorld[roomIndex( x, y )] = tempRoom;
 			}		
 		broadcastString = new String[3];
 		grassString = new String[6];
@@ -108,6 +132,88 @@
 		return dimY;
 	}
 	
+	/**
+	 * Returns the key of the room at the given location, a number from zero
+	 * up to the number of rooms which is the same on every unit running the
+	 * same map.  Locations off the map get the key of the nearest room.
+	 * @param theLoc The location to look up
+	 */
+	public int getRoomKey( XYloc theLoc )
+	{
+		int x = Math.min( Math.max( theLoc.x, 0 ), dimX - 1 );
+		int y = Math.min( Math.max( theLoc.y, 0 ), dimY - 1 );
+		return roomIndex( x, y );
+	}
+	
+	/**
+	 * Returns the keys of all the rooms on the map within the given number of
+	 * rooms of the given location, as a vector of Integers.  A radius of one
+	 * gives the room and its eight neighbours, the same rooms the map viewer shows.
+	 * @param theLoc The location to look around
+	 * @param radius How many rooms out to go
+	 */
+	public Vector getRoomsAround( XYloc theLoc, int radius )
+	{
+		Vector retVal = new Vector();
+		for( int y = Math.max( theLoc.y - radius, 0 ); y <= Math.min( theLoc.y + radius, dimY - 1 ); y++ )
+			for( int x = Math.max( theLoc.x - radius, 0 ); x <= Math.min( theLoc.x + radius, dimX - 1 ); x++ )
+				retVal.add( new Integer( roomIndex( x, y ) ) );
+		return retVal;
+	}
+	
+	/**
+	 * Returns the key of the region which holds the given location.  This is
+	 * the key of the room at the region's north west corner, so region keys
+	 * are room keys too.
+	 * @param theLoc The location to look up
+	 */
+	public int getRegionKey( XYloc theLoc )
+	{
+		int x = Math.min( Math.max( theLoc.x, 0 ), dimX - 1 );
+		int y = Math.min( Math.max( theLoc.y, 0 ), dimY - 1 );
+		return roomIndex( x - x % REGION_SIZE, y - y % REGION_SIZE );
+	}
+	
+	/**
+	 * Returns the keys of all the regions within INTEREST_RADIUS rooms of the
+	 * given location, as a vector of Integers.  Near a corner this is at most
+	 * four regions.
+	 * @param theLoc The location to look around
+	 */
+	public Vector getRegionsAround( XYloc theLoc )
+	{
+		Vector retVal = new Vector();
+		for( int dy = -INTEREST_RADIUS; dy <= INTEREST_RADIUS; dy += INTEREST_RADIUS )
+		{
+			for( int dx = -INTEREST_RADIUS; dx <= INTEREST_RADIUS; dx += INTEREST_RADIUS )
+			{
+				Integer region = new Integer( getRegionKey( new XYloc( theLoc.x + dx, theLoc.y + dy ) ) );
+				if( !retVal.contains( region ) )
+					retVal.add( region );
+			}
+		}
+		return retVal;
+	}
+	
+	/**
+	 * Returns the index into theWorld of the room at the given coordinates
+	 * @param x The x coordinate of the room
+	 * @param y The y coordinate of the room
+	 */
+	private int roomIndex( int x, int y )
+	{
+		return y * dimX + x;
+	}
+	
+	/**
+	 * Returns the room at the given location
+	 * @param theLoc The location of the room
+	 */
+	private Room roomAt( XYloc theLoc )
+	{
+		return theWorld[theLoc.y * dimX + theLoc.x];
+	}
+	
 	/** 
 	 * Returns the name of the world
 	 */
@@ -171,7 +277,7 @@
 			do
 			{
 				tempLoc = new XYloc( locPRNG.nextInt( dimX ), locPRNG.nextInt( dimY ) );				
-				theRoom = (Room)theWorld.get( tempLoc );
+				theRoom = roomAt( tempLoc );
 				numTimes++;
 			}
 			while( ( myState.has( GameState.MERCHANT, tempLoc ) || 
@@ -184,6 +290,7 @@
 				System.out.println( "Adding merchant " + type + " to " + tempLoc );
 				temp.scheduleNextMessage();
 				myState.add( GameState.MERCHANT, temp );
+				theRoom.invalidateDescription();
 			}
 		}
 		
@@ -192,6 +299,7 @@
 			Merchant fixedMerchant = new Merchant( type, new XYloc( 0, 0 ), listener );
 			fixedMerchant.scheduleNextMessage();
 			myState.add( GameState.MERCHANT,  fixedMerchant );
+			sceneryChanged( fixedMerchant.getLocation() );
 			
 		}
 	}
@@ -241,7 +349,7 @@
 					 int xloc = locPRNG.nextInt( dimX );
 					 int yloc = locPRNG.nextInt( dimY );
 					 initialLoc = new XYloc( xloc, yloc );
-                                         theRoom = (Room)theWorld.get( initialLoc );
+                                         theRoom = roomAt( initialLoc );
                                          numTimes++;
 				}
 				while( ( myState.has( GameState.MERCHANT, initialLoc ) ||
@@ -288,117 +396,171 @@
           */
          public int getCurrentRoomType()
          {          
-             Room theRoom = (Room)theWorld.get( myState.getPlayer().getLocation() );
+             Room theRoom = roomAt( myState.getPlayer().getLocation() );
              return theRoom.getRoomType();
          }
 	 
 	 /**
-	  * Gets the description of the room at the given loc;	
+	  * Gets the description of the room the player is in.  A room's
+	  * description is kept by the room and only built again once something
+	  * in it changes or the time of day moves on, so the returned message may
+	  * be shared and must not be changed.
 	  */
 	 public TextMessage currentAreaDescription()
 	 {                                                                                
-		TextMessage retVal = new TextMessage();
+		TextMessage retVal;
 		PlayerCharacter myPlayer = myState.getPlayer();
 		XYloc currentLoc = myPlayer.getLocation();
 		if( myPlayer.isInHouse() )
 		{
 			House theHouse = (House)myState.get( GameState.HOUSE, houseId );
+			retVal = new TextMessage();
 			retVal.addString
 				( "You are in " + theHouse.getOwnerName() + "\'s house." ); 
 			retVal.addString( theHouse.getDescription() );
 		}
 		else
 		{
-			
-			// Get the start of the description based on the type of tile the
-			// player is in
-			Room temp = (Room)theWorld.get( currentLoc );
-			if( temp.getRoomType() == Room.GRASSY_FIELD )
-				retVal.addString( grassString[myState.getTime()] );
-			else if( temp.getRoomType() == Room.WOODS )
-				retVal.addString(woodsString[myState.getTime()] );
-			else
-				retVal.addString( waterString[myState.getTime()] );
-		
-			// If there's a pond, add it to the description
-			if( myState.has( GameState.POND, currentLoc ) )
+			Room temp = roomAt( currentLoc );
+			int time = myState.getTime();
+			retVal = temp.getDescription( time );
+			if( retVal == null )
 			{
-				if( temp.getRoomType() == Room.GRASSY_FIELD )
-					retVal.addString( pondString );
-				else
-					retVal.addString( pondWoodString );
+				retVal = describeRoom( temp, currentLoc, time );
+				temp.setDescription( retVal, time );
 			}
-			
-			// If there's a merchant, add the appropiate merchant description
-			if( myState.has( GameState.MERCHANT, currentLoc ) )
-				retVal.addString( mercDesc[((Merchant)myState.get( GameState.MERCHANT,
-				                  currentLoc )).getType()] );
+		}	
+		return retVal;
+	 } 
+
+	 /**
+	  * Builds the description of a room
+	  * @param temp The room
+	  * @param currentLoc The location of the room
+	  * @param time The time of day
+	  */
+	 private TextMessage describeRoom( Room temp, XYloc currentLoc, int time )
+	 {
+		TextMessage retVal = new TextMessage();
+
+		// Get the start of the description based on the type of tile the
+		// player is in
+		if( temp.getRoomType() == Room.GRASSY_FIELD )
+			retVal.addString( grassString[time] );
+		else if( temp.getRoomType() == Room.WOODS )
+			retVal.addString(woodsString[time] );
+		else
+			retVal.addString( waterString[time] );
+	
+		// If there's a pond, add it to the description
+		if( myState.has( GameState.POND, currentLoc ) )
+		{
+			if( temp.getRoomType() == Room.GRASSY_FIELD )
+				retVal.addString( pondString );
+			else
+				retVal.addString( pondWoodString );
+		}
 		
+		// If there's a merchant, add the appropiate merchant description
+		if( myState.has( GameState.MERCHANT, currentLoc ) )
+			retVal.addString( mercDesc[((Merchant)myState.get( GameState.MERCHANT,
+			                  currentLoc )).getType()] );
+	
 
-			// This loop does a few things.  Primarily, it examines any houses
-			// that are in the room, gets the names and ids of their owners, and
-			// add that information to the description.  However it also performs
-			// some checking, as it checks to make sure that the location of the current
-			// room and the location value stored in the house object are the same.  If not,
-			// the house is removed from the room.  It's important to remember that the room has
-			// is the id of owner of the house, as the house object itself is stored in the
-			// GameState object. 
-			if( temp.hasHouses() )	
+		// This loop does a few things.  Primarily, it examines any houses
+		// that are in the room, gets the names and ids of their owners, and
+		// add that information to the description.  However it also performs
+		// some checking, as it checks to make sure that the location of the current
+		// room and the location value stored in the house object are the same.  If not,
+		// the house is removed from the room.  It's important to remember that the room has
+		// is the id of owner of the house, as the house object itself is stored in the
+		// GameState object. 
+		if( temp.hasHouses() )	
+		{
+			StringBuffer houseString = new StringBuffer( "You see the following houses:\n");
+			Iterator houseIter = temp.getHouses();
+			int i = 0;
+			
+			Vector removeHouses = null;			
+			// this preens houses on the fly.  For every house, it checks to make sure that
+			// the house's location is the same at the currentLoc value.  If it is, it
+			// adds it to the house  If not, it removes te house
+			while( houseIter.hasNext() )
 			{
-				StringBuffer houseString = new StringBuffer( "You see the following houses:\n");
-				Iterator houseIter = temp.getHouses();
-				int i = 0;
-				
-				Vector removeHouses = new Vector();			
-				// this preens houses on the fly.  For every house, it checks to make sure that
-				// the house's location is the same at the currentLoc value.  If it is, it
-				// adds it to the house  If not, it removes te house
-				while( houseIter.hasNext() )
+				Eoid houseId = (Eoid)houseIter.next();
+				House tempHouse = (House)myState.get( GameState.HOUSE, houseId );
+				if( tempHouse.getLocation().equals( currentLoc ) )
 				{
-					Eoid houseId = (Eoid)houseIter.next();
-					House tempHouse = (House)myState.get( GameState.HOUSE, houseId );
-					if( tempHouse.getLocation().equals( currentLoc ) )
-					{
-						houseString.append( "(" + i + ") " + tempHouse +"\n" );		
-						i++;
-					}
-					else
-						removeHouses.add( houseId );								
-				}				
+					houseString.append( '(' ).append( i ).append( ") " )
+						.append( tempHouse ).append( '\n' );
+					i++;
+				}
+				else
+				{
+					if( removeHouses == null )
+						removeHouses = new Vector();
+					removeHouses.add( houseId );
+				}
+			}				
+			if( removeHouses != null )
+			{
 				houseIter = removeHouses.iterator();					
 				while( houseIter.hasNext() )
 					temp.removeHouse( (Eoid)houseIter.next() );
-			
-				if( temp.hasHouses() )
-					retVal.addString( houseString, Color.green.darker().darker() );
 			}
 		
-			// This loop examines every mob in the room. If the mob is not currently fighting 
-			// a player or is dead, it adds the name of the mob to the description.  If 
-			// players are fighting a mob, that is handled by the GameSystem object			
-			if( temp.getMobCount() > 0 )
+			if( temp.hasHouses() )
+				retVal.addString( houseString, HOUSE_COLOR );
+		}
+	
+		// This loop examines every mob in the room. If the mob is not currently fighting 
+		// a player or is dead, it adds the name of the mob to the description.  If 
+		// players are fighting a mob, that is handled by the GameSystem object			
+		if( temp.getMobCount() > 0 )
+		{
+			Iterator mobs = temp.getMobs();
+			while( mobs.hasNext() )
 			{
-				Iterator mobs = temp.getMobs();
-				while( mobs.hasNext() )
+				Mob theMob = (Mob)myState.get( GameState.MOB, (MobKey)mobs.next() );
+				if( theMob.isAlive() )
 				{
-					Mob theMob = (Mob)myState.get( GameState.MOB, (MobKey)mobs.next() );
-					if( theMob.isAlive() )
-					{
-						if( !theMob.isUnderAttack() )			
-							retVal.addString( "There is a " + theMob.getName() + " here.", 
-							Color.yellow.darker() );					
-					}
-					else
-						retVal.addString( "The corpse of a " + theMob.getName() + " is " +
-						"lying on the ground.", Color.cyan.darker() );
+					if( !theMob.isUnderAttack() )			
+						retVal.addString( "There is a " + theMob.getName() + " here.", 
+						MOB_COLOR );					
 				}
-			}	
-		
-			retVal.addString( exitString, Color.blue.brighter() );
-			retVal.addString( temp.getExitString(), Color.blue.brighter() );
+				else
+					retVal.addString( "The corpse of a " + theMob.getName() + " is " +
+					"lying on the ground.", CORPSE_COLOR );
+			}
 		}	
+	
+		retVal.addString( exitString, EXIT_COLOR );
+		retVal.addString( temp.getExitString(), EXIT_COLOR );
 		return retVal;
-	 } 
+	 }
+
+	/**
+	 * Called when a mob starts or stops fighting, dies or respawns, which
+	 * changes how its room is described
+	 * @param theMob The mob
+	 */
+	void mobChanged( Mob theMob )
+	{
+		myState.mobChanged( theMob );
+		sceneryChanged( theMob.getCurrentLocation() );
+	}
+
+	/**
+	 * Called when something which shows up in a room's description, such as
+	 * a pond or a merchant, is added to or taken away from the room at the
+	 * location, so only that room's description is built again
+	 * @param location The location of the room
+	 */
+	void sceneryChanged( XYloc location )
+	{
+		if( theWorld.length > 0 )
+			theWorld[getRoomKey( location )].invalidateDescription();
+	}
 	
 	/**
 	 * Returns the broadcast string for the given merchant type
@@ -445,7 +607,7 @@
 			// Get the current room and make sure that a move in that direction
 			// is valid.
 			XYloc currentLoc = myState.getPlayer().getLocation();
-			Room tempRoom = (Room)theWorld.get( currentLoc );
+			Room tempRoom = roomAt( currentLoc );
 			if( tempRoom.checkMove( direction )  == true )
 			{
 				XYloc oldLoc = new XYloc( currentLoc );
@@ -534,12 +696,13 @@
 			oldLoc = new XYloc( theMob.getCurrentLocation() );
 			
 		XYloc newLoc = theMove.getLoc( MoveData.TO );		
-		Room tempRoom = (Room)theWorld.get( oldLoc );		
+		Room tempRoom = roomAt( oldLoc );		
 		if( tempRoom.hasMob( theMove.getKey() ) )
 		{			
 			theMob.updateLocation( newLoc );
+			myState.mobChanged( theMob );
 			tempRoom.removeMob( theMob.getKey() );
-			Room newRoom = (Room)theWorld.get( newLoc );                        
+			Room newRoom = roomAt( newLoc );                        
                         newRoom.addMob( theMob.getKey() );	
 			retVal = true;				
 		}
@@ -554,9 +717,10 @@
 	public void moveMob( MobKey theKey, XYloc newLoc )
 	{
 		Mob theMob = (Mob)myState.get( GameState.MOB, theKey );
-		((Room)theWorld.get( theMob.getCurrentLocation() )).removeMob( theKey );
+		roomAt( theMob.getCurrentLocation() ).removeMob( theKey );
 		theMob.updateLocation( newLoc );
-		((Room)theWorld.get( theMob.getCurrentLocation() )).addMob( theKey );
+		myState.mobChanged( theMob );
+		roomAt( theMob.getCurrentLocation() ).addMob( theKey );
 	}
 	
 	/** 
@@ -574,9 +738,8 @@
 	 */
 	public void removePlayer( Eoid playerId )
 	{
-		for( int x = 0; x < dimX; x++ )
-			for( int y = 0; y < dimY; y++ )
-				((Room)theWorld.get( new XYloc( x, y ) ) ).removePlayer( playerId );
+		for( int i = 0; i < theWorld.length; i++ )
+			theWorld[i].removePlayer( playerId );
 	}
 	
 	/**
@@ -590,7 +753,7 @@
 		Mob retVal = null;
 		boolean validName = false;
 		int count = 0;
-		Iterator theMobs = ((Room)theWorld.get( myState.getPlayer().getLocation() )).getMobs();
+		Iterator theMobs = roomAt( myState.getPlayer().getLocation() ).getMobs();
 		while( theMobs.hasNext() && retVal == null )
 		{
 			Mob theMob = (Mob)myState.get( GameState.MOB, (MobKey)theMobs.next() );
@@ -683,6 +846,8 @@
 		 	myState.clear( GameState.MOB );
 			myState.clear( GameState.MERCHANT );
 			myState.clearHouses();
+			for( int i = 0; i < theWorld.length; i++ )
+				theWorld[i].invalidateDescription();
 			String fileName = new String( "states/" + name + ".dat" );
 			File worldFile = new File( fileName );
 			FileOutputStream outStream = new FileOutputStream( worldFile );
@@ -718,8 +883,8 @@
 				theHouse.removePlayer( thePlayer.getId() );
 			thePlayer.leaveHouse();
 		}			
-		((Room)theWorld.get( from )).removePlayer( theMove.getUser() );
-		((Room)theWorld.get( to )).addPlayer( theMove.getUser() );
+		roomAt( from ).removePlayer( theMove.getUser() );
+		roomAt( to ).addPlayer( theMove.getUser() );
 		((PlayerCharacter)myState.get( GameState.PLAYER, theMove.getUser() )).updateLocation( to );		
 	 }	
 		 
@@ -731,8 +896,8 @@
 	 public void performWarp( Eoid playerId, XYloc to )
 	 {
 	 	PlayerCharacter player = (PlayerCharacter)myState.get( GameState.PLAYER, playerId );
-		((Room)theWorld.get( player.getLocation() )).removePlayer( playerId );
-		((Room)theWorld.get( to )).addPlayer( playerId );
+		roomAt( player.getLocation() ).removePlayer( playerId );
+		roomAt( to ).addPlayer( playerId );
 		player.updateLocation( to );		
 	 }
 	 
@@ -747,7 +912,7 @@
 		if( myPlayer.isInHouse() )
 			retVal = ((House)myState.get( GameState.HOUSE, houseId )).getPlayers();
 		else
-			retVal = ((Room)theWorld.get( myPlayer.getLocation() )).getPlayers();
+			retVal = roomAt( myPlayer.getLocation() ).getPlayers();
 		return retVal;
 	 }
 	
@@ -761,7 +926,7 @@
 		if( myPlayer.isInHouse() )
 			retVal = ((House)myState.get( GameState.HOUSE, houseId )).hasPlayers();
 		else
-			retVal = ((Room)theWorld.get( myPlayer.getLocation() )).hasPlayers();
+			retVal = roomAt( myPlayer.getLocation() ).hasPlayers();
 		return retVal;
 	 }
 	 
@@ -773,12 +938,13 @@
 	 {
 	 	XYloc theLoc = myState.getPlayer().getLocation();
 		boolean retVal = false;
-		Room tempRoom = (Room)theWorld.get( theLoc );
+		Room tempRoom = roomAt( theLoc );
 		int roomType = tempRoom.getRoomType();
 		if( !myState.has( GameState.POND, myState.getPlayer().getLocation() ) && roomType != Room.WATER )
 		{
 			retVal = true;
 			myState.add( GameState.POND, new XYloc( theLoc ) );
+			tempRoom.invalidateDescription();
 		}
 		return retVal;
 	 }
@@ -789,6 +955,7 @@
 	  public void setPondAt( XYloc location )
 	  {
 	  	myState.add( GameState.POND, location );
+		sceneryChanged( location );
 	  }
 	  
 	 /**
@@ -798,9 +965,8 @@
 	 {
 		myState.clear( GameState.MERCHANT );
 		myState.clear( GameState.MOB );
-		for( int x = 0; x < dimX; x++ )
-			for( int y = 0; y < dimY; y++ )
-				((Room)theWorld.get( new XYloc( x, y ))).clear();
+		for( int i = 0; i < theWorld.length; i++ )
+			theWorld[i].clear();
 	}
 	 
 	/** 
@@ -810,7 +976,7 @@
 	 public void placeHouse( House theHouse )
 	 {
 		XYloc houseLoc = theHouse.getLocation();		
-		((Room)theWorld.get( houseLoc )).addHouse( theHouse );
+		roomAt( houseLoc ).addHouse( theHouse );
 		myState.add( GameState.HOUSE, theHouse );
 	 }
 	 
@@ -823,7 +989,7 @@
 	public boolean enterHouse( int houseIndex )
 	{	
 		boolean retVal = false;
-		houseId = ((Room)theWorld.get( myState.getPlayer().getLocation() )).getHouse( houseIndex );
+		houseId = roomAt( myState.getPlayer().getLocation() ).getHouse( houseIndex );
 		House theHouse = (House)myState.get( GameState.HOUSE, houseId );
 		if( theHouse != null && theHouse.canEnter() )
 		{
@@ -852,25 +1018,25 @@
 		int y = myState.getPlayer().getLocation().y;
 		
 
-		retVal[MapViewer.NORTH] = processRoomType( new XYloc( x, y+1 ) );
-		retVal[MapViewer.SOUTH] = processRoomType( new XYloc( x, y-1 ) );
-		retVal[MapViewer.EAST] = processRoomType( new XYloc( x+1, y  ) );
-		retVal[MapViewer.WEST] = processRoomType( new XYloc( x-1, y ) );
+		retVal[MapViewer.NORTH] = processRoomType( x, y+1 );
+		retVal[MapViewer.SOUTH] = processRoomType( x, y-1 );
+		retVal[MapViewer.EAST] = processRoomType( x+1, y );
+		retVal[MapViewer.WEST] = processRoomType( x-1, y );
 		
-		retVal[MapViewer.NORTH_EAST] = processRoomType( new XYloc( x+1, y+1 ) );
-		retVal[MapViewer.NORTH_WEST] = processRoomType( new XYloc( x-1, y+1 ) );
-		retVal[MapViewer.SOUTH_EAST] = processRoomType( new XYloc( x+1, y-1 ) );
-		retVal[MapViewer.SOUTH_WEST] = processRoomType( new XYloc( x-1, y-1 ) );
+		retVal[MapViewer.NORTH_EAST] = processRoomType( x+1, y+1 );
+		retVal[MapViewer.NORTH_WEST] = processRoomType( x-1, y+1 );
+		retVal[MapViewer.SOUTH_EAST] = processRoomType( x+1, y-1 );
+		retVal[MapViewer.SOUTH_WEST] = processRoomType( x-1, y-1 );
 		return retVal;
 	}
 	
-	private String processRoomType( XYloc loc )
+	private String processRoomType( int x, int y )
 	{
 		String retVal = "X";
-		if( ( loc.x >= 0 && loc.x < dimX ) &&
-		    ( loc.y >= 0 && loc.y < dimY ) )
+		if( ( x >= 0 && x < dimX ) &&
+		    ( y >= 0 && y < dimY ) )
 		{
-			switch( ((Room)theWorld.get( loc )).getRoomType() )
+			switch( theWorld[roomIndex( x, y )].getRoomType() )
 			{
 				case Room.GRASSY_FIELD:
 					retVal = "g";
@@ -901,13 +1067,13 @@
 		myName = theConfig.getName();
 		dimX = theConfig.getDimension( WorldConfiguration.WIDTH );
 		dimY = theConfig.getDimension( WorldConfiguration.HEIGHT );
-		theWorld.clear();
+		theWorld = new Room[dimX * dimY];
 		myState.clear( GameState.HOUSE );
 		
 		// This loop simple examines the character map of the world.
 		// Using this information, it creates a room of the type specified by
 		// where it is in the map, and then places the newly created room into
-		// world hashmap keyed by its location
+		// its slot in the world array
 		char[][] theMap = theConfig.getMap();
 		for( int y = dimY - 1; y >= 0; y-- )
 		{	
@@ -921,7 +1087,7 @@
 					desc = Room.WOODS;
 					
 				Room value = new Room( key, desc, dimX, dimY );
-				theWorld.put( key, value );				
+				theWorld[roomIndex( x, y )] = value;
 			}		
 		}		
 		myMapViewer.updateMap( buildMapData(), myState.getPlayer().getLocation() );
@@ -939,7 +1105,7 @@
 		{
 			//If the player indicates they are in a house, add them to that house.
 			if( !player.isInHouse() )			
-				((Room)theWorld.get( player.getLocation() )).addPlayer( player.getId() );
+				roomAt( player.getLocation() ).addPlayer( player.getId() );
 			else
 			{
 				((House)myState.get( GameState.HOUSE, player.getHouse() ))
@@ -958,13 +1124,16 @@
 	 {
 	 	XYloc theLoc = myState.getPlayer().getLocation();
 		if( index == -1 )
+		{
 			myState.remove( GameState.POND, theLoc );
+			roomAt( theLoc ).invalidateDescription();
+		}
 		{			
-			Eoid tempHouse = ((Room)theWorld.get( theLoc )).getHouse( index );
+			Eoid tempHouse = roomAt( theLoc ).getHouse( index );
 			if( tempHouse != null )
 			{
 				myState.remove( GameState.HOUSE, tempHouse );
-				((Room)theWorld.get( theLoc )).removeHouse( tempHouse );
+				roomAt( theLoc ).removeHouse( tempHouse );
 			}
 		}
 	 }
@@ -990,7 +1159,7 @@
 			// Just in case the unit is out of sync, do this
 			performWarp( thePlayer.getId(), theHouse.getLocation() );
 			
-			((Room)theWorld.get( thePlayer.getLocation() )).removePlayer
+			roomAt( thePlayer.getLocation() ).removePlayer
 				( thePlayer.getId() );			
 			thePlayer.enterHouse( theHouse.getOwner() );
 			theHouse.addPlayer( thePlayer.getId() );						
@@ -1017,7 +1186,7 @@
 			// place the player into the room where the house was
 			theHouse.removePlayer( thePlayer.getId() );
 			performWarp( thePlayer.getId(), theHouse.getLocation() );
-			((Room)theWorld.get( theHouse.getLocation() )).addPlayer( thePlayer.getId() );	
+			roomAt( theHouse.getLocation() ).addPlayer( thePlayer.getId() );	
                         thePlayer.leaveHouse();
 		}
 		
@@ -1038,12 +1207,39 @@
 	 public void writeExternal( ObjectOutput out )
 	 throws IOException
 	 {
-			
-		out.writeObject( theWorld );		
 		out.writeObject( myName );
 		out.writeInt( dimX );
 		out.writeInt( dimY );
 		out.writeObject( houseId );
+		
+		// The exits of a room follow from where it is, so all that has to be
+		// kept is one byte of terrain per room and the houses of the few rooms
+		// that have them.
+		byte[] terrain = new byte[theWorld.length];
+		int roomsWithHouses = 0;
+		for( int i = 0; i < theWorld.length; i++ )
+		{
+			terrain[i] = (byte)theWorld[i].getRoomType();
+			if( theWorld[i].hasHouses() )
+				roomsWithHouses++;
+		}
+		out.write( terrain );
+		
+		out.writeInt( roomsWithHouses );
+		for( int i = 0; i < theWorld.length; i++ )
+		{
+			if( theWorld[i].hasHouses() )
+			{
+				Vector owners = new Vector();
+				Iterator houseIter = theWorld[i].getHouses();
+				while( houseIter.hasNext() )
+					owners.add( houseIter.next() );
+				out.writeInt( i );
+				out.writeInt( owners.size() );
+				for( int j = 0; j < owners.size(); j++ )
+					out.writeObject( owners.elementAt( j ) );
+			}
+		}
 	 }
 	 
 	/**
@@ -1053,11 +1249,47 @@
 	public void readExternal( ObjectInput in )
 	throws IOException, ClassNotFoundException
 	{				
-		theWorld = (HashMap)in.readObject();
-		myName = (String)in.readObject();
-		dimX = in.readInt();
-		dimY = in.readInt();
-		houseId = (Eoid)in.readObject();
-		
+		// Worlds saved before the rooms were kept in an array start with the
+		// hashmap of rooms keyed by location, and still load.
+		Object first = in.readObject();
+		if( first instanceof HashMap )
+		{
+			HashMap oldWorld = (HashMap)first;
+			myName = (String)in.readObject();
+			dimX = in.readInt();
+			dimY = in.readInt();
+			houseId = (Eoid)in.readObject();
+			theWorld = new Room[dimX * dimY];
+			Iterator roomIter = oldWorld.values().iterator();
+			while( roomIter.hasNext() )
+			{
+				Room theRoom = (Room)roomIter.next();
+				theWorld[roomIndex( theRoom.getLoc().x, theRoom.getLoc().y )] = theRoom;
+			}
+		}
+		else
+		{
+			myName = (String)first;
+			dimX = in.readInt();
+			dimY = in.readInt();
+			houseId = (Eoid)in.readObject();
+			
+			byte[] terrain = new byte[dimX * dimY];
+			in.readFully( terrain );
+			theWorld = new Room[dimX * dimY];
+			for( int y = 0; y < dimY; y++ )
+				for( int x = 0; x < dimX; x++ )
+					theWorld[roomIndex( x, y )] = new Room
+						( new XYloc( x, y ), terrain[roomIndex( x, y )], dimX, dimY );
+			
+			int roomsWithHouses = in.readInt();
+			for( int i = 0; i < roomsWithHouses; i++ )
+			{
+				Room theRoom = theWorld[in.readInt()];
+				int numHouses = in.readInt();
+				for( int j = 0; j < numHouses; j++ )
+					theRoom.addHouseOwner( (Eoid)in.readObject() );
+			}
+		}
 	}	
 }
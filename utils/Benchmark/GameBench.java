@@ -0,0 +1,176 @@
+import java.util.Random;
+import m2mimud.command.Parser;
+import m2mimud.command.IntCommand;
+import m2mimud.command.special.PlayerCreationCommand;
+import m2mimud.state.GameState;
+import m2mimud.state.MapViewer;
+import m2mimud.state.PlayerCharacter;
+import m2mimud.state.World;
+import m2mimud.state.XYloc;
+
+/**
+ * The GameBench times the game state code that runs on every report, move and
+ * command: comparing GameStates in full and by their digests, synchronizing
+ * them, merging in a joining state, taking the copy and then the snapshot
+ * a report is sent from, moving the player around the World, describing the player's room,
+ * and parsing what the user types.
+ * Each test is run once to warm up and then again for the numbers printed.
+ *
+ * Like the game it has to be run from one of the client game directories,
+ * since the players and the parser load their data from data/.
+ *
+ * Usage: java GameBench [players] [iterations]
+ *
+ * @author Robert Whitcomb
+ * @version $Id$
+ */
+public class GameBench
+{
+	private static final String[] COMMANDS = { "look", "walk north", "w east",
+		"say hello there", "yell anyone around?", "punch goblin", "inventory",
+		"buy sword 1", "goto 10 20", "who", "not a command" };
+
+	/**
+	 * A MapViewer which throws the map away, the World needs one to move the player
+	 */
+	private static class NullViewer
+	implements MapViewer
+	{
+		public void updateMap( String[] newValues, XYloc loc )
+		{
+		}
+
+		public void updateTime( int newTime )
+		{
+		}
+	}
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			int numPlayers = 50;
+			int n = 10000;
+			if( args.length > 0 )
+				numPlayers = Integer.parseInt( args[0] );
+			if( args.length > 1 )
+				n = Integer.parseInt( args[1] );
+
+			// Build the local state and world, with the local player in the
+			// middle of the map and the others scattered around it.
+			Random prng = new Random( 42 );
+			PlayerCharacter[] players = new PlayerCharacter[numPlayers];
+			for( int i = 0; i < numPlayers; i++ )
+			{
+				players[i] = PlayerCharacter.createNewCharacter( 
+					new PlayerCreationCommand( "Player" + i, PlayerCharacter.MALE, "fighter" ), null );
+				if( players[i] == null )
+					throw new Exception( "Could not load data/fighter.dat, run from a client game directory" );
+				players[i].updateLocation( new XYloc( prng.nextInt( 100 ), prng.nextInt( 100 ) ) );
+			}
+			players[0].updateLocation( new XYloc( 50, 50 ) );
+
+			GameState local = new GameState( null, 0, players[0].getId(), null );
+			local.add( GameState.PLAYER, players[0] );
+			World world = new World( local );
+			for( int i = 1; i < numPlayers; i++ )
+			{
+				local.add( GameState.PLAYER, players[i] );
+				world.placePlayer( players[i] );
+			}
+			world.setViewer( new NullViewer() );
+
+			// The fragment another unit would report: its own copies of every
+			// player, reported by the unit which owns player 1.
+			GameState fragment = new GameState( null, 0, players[1].getId(), null );
+			for( int i = 0; i < numPlayers; i++ )
+				fragment.add( GameState.PLAYER, 
+					PlayerCharacter.createNewCharacter( players[i], null ) );
+
+			System.out.println( "Test              ns/op" );
+			for( int pass = 0; pass < 2; pass++ )
+			{
+				long t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					local.equals( fragment );
+				long t2 = System.nanoTime();
+				report( pass, "equals", t2 - t1, n );
+
+				// What replaces equals when the report carries its digests
+				long[] digests = fragment.getContentDigests();
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					local.sameContent( digests );
+				t2 = System.nanoTime();
+				report( pass, "sameContent", t2 - t1, n );
+
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					local.synchronize( fragment, world );
+				t2 = System.nanoTime();
+				report( pass, "synchronize", t2 - t1, n );
+
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					local.merge( fragment, world );
+				t2 = System.nanoTime();
+				report( pass, "merge", t2 - t1, n );
+
+				// What the sync loop holds the lock for when it reports
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					local.copy();
+				t2 = System.nanoTime();
+				report( pass, "copy", t2 - t1, n );
+
+				// What the report loop then does without the lock
+				GameState theCopy = local.copy();
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					local.snapshot( theCopy );
+				t2 = System.nanoTime();
+				report( pass, "snapshot", t2 - t1, n );
+
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					world.doPlayerMove( i % 2 == 0 ? IntCommand.EAST : IntCommand.WEST );
+				t2 = System.nanoTime();
+				report( pass, "doPlayerMove", t2 - t1, n );
+
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					world.currentAreaDescription();
+				t2 = System.nanoTime();
+				report( pass, "look", t2 - t1, n );
+
+				Parser parser = new Parser();
+				t1 = System.nanoTime();
+				for( int i = 0; i < n; i++ )
+					parser.parse( COMMANDS[i % COMMANDS.length] );
+				t2 = System.nanoTime();
+				report( pass, "Parser.parse", t2 - t1, n );
+			}
+			System.exit( 0 );
+		}
+		catch( Exception e )
+		{
+			e.printStackTrace();
+			System.exit( 1 );
+		}
+	}
+
+	/**
+	 * Prints the time per operation, on the measured pass only
+	 */
+	private static void report( int pass, String name, long nanos, int n )
+	{
+		if( pass == 1 )
+		{
+			StringBuffer buf = new StringBuffer( name );
+			while( buf.length() < 18 )
+				buf.append( ' ' );
+			buf.append( nanos / n );
+			System.out.println( buf );
+		}
+	}
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.util.Random;
+import edu.rit.m2mi.M2MI;
+import m2mimud.command.Command;
+import m2mimud.command.Parser;
+import m2mimud.communications.Game;
+import m2mimud.communications.GameDiscoveryListener;
+import m2mimud.communications.SessionAd;
+import m2mimud.game.GameSystem;
+import m2mimud.game.HeadlessCommunicator;
+import m2mimud.state.GameState;
+import m2mimud.state.MapViewer;
+import m2mimud.state.XYloc;
+
+/**
+ * The LoadClient is one simulated player for the LoadGenerator: a GameSystem
+ * with a HeadlessCommunicator, driven by commands instead of a user.  The
+ * LoadGenerator loads each LoadClient with its own class loader, so every
+ * client has its own M2MI and M2MP layers and can only reach the others
+ * through the simulated network, just like units on different machines.
+ *
+ * Since the LoadGenerator sees this class through a different class loader,
+ * it calls these methods by reflection, and they only take and return
+ * Java types.
+ *
+ * @author Robert Whitcomb
+ * @version $Id$
+ */
+public class LoadClient
+implements GameDiscoveryListener
+{
+	// The kinds of commands in the mix
+	public static final int MOVE = 0;
+	public static final int SAY = 1;
+	public static final int ATTACK = 2;
+	public static final int BUY = 3;
+
+	private static final String[] DIRECTIONS = { "north", "south", "east", "west" };
+
+	private GameSystem mySystem; // the client's game system
+	private HeadlessCommunicator myComm; // what the player would have seen
+	private Parser myParser; // parses the commands
+	private Random myPrng; // picks directions
+	private SessionAd mySession; // the first session found, null until then
+
+	/**
+	 * A MapViewer which throws the map away
+	 */
+	private static class NullViewer
+	implements MapViewer
+	{
+		public void updateMap( String[] newValues, XYloc loc )
+		{
+		}
+
+		public void updateTime( int newTime )
+		{
+		}
+	}
+
+	/**
+	 * Constructor, starts this class loader's M2MI layer and creates or loads
+	 * the player with the given name
+	 * @param name The name of the player
+	 * @param seed The seed for the client's random choices
+	 */
+	public LoadClient( String name, long seed )
+	throws Exception
+	{
+		M2MI.initialize( LoadClient.class.getClassLoader() );
+		myComm = new HeadlessCommunicator( 100 );
+		mySystem = new GameSystem( myComm, new NullViewer() );
+		myParser = new Parser();
+		myPrng = new Random( seed );
+		mySession = null;
+
+		// A player left over from an earlier run is loaded instead, since
+		// creating one with the same name would fail
+		if( new File( "players/" + name + ".dat" ).exists() )
+			execute( "load player " + name );
+		else
+			execute( "create male " + name + " fighter" );
+	}
+
+	/**
+	 * Creates a session with the given name and has it report itself soon,
+	 * so that the other clients can find it
+	 * @param sessionName The name of the session
+	 */
+	public void createGame( String sessionName )
+	throws Exception
+	{
+		execute( "game " + sessionName );
+		execute( "do report" );
+	}
+
+	/**
+	 * Starts listening for sessions
+	 */
+	public void findGame()
+	{
+		mySystem.findSessions( this );
+	}
+
+	/**
+	 * Joins the first session found, waiting for one if need be
+	 * @param timeout How long to wait, in milliseconds
+	 * @return Whether or not a session was joined
+	 */
+	public boolean joinGame( long timeout )
+	throws Exception
+	{
+		SessionAd theAd;
+		synchronized( this )
+		{
+			long end = System.currentTimeMillis() + timeout;
+			long left = timeout;
+			while( mySession == null && left > 0 )
+			{
+				wait( left );
+				left = end - System.currentTimeMillis();
+			}
+			theAd = mySession;
+		}
+		if( theAd != null )
+			mySystem.sessionSelected( theAd );
+		return theAd != null;
+	}
+
+	/**
+	 * Has this client report its state to the session in a few seconds,
+	 * instead of waiting for its next normal report
+	 */
+	public void requestReport()
+	throws Exception
+	{
+		execute( "do report" );
+	}
+
+	/**
+	 * Runs one command of the given kind
+	 * @param kind MOVE, SAY, ATTACK or BUY
+	 * @return How long the command took, in nanoseconds
+	 */
+	public long runCommand( int kind )
+	throws Exception
+	{
+		String command;
+		switch( kind )
+		{
+			case MOVE:
+				command = "walk " + DIRECTIONS[myPrng.nextInt( DIRECTIONS.length )];
+			break;
+			case SAY:
+				command = "say load test message " + myPrng.nextInt( 1000 );
+			break;
+			case ATTACK:
+				command = "punch goblin";
+			break;
+			default:
+				command = "buy sword 1";
+			break;
+		}
+
+		long start = System.nanoTime();
+		execute( command );
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns where this client thinks each player is
+	 */
+	public String getPlayerLocations()
+	{
+		return mySystem.getPlayerLocations();
+	}
+
+	/**
+	 * Leaves the session
+	 */
+	public void leave()
+	throws Exception
+	{
+		execute( "leave" );
+	}
+
+	/**
+	 * Parses and executes a command, invalid ones are ignored
+	 */
+	private void execute( String command )
+	throws Exception
+	{
+		Command theCommand = myParser.parse( command );
+		if( theCommand.getType() != Command.INVALID_COMMAND )
+			mySystem.execute( theCommand );
+	}
+
+/********************************************************************************************************************************/
+// The GameDiscoveryListener functions, only the first session found matters
+
+	public synchronized void newSessionAdded( SessionAd theSession )
+	{
+		if( mySession == null )
+		{
+			mySession = theSession;
+			notifyAll();
+		}
+	}
+
+	public void sessionLeft( Game sessionName )
+	{
+	}
+
+	public void sessionCountChanged( Game handle, int newCount )
+	{
+	}
+
+	public void sessionStateChanged( Game handle, GameState newState )
+	{
+	}
+}
@@ -0,0 +1,449 @@
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.StringTokenizer;
+import edu.rit.m2mp.SimulatedNetwork;
+import edu.rit.m2mp.test.M2MPBench;
+
+/**
+ * The LoadGenerator runs many simulated players in one JVM and measures how
+ * the game holds up as their number grows.  For each player count it starts
+ * that many LoadClients, each with its own class loader and so its own M2MI
+ * and M2MP layers, all joined to one session over an in-memory
+ * SimulatedNetwork which can lose and delay packets.  Every client then runs
+ * a mix of moves, says, attacks and buys, and the generator reports:
+ *
+ *   - the 50th, 90th and 99th percentile time to execute each kind of command
+ *   - the M2MI invocations (M2MP messages) sent per second, and the packets lost
+ *   - how long the clients took to see every player join the session
+ *   - how long after the last command the clients took to agree on where
+ *     every player is
+ *
+ * A unit only hears the moves of players within World.INTEREST_RADIUS of its
+ * own, and finds out where the rest went from their reports, which normally
+ * come a minute apart.  So once the commands are done every client is asked
+ * to report, and asked again every REPORT_WAIT until they agree, and the
+ * time to agree includes the few seconds a report takes to go out.
+ *
+ * Only the SimulatedNetwork class is shared between the clients; everything
+ * else, the game included, is loaded again for each one.  Each client is
+ * given its own device id as it starts, so that their EOIDs do not collide.
+ * The clients of one player count leave their session before the next count
+ * starts, and each count uses a session of its own.
+ *
+ * Like the game it has to be run from a client game directory, and since
+ * every client saves a player file, bot0.dat, bot1.dat and so on, it is best
+ * run from a copy of one.  The clients load the world from the directory's
+ * states/default.dat, which was written by the compiled classes in lib/;
+ * classes built from source read it as long as PlayerCache keeps the
+ * serialVersionUID of the one in lib/.
+ *
+ * Usage: java LoadGenerator [counts] [commands] [loss] [latency] [jitter] [think]
+ *   counts   Comma separated player counts to run, default 1,2,4,8
+ *   commands Commands each client runs, default 200
+ *   loss     Packet loss probability, default 0
+ *   latency  Network latency in milliseconds, default 0
+ *   jitter   Maximum extra random latency in milliseconds, default 0
+ *   think    Milliseconds each client waits between commands, default 50
+ *
+ * @author Robert Whitcomb
+ * @version $Id$
+ */
+public class LoadGenerator
+{
+	// The command mix, as a percentage of each kind of command
+	private static final String[] KIND_NAMES = { "move", "say", "attack", "buy" };
+	private static final int[] KIND_PERCENT = { 50, 25, 15, 10 };
+
+	private static final long JOIN_TIMEOUT = 60000;
+	private static final long REPORT_WAIT = 6000; // a little longer than the do report command takes
+	private static final long CONVERGE_TIMEOUT = 30000;
+
+	private static int clientsStarted = 0; // used for player names and device ids
+
+	/**
+	 * A class loader which loads classes itself before asking its parent, so
+	 * that each client gets its own copy of the game and the M2MI and M2MP
+	 * layers.  The Java classes and the SimulatedNetwork, which all the
+	 * clients share, come from the parent.
+	 */
+	private static class ClientLoader
+	extends URLClassLoader
+	{
+		public ClientLoader( URL[] urls, ClassLoader parent )
+		{
+			super( urls, parent );
+		}
+
+		protected synchronized Class loadClass( String name, boolean resolve )
+		throws ClassNotFoundException
+		{
+			Class c = findLoadedClass( name );
+			if( c == null )
+			{
+				if( name.startsWith( "java." ) || name.startsWith( "javax." ) ||
+				    name.startsWith( "sun." ) || name.startsWith( "jdk." ) ||
+				    name.startsWith( SimulatedNetwork.class.getName() ) )
+					c = getParent().loadClass( name );
+				else
+				{
+					try
+					{
+						c = findClass( name );
+					}
+					catch( ClassNotFoundException e )
+					{
+						c = getParent().loadClass( name );
+					}
+				}
+			}
+			if( resolve )
+				resolveClass( c );
+			return c;
+		}
+	}
+
+	/**
+	 * The latencies of one kind of command, for one player count
+	 */
+	private static class Latencies
+	{
+		long[] times = new long[16];
+		int size = 0;
+
+		synchronized void add( long time )
+		{
+			if( size == times.length )
+			{
+				long[] newTimes = new long[size * 2];
+				System.arraycopy( times, 0, newTimes, 0, size );
+				times = newTimes;
+			}
+			times[size++] = time;
+		}
+
+		/**
+		 * Returns the given percentile in microseconds, after sort() has been called
+		 */
+		long percentile( int p )
+		{
+			if( size == 0 )
+				return 0;
+			int i = (int)Math.ceil( size * p / 100.0 ) - 1;
+			return times[Math.max( i, 0 )] / 1000;
+		}
+
+		void sort()
+		{
+			Arrays.sort( times, 0, size );
+		}
+	}
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			int[] counts = { 1, 2, 4, 8 };
+			int commands = 200;
+			double loss = 0.0;
+			long latency = 0;
+			long jitter = 0;
+			long think = 50;
+			if( args.length > 0 )
+			{
+				StringTokenizer tok = new StringTokenizer( args[0], "," );
+				counts = new int[tok.countTokens()];
+				for( int i = 0; i < counts.length; i++ )
+					counts[i] = Integer.parseInt( tok.nextToken().trim() );
+			}
+			if( args.length > 1 )
+				commands = Integer.parseInt( args[1] );
+			if( args.length > 2 )
+				loss = Double.parseDouble( args[2] );
+			if( args.length > 3 )
+				latency = Long.parseLong( args[3] );
+			if( args.length > 4 )
+				jitter = Long.parseLong( args[4] );
+			if( args.length > 5 )
+				think = Long.parseLong( args[5] );
+
+			M2MPBench.setLoopbackProperties();
+			System.setProperty( "edu.rit.m2mp.channel.class", "edu.rit.m2mp.SimulatedChannel" );
+			SimulatedNetwork.configure( loss, latency, jitter );
+
+			// The game prints as it runs, so the results are kept until the end
+			StringBuffer table = new StringBuffer();
+			table.append( "Players  Command  Count   p50 us   p90 us   p99 us\n" );
+			StringBuffer summary = new StringBuffer();
+			summary.append( "Players  Inv/sec   Lost/sent packets  Join ms  Converge ms\n" );
+			for( int i = 0; i < counts.length; i++ )
+				summary.append( run( i, counts[i], commands, think, table ) );
+
+			System.out.println();
+			System.out.println( "Loss " + loss + ", latency " + latency + " ms, jitter " +
+				jitter + " ms, " + commands + " commands per client, think time " + think + " ms" );
+			System.out.println();
+			System.out.print( table );
+			System.out.println();
+			System.out.print( summary );
+			System.exit( 0 );
+		}
+		catch( Throwable e )
+		{
+			e.printStackTrace();
+			System.exit( 1 );
+		}
+	}
+
+	/**
+	 * Runs the test for one player count, adds the command latencies to the
+	 * table and returns the summary line
+	 * @param run Which run this is, used to name the session
+	 * @param numClients The number of players
+	 * @param commands The number of commands each player runs
+	 * @param think How long each player waits between commands
+	 * @param table The latency table
+	 */
+	private static String run( int run, int numClients, final int commands, final long think,
+		StringBuffer table )
+	throws Exception
+	{
+		// Start the clients.  The first creates the session, the rest find it.
+		final Object[] clients = new Object[numClients];
+		for( int i = 0; i < numClients; i++ )
+		{
+			clients[i] = startClient();
+			if( i == 0 )
+				call( clients[0], "createGame", new Object[] { "load" + run } );
+			else
+				call( clients[i], "findGame", new Object[0] );
+		}
+
+		// Join them all, then wait for every client to see every player.  A
+		// unit only hears about the players who joined before it from their
+		// reports, so every client is asked for one instead of waiting up to
+		// a minute for the normal reports.
+		// The session's report can be lost, so it is asked for again until
+		// everyone has found it.
+		long joinStart = System.currentTimeMillis();
+		for( int i = 1; i < numClients; i++ )
+		{
+			boolean joined = false;
+			while( !joined )
+			{
+				joined = ((Boolean)call( clients[i], "joinGame", 
+					new Object[] { new Long( REPORT_WAIT ) } )).booleanValue();
+				if( !joined && System.currentTimeMillis() - joinStart > JOIN_TIMEOUT )
+					throw new Exception( "Client " + i + " did not find the session" );
+				else if( !joined )
+					call( clients[0], "requestReport", new Object[0] );
+			}
+		}
+		for( int i = 0; i < numClients; i++ )
+			call( clients[i], "requestReport", new Object[0] );
+		String joinTime = waitForPlayers( clients, numClients, joinStart );
+
+		// Run the command mix on every client at once
+		final Latencies[] latencies = new Latencies[KIND_NAMES.length];
+		for( int k = 0; k < latencies.length; k++ )
+			latencies[k] = new Latencies();
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[numClients];
+		SimulatedNetwork.resetStatistics();
+		long start = System.currentTimeMillis();
+		for( int i = 0; i < numClients; i++ )
+		{
+			final Object client = clients[i];
+			final Random prng = new Random( i );
+			threads[i] = new Thread( "LoadClient-" + i )
+			{
+				public void run()
+				{
+					try
+					{
+						for( int n = 0; n < commands; n++ )
+						{
+							int kind = pickKind( prng );
+							Long time = (Long)call( client, "runCommand",
+								new Object[] { new Integer( kind ) } );
+							latencies[kind].add( time.longValue() );
+							if( think > 0 )
+								Thread.sleep( think );
+						}
+					}
+					catch( Throwable e )
+					{
+						failure[0] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for( int i = 0; i < numClients; i++ )
+			threads[i].join();
+		long end = System.currentTimeMillis();
+		if( failure[0] != null )
+			throw new Exception( "A client failed", failure[0] );
+		long messages = SimulatedNetwork.getMessagesTransmitted();
+		long sent = SimulatedNetwork.getPacketsTransmitted();
+		long lost = SimulatedNetwork.getPacketsLost();
+
+		String convergeTime = waitForAgreement( clients, end );
+
+		for( int k = 0; k < latencies.length; k++ )
+		{
+			latencies[k].sort();
+			table.append( pad( "" + numClients, 9 ) ).append( pad( KIND_NAMES[k], 9 ) )
+				.append( pad( "" + latencies[k].size, 8 ) )
+				.append( pad( "" + latencies[k].percentile( 50 ), 9 ) )
+				.append( pad( "" + latencies[k].percentile( 90 ), 9 ) )
+				.append( latencies[k].percentile( 99 ) ).append( '\n' );
+		}
+
+		for( int i = 0; i < numClients; i++ )
+			call( clients[i], "leave", new Object[0] );
+
+		return pad( "" + numClients, 9 ) +
+			pad( "" + ( messages * 1000 / Math.max( end - start, 1 ) ), 10 ) +
+			pad( lost + "/" + sent, 19 ) + pad( joinTime, 9 ) + convergeTime + "\n";
+	}
+
+	/**
+	 * Starts one client in a class loader of its own
+	 */
+	private static Object startClient()
+	throws Exception
+	{
+		int index = clientsStarted++;
+
+		// The client's Eoids are made from the device id when its M2MI layer
+		// starts, which happens in its constructor.
+		System.setProperty( "edu.rit.device.id", 
+			Long.toHexString( 0x000874430000L + index ) );
+
+		StringTokenizer tok = new StringTokenizer( System.getProperty( "java.class.path" ),
+			File.pathSeparator );
+		URL[] urls = new URL[tok.countTokens()];
+		for( int i = 0; i < urls.length; i++ )
+			urls[i] = new File( tok.nextToken() ).toURI().toURL();
+		ClassLoader loader = new ClientLoader( urls, LoadGenerator.class.getClassLoader() );
+
+		Class clientClass = loader.loadClass( "LoadClient" );
+		return clientClass.getConstructor( new Class[] { String.class, Long.TYPE } )
+			.newInstance( new Object[] { "bot" + index, new Long( index ) } );
+	}
+
+	/**
+	 * Waits for every client to have every player in its state
+	 * @return The time taken in milliseconds, or "timeout"
+	 */
+	private static String waitForPlayers( Object[] clients, int numPlayers, long start )
+	throws Exception
+	{
+		for( ;; )
+		{
+			boolean done = true;
+			for( int i = 0; i < clients.length && done; i++ )
+			{
+				String locations = (String)call( clients[i], "getPlayerLocations", new Object[0] );
+				done = new StringTokenizer( locations, "\n" ).countTokens() == numPlayers;
+			}
+			long now = System.currentTimeMillis();
+			if( done )
+				return "" + ( now - start );
+			if( now - start > JOIN_TIMEOUT )
+				return "timeout";
+			Thread.sleep( 10 );
+		}
+	}
+
+	/**
+	 * Waits for every client to agree on where every player is.  The players
+	 * outside a client's interest area are only brought up to date by
+	 * reports, so while the clients disagree they are all asked for one,
+	 * again every REPORT_WAIT in case a report is lost.
+	 * @return The time taken in milliseconds, or "timeout"
+	 */
+	private static String waitForAgreement( Object[] clients, long start )
+	throws Exception
+	{
+		long lastRequest = 0;
+		for( ;; )
+		{
+			String first = (String)call( clients[0], "getPlayerLocations", new Object[0] );
+			boolean done = true;
+			for( int i = 1; i < clients.length && done; i++ )
+				done = first.equals( call( clients[i], "getPlayerLocations", new Object[0] ) );
+			long now = System.currentTimeMillis();
+			if( done )
+				return "" + ( now - start );
+			if( now - start > CONVERGE_TIMEOUT )
+				return "timeout";
+			if( now - lastRequest > REPORT_WAIT )
+			{
+				for( int i = 0; i < clients.length; i++ )
+					call( clients[i], "requestReport", new Object[0] );
+				lastRequest = now;
+			}
+			Thread.sleep( 10 );
+		}
+	}
+
+	/**
+	 * Picks the kind of the next command from the mix
+	 */
+	private static int pickKind( Random prng )
+	{
+		int roll = prng.nextInt( 100 );
+		int kind = 0;
+		while( roll >= KIND_PERCENT[kind] )
+		{
+			roll -= KIND_PERCENT[kind];
+			kind++;
+		}
+		return kind;
+	}
+
+	/**
+	 * Calls the public method with the given name on a client
+	 */
+	private static Object call( Object client, String name, Object[] args )
+	throws Exception
+	{
+		Method[] methods = client.getClass().getMethods();
+		for( int i = 0; i < methods.length; i++ )
+		{
+			if( methods[i].getName().equals( name ) &&
+			    methods[i].getParameterTypes().length == args.length )
+			{
+				try
+				{
+					return methods[i].invoke( client, args );
+				}
+				catch( InvocationTargetException e )
+				{
+					Throwable cause = e.getCause();
+					if( cause instanceof Exception )
+						throw (Exception)cause;
+					throw e;
+				}
+			}
+		}
+		throw new NoSuchMethodException( name );
+	}
+
+	/**
+	 * Pads a string with spaces to the given width
+	 */
+	private static String pad( String s, int width )
+	{
+		StringBuffer buf = new StringBuffer( s );
+		while( buf.length() < width )
+			buf.append( ' ' );
+		return buf.toString();
+	}
+}